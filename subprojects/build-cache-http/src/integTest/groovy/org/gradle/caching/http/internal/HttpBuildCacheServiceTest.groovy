@@ -24,12 +24,14 @@ import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.http.HttpBuildCache
+import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.test.fixtures.server.http.AuthScheme
 import org.gradle.test.fixtures.server.http.HttpResourceInteraction
 import org.gradle.test.fixtures.server.http.HttpServer
 import org.gradle.util.GradleVersion
+import org.gradle.util.SetSystemProperties
 import org.junit.Rule
 import spock.lang.Specification
 
@@ -52,9 +54,12 @@ class HttpBuildCacheServiceTest extends Specification {
     HttpServer server = new HttpServer()
     @Rule
     TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider()
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
 
     BuildCacheService cache
     BuildCacheServiceFactory.Describer buildCacheDescriber
+    def buildOperationExecutor = new TestBuildOperationExecutor()
 
     def key = new BuildCacheKey() {
         @Override
@@ -70,10 +75,14 @@ class HttpBuildCacheServiceTest extends Specification {
 
     def setup() {
         server.start()
+        buildCacheDescriber = new NoopBuildCacheDescriber()
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), buildOperationExecutor).createBuildCacheService(config(), buildCacheDescriber)
+    }
+
+    private HttpBuildCache config() {
         def config = new HttpBuildCache()
         config.url = server.uri.resolve("/cache/")
-        buildCacheDescriber = new NoopBuildCacheDescriber()
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(config, buildCacheDescriber)
+        return config
     }
 
     def "can cache artifact"() {
@@ -101,6 +110,85 @@ class HttpBuildCacheServiceTest extends Specification {
         destFile.text == "Data"
     }
 
+    def "reuses connections for subsequent requests"() {
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        3.times {
+            server.expectGet("/cache/${key.hashCode}", srcFile)
+        }
+
+        when:
+        3.times {
+            cache.load(key) { input -> input.text }
+        }
+        cache.close()
+
+        then:
+        def result = buildOperationExecutor.log.mostRecentResult(HttpBuildCacheConnectionsBuildOperationType)
+        result.requestCount == 3
+        result.connectionCount == 1
+        result.reusedConnectionCount == 2
+        buildOperationExecutor.log.mostRecentDetails(HttpBuildCacheConnectionsBuildOperationType).url == server.uri.resolve("/cache/").toASCIIString()
+    }
+
+    def "does not reuse connections idle for longer than the keep-alive"() {
+        cache.close()
+        System.setProperty(HttpBuildCacheTransport.KEEP_ALIVE_PROPERTY, "1")
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), buildOperationExecutor).createBuildCacheService(config(), buildCacheDescriber)
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        3.times {
+            server.expectGet("/cache/${key.hashCode}", srcFile)
+        }
+
+        when:
+        cache.load(key) { input -> input.text }
+        cache.load(key) { input -> input.text }
+        Thread.sleep(1500)
+        cache.load(key) { input -> input.text }
+        cache.close()
+
+        then:
+        def result = buildOperationExecutor.log.mostRecentResult(HttpBuildCacheConnectionsBuildOperationType)
+        result.requestCount == 3
+        result.connectionCount == 2
+        result.reusedConnectionCount == 1
+    }
+
+    def "checks for many entries at once"() {
+        def otherKey = new BuildCacheKey() {
+            @Override
+            String getHashCode() {
+                return 'fedcba6543210'
+            }
+        }
+        server.expect("/cache/contains", ["POST"], new HttpServer.ActionSupport("return present keys") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                assert request.inputStream.text.readLines() as Set == [key.hashCode, otherKey.hashCode] as Set
+                response.contentType = "text/plain"
+                response.outputStream << key.hashCode
+            }
+        })
+
+        when:
+        def present = cache.contains([key, otherKey])
+
+        then:
+        present == [key] as Set
+    }
+
+    def "stops checking for many entries at once when server does not support it"() {
+        server.expect("/cache/contains", ["POST"], new HttpServer.ActionSupport("return 404") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                response.sendError(404, "Not found")
+            }
+        })
+
+        expect:
+        cache.contains([key]) == null
+        cache.contains([key]) == null
+    }
+
     def "can load artifact from cache"() {
         def srcFile = tempDir.file("cached.zip")
         srcFile.text = "Data"
@@ -248,7 +336,7 @@ class HttpBuildCacheServiceTest extends Specification {
         configuration.url = server.uri.resolve("/cache/")
         configuration.credentials.username = 'user'
         configuration.credentials.password = 'password'
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), buildOperationExecutor).createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
 
         server.authenticationScheme = AuthScheme.BASIC
 
@@ -24,6 +24,7 @@ import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.http.HttpBuildCache;
 import org.gradle.caching.http.HttpBuildCacheCredentials;
 import org.gradle.internal.authentication.DefaultBasicAuthentication;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
 import org.gradle.internal.resource.transport.http.SslContextFactory;
@@ -40,10 +41,12 @@ import java.util.Collections;
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
 
     private final SslContextFactory sslContextFactory;
+    private final BuildOperationExecutor buildOperationExecutor;
 
     @Inject
-    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory) {
+    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory, BuildOperationExecutor buildOperationExecutor) {
         this.sslContextFactory = sslContextFactory;
+        this.buildOperationExecutor = buildOperationExecutor;
     }
 
     @Override
@@ -67,13 +70,16 @@ public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFac
         }
 
         boolean authenticated = !authentications.isEmpty();
+        HttpBuildCacheTransport transport = HttpBuildCacheTransport.fromSystemProperties();
 
         describer.type("HTTP")
             .config("url", noUserInfoUrl.toASCIIString())
-            .config("authenticated", Boolean.toString(authenticated));
+            .config("authenticated", Boolean.toString(authenticated))
+            .config("maxConnections", Integer.toString(transport.getMaxConnections()))
+            .config("keepAliveMillis", Long.toString(transport.getKeepAliveMillis()));
 
-        HttpClientHelper httpClientHelper = new HttpClientHelper(new DefaultHttpSettings(authentications, sslContextFactory));
-        return new HttpBuildCacheService(httpClientHelper, noUserInfoUrl);
+        HttpClientHelper httpClientHelper = new HttpClientHelper(new DefaultHttpSettings(authentications, sslContextFactory), transport);
+        return new HttpBuildCacheService(httpClientHelper, noUserInfoUrl, transport, buildOperationExecutor);
     }
 
     @VisibleForTesting
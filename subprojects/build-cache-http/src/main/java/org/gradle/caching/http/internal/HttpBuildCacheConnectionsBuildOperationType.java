@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Emitted when the HTTP build cache is closed, describing how its connections were used during the build.
+ */
+public class HttpBuildCacheConnectionsBuildOperationType implements BuildOperationType<HttpBuildCacheConnectionsBuildOperationType.Details, HttpBuildCacheConnectionsBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The URL of the build cache, without user info.
+         */
+        String getUrl();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of requests sent to the build cache. Redirects and authentication challenges followed while performing a request are not counted.
+         */
+        long getRequestCount();
+
+        /**
+         * The number of connections opened to send these requests.
+         */
+        long getConnectionCount();
+
+        /**
+         * The number of HTTP exchanges that were sent over a connection that had already been used before.
+         * Unlike {@link #getRequestCount()}, this includes the exchanges that follow redirects and answer authentication challenges.
+         */
+        long getReusedConnectionCount();
+
+    }
+
+    private HttpBuildCacheConnectionsBuildOperationType() {
+    }
+}
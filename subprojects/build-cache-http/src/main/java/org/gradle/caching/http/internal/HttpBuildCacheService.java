@@ -16,7 +16,11 @@
 
 package org.gradle.caching.http.internal;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
 import org.apache.commons.lang.IncompleteArgumentException;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpMessage;
@@ -24,17 +28,26 @@ import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.gradle.api.Nullable;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
-import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.BatchingBuildCacheService;
 import org.gradle.caching.internal.tasks.TaskOutputPacker;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
 import org.gradle.util.GradleVersion;
 import org.slf4j.Logger;
@@ -42,16 +55,24 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Build cache implementation that delegates to a service accessible via HTTP.
+ *
+ * <p>Servers may also accept a {@code POST} to {@code contains} under the cache root, with a body listing one cache key per line,
+ * and respond with those of the keys they have entries for, one per line.
+ * Servers that don't support this are only asked once.</p>
  */
-public class HttpBuildCacheService implements BuildCacheService {
+public class HttpBuildCacheService implements BatchingBuildCacheService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpBuildCacheService.class);
     static final String BUILD_CACHE_CONTENT_TYPE = "application/vnd.gradle.build-cache-artifact.v" + TaskOutputPacker.CACHE_ENTRY_FORMAT;
 
@@ -66,17 +87,30 @@ public class HttpBuildCacheService implements BuildCacheService {
         511 // network authentication required
     );
 
+    private static final Set<Integer> UNSUPPORTED_BATCH_HTTP_CODES = ImmutableSet.of(
+        HttpStatus.SC_BAD_REQUEST,
+        HttpStatus.SC_NOT_FOUND,
+        HttpStatus.SC_METHOD_NOT_ALLOWED,
+        HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+        HttpStatus.SC_NOT_IMPLEMENTED
+    );
+
     private final URI root;
     private final URI safeUri;
     private final HttpClientHelper httpClientHelper;
+    private final HttpBuildCacheTransport transport;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private volatile boolean batchContainsSupported = true;
 
-    public HttpBuildCacheService(HttpClientHelper httpClientHelper, URI url) {
+    public HttpBuildCacheService(HttpClientHelper httpClientHelper, URI url, HttpBuildCacheTransport transport, BuildOperationExecutor buildOperationExecutor) {
         if (!url.getPath().endsWith("/")) {
             throw new IncompleteArgumentException("HTTP cache root URI must end with '/'");
         }
         this.root = url;
         this.safeUri = safeUri(url);
         this.httpClientHelper = httpClientHelper;
+        this.transport = transport;
+        this.buildOperationExecutor = buildOperationExecutor;
     }
 
     @Override
@@ -88,7 +122,7 @@ public class HttpBuildCacheService implements BuildCacheService {
 
         CloseableHttpResponse response = null;
         try {
-            response = httpClientHelper.performHttpRequest(httpGet);
+            response = send(httpGet);
             StatusLine statusLine = response.getStatusLine();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Response for GET {}: {}", safeUri(uri), statusLine);
@@ -113,6 +147,57 @@ public class HttpBuildCacheService implements BuildCacheService {
         }
     }
 
+    @Nullable
+    @Override
+    public Set<BuildCacheKey> contains(Collection<BuildCacheKey> keys) throws BuildCacheException {
+        if (!batchContainsSupported) {
+            return null;
+        }
+        Map<String, BuildCacheKey> keysByHashCode = new HashMap<String, BuildCacheKey>();
+        for (BuildCacheKey key : keys) {
+            keysByHashCode.put(key.getHashCode(), key);
+        }
+        final URI uri = root.resolve("./contains");
+        HttpPost httpPost = new HttpPost(uri);
+        httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.TEXT_PLAIN.getMimeType());
+        httpPost.setEntity(new StringEntity(Joiner.on('\n').join(keysByHashCode.keySet()), ContentType.create(ContentType.TEXT_PLAIN.getMimeType(), Charsets.UTF_8)));
+        addDiagnosticHeaders(httpPost);
+
+        CloseableHttpResponse response = null;
+        try {
+            response = send(httpPost);
+            StatusLine statusLine = response.getStatusLine();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for POST {}: {}", safeUri(uri), statusLine);
+            }
+            int statusCode = statusLine.getStatusCode();
+            if (UNSUPPORTED_BATCH_HTTP_CODES.contains(statusCode)) {
+                LOGGER.debug("Build cache at '{}' does not support checking for many entries at once", safeUri);
+                batchContainsSupported = false;
+                return null;
+            } else if (!isHttpSuccess(statusCode)) {
+                throw new BuildCacheException(String.format("Checking for entries at '%s' response status %d: %s", safeUri(uri), statusCode, statusLine.getReasonPhrase()));
+            }
+            Set<BuildCacheKey> present = Sets.newHashSet();
+            for (String line : CharStreams.readLines(new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8))) {
+                BuildCacheKey key = keysByHashCode.get(line.trim());
+                if (key != null) {
+                    present.add(key);
+                }
+            }
+            return present;
+        } catch (IOException e) {
+            throw new BuildCacheException(String.format("Unable to check for entries at '%s'", safeUri(uri)), e);
+        } finally {
+            HttpClientUtils.closeQuietly(response);
+        }
+    }
+
+    private CloseableHttpResponse send(HttpRequestBase request) throws IOException {
+        transport.requestStarted();
+        return httpClientHelper.performHttpRequest(request);
+    }
+
     private void addDiagnosticHeaders(HttpMessage request) {
         request.addHeader("X-Gradle-Version", GradleVersion.current().getVersion());
     }
@@ -152,7 +237,7 @@ public class HttpBuildCacheService implements BuildCacheService {
         });
         CloseableHttpResponse response = null;
         try {
-            response = httpClientHelper.performHttpRequest(httpPut);
+            response = send(httpPut);
             StatusLine statusLine = response.getStatusLine();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Response for PUT {}: {}", safeUri(uri), statusLine);
@@ -189,7 +274,63 @@ public class HttpBuildCacheService implements BuildCacheService {
 
     @Override
     public void close() throws IOException {
-        httpClientHelper.close();
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                try {
+                    httpClientHelper.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                context.setResult(new ConnectionsResult(transport.getRequestCount(), transport.getConnectionCount(), transport.getReusedConnectionCount()));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Close HTTP build cache")
+                    .details(new ConnectionsDetails(safeUri.toASCIIString()));
+            }
+        });
+    }
+
+    private static class ConnectionsDetails implements HttpBuildCacheConnectionsBuildOperationType.Details {
+        private final String url;
+
+        private ConnectionsDetails(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    private static class ConnectionsResult implements HttpBuildCacheConnectionsBuildOperationType.Result {
+        private final long requestCount;
+        private final long connectionCount;
+        private final long reusedConnectionCount;
+
+        private ConnectionsResult(long requestCount, long connectionCount, long reusedConnectionCount) {
+            this.requestCount = requestCount;
+            this.connectionCount = connectionCount;
+            this.reusedConnectionCount = reusedConnectionCount;
+        }
+
+        @Override
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        @Override
+        public long getConnectionCount() {
+            return connectionCount;
+        }
+
+        @Override
+        public long getReusedConnectionCount() {
+            return reusedConnectionCount;
+        }
     }
 
     /**
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.gradle.api.Action;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configures the connection pool used to talk to the HTTP build cache, and keeps track of how well connections are reused.
+ *
+ * <p>The number of pooled connections bounds the number of requests that can be in flight at the same time.
+ * By default, connections are kept alive for as long as the server allows, as for other HTTP clients created by {@link org.gradle.internal.resource.transport.http.HttpClientHelper}.
+ * The time an idle connection is kept in the pool can be capped, which should be set below the idle timeout of any load balancer or proxy in front of the cache,
+ * so that the client never reuses a connection that the load balancer has already dropped.</p>
+ */
+public class HttpBuildCacheTransport implements Action<HttpClientBuilder> {
+    public static final String MAX_CONNECTIONS_PROPERTY = "org.gradle.caching.http.maxconnections";
+    public static final String KEEP_ALIVE_PROPERTY = "org.gradle.caching.http.keepalive";
+
+    // The same as the pool size used for dependency resolution
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int UNLIMITED_KEEP_ALIVE = -1;
+
+    private final int maxConnections;
+    private final long keepAliveMillis;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong reusedConnectionCount = new AtomicLong();
+    private final Set<String> connectionIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public HttpBuildCacheTransport(int maxConnections) {
+        this(maxConnections, UNLIMITED_KEEP_ALIVE, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param keepAlive the longest time an idle connection is kept for reuse, or a negative value to keep it for as long as the server allows.
+     */
+    public HttpBuildCacheTransport(int maxConnections, long keepAlive, TimeUnit keepAliveUnit) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("HTTP build cache must be allowed at least one connection, but was " + maxConnections + ".");
+        }
+        if (keepAlive == 0) {
+            throw new IllegalArgumentException("HTTP build cache connections must be kept alive for a positive time, or a negative one to keep them for as long as the server allows.");
+        }
+        this.maxConnections = maxConnections;
+        this.keepAliveMillis = keepAlive < 0 ? UNLIMITED_KEEP_ALIVE : keepAliveUnit.toMillis(keepAlive);
+    }
+
+    public static HttpBuildCacheTransport fromSystemProperties() {
+        return new HttpBuildCacheTransport(
+            Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS),
+            Integer.getInteger(KEEP_ALIVE_PROPERTY, UNLIMITED_KEEP_ALIVE),
+            TimeUnit.SECONDS
+        );
+    }
+
+    @Override
+    public void execute(HttpClientBuilder builder) {
+        builder.setMaxConnTotal(maxConnections);
+        builder.setMaxConnPerRoute(maxConnections);
+        if (keepAliveMillis > 0) {
+            builder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    // The server may ask for a shorter time, but not for a longer one
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+                }
+            });
+        }
+        // Called for every exchange, including those following redirects and answering authentication challenges
+        builder.addInterceptorLast(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                HttpConnection connection = (HttpConnection) context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+                if (connection instanceof ManagedHttpClientConnection) {
+                    if (!connectionIds.add(((ManagedHttpClientConnection) connection).getId())) {
+                        reusedConnectionCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Returns the longest time in milliseconds an idle connection is kept for reuse, or a negative value when it is kept for as long as the server allows.
+     */
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Records that a request is about to be sent to the build cache. Redirects and authentication challenges do not count as separate requests.
+     */
+    public void requestStarted() {
+        requestCount.incrementAndGet();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getConnectionCount() {
+        return connectionIds.size();
+    }
+
+    public long getReusedConnectionCount() {
+        return reusedConnectionCount.get();
+    }
+}
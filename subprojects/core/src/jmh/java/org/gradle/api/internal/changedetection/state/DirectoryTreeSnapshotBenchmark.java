@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import org.gradle.api.file.RelativePath;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap footprint of the object per file and the packed representations of a directory tree snapshot,
+ * and the cost of creating and visiting them.
+ *
+ * The retained heap per file of each representation is reported by {@link #retainSnapshots(Footprint)} as the {@code bytesRetainedPerFile} counter.
+ * Run with {@code -prof gc} to also compare allocation.
+ */
+@State(Scope.Benchmark)
+public class DirectoryTreeSnapshotBenchmark {
+    private static final int DIRECTORIES = 1000;
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int RETAINED_COPIES = 10;
+
+    @Param({"objects", "compact"})
+    String representation;
+
+    private String root;
+    private List<FileSnapshot> elements;
+    private FileTreeSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        root = new File("/home/user/project/src/main/java").getAbsolutePath();
+        elements = createElements();
+        snapshot = create();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long bytesRetainedPerFile;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public List<FileTreeSnapshot> retainSnapshots(Footprint footprint) {
+        List<FileTreeSnapshot> retained = new ArrayList<FileTreeSnapshot>(RETAINED_COPIES);
+        long before = usedHeap();
+        for (int i = 0; i < RETAINED_COPIES; i++) {
+            // Each copy gets its own elements, as snapshots of different builds would
+            retained.add(representation.equals("compact") ? CompactDirectoryTreeSnapshot.of(root, createElements()) : new DirectoryTreeDetails(root, createElements()));
+        }
+        long after = usedHeap();
+        footprint.bytesRetainedPerFile = (after - before) / RETAINED_COPIES / elements.size();
+        return retained;
+    }
+
+    @Benchmark
+    public FileTreeSnapshot createSnapshot() {
+        return create();
+    }
+
+    @Benchmark
+    public void visitSnapshot(Blackhole blackhole) {
+        for (FileSnapshot element : snapshot.getDescendants()) {
+            blackhole.consume(element.getPath());
+            blackhole.consume(element.getRelativePath());
+            blackhole.consume(element.getContent());
+        }
+    }
+
+    private FileTreeSnapshot create() {
+        if (representation.equals("compact")) {
+            return CompactDirectoryTreeSnapshot.of(root, elements);
+        }
+        return new DirectoryTreeDetails(root, ImmutableList.copyOf(elements));
+    }
+
+    private List<FileSnapshot> createElements() {
+        List<FileSnapshot> elements = new ArrayList<FileSnapshot>(DIRECTORIES * (FILES_PER_DIRECTORY + 1));
+        for (int i = 0; i < DIRECTORIES; i++) {
+            String packageName = "package" + i;
+            RelativePath dirPath = new RelativePath(false, "org", packageName);
+            elements.add(new DirectoryFileSnapshot(root + "/org/" + packageName, dirPath, false));
+            for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+                String name = "SomeReasonablyNamedClass" + j + ".java";
+                String path = root + "/org/" + packageName + "/" + name;
+                FileHashSnapshot content = new FileHashSnapshot(Hashing.md5().hashString(path, Charsets.UTF_8), System.currentTimeMillis());
+                elements.add(new RegularFileSnapshot(path, dirPath.append(true, name), false, content));
+            }
+        }
+        // The parent of org/packageN must be present for the tree to be packed
+        elements.add(0, new DirectoryFileSnapshot(root + "/org", new RelativePath(false, "org"), false));
+        return elements;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Transformer;
+import org.gradle.api.file.RelativePath;
+import org.gradle.cache.PersistentIndexedCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares hashing the content of a large jar of which one entry changed by reading every entry, and by reusing the hashes of the unchanged entries.
+ */
+@State(Scope.Benchmark)
+public class JarSnapshotBenchmark {
+    private static final int ENTRIES = 20000;
+    private static final int ENTRY_SIZE = 2048;
+
+    @Param({"stream", "incremental"})
+    String mode;
+
+    private File dir;
+    private RegularFileSnapshot changedJar;
+    private ResourceHasher entryHasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDir();
+        File jar = new File(dir, "original.jar");
+        File changed = new File(dir, "changed.jar");
+        writeJar(jar, -1);
+        writeJar(changed, ENTRIES / 2);
+        changedJar = snapshot(changed);
+        if (mode.equals("incremental")) {
+            entryHasher = new ZipEntryCachingResourceHasher(new RuntimeClasspathResourceHasher(), new ResourceSnapshotterCacheService(new MapBackedCache()));
+            // Hash the entries of the original jar, as the previous build would have
+            hash(new RandomAccessZipTree(snapshot(jar)));
+        } else {
+            entryHasher = new RuntimeClasspathResourceHasher();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.forceDelete(dir);
+    }
+
+    @Benchmark
+    public HashCode hashChangedJar() throws IOException {
+        return hash(mode.equals("incremental") ? new RandomAccessZipTree(changedJar) : new ZipTree(changedJar));
+    }
+
+    private HashCode hash(ResourceTree tree) throws IOException {
+        ClasspathEntrySnapshotBuilder builder = new ClasspathEntrySnapshotBuilder(entryHasher, null);
+        tree.visit(builder);
+        return builder.getHash();
+    }
+
+    private static RegularFileSnapshot snapshot(File jar) {
+        return new RegularFileSnapshot(jar.getAbsolutePath(), new RelativePath(true, jar.getName()), true, new FileHashSnapshot(Hashing.md5().hashInt(jar.hashCode())));
+    }
+
+    private static void writeJar(File jar, int changedEntry) throws IOException {
+        Random random = new Random(42);
+        byte[] content = new byte[ENTRY_SIZE];
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < ENTRIES; i++) {
+                // Half random, half zeros, so that entries compress as class files roughly do
+                random.nextBytes(content);
+                Arrays.fill(content, ENTRY_SIZE / 2, ENTRY_SIZE, (byte) (i == changedEntry ? 1 : 0));
+                output.putNextEntry(new ZipEntry("org/gradle/package" + i / 100 + "/SomeClass" + i + ".class"));
+                output.write(content);
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static class MapBackedCache implements PersistentIndexedCache<HashCode, HashCode> {
+        private final Map<HashCode, HashCode> entries = new ConcurrentHashMap<HashCode, HashCode>();
+
+        @Override
+        public HashCode get(HashCode key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public HashCode get(HashCode key, Transformer<? extends HashCode, ? super HashCode> producer) {
+            HashCode value = entries.get(key);
+            if (value == null) {
+                value = producer.transform(key);
+                entries.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public void put(HashCode key, HashCode value) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public void remove(HashCode key) {
+            entries.remove(key);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.collections;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.collections.jdk7.Jdk7DirectoryWalker;
+import org.gradle.api.internal.file.collections.jdk7.ParallelDirectoryWalker;
+import org.gradle.api.specs.Specs;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.nativeintegration.services.FileSystems;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares the directory walkers on synthetic trees, visiting the details of each file as snapshotting does.
+ */
+@State(Scope.Benchmark)
+public class DirectoryWalkerBenchmark {
+    private static final byte[] CONTENT = new byte[100];
+
+    @Param({"default", "jdk7", "reproducible", "parallel"})
+    String walker;
+
+    // 500 directories of 40 files each under the root, or 4 levels of 8 directories with 5 files in each directory
+    @Param({"wide", "deep"})
+    String tree;
+
+    private File rootDir;
+    private DirectoryWalker directoryWalker;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        rootDir = Files.createTempDir();
+        if (tree.equals("wide")) {
+            for (int i = 0; i < 500; i++) {
+                createFiles(new File(rootDir, "dir" + i), 40);
+            }
+        } else {
+            createTree(rootDir, 4, 8, 5);
+        }
+        FileSystem fileSystem = FileSystems.getDefault();
+        if (walker.equals("default")) {
+            directoryWalker = new DefaultDirectoryWalker(fileSystem);
+        } else if (walker.equals("jdk7")) {
+            directoryWalker = new Jdk7DirectoryWalker(fileSystem);
+        } else if (walker.equals("reproducible")) {
+            directoryWalker = new ReproducibleDirectoryWalker(fileSystem);
+        } else {
+            directoryWalker = new ParallelDirectoryWalker(fileSystem, new DefaultExecutorFactory().create("Directory walking", Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (directoryWalker instanceof ParallelDirectoryWalker) {
+            ((ParallelDirectoryWalker) directoryWalker).stop();
+        }
+        FileUtils.forceDelete(rootDir);
+    }
+
+    @Benchmark
+    public void walk(final Blackhole blackhole) {
+        directoryWalker.walkDir(rootDir, RelativePath.EMPTY_ROOT, new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                blackhole.consume(dirDetails.getRelativePath());
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                blackhole.consume(fileDetails.getLastModified());
+                blackhole.consume(fileDetails.getSize());
+            }
+        }, Specs.satisfyAll(), new AtomicBoolean(), false);
+    }
+
+    private static void createTree(File dir, int depth, int dirsPerDir, int filesPerDir) throws IOException {
+        createFiles(dir, filesPerDir);
+        if (depth > 0) {
+            for (int i = 0; i < dirsPerDir; i++) {
+                createTree(new File(dir, "dir" + i), depth - 1, dirsPerDir, filesPerDir);
+            }
+        }
+    }
+
+    private static void createFiles(File dir, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            FileUtils.writeByteArrayToFile(new File(dir, "file" + i + ".java"), CONTENT);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.initialization.DefaultParallelismConfigurationManager;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.event.DefaultListenerManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the throughput of hashing small and large files with the available hash functions, read as a stream or through a memory mapping,
+ * and hashed on one thread or on as many threads as there are processors.
+ */
+@State(Scope.Benchmark)
+public class FileHasherBenchmark {
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    @Param({"md5", "murmur3"})
+    String function;
+
+    @Param({"stream", "mapped"})
+    String reads;
+
+    // 2000 files of 4KB, like source files, or 16 files of 16MB, like large jars
+    @Param({"small", "large"})
+    String files;
+
+    private File tempDir;
+    private List<File> inputs;
+    private FileHasher hasher;
+    private FileHashingExecutor sequential;
+    private FileHashingExecutor parallel;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        int count = files.equals("small") ? 2000 : 16;
+        int size = files.equals("small") ? 4 * 1024 : 16 * 1024 * 1024;
+        Random random = new Random(count);
+        byte[] content = new byte[size];
+        inputs = new ArrayList<File>(count);
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(content);
+            File file = new File(tempDir, "file" + i);
+            Files.write(content, file);
+            inputs.add(file);
+        }
+        hasher = new DefaultFileHasher(FileHashFunction.valueOf(function.toUpperCase()), reads.equals("mapped"));
+        sequential = FileHashingExecutor.sequential();
+        ParallelismConfigurationManager parallelismConfigurationManager = new DefaultParallelismConfigurationManager(new DefaultListenerManager());
+        parallelismConfigurationManager.setParallelismConfiguration(new DefaultParallelismConfiguration(false, PARALLELISM));
+        parallel = new FileHashingExecutor(new DefaultExecutorFactory(), parallelismConfigurationManager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parallel.stop();
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Benchmark
+    public void hashSequentially(Blackhole blackhole) {
+        hash(sequential, blackhole);
+    }
+
+    @Benchmark
+    public void hashInParallel(Blackhole blackhole) {
+        hash(parallel, blackhole);
+    }
+
+    private void hash(FileHashingExecutor executor, final Blackhole blackhole) {
+        List<Runnable> jobs = new ArrayList<Runnable>(inputs.size());
+        for (final File input : inputs) {
+            jobs.add(new Runnable() {
+                @Override
+                public void run() {
+                    blackhole.consume(hasher.hash(input));
+                }
+            });
+        }
+        executor.hashAll(jobs);
+    }
+}
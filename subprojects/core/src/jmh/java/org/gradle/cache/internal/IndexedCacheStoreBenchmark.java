@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the throughput of the indexed cache stores when they are read and written from an increasing number of threads.
+ *
+ * The B-tree store is not thread-safe, so access to it is serialized, as the owning cache does.
+ */
+@State(Scope.Benchmark)
+public class IndexedCacheStoreBenchmark {
+    private static final int ENTRIES = 100000;
+    private static final String VALUE = "org.gradle.api.internal.changedetection.state.DefaultFileCollectionSnapshot@" + Long.toHexString(Long.MAX_VALUE);
+
+    @Param({"btree", "mapped"})
+    String implementation;
+
+    private File tempDir;
+    private IndexedCacheStore<String, String> store;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tempDir = Files.createTempDir();
+        IndexedCacheStoreFactory factory = implementation.equals("mapped") ? IndexedCacheStoreFactory.MAPPED : IndexedCacheStoreFactory.BTREE;
+        IndexedCacheStore<String, String> backingStore = factory.create(new File(tempDir, "cache.bin"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+        store = implementation.equals("mapped") ? backingStore : new SynchronizedStore<String, String>(backingStore);
+        keys = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = "/home/user/project/build/classes/java/main/org/gradle/Class" + i + ".class";
+            store.put(keys[i], VALUE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get_1_thread() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String get_8_threads() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String get_32_threads() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getAndPut_1_thread() {
+        return getAndPut();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String getAndPut_8_threads() {
+        return getAndPut();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String getAndPut_32_threads() {
+        return getAndPut();
+    }
+
+    private String get() {
+        return store.get(randomKey());
+    }
+
+    private String getAndPut() {
+        // Mostly reads, as for task history and file hashes during a build
+        String key = randomKey();
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            store.put(key, VALUE);
+            return key;
+        }
+        return store.get(key);
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(ENTRIES)];
+    }
+
+    private static class SynchronizedStore<K, V> implements IndexedCacheStore<K, V> {
+        private final IndexedCacheStore<K, V> delegate;
+
+        SynchronizedStore(IndexedCacheStore<K, V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized V get(K key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public synchronized void put(K key, V value) {
+            delegate.put(key, value);
+        }
+
+        @Override
+        public synchronized void remove(K key) {
+            delegate.remove(key);
+        }
+
+        @Override
+        public synchronized void close() {
+            delegate.close();
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return delegate.isOpen();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.id.UniqueId;
+import org.gradle.internal.nativeintegration.services.FileSystems;
+import org.gradle.internal.nativeintegration.services.NativeServices;
+import org.gradle.internal.nativeplatform.filesystem.FileSystem;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType.DIRECTORY;
+
+/**
+ * Compares packing and unpacking throughput of the available packers on outputs resembling
+ * compiled classes, jars and processed resources.
+ *
+ * {@code tar} is the plain TAR packer, without compression and unpacking on the calling thread, which is the baseline for
+ * the parallel packer. Besides operations per second, each benchmark reports the uncompressed bytes of task output it processed
+ * per second as {@code bytes}.
+ */
+@State(Scope.Benchmark)
+public class TaskOutputPackerBenchmark {
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final TaskOutputOriginWriter WRITE_ORIGIN = new TaskOutputOriginWriter() {
+        @Override
+        public void execute(OutputStream outputStream) {
+        }
+    };
+    private static final TaskOutputOriginReader READ_ORIGIN = new TaskOutputOriginReader() {
+        @Override
+        public TaskOutputOriginMetadata execute(InputStream inputStream) {
+            return new TaskOutputOriginMetadata(UniqueId.generate());
+        }
+    };
+
+    @Param({"tar", "none", "fast", "default", "best", "parallel"})
+    String codec;
+
+    @Param({"classes", "jars", "resources"})
+    String outputs;
+
+    private File tempDir;
+    private ManagedExecutor executor;
+    private TaskOutputPacker packer;
+    private SortedSet<ResolvedTaskOutputFilePropertySpec> sourceProperties;
+    private SortedSet<ResolvedTaskOutputFilePropertySpec> targetProperties;
+    private byte[] packed;
+    private long outputSize;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        NativeServices.initialize(new File(tempDir, "native"));
+        FileSystem fileSystem = FileSystems.getDefault();
+        executor = new DefaultExecutorFactory().create("packer benchmark", PARALLELISM);
+        if (codec.equals("tar")) {
+            packer = new TarTaskOutputPacker(fileSystem);
+        } else if (codec.equals("parallel")) {
+            packer = new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, executor), executor, PARALLELISM);
+        } else {
+            packer = new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem), TaskOutputCodecs.forName(codec));
+        }
+
+        File sourceDir = new File(tempDir, "source");
+        generateOutputs(sourceDir, new Random(1234L));
+        outputSize = FileUtils.sizeOfDirectory(sourceDir);
+        sourceProperties = ImmutableSortedSet.of(new ResolvedTaskOutputFilePropertySpec("outputs", DIRECTORY, sourceDir));
+        targetProperties = ImmutableSortedSet.of(new ResolvedTaskOutputFilePropertySpec("outputs", DIRECTORY, new File(tempDir, "target")));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packer.pack(sourceProperties, output, WRITE_ORIGIN);
+        packed = output.toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (packer instanceof Stoppable) {
+            ((Stoppable) packer).stop();
+        } else {
+            executor.stop();
+        }
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Processed {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long pack(Processed processed) {
+        CountingNullOutputStream output = new CountingNullOutputStream();
+        packer.pack(sourceProperties, output, WRITE_ORIGIN);
+        processed.bytes += outputSize;
+        return output.count;
+    }
+
+    @Benchmark
+    public long unpack(Processed processed) {
+        long entries = packer.unpack(targetProperties, new ByteArrayInputStream(packed), READ_ORIGIN).entries;
+        processed.bytes += outputSize;
+        return entries;
+    }
+
+    private void generateOutputs(File dir, Random random) throws IOException {
+        if (outputs.equals("classes")) {
+            // Many small files with a mix of repetitive and unique content, like class files
+            for (int i = 0; i < 5000; i++) {
+                writeFile(new File(dir, "org/example/pkg" + (i % 50) + "/Class" + i + ".class"), classLikeContent(random, 500 + random.nextInt(8000)));
+            }
+        } else if (outputs.equals("jars")) {
+            // A few large files that are already compressed
+            for (int i = 0; i < 10; i++) {
+                writeJar(new File(dir, "lib-" + i + ".jar"), random);
+            }
+        } else {
+            // Text files of various sizes
+            for (int i = 0; i < 2000; i++) {
+                writeFile(new File(dir, "resources/dir" + (i % 20) + "/resource" + i + ".properties"), textContent(random, 100 + random.nextInt(20000)));
+            }
+        }
+    }
+
+    private static void writeJar(File jarFile, Random random) throws IOException {
+        FileUtils.forceMkdir(jarFile.getParentFile());
+        ZipOutputStream jarOutput = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (int i = 0; i < 500; i++) {
+                jarOutput.putNextEntry(new ZipEntry("org/example/Class" + i + ".class"));
+                jarOutput.write(classLikeContent(random, 500 + random.nextInt(8000)));
+                jarOutput.closeEntry();
+            }
+        } finally {
+            jarOutput.close();
+        }
+    }
+
+    private static byte[] classLikeContent(Random random, int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = random.nextInt(4) == 0 ? (byte) random.nextInt(256) : (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private static byte[] textContent(Random random, int size) {
+        StringBuilder content = new StringBuilder(size);
+        while (content.length() < size) {
+            content.append("some.key.").append(random.nextInt(1000)).append(" = Some value number ").append(random.nextInt(100000)).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        FileUtils.forceMkdir(file.getParentFile());
+        Files.write(content, file);
+    }
+
+    private static class CountingNullOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.gradle.caching.internal.tasks.TaskCacheKeyCalculator;
 import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey;
 import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
 import org.gradle.internal.id.UniqueId;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.reflect.Instantiator;
 
 import java.io.File;
@@ -51,11 +52,19 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
     private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
     private final TaskCacheKeyCalculator cacheKeyCalculator;
     private final ValueSnapshotter valueSnapshotter;
+    private final BuildOperationExecutor buildOperationExecutor;
 
     public DefaultTaskArtifactStateRepository(TaskHistoryRepository taskHistoryRepository, Instantiator instantiator,
                                               FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry,
                                               FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
                                               TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter) {
+        this(taskHistoryRepository, instantiator, fileCollectionSnapshotterRegistry, fileCollectionFactory, classLoaderHierarchyHasher, cacheKeyCalculator, valueSnapshotter, null);
+    }
+
+    public DefaultTaskArtifactStateRepository(TaskHistoryRepository taskHistoryRepository, Instantiator instantiator,
+                                              FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry,
+                                              FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+                                              TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter, @Nullable BuildOperationExecutor buildOperationExecutor) {
         this.taskHistoryRepository = taskHistoryRepository;
         this.instantiator = instantiator;
         this.fileCollectionSnapshotterRegistry = fileCollectionSnapshotterRegistry;
@@ -63,6 +72,7 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
         this.cacheKeyCalculator = cacheKeyCalculator;
         this.valueSnapshotter = valueSnapshotter;
+        this.buildOperationExecutor = buildOperationExecutor;
     }
 
     public TaskArtifactState getStateFor(final TaskInternal task) {
@@ -121,8 +131,8 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
 
         @Override
         public TaskOutputCachingBuildCacheKey calculateCacheKey() {
-            // Ensure that states are created
-            getStates();
+            // The cache key requires the snapshots of all input files
+            getStates().completeInputFilesSnapshot();
             return cacheKeyCalculator.calculate(history.getCurrentExecution());
         }
 
@@ -181,7 +191,8 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         private TaskUpToDateState getStates() {
             if (states == null) {
                 // Calculate initial state - note this is potentially expensive
-                states = new TaskUpToDateState(task, history, fileCollectionSnapshotterRegistry, fileCollectionFactory, classLoaderHierarchyHasher, valueSnapshotter);
+                BuildOperationExecutor snapshotExecutor = TaskUpToDateState.isParallelSnapshotEnabled() ? buildOperationExecutor : null;
+                states = new TaskUpToDateState(task, history, fileCollectionSnapshotterRegistry, fileCollectionFactory, classLoaderHierarchyHasher, valueSnapshotter, TaskUpToDateState.isShortCircuitEnabled(), snapshotExecutor);
             }
             return states;
         }
@@ -22,32 +22,60 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
 import org.gradle.api.internal.tasks.TaskFilePropertySpec;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.MultipleBuildOperationFailures;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.normalization.internal.InputNormalizationStrategy;
 import org.gradle.util.ChangeListener;
 import org.gradle.util.DiffUtil;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateChanges {
-    private final ImmutableSortedMap<String, FileCollectionSnapshot> fileSnapshotsBeforeExecution;
+    private ImmutableSortedMap<String, FileCollectionSnapshot> fileSnapshotsBeforeExecution;
+    // Snapshots taken so far, when properties are snapshotted on demand
+    private final Map<String, FileCollectionSnapshot> propertySnapshotsBeforeExecution = new HashMap<String, FileCollectionSnapshot>();
     private final String taskName;
     private final String title;
     private final ImmutableSortedSet<? extends TaskFilePropertySpec> fileProperties;
+    private final ImmutableSortedSet<String> propertyNames;
     private final FileCollectionSnapshotterRegistry snapshotterRegistry;
     protected final TaskExecution previous;
     protected final TaskExecution current;
     private final InputNormalizationStrategy normalizationStrategy;
+    private final BuildOperationExecutor snapshotExecutor;
 
     protected AbstractNamedFileSnapshotTaskStateChanges(String taskName, TaskExecution previous, TaskExecution current, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, ImmutableSortedSet<? extends TaskFilePropertySpec> fileProperties, InputNormalizationStrategy normalizationStrategy) {
+        this(taskName, previous, current, snapshotterRegistry, title, fileProperties, normalizationStrategy, false);
+    }
+
+    protected AbstractNamedFileSnapshotTaskStateChanges(String taskName, TaskExecution previous, TaskExecution current, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, ImmutableSortedSet<? extends TaskFilePropertySpec> fileProperties, InputNormalizationStrategy normalizationStrategy, boolean snapshotOnDemand) {
+        this(taskName, previous, current, snapshotterRegistry, title, fileProperties, normalizationStrategy, snapshotOnDemand, null);
+    }
+
+    /**
+     * When {@code snapshotOnDemand} is true, each property is only snapshotted when it is compared with the previous execution, or when all snapshots are requested.
+     * When {@code snapshotExecutor} is not null, properties that are snapshotted together are snapshotted in parallel, each as a build operation.
+     */
+    protected AbstractNamedFileSnapshotTaskStateChanges(String taskName, TaskExecution previous, TaskExecution current, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, ImmutableSortedSet<? extends TaskFilePropertySpec> fileProperties, InputNormalizationStrategy normalizationStrategy, boolean snapshotOnDemand, @Nullable BuildOperationExecutor snapshotExecutor) {
         this.taskName = taskName;
         this.previous = previous;
         this.current = current;
@@ -55,7 +83,15 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
         this.title = title;
         this.fileProperties = fileProperties;
         this.normalizationStrategy = normalizationStrategy;
-        this.fileSnapshotsBeforeExecution = buildSnapshots(taskName, snapshotterRegistry, title, fileProperties);
+        this.snapshotExecutor = snapshotExecutor;
+        ImmutableSortedSet.Builder<String> propertyNames = ImmutableSortedSet.naturalOrder();
+        for (TaskFilePropertySpec propertySpec : fileProperties) {
+            propertyNames.add(propertySpec.getPropertyName());
+        }
+        this.propertyNames = propertyNames.build();
+        if (!snapshotOnDemand) {
+            this.fileSnapshotsBeforeExecution = buildSnapshots(taskName, snapshotterRegistry, title, fileProperties);
+        }
     }
 
     protected String getTaskName() {
@@ -76,23 +112,83 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
         return snapshotterRegistry;
     }
 
+    /**
+     * Returns the snapshots of all properties, snapshotting the properties that were not snapshotted yet.
+     */
     protected ImmutableSortedMap<String, FileCollectionSnapshot> getCurrent() {
+        if (fileSnapshotsBeforeExecution == null) {
+            List<TaskFilePropertySpec> remainingProperties = Lists.newArrayList();
+            for (TaskFilePropertySpec propertySpec : fileProperties) {
+                if (!propertySnapshotsBeforeExecution.containsKey(propertySpec.getPropertyName())) {
+                    remainingProperties.add(propertySpec);
+                }
+            }
+            propertySnapshotsBeforeExecution.putAll(snapshotAll(remainingProperties));
+            fileSnapshotsBeforeExecution = ImmutableSortedMap.copyOf(propertySnapshotsBeforeExecution);
+            propertySnapshotsBeforeExecution.clear();
+        }
         return fileSnapshotsBeforeExecution;
     }
 
+    private FileCollectionSnapshot getCurrent(TaskFilePropertySpec propertySpec) {
+        String propertyName = propertySpec.getPropertyName();
+        if (fileSnapshotsBeforeExecution != null) {
+            return fileSnapshotsBeforeExecution.get(propertyName);
+        }
+        FileCollectionSnapshot snapshot = propertySnapshotsBeforeExecution.get(propertyName);
+        if (snapshot == null) {
+            snapshot = snapshot(propertySpec);
+            propertySnapshotsBeforeExecution.put(propertyName, snapshot);
+        }
+        return snapshot;
+    }
+
     protected ImmutableSortedMap<String, FileCollectionSnapshot> buildSnapshots(String taskName, FileCollectionSnapshotterRegistry snapshotterRegistry, String title, SortedSet<? extends TaskFilePropertySpec> fileProperties) {
-        ImmutableSortedMap.Builder<String, FileCollectionSnapshot> builder = ImmutableSortedMap.naturalOrder();
-        for (TaskFilePropertySpec propertySpec : fileProperties) {
-            FileCollectionSnapshot result;
-            try {
-                FileCollectionSnapshotter snapshotter = snapshotterRegistry.getSnapshotter(propertySpec.getSnapshotter());
-                result = snapshotter.snapshot(propertySpec.getPropertyFiles(), propertySpec.getCompareStrategy(), propertySpec.getSnapshotNormalizationStrategy(), normalizationStrategy);
-            } catch (UncheckedIOException e) {
-                throw new UncheckedIOException(String.format("Failed to capture snapshot of %s files for task '%s' property '%s' during up-to-date check.", title.toLowerCase(), taskName, propertySpec.getPropertyName()), e);
+        return ImmutableSortedMap.copyOf(snapshotAll(fileProperties));
+    }
+
+    private Map<String, FileCollectionSnapshot> snapshotAll(final Collection<? extends TaskFilePropertySpec> propertySpecs) {
+        if (snapshotExecutor == null || propertySpecs.size() < 2) {
+            Map<String, FileCollectionSnapshot> snapshots = new HashMap<String, FileCollectionSnapshot>();
+            for (TaskFilePropertySpec propertySpec : propertySpecs) {
+                snapshots.put(propertySpec.getPropertyName(), snapshot(propertySpec));
             }
-            builder.put(propertySpec.getPropertyName(), result);
+            return snapshots;
+        }
+        final Map<String, FileCollectionSnapshot> snapshots = new ConcurrentHashMap<String, FileCollectionSnapshot>();
+        try {
+            snapshotExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+                @Override
+                public void execute(BuildOperationQueue<RunnableBuildOperation> queue) {
+                    for (final TaskFilePropertySpec propertySpec : propertySpecs) {
+                        queue.add(new RunnableBuildOperation() {
+                            @Override
+                            public void run(BuildOperationContext context) {
+                                snapshots.put(propertySpec.getPropertyName(), snapshot(propertySpec));
+                            }
+
+                            @Override
+                            public BuildOperationDescriptor.Builder description() {
+                                return BuildOperationDescriptor.displayName("Snapshot " + title.toLowerCase() + " files of task '" + taskName + "' property '" + propertySpec.getPropertyName() + "'");
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (MultipleBuildOperationFailures e) {
+            // Fail the same way as when the properties are snapshotted one at a time
+            throw UncheckedException.throwAsUncheckedException(e.getCauses().get(0));
+        }
+        return snapshots;
+    }
+
+    private FileCollectionSnapshot snapshot(TaskFilePropertySpec propertySpec) {
+        try {
+            FileCollectionSnapshotter snapshotter = snapshotterRegistry.getSnapshotter(propertySpec.getSnapshotter());
+            return snapshotter.snapshot(propertySpec.getPropertyFiles(), propertySpec.getCompareStrategy(), propertySpec.getSnapshotNormalizationStrategy(), normalizationStrategy);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException(String.format("Failed to capture snapshot of %s files for task '%s' property '%s' during up-to-date check.", title.toLowerCase(), taskName, propertySpec.getPropertyName()), e);
         }
-        return builder.build();
     }
 
     @Override
@@ -101,7 +197,7 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
             return Iterators.<TaskStateChange>singletonIterator(new DescriptiveChange(title + " file history is not available."));
         }
         final List<TaskStateChange> propertyChanges = Lists.newLinkedList();
-        DiffUtil.diff(getCurrent().keySet(), getPrevious().keySet(), new ChangeListener<String>() {
+        DiffUtil.diff(propertyNames, getPrevious().keySet(), new ChangeListener<String>() {
             @Override
             public void added(String element) {
                 propertyChanges.add(new DescriptiveChange("%s property '%s' has been added for task '%s'", title, element, taskName));
@@ -121,11 +217,12 @@ abstract class AbstractNamedFileSnapshotTaskStateChanges implements TaskStateCha
         if (!propertyChanges.isEmpty()) {
             return propertyChanges.iterator();
         }
-        return Iterators.concat(Iterables.transform(getCurrent().entrySet(), new Function<Map.Entry<String, FileCollectionSnapshot>, Iterator<TaskStateChange>>() {
+        // Properties are snapshotted as they are compared, when snapshotting on demand
+        return Iterators.concat(Iterables.transform(fileProperties, new Function<TaskFilePropertySpec, Iterator<TaskStateChange>>() {
             @Override
-            public Iterator<TaskStateChange> apply(Map.Entry<String, FileCollectionSnapshot> entry) {
-                String propertyName = entry.getKey();
-                FileCollectionSnapshot currentSnapshot = entry.getValue();
+            public Iterator<TaskStateChange> apply(TaskFilePropertySpec propertySpec) {
+                String propertyName = propertySpec.getPropertyName();
+                FileCollectionSnapshot currentSnapshot = getCurrent(propertySpec);
                 FileCollectionSnapshot previousSnapshot = getPrevious().get(propertyName);
                 String propertyTitle = title + " property '" + propertyName + "'";
                 return currentSnapshot.iterateContentChangesSince(previousSnapshot, propertyTitle);
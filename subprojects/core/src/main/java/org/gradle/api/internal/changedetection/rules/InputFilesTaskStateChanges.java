@@ -22,12 +22,37 @@ import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.normalization.internal.InputNormalizationStrategy;
 
 public class InputFilesTaskStateChanges extends AbstractNamedFileSnapshotTaskStateChanges {
+    private final boolean snapshotOnDemand;
+
     public InputFilesTaskStateChanges(@Nullable TaskExecution previous, TaskExecution current, TaskInternal task, FileCollectionSnapshotterRegistry snapshotterRegistry, InputNormalizationStrategy normalizationStrategy) {
-        super(task.getName(), previous, current, snapshotterRegistry, "Input", task.getInputs().getFileProperties(), normalizationStrategy);
-        // Inputs are considered to be unchanged during task execution
+        this(previous, current, task, snapshotterRegistry, normalizationStrategy, false);
+    }
+
+    /**
+     * When {@code snapshotOnDemand} is true, input properties are only snapshotted up to the first changed property before the task executes,
+     * and the remaining properties are snapshotted when the snapshots are required for the build cache key or the task history.
+     */
+    public InputFilesTaskStateChanges(@Nullable TaskExecution previous, TaskExecution current, TaskInternal task, FileCollectionSnapshotterRegistry snapshotterRegistry, InputNormalizationStrategy normalizationStrategy, boolean snapshotOnDemand) {
+        this(previous, current, task, snapshotterRegistry, normalizationStrategy, snapshotOnDemand, null);
+    }
+
+    public InputFilesTaskStateChanges(@Nullable TaskExecution previous, TaskExecution current, TaskInternal task, FileCollectionSnapshotterRegistry snapshotterRegistry, InputNormalizationStrategy normalizationStrategy, boolean snapshotOnDemand, @Nullable BuildOperationExecutor snapshotExecutor) {
+        super(task.getName(), previous, current, snapshotterRegistry, "Input", task.getInputs().getFileProperties(), normalizationStrategy, snapshotOnDemand, snapshotExecutor);
+        this.snapshotOnDemand = snapshotOnDemand;
+        if (!snapshotOnDemand) {
+            // Inputs are considered to be unchanged during task execution
+            current.setInputFilesSnapshot(getCurrent());
+        }
+    }
+
+    /**
+     * Snapshots the input properties that were not snapshotted yet, and records the snapshots of all input properties on the current execution.
+     */
+    public void completeSnapshot() {
         current.setInputFilesSnapshot(getCurrent());
     }
 
@@ -38,6 +63,10 @@ public class InputFilesTaskStateChanges extends AbstractNamedFileSnapshotTaskSta
 
     @Override
     public void snapshotAfterTask() {
-        // Inputs have already been saved in constructor
+        if (snapshotOnDemand) {
+            // Inputs are considered to be unchanged during task execution, so the properties not snapshotted before the task can be snapshotted now
+            completeSnapshot();
+        }
+        // Otherwise inputs have already been saved in constructor
     }
 }
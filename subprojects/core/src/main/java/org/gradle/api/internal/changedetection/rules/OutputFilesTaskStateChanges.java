@@ -28,6 +28,7 @@ import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRe
 import org.gradle.api.internal.changedetection.state.NormalizedFileSnapshot;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
 import org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.normalization.internal.InputNormalizationStrategy;
 
 import java.util.HashMap;
@@ -36,7 +37,11 @@ import java.util.Map;
 public class OutputFilesTaskStateChanges extends AbstractNamedFileSnapshotTaskStateChanges {
 
     public OutputFilesTaskStateChanges(@Nullable TaskExecution previous, TaskExecution current, TaskInternal task, FileCollectionSnapshotterRegistry snapshotterRegistry, InputNormalizationStrategy normalizationStrategy) {
-        super(task.getName(), previous, current, snapshotterRegistry, "Output", task.getOutputs().getFileProperties(), normalizationStrategy);
+        this(previous, current, task, snapshotterRegistry, normalizationStrategy, null);
+    }
+
+    public OutputFilesTaskStateChanges(@Nullable TaskExecution previous, TaskExecution current, TaskInternal task, FileCollectionSnapshotterRegistry snapshotterRegistry, InputNormalizationStrategy normalizationStrategy, @Nullable BuildOperationExecutor snapshotExecutor) {
+        super(task.getName(), previous, current, snapshotterRegistry, "Output", task.getOutputs().getFileProperties(), normalizationStrategy, false, snapshotExecutor);
         detectOverlappingOutputs();
     }
 
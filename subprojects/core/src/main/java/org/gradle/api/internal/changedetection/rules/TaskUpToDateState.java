@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.changedetection.rules;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
@@ -23,6 +24,7 @@ import org.gradle.api.internal.changedetection.state.TaskHistoryRepository;
 import org.gradle.api.internal.changedetection.state.ValueSnapshotter;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
+import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.normalization.internal.InputNormalizationHandlerInternal;
 import org.gradle.normalization.internal.InputNormalizationStrategy;
 
@@ -36,6 +38,18 @@ public class TaskUpToDateState {
 
     public static final int MAX_OUT_OF_DATE_MESSAGES = 3;
 
+    /**
+     * When set, the up-to-date check stops at the first change, and only reports that change. Input files that were not compared
+     * with the previous execution by then are snapshotted after the task has executed.
+     */
+    public static final String SHORT_CIRCUIT_PROPERTY = "org.gradle.internal.tasks.uptodate.shortcircuit";
+
+    /**
+     * When set, the file properties of a task are snapshotted in parallel, as build operations.
+     */
+    public static final String PARALLEL_SNAPSHOT_PROPERTY = "org.gradle.internal.tasks.snapshot.parallel";
+
+    private final InputFilesTaskStateChanges directInputFileChanges;
     private final TaskStateChanges inputFileChanges;
     private final DiscoveredInputsListener discoveredInputsListener;
     private final TaskStateChanges allTaskChanges;
@@ -44,6 +58,23 @@ public class TaskUpToDateState {
     public TaskUpToDateState(TaskInternal task, TaskHistoryRepository.History history,
                              FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry,
                              FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, ValueSnapshotter valueSnapshotter) {
+        this(task, history, fileCollectionSnapshotterRegistry, fileCollectionFactory, classLoaderHierarchyHasher, valueSnapshotter, isShortCircuitEnabled());
+    }
+
+    public TaskUpToDateState(TaskInternal task, TaskHistoryRepository.History history,
+                             FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry,
+                             FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, ValueSnapshotter valueSnapshotter,
+                             boolean shortCircuit) {
+        this(task, history, fileCollectionSnapshotterRegistry, fileCollectionFactory, classLoaderHierarchyHasher, valueSnapshotter, shortCircuit, null);
+    }
+
+    /**
+     * When {@code snapshotExecutor} is not null, the input and output file properties are snapshotted in parallel using it.
+     */
+    public TaskUpToDateState(TaskInternal task, TaskHistoryRepository.History history,
+                             FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry,
+                             FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, ValueSnapshotter valueSnapshotter,
+                             boolean shortCircuit, @Nullable BuildOperationExecutor snapshotExecutor) {
         TaskExecution thisExecution = history.getCurrentExecution();
         TaskExecution lastExecution = history.getPreviousExecution();
         InputNormalizationStrategy inputNormalizationStrategy = ((InputNormalizationHandlerInternal) task.getProject().getNormalization()).buildFinalStrategy();
@@ -53,10 +84,10 @@ public class TaskUpToDateState {
         TaskStateChanges inputPropertiesState = new InputPropertiesTaskStateChanges(lastExecution, thisExecution, task, valueSnapshotter);
 
         // Capture outputs state
-        TaskStateChanges outputFileChanges = caching(new OutputFilesTaskStateChanges(lastExecution, thisExecution, task, fileCollectionSnapshotterRegistry, inputNormalizationStrategy));
+        TaskStateChanges outputFileChanges = caching(new OutputFilesTaskStateChanges(lastExecution, thisExecution, task, fileCollectionSnapshotterRegistry, inputNormalizationStrategy, snapshotExecutor));
 
         // Capture inputs state
-        InputFilesTaskStateChanges directInputFileChanges = new InputFilesTaskStateChanges(lastExecution, thisExecution, task, fileCollectionSnapshotterRegistry, inputNormalizationStrategy);
+        this.directInputFileChanges = new InputFilesTaskStateChanges(lastExecution, thisExecution, task, fileCollectionSnapshotterRegistry, inputNormalizationStrategy, shortCircuit, snapshotExecutor);
         TaskStateChanges inputFileChanges = caching(directInputFileChanges);
         this.inputFileChanges = new ErrorHandlingTaskStateChanges(task, inputFileChanges);
 
@@ -65,10 +96,19 @@ public class TaskUpToDateState {
         this.discoveredInputsListener = discoveredChanges;
         TaskStateChanges discoveredInputFilesChanges = caching(discoveredChanges);
 
-        this.allTaskChanges = new ErrorHandlingTaskStateChanges(task, new SummaryTaskStateChanges(MAX_OUT_OF_DATE_MESSAGES, noHistoryState, taskTypeState, inputPropertiesState, outputFileChanges, inputFileChanges, discoveredInputFilesChanges));
+        int maxReportedChanges = shortCircuit ? 1 : MAX_OUT_OF_DATE_MESSAGES;
+        this.allTaskChanges = new ErrorHandlingTaskStateChanges(task, new SummaryTaskStateChanges(maxReportedChanges, noHistoryState, taskTypeState, inputPropertiesState, outputFileChanges, inputFileChanges, discoveredInputFilesChanges));
         this.rebuildChanges = new ErrorHandlingTaskStateChanges(task, new SummaryTaskStateChanges(1, noHistoryState, taskTypeState, inputPropertiesState, outputFileChanges));
     }
 
+    public static boolean isShortCircuitEnabled() {
+        return Boolean.getBoolean(SHORT_CIRCUIT_PROPERTY);
+    }
+
+    public static boolean isParallelSnapshotEnabled() {
+        return Boolean.getBoolean(PARALLEL_SNAPSHOT_PROPERTY);
+    }
+
     private TaskStateChanges caching(TaskStateChanges wrapped) {
         return new CachingTaskStateChanges(MAX_OUT_OF_DATE_MESSAGES, wrapped);
     }
@@ -85,6 +125,13 @@ public class TaskUpToDateState {
         return rebuildChanges;
     }
 
+    /**
+     * Ensures that all input files are snapshotted and recorded on the current execution.
+     */
+    public void completeInputFilesSnapshot() {
+        directInputFileChanges.completeSnapshot();
+    }
+
     public void newInputs(Set<File> discoveredInputs) {
         discoveredInputsListener.newInputs(discoveredInputs);
     }
@@ -36,6 +36,8 @@ public abstract class AbstractClasspathSnapshotBuilder extends FileCollectionSna
     private final ResourceSnapshotterCacheService cacheService;
     private final JarHasher jarHasher;
     private final byte[] jarHasherConfigurationHash;
+    private final boolean incrementalJarSnapshotting;
+    private final ResourceHasher jarEntryHasher;
 
     public AbstractClasspathSnapshotBuilder(ResourceHasher classpathResourceHasher, ResourceSnapshotterCacheService cacheService, StringInterner stringInterner) {
         super(TaskFilePropertyCompareStrategy.ORDERED, TaskFilePropertySnapshotNormalizationStrategy.NONE, stringInterner);
@@ -43,6 +45,9 @@ public abstract class AbstractClasspathSnapshotBuilder extends FileCollectionSna
         this.stringInterner = stringInterner;
         this.classpathResourceHasher = classpathResourceHasher;
         this.jarHasher = new JarHasher();
+        this.incrementalJarSnapshotting = RandomAccessZipTree.isEnabled();
+        // Reuse the hashes of unchanged entries, so that only the entries that changed are inflated and hashed
+        this.jarEntryHasher = incrementalJarSnapshotting ? new ZipEntryCachingResourceHasher(classpathResourceHasher, cacheService) : classpathResourceHasher;
         DefaultBuildCacheHasher hasher = new DefaultBuildCacheHasher();
         jarHasher.appendConfigurationToHasher(hasher);
         this.jarHasherConfigurationHash = hasher.hash().asBytes();
@@ -100,8 +105,9 @@ public abstract class AbstractClasspathSnapshotBuilder extends FileCollectionSna
 
         private HashCode hashJarContents(RegularFileSnapshot jarFile) {
             try {
-                ClasspathEntrySnapshotBuilder classpathEntrySnapshotBuilder = newClasspathEntrySnapshotBuilder();
-                new ZipTree(jarFile).visit(classpathEntrySnapshotBuilder);
+                ClasspathEntrySnapshotBuilder classpathEntrySnapshotBuilder = new ClasspathEntrySnapshotBuilder(jarEntryHasher, stringInterner);
+                ResourceTree zipTree = incrementalJarSnapshotting ? new RandomAccessZipTree(jarFile) : new ZipTree(jarFile);
+                zipTree.visit(classpathEntrySnapshotBuilder);
                 return classpathEntrySnapshotBuilder.getHash();
             } catch (ZipException e) {
                 // ZipExceptions point to a problem with the Zip, we try to be lenient for now.
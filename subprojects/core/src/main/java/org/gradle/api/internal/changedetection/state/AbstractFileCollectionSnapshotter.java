@@ -23,6 +23,7 @@ import org.gradle.api.internal.file.FileCollectionVisitor;
 import org.gradle.api.internal.file.FileTreeInternal;
 import org.gradle.api.internal.file.collections.DirectoryFileTree;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
+import org.gradle.internal.Factory;
 import org.gradle.internal.serialize.SerializerRegistry;
 
 import java.io.File;
@@ -46,12 +47,30 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
     }
 
     public FileCollectionSnapshot snapshot(FileCollection input, FileCollectionSnapshotBuilder fileCollectionSnapshotBuilder) {
-        FileCollectionInternal fileCollection = (FileCollectionInternal) input;
-        FileCollectionVisitorImpl visitor = new FileCollectionVisitorImpl(fileCollectionSnapshotBuilder);
-        fileCollection.visitRootElements(visitor);
+        visit(input, fileCollectionSnapshotBuilder);
         return fileCollectionSnapshotBuilder.build();
     }
 
+    /**
+     * Snapshots the given collection, reusing the snapshot of an identical collection snapshotted earlier in the build with the same normalization.
+     */
+    protected FileCollectionSnapshot snapshotShared(FileCollection input, ClasspathSnapshotCache snapshotCache, ConfigurableNormalizer normalizer, final FileCollectionSnapshotBuilder fileCollectionSnapshotBuilder) {
+        final RecordingFileSnapshotVisitor recorder = new RecordingFileSnapshotVisitor(fileCollectionSnapshotBuilder.getClass(), normalizer);
+        visit(input, recorder);
+        return snapshotCache.get(recorder.getHash(), new Factory<FileCollectionSnapshot>() {
+            @Override
+            public FileCollectionSnapshot create() {
+                recorder.replay(fileCollectionSnapshotBuilder);
+                return fileCollectionSnapshotBuilder.build();
+            }
+        });
+    }
+
+    private void visit(FileCollection input, FileSnapshotVisitor fileSnapshotVisitor) {
+        FileCollectionInternal fileCollection = (FileCollectionInternal) input;
+        fileCollection.visitRootElements(new FileCollectionVisitorImpl(fileSnapshotVisitor));
+    }
+
     protected StringInterner getStringInterner() {
         return stringInterner;
     }
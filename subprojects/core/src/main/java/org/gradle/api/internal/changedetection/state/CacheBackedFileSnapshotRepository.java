@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Nullable;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.internal.id.IdGenerator;
 import org.gradle.internal.id.RandomLongIdGenerator;
@@ -42,4 +43,12 @@ public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository
     public void remove(Long id) {
         cache.remove(id);
     }
+
+    public Long replace(@Nullable Long previousId, FileCollectionSnapshot snapshot) {
+        Long id = add(snapshot);
+        if (previousId != null) {
+            remove(previousId);
+        }
+        return id;
+    }
 }
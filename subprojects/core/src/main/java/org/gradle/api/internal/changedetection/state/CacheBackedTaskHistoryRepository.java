@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec;
@@ -36,6 +37,7 @@ import org.gradle.internal.serialize.Encoder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
@@ -46,15 +48,25 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
     private final BuildInvocationScopeId buildInvocationScopeId;
 
     public CacheBackedTaskHistoryRepository(TaskHistoryStore cacheAccess, FileSnapshotRepository snapshotRepository, StringInterner stringInterner, BuildInvocationScopeId buildInvocationScopeId) {
+        this(cacheAccess, "taskHistory", snapshotRepository, stringInterner, buildInvocationScopeId);
+    }
+
+    /**
+     * Keeps the history in a cache with the given name, so that histories referring to snapshots in different repositories do not get mixed up.
+     */
+    public CacheBackedTaskHistoryRepository(TaskHistoryStore cacheAccess, String cacheName, FileSnapshotRepository snapshotRepository, StringInterner stringInterner, BuildInvocationScopeId buildInvocationScopeId) {
         this.snapshotRepository = snapshotRepository;
         this.stringInterner = stringInterner;
         this.buildInvocationScopeId = buildInvocationScopeId;
         LazyTaskExecution.TaskExecutionSnapshotSerializer serializer = new LazyTaskExecution.TaskExecutionSnapshotSerializer(stringInterner);
-        this.taskHistoryCache = cacheAccess.createCache("taskHistory", String.class, serializer, 10000, false);
+        this.taskHistoryCache = cacheAccess.createCache(cacheName, String.class, serializer, 10000, false);
     }
 
     public History getHistory(final TaskInternal task) {
-        final LazyTaskExecution previousExecution = loadPreviousExecution(task);
+        final LazyTaskExecution storedExecution = loadPreviousExecution(task);
+        // Comparing with an execution that has lost some of its file snapshots would miss changes, so treat it as if there was no history.
+        // Its snapshots are still replaced by the new ones
+        final LazyTaskExecution previousExecution = storedExecution != null && storedExecution.loadFileSnapshots() ? storedExecution : null;
         final LazyTaskExecution currentExecution = new LazyTaskExecution(buildInvocationScopeId.getId(), snapshotRepository);
         currentExecution.setOutputPropertyNamesForCacheKey(getOutputPropertyNamesForCacheKey(task));
         currentExecution.setDeclaredOutputFilePaths(getDeclaredOutputFilePaths(task));
@@ -69,48 +81,51 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
             }
 
             public void update() {
-                storeSnapshots(currentExecution);
-                if (previousExecution != null) {
-                    removeUnnecessarySnapshots(previousExecution);
-                }
+                storeSnapshots(currentExecution, storedExecution);
                 taskHistoryCache.put(task.getPath(), currentExecution.snapshot());
             }
 
-            private void storeSnapshots(LazyTaskExecution execution) {
+            /**
+             * Stores the snapshots of the given execution, each one in place of the snapshot of the same property of the previous execution,
+             * and removes the snapshots of the previous execution that were not replaced.
+             */
+            private void storeSnapshots(LazyTaskExecution execution, @Nullable LazyTaskExecution previous) {
+                Map<String, Long> previousInputIds = previousIds(previous == null ? null : previous.inputFilesSnapshotIds);
+                Map<String, Long> previousOutputIds = previousIds(previous == null ? null : previous.outputFilesSnapshotIds);
+                Long previousDiscoveredId = previous == null ? null : previous.discoveredFilesSnapshotId;
                 if (execution.inputFilesSnapshotIds == null && execution.inputFilesSnapshot != null) {
-                    ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
-                    for (Map.Entry<String, FileCollectionSnapshot> entry : execution.inputFilesSnapshot.entrySet()) {
-                        builder.put(entry.getKey(), snapshotRepository.add(entry.getValue()));
-                    }
-                    execution.inputFilesSnapshotIds = builder.build();
+                    execution.inputFilesSnapshotIds = storeSnapshots(execution.inputFilesSnapshot, previousInputIds);
                 }
                 if (execution.outputFilesSnapshotIds == null && execution.outputFilesSnapshot != null) {
-                    ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
-                    for (Map.Entry<String, FileCollectionSnapshot> entry : execution.outputFilesSnapshot.entrySet()) {
-                        builder.put(entry.getKey(), snapshotRepository.add(entry.getValue()));
-                    }
-                    execution.outputFilesSnapshotIds = builder.build();
+                    execution.outputFilesSnapshotIds = storeSnapshots(execution.outputFilesSnapshot, previousOutputIds);
                 }
                 if (execution.discoveredFilesSnapshotId == null && execution.discoveredFilesSnapshot != null) {
-                    execution.discoveredFilesSnapshotId = snapshotRepository.add(execution.discoveredFilesSnapshot);
+                    execution.discoveredFilesSnapshotId = snapshotRepository.replace(previousDiscoveredId, execution.discoveredFilesSnapshot);
+                    previousDiscoveredId = null;
                 }
-            }
 
-            private void removeUnnecessarySnapshots(LazyTaskExecution execution) {
-                if (execution.inputFilesSnapshotIds != null) {
-                    for (Long id : execution.inputFilesSnapshotIds.values()) {
-                        snapshotRepository.remove(id);
-                    }
+                for (Long id : previousInputIds.values()) {
+                    snapshotRepository.remove(id);
                 }
-                if (execution.outputFilesSnapshotIds != null) {
-                    for (Long id : execution.outputFilesSnapshotIds.values()) {
-                        snapshotRepository.remove(id);
-                    }
+                for (Long id : previousOutputIds.values()) {
+                    snapshotRepository.remove(id);
                 }
-                if (execution.discoveredFilesSnapshotId != null) {
-                    snapshotRepository.remove(execution.discoveredFilesSnapshotId);
+                if (previousDiscoveredId != null) {
+                    snapshotRepository.remove(previousDiscoveredId);
                 }
             }
+
+            private ImmutableSortedMap<String, Long> storeSnapshots(ImmutableSortedMap<String, FileCollectionSnapshot> snapshots, Map<String, Long> previousIds) {
+                ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
+                for (Map.Entry<String, FileCollectionSnapshot> entry : snapshots.entrySet()) {
+                    builder.put(entry.getKey(), snapshotRepository.replace(previousIds.remove(entry.getKey()), entry.getValue()));
+                }
+                return builder.build();
+            }
+
+            private Map<String, Long> previousIds(@Nullable Map<String, Long> ids) {
+                return ids == null ? new HashMap<String, Long>() : new HashMap<String, Long>(ids);
+            }
         };
     }
 
@@ -187,14 +202,39 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
             this.snapshotRepository = snapshotRepository;
         }
 
+        /**
+         * Loads the file snapshots of this execution, returning false if any of them is not available.
+         */
+        boolean loadFileSnapshots() {
+            if (inputFilesSnapshot == null) {
+                inputFilesSnapshot = loadSnapshots(inputFilesSnapshotIds);
+            }
+            if (outputFilesSnapshot == null) {
+                outputFilesSnapshot = loadSnapshots(outputFilesSnapshotIds);
+            }
+            if (discoveredFilesSnapshot == null && discoveredFilesSnapshotId != null) {
+                discoveredFilesSnapshot = snapshotRepository.get(discoveredFilesSnapshotId);
+            }
+            return inputFilesSnapshot != null && outputFilesSnapshot != null && (discoveredFilesSnapshotId == null || discoveredFilesSnapshot != null);
+        }
+
+        @Nullable
+        private ImmutableSortedMap<String, FileCollectionSnapshot> loadSnapshots(Map<String, Long> ids) {
+            ImmutableSortedMap.Builder<String, FileCollectionSnapshot> builder = ImmutableSortedMap.naturalOrder();
+            for (Map.Entry<String, Long> entry : ids.entrySet()) {
+                FileCollectionSnapshot snapshot = snapshotRepository.get(entry.getValue());
+                if (snapshot == null) {
+                    return null;
+                }
+                builder.put(entry.getKey(), snapshot);
+            }
+            return builder.build();
+        }
+
         @Override
         public ImmutableSortedMap<String, FileCollectionSnapshot> getInputFilesSnapshot() {
             if (inputFilesSnapshot == null) {
-                ImmutableSortedMap.Builder<String, FileCollectionSnapshot> builder = ImmutableSortedMap.naturalOrder();
-                for (Map.Entry<String, Long> entry : inputFilesSnapshotIds.entrySet()) {
-                    builder.put(entry.getKey(), snapshotRepository.get(entry.getValue()));
-                }
-                inputFilesSnapshot = builder.build();
+                inputFilesSnapshot = loadSnapshots(inputFilesSnapshotIds);
             }
             return inputFilesSnapshot;
         }
@@ -222,12 +262,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
         @Override
         public ImmutableSortedMap<String, FileCollectionSnapshot> getOutputFilesSnapshot() {
             if (outputFilesSnapshot == null) {
-                ImmutableSortedMap.Builder<String, FileCollectionSnapshot> builder = ImmutableSortedMap.naturalOrder();
-                for (Map.Entry<String, Long> entry : outputFilesSnapshotIds.entrySet()) {
-                    String propertyName = entry.getKey();
-                    builder.put(propertyName, snapshotRepository.get(entry.getValue()));
-                }
-                outputFilesSnapshot = builder.build();
+                outputFilesSnapshot = loadSnapshots(outputFilesSnapshotIds);
             }
             return outputFilesSnapshot;
         }
@@ -82,7 +82,7 @@ public class CachingFileHasher implements FileHasher {
         return snapshot(file, fileDetails.getLength(), fileDetails.getLastModified()).getHash();
     }
 
-    private FileInfo snapshot(File file) {
+    FileInfo snapshot(File file) {
         FileMetadataSnapshot fileMetadata = fileSystem.stat(file);
         return snapshot(file, fileMetadata.getLength(), fileMetadata.getLastModified());
     }
@@ -91,7 +91,7 @@ public class CachingFileHasher implements FileHasher {
         return snapshot(file.getFile(), file.getSize(), file.getLastModified());
     }
 
-    private FileInfo snapshot(File file, long length, long timestamp) {
+    FileInfo snapshot(File file, long length, long timestamp) {
         String absolutePath = file.getAbsolutePath();
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
             FileInfo info = cache.get(absolutePath);
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.HashCode;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.internal.Factory;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the snapshots of identical classpaths between the tasks of a build, so that each distinct classpath is normalized once per build.
+ *
+ * Snapshots are keyed by the hash of the file snapshots of the classpath in order, together with the configuration of the normalization.
+ * The snapshots are discarded at the end of the build.
+ */
+public class ClasspathSnapshotCache implements RootBuildLifecycleListener {
+    private static final Logger LOGGER = Logging.getLogger(ClasspathSnapshotCache.class);
+
+    private final ConcurrentMap<HashCode, FileCollectionSnapshot> snapshots = new ConcurrentHashMap<HashCode, FileCollectionSnapshot>();
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ClasspathSnapshotCache(BuildOperationExecutor buildOperationExecutor) {
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    /**
+     * Returns the snapshot for the given key, creating it when no snapshot with that key was created during the build.
+     */
+    public FileCollectionSnapshot get(final HashCode key, final Factory<FileCollectionSnapshot> factory) {
+        return buildOperationExecutor.call(new CallableBuildOperation<FileCollectionSnapshot>() {
+            @Override
+            public FileCollectionSnapshot call(BuildOperationContext context) {
+                FileCollectionSnapshot snapshot = snapshots.get(key);
+                boolean shared = snapshot != null;
+                if (shared) {
+                    hits.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                    snapshot = factory.create();
+                    FileCollectionSnapshot existing = snapshots.putIfAbsent(key, snapshot);
+                    if (existing != null) {
+                        // Created concurrently by another task
+                        snapshot = existing;
+                    }
+                }
+                context.setResult(new OperationResultImpl(shared, snapshot.getSnapshots().size()));
+                return snapshot;
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Snapshot classpath").details(OperationDetailsImpl.INSTANCE);
+            }
+        });
+    }
+
+    @Override
+    public void afterStart() {
+    }
+
+    @Override
+    public void beforeComplete() {
+        long hitCount = hits.getAndSet(0);
+        long missCount = misses.getAndSet(0);
+        if (hitCount + missCount > 0) {
+            LOGGER.debug("Shared classpath snapshots: {} hits, {} misses.", hitCount, missCount);
+        }
+        snapshots.clear();
+    }
+
+    private static class OperationDetailsImpl implements SnapshotClasspathBuildOperationType.Details {
+        private static final OperationDetailsImpl INSTANCE = new OperationDetailsImpl();
+    }
+
+    private static class OperationResultImpl implements SnapshotClasspathBuildOperationType.Result {
+        private final boolean shared;
+        private final int entryCount;
+
+        private OperationResultImpl(boolean shared, int entryCount) {
+            this.shared = shared;
+            this.entryCount = entryCount;
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared;
+        }
+
+        @Override
+        public int getEntryCount() {
+            return entryCount;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.gradle.api.file.RelativePath;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents the state of a directory tree, packed into a few arrays rather than an object graph per file, so that large trees can be kept in memory cheaply.
+ *
+ * Each element refers to its parent directory by index, so that the path of the element is only stored once, as the name of the element.
+ * Names are packed into a single character array, and content hashes and timestamps into primitive arrays.
+ * The {@link FileSnapshot}s for the elements are created when they are first requested, and can be released again when memory is short.
+ */
+class CompactDirectoryTreeSnapshot implements FileTreeSnapshot {
+    private static final int HASH_BYTES = 16;
+    private static final int NO_PARENT = -1;
+
+    // Interned path
+    private final String path;
+    private final int[] parents;
+    private final boolean[] directories;
+    private final char[] names;
+    // Offset of the end of the name of each element in names
+    private final int[] nameEnds;
+    private final byte[] hashes;
+    private final long[] lastModified;
+    // The snapshots of the elements, kept while there is enough memory for them
+    private volatile SoftReference<List<FileSnapshot>> descendants;
+
+    private CompactDirectoryTreeSnapshot(String path, int[] parents, boolean[] directories, char[] names, int[] nameEnds, byte[] hashes, long[] lastModified) {
+        this.path = path;
+        this.parents = parents;
+        this.directories = directories;
+        this.names = names;
+        this.nameEnds = nameEnds;
+        this.hashes = hashes;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Packs the given elements of a directory tree, which must include each directory before its descendants.
+     * Returns a {@link DirectoryTreeDetails} when the elements cannot be packed.
+     */
+    static FileTreeSnapshot of(String path, List<FileSnapshot> elements) {
+        int count = elements.size();
+        int[] parents = new int[count];
+        boolean[] directories = new boolean[count];
+        int[] nameEnds = new int[count];
+        byte[] hashes = new byte[count * HASH_BYTES];
+        long[] lastModified = new long[count];
+        Map<RelativePath, Integer> directoryIndexes = new HashMap<RelativePath, Integer>();
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            FileSnapshot element = elements.get(i);
+            RelativePath relativePath = element.getRelativePath();
+            RelativePath parentPath = relativePath.getParent();
+            Integer parent = parentPath.getSegments().length == 0 ? NO_PARENT : directoryIndexes.get(parentPath);
+            if (parent == null) {
+                return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
+            }
+            parents[i] = parent;
+            names.append(element.getName());
+            nameEnds[i] = names.length();
+            if (element instanceof DirectoryFileSnapshot) {
+                directories[i] = true;
+                directoryIndexes.put(relativePath, i);
+            } else if (element instanceof RegularFileSnapshot && element.getContent() instanceof FileHashSnapshot) {
+                FileHashSnapshot content = (FileHashSnapshot) element.getContent();
+                HashCode hash = content.getContentMd5();
+                if (hash.bits() != HASH_BYTES * 8) {
+                    return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
+                }
+                hash.writeBytesTo(hashes, i * HASH_BYTES, HASH_BYTES);
+                lastModified[i] = content.getLastModified();
+            } else {
+                return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
+            }
+        }
+        char[] nameChars = new char[names.length()];
+        names.getChars(0, names.length(), nameChars, 0);
+        return new CompactDirectoryTreeSnapshot(path, parents, directories, nameChars, nameEnds, hashes, lastModified);
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public List<FileSnapshot> getDescendants() {
+        SoftReference<List<FileSnapshot>> cached = descendants;
+        List<FileSnapshot> result = cached == null ? null : cached.get();
+        if (result == null) {
+            result = createDescendants();
+            descendants = new SoftReference<List<FileSnapshot>>(result);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the snapshots of all elements in a single pass. Directories come before their descendants, so the path of each element
+     * is created from the path of its parent.
+     */
+    private List<FileSnapshot> createDescendants() {
+        int count = parents.length;
+        String[] paths = new String[count];
+        RelativePath[] relativePaths = new RelativePath[count];
+        ImmutableList.Builder<FileSnapshot> builder = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            int parent = parents[i];
+            String name = getName(i);
+            boolean isFile = !directories[i];
+            String parentPath = parent == NO_PARENT ? path : paths[parent];
+            String absolutePath = parentPath.charAt(parentPath.length() - 1) == File.separatorChar ? parentPath + name : parentPath + File.separatorChar + name;
+            RelativePath relativePath = parent == NO_PARENT ? new RelativePath(isFile, name) : relativePaths[parent].append(isFile, name);
+            if (isFile) {
+                HashCode hash = HashCode.fromBytes(Arrays.copyOfRange(hashes, i * HASH_BYTES, (i + 1) * HASH_BYTES));
+                builder.add(new RegularFileSnapshot(absolutePath, relativePath, false, new FileHashSnapshot(hash, lastModified[i])));
+            } else {
+                paths[i] = absolutePath;
+                relativePaths[i] = relativePath;
+                builder.add(new DirectoryFileSnapshot(absolutePath, relativePath, false));
+            }
+        }
+        return builder.build();
+    }
+
+    private String getName(int index) {
+        int start = index == 0 ? 0 : nameEnds[index - 1];
+        return new String(names, start, nameEnds[index] - start);
+    }
+}
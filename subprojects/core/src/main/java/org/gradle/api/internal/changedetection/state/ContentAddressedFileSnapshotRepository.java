@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.id.IdGenerator;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores file collection snapshots as trees of content-addressed chunks, so that identical snapshots are stored once and a snapshot that differs
+ * from a stored one in a few files only adds the chunks that contain those files.
+ *
+ * The entries of a snapshot are split into chunks at entries whose path hashes to a boundary value, so that adding or removing an entry
+ * only changes the chunk that contains it. Trees and chunks are reference counted, and removed when they are no longer used.
+ *
+ * Enabled with the {@value #PROPERTY} system property.
+ */
+public class ContentAddressedFileSnapshotRepository implements FileSnapshotRepository {
+    public static final String PROPERTY = "org.gradle.internal.taskhistory.contentaddressed";
+    private static final Logger LOGGER = Logging.getLogger(ContentAddressedFileSnapshotRepository.class);
+    // On average one entry in this many ends a chunk
+    private static final int CHUNK_BOUNDARY_MASK = 63;
+    private static final int MAX_ENTRIES_PER_CHUNK = 1024;
+
+    private final PersistentIndexedCache<Long, SnapshotTree> trees;
+    private final PersistentIndexedCache<HashCode, Long> treeIds;
+    private final PersistentIndexedCache<HashCode, byte[]> chunks;
+    private final PersistentIndexedCache<HashCode, Integer> chunkReferences;
+    private final Serializer<FileCollectionSnapshot> serializer;
+    private final SnapshotMapSerializer snapshotMapSerializer;
+    private final IdGenerator<Long> idGenerator;
+
+    public ContentAddressedFileSnapshotRepository(TaskHistoryStore cacheAccess, Serializer<FileCollectionSnapshot> serializer, StringInterner stringInterner, IdGenerator<Long> idGenerator) {
+        this.serializer = serializer;
+        this.snapshotMapSerializer = new SnapshotMapSerializer(stringInterner);
+        this.idGenerator = idGenerator;
+        trees = cacheAccess.createCache("fileSnapshotTrees", Long.class, new SnapshotTreeSerializer(), 12000, false);
+        treeIds = cacheAccess.createCache("fileSnapshotTreeIds", HashCode.class, BaseSerializerFactory.LONG_SERIALIZER, 12000, false);
+        chunks = cacheAccess.createCache("fileSnapshotChunks", HashCode.class, BaseSerializerFactory.BYTE_ARRAY_SERIALIZER, 4000, false);
+        chunkReferences = cacheAccess.createCache("fileSnapshotChunkReferences", HashCode.class, BaseSerializerFactory.INTEGER_SERIALIZER, 50000, false);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    @Override
+    public synchronized Long add(FileCollectionSnapshot snapshot) {
+        return replace(null, snapshot);
+    }
+
+    /**
+     * Only changes the reference counts of the chunks that differ between the new snapshot and the one it replaces.
+     */
+    @Override
+    public synchronized Long replace(@Nullable Long previousId, FileCollectionSnapshot snapshot) {
+        Map<HashCode, byte[]> content = new LinkedHashMap<HashCode, byte[]>();
+        SnapshotTree tree = split(snapshot, content);
+        Map<HashCode, Integer> referenceChanges = new LinkedHashMap<HashCode, Integer>();
+        Long id = addTree(tree, referenceChanges);
+        if (previousId != null) {
+            removeTree(previousId, referenceChanges);
+        }
+        applyReferenceChanges(referenceChanges, content);
+        return id;
+    }
+
+    private Long addTree(SnapshotTree tree, Map<HashCode, Integer> referenceChanges) {
+        Long id = treeIds.get(tree.hash);
+        if (id != null) {
+            SnapshotTree existing = trees.get(id);
+            if (existing != null) {
+                trees.put(id, existing.withReferences(existing.references + 1));
+                return id;
+            }
+        }
+        for (HashCode chunk : tree.chunks) {
+            changeReferences(referenceChanges, chunk, 1);
+        }
+        id = idGenerator.generateId();
+        trees.put(id, tree);
+        treeIds.put(tree.hash, id);
+        return id;
+    }
+
+    @Nullable
+    @Override
+    public FileCollectionSnapshot get(Long id) {
+        SnapshotTree tree = trees.get(id);
+        if (tree == null) {
+            return null;
+        }
+        try {
+            List<byte[]> treeContent = new ArrayList<byte[]>(tree.chunks.size());
+            for (HashCode chunk : tree.chunks) {
+                byte[] bytes = chunks.get(chunk);
+                if (bytes == null) {
+                    // The snapshot is incomplete, so treat it as missing instead of as having fewer files than it had
+                    LOGGER.debug("Chunk {} of file snapshot {} is missing.", chunk, id);
+                    return null;
+                }
+                treeContent.add(bytes);
+            }
+            if (tree.compareStrategy == null) {
+                return serializer.read(decoderFor(treeContent.get(0)));
+            }
+            Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>();
+            for (byte[] bytes : treeContent) {
+                snapshots.putAll(snapshotMapSerializer.read(decoderFor(bytes)));
+            }
+            return new DefaultFileCollectionSnapshot(snapshots, tree.compareStrategy, tree.pathIsAbsolute);
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(Long id) {
+        Map<HashCode, Integer> referenceChanges = new LinkedHashMap<HashCode, Integer>();
+        removeTree(id, referenceChanges);
+        applyReferenceChanges(referenceChanges, Collections.<HashCode, byte[]>emptyMap());
+    }
+
+    private void removeTree(Long id, Map<HashCode, Integer> referenceChanges) {
+        SnapshotTree tree = trees.get(id);
+        if (tree == null) {
+            return;
+        }
+        if (tree.references > 1) {
+            trees.put(id, tree.withReferences(tree.references - 1));
+            return;
+        }
+        trees.remove(id);
+        treeIds.remove(tree.hash);
+        for (HashCode chunk : tree.chunks) {
+            changeReferences(referenceChanges, chunk, -1);
+        }
+    }
+
+    private static void changeReferences(Map<HashCode, Integer> referenceChanges, HashCode chunk, int change) {
+        Integer current = referenceChanges.get(chunk);
+        referenceChanges.put(chunk, current == null ? change : current + change);
+    }
+
+    /**
+     * Updates the reference counts of the given chunks, storing the chunks that become used and removing the chunks that are no longer used.
+     */
+    private void applyReferenceChanges(Map<HashCode, Integer> referenceChanges, Map<HashCode, byte[]> content) {
+        for (Map.Entry<HashCode, Integer> entry : referenceChanges.entrySet()) {
+            int change = entry.getValue();
+            if (change == 0) {
+                // Used by both the new and the replaced snapshot
+                continue;
+            }
+            HashCode chunk = entry.getKey();
+            Integer references = chunkReferences.get(chunk);
+            int newReferences = (references == null ? 0 : references) + change;
+            if (newReferences <= 0) {
+                chunkReferences.remove(chunk);
+                chunks.remove(chunk);
+            } else {
+                if (references == null) {
+                    chunks.put(chunk, content.get(chunk));
+                }
+                chunkReferences.put(chunk, newReferences);
+            }
+        }
+    }
+
+    private SnapshotTree split(FileCollectionSnapshot snapshot, Map<HashCode, byte[]> content) {
+        if (!(snapshot instanceof DefaultFileCollectionSnapshot)) {
+            // Stored whole, as a single chunk
+            HashCode chunk = store(content, toBytes(serializer, snapshot));
+            return SnapshotTree.create(null, false, ImmutableList.of(chunk));
+        }
+
+        DefaultFileCollectionSnapshot defaultSnapshot = (DefaultFileCollectionSnapshot) snapshot;
+        ImmutableList.Builder<HashCode> treeChunks = ImmutableList.builder();
+        Map<String, NormalizedFileSnapshot> chunk = new LinkedHashMap<String, NormalizedFileSnapshot>();
+        for (Map.Entry<String, NormalizedFileSnapshot> entry : defaultSnapshot.getSnapshots().entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (isChunkBoundary(entry.getKey()) || chunk.size() == MAX_ENTRIES_PER_CHUNK) {
+                treeChunks.add(store(content, toBytes(snapshotMapSerializer, chunk)));
+                chunk = new LinkedHashMap<String, NormalizedFileSnapshot>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            treeChunks.add(store(content, toBytes(snapshotMapSerializer, chunk)));
+        }
+        return SnapshotTree.create(defaultSnapshot.getCompareStrategy(), defaultSnapshot.isPathAbsolute(), treeChunks.build());
+    }
+
+    private static boolean isChunkBoundary(String path) {
+        // Spread the bits of the hash, so that similar paths do not end up with similar low bits
+        int hash = path.hashCode() * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & CHUNK_BOUNDARY_MASK) == 0;
+    }
+
+    private static HashCode store(Map<HashCode, byte[]> content, byte[] bytes) {
+        HashCode hash = Hashing.md5().hashBytes(bytes);
+        content.put(hash, bytes);
+        return hash;
+    }
+
+    private static <T> byte[] toBytes(Serializer<T> serializer, T value) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(outputStream);
+        try {
+            serializer.write(encoder, value);
+            encoder.flush();
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Decoder decoderFor(byte[] bytes) {
+        return new KryoBackedDecoder(new ByteArrayInputStream(bytes));
+    }
+
+    static class SnapshotTree {
+        // Null when the snapshot is stored whole
+        private final TaskFilePropertyCompareStrategy compareStrategy;
+        private final boolean pathIsAbsolute;
+        private final List<HashCode> chunks;
+        private final HashCode hash;
+        private final int references;
+
+        private SnapshotTree(TaskFilePropertyCompareStrategy compareStrategy, boolean pathIsAbsolute, List<HashCode> chunks, HashCode hash, int references) {
+            this.compareStrategy = compareStrategy;
+            this.pathIsAbsolute = pathIsAbsolute;
+            this.chunks = chunks;
+            this.hash = hash;
+            this.references = references;
+        }
+
+        static SnapshotTree create(TaskFilePropertyCompareStrategy compareStrategy, boolean pathIsAbsolute, List<HashCode> chunks) {
+            StringBuilder identity = new StringBuilder();
+            identity.append(compareStrategy).append(':').append(pathIsAbsolute);
+            for (HashCode chunk : chunks) {
+                identity.append(':').append(chunk);
+            }
+            return new SnapshotTree(compareStrategy, pathIsAbsolute, chunks, Hashing.md5().hashUnencodedChars(identity), 1);
+        }
+
+        SnapshotTree withReferences(int references) {
+            return new SnapshotTree(compareStrategy, pathIsAbsolute, chunks, hash, references);
+        }
+    }
+
+    private static class SnapshotTreeSerializer extends AbstractSerializer<SnapshotTree> {
+        private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+
+        @Override
+        public SnapshotTree read(Decoder decoder) throws Exception {
+            int strategy = decoder.readSmallInt();
+            TaskFilePropertyCompareStrategy compareStrategy = strategy == 0 ? null : TaskFilePropertyCompareStrategy.values()[strategy - 1];
+            boolean pathIsAbsolute = decoder.readBoolean();
+            int chunkCount = decoder.readSmallInt();
+            List<HashCode> chunks = new ArrayList<HashCode>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(hashCodeSerializer.read(decoder));
+            }
+            HashCode hash = hashCodeSerializer.read(decoder);
+            int references = decoder.readSmallInt();
+            return new SnapshotTree(compareStrategy, pathIsAbsolute, chunks, hash, references);
+        }
+
+        @Override
+        public void write(Encoder encoder, SnapshotTree value) throws Exception {
+            encoder.writeSmallInt(value.compareStrategy == null ? 0 : value.compareStrategy.ordinal() + 1);
+            encoder.writeBoolean(value.pathIsAbsolute);
+            encoder.writeSmallInt(value.chunks.size());
+            for (HashCode chunk : value.chunks) {
+                hashCodeSerializer.write(encoder, chunk);
+            }
+            hashCodeSerializer.write(encoder, value.hash);
+            encoder.writeSmallInt(value.references);
+        }
+    }
+}
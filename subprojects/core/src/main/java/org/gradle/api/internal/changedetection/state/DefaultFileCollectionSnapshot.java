@@ -61,6 +61,14 @@ public class DefaultFileCollectionSnapshot implements FileCollectionSnapshot {
         return snapshots;
     }
 
+    TaskFilePropertyCompareStrategy getCompareStrategy() {
+        return compareStrategy;
+    }
+
+    boolean isPathAbsolute() {
+        return pathIsAbsolute;
+    }
+
     @Override
     public boolean isEmpty() {
         return snapshots.isEmpty();
@@ -24,8 +24,13 @@ import org.gradle.internal.file.DefaultFileHierarchySet;
 import org.gradle.internal.file.FileHierarchySet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -118,9 +123,7 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
     public void beforeTaskOutputsGenerated() {
         // When the task outputs are generated, throw away all state for files that do not live in an append-only cache.
         // This is intentionally very simple, to be improved later
-        files.clear();
-        trees.clear();
-        snapshots.clear();
+        discardNonCachedState();
     }
 
     @Override
@@ -130,11 +133,54 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
     @Override
     public void beforeComplete() {
         // We throw away all state between builds
+        discardNonCachedState();
+        discardCachedState();
+    }
+
+    boolean isCached(String path) {
+        return cachedDirectories.contains(path);
+    }
+
+    void discardNonCachedState() {
         files.clear();
-        cacheFiles.clear();
         trees.clear();
-        cacheTrees.clear();
         snapshots.clear();
+    }
+
+    void discardCachedState() {
+        cacheFiles.clear();
+        cacheTrees.clear();
         cacheSnapshots.clear();
     }
+
+    /**
+     * Throws away the state for the given paths, for their descendants, and for the directories that contain them.
+     * State for files that live in an append-only cache is kept.
+     */
+    void discardNonCachedState(Collection<String> changedPaths) {
+        List<File> changedFiles = new ArrayList<File>(changedPaths.size());
+        Set<String> ancestors = new HashSet<String>();
+        for (String path : changedPaths) {
+            File file = new File(path);
+            changedFiles.add(file);
+            File parent = file.getParentFile();
+            while (parent != null && ancestors.add(parent.getPath())) {
+                parent = parent.getParentFile();
+            }
+        }
+        FileHierarchySet changed = DefaultFileHierarchySet.of(changedFiles);
+        discard(files.keySet(), changed, ancestors);
+        discard(trees.keySet(), changed, ancestors);
+        discard(snapshots.keySet(), changed, ancestors);
+    }
+
+    private static void discard(Set<String> paths, FileHierarchySet changed, Set<String> ancestors) {
+        Iterator<String> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            String path = iterator.next();
+            if (ancestors.contains(path) || changed.contains(path)) {
+                iterator.remove();
+            }
+        }
+    }
 }
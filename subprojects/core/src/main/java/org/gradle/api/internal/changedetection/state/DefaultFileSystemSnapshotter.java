@@ -16,9 +16,9 @@
 
 package org.gradle.api.internal.changedetection.state;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
@@ -27,8 +27,10 @@ import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.file.FileTreeInternal;
 import org.gradle.api.internal.file.collections.DirectoryFileTree;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
+import org.gradle.api.internal.file.collections.DirectoryWalker;
 import org.gradle.api.internal.file.collections.SimpleFileCollection;
 import org.gradle.api.internal.hash.FileHasher;
+import org.gradle.api.internal.hash.FileHashingExecutor;
 import org.gradle.cache.internal.ProducerGuard;
 import org.gradle.caching.internal.BuildCacheHasher;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
@@ -57,17 +59,25 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private final FileSystem fileSystem;
     private final DirectoryFileTreeFactory directoryFileTreeFactory;
     private final FileSystemMirror fileSystemMirror;
+    private final FileHashingExecutor hashingExecutor;
+    private final DirectoryWalker directoryWalker;
     private final ProducerGuard<String> producingSelfSnapshots = ProducerGuard.striped();
     private final ProducerGuard<String> producingTrees = ProducerGuard.striped();
     private final ProducerGuard<String> producingAllSnapshots = ProducerGuard.striped();
     private final DefaultGenericFileCollectionSnapshotter snapshotter;
 
     public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror) {
+        this(hasher, stringInterner, fileSystem, directoryFileTreeFactory, fileSystemMirror, FileHashingExecutor.sequential(), null);
+    }
+
+    public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror, FileHashingExecutor hashingExecutor, @Nullable DirectoryWalker directoryWalker) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.fileSystem = fileSystem;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
         this.fileSystemMirror = fileSystemMirror;
+        this.hashingExecutor = hashingExecutor;
+        this.directoryWalker = directoryWalker;
         snapshotter = new DefaultGenericFileCollectionSnapshotter(stringInterner, directoryFileTreeFactory, this);
     }
 
@@ -134,7 +144,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         // Currently cache only those trees where we want everything from a directory
         if (!dirTree.getPatterns().isEmpty()) {
             List<FileSnapshot> elements = Lists.newArrayList();
-            dirTree.visit(new FileVisitorImpl(elements));
+            visitDirectoryTree(dirTree, elements);
             return new DirectoryTreeDetails(dirTree.getDir().getAbsolutePath(), elements);
         }
 
@@ -163,8 +173,40 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private FileTreeSnapshot doSnapshot(DirectoryFileTree directoryTree) {
         String path = getPath(directoryTree.getDir());
         List<FileSnapshot> elements = Lists.newArrayList();
-        directoryTree.visit(new FileVisitorImpl(elements));
-        return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
+        visitDirectoryTree(directoryTree, elements);
+        return CompactDirectoryTreeSnapshot.of(path, elements);
+    }
+
+    /**
+     * Visits the files of the tree, and then hashes them in parallel. The details of the files in a directory tree stay valid after the visit,
+     * unlike those of other trees such as archives.
+     */
+    private void visitDirectoryTree(DirectoryFileTree directoryTree, final List<FileSnapshot> elements) {
+        final List<Runnable> hashingJobs = Lists.newArrayList();
+        FileVisitor visitor = new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                elements.add(new DirectoryFileSnapshot(getPath(dirDetails.getFile()), dirDetails.getRelativePath(), false));
+            }
+
+            @Override
+            public void visitFile(final FileVisitDetails fileDetails) {
+                final int index = elements.size();
+                elements.add(null);
+                hashingJobs.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        elements.set(index, new RegularFileSnapshot(getPath(fileDetails.getFile()), fileDetails.getRelativePath(), false, fileSnapshot(fileDetails)));
+                    }
+                });
+            }
+        };
+        if (directoryWalker != null) {
+            directoryTree.visit(visitor, directoryWalker);
+        } else {
+            directoryTree.visit(visitor);
+        }
+        hashingExecutor.hashAll(hashingJobs);
     }
 
     private String getPath(File file) {
@@ -15,10 +15,21 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Nullable;
+
 public interface FileSnapshotRepository {
+    /**
+     * Returns the snapshot with the given id, or {@code null} if it is not available.
+     */
+    @Nullable
     FileCollectionSnapshot get(Long id);
 
     Long add(FileCollectionSnapshot snapshot);
 
     void remove(Long id);
+
+    /**
+     * Adds the given snapshot and removes the snapshot with the given id, which the new snapshot replaces. Returns the id of the new snapshot.
+     */
+    Long replace(@Nullable Long previousId, FileCollectionSnapshot snapshot);
 }
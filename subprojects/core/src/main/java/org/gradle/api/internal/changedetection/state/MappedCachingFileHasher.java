@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.hash.FileHasher;
+import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryMetadataAccessor;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.nativeintegration.filesystem.FileType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CachingFileHasher} that keeps the hashes it calculates in a memory-mapped table in front of the persistent cache, so that looking up the hash of an unchanged
+ * file is cheap across builds.
+ *
+ * An entry in the table is only used when the inode and change time of the file are the same as when the file was hashed, as well as its length and timestamp, so that a
+ * file that was replaced by one with the same length and timestamp is hashed again. The metadata of the entries of a directory is read all at once, the first time the hash
+ * of a file in the directory is requested, and the table entries of all these files are validated against it in one go. When a file is hashed without its metadata being
+ * known, its metadata is taken from there instead of being read again. The metadata is discarded before the outputs of a task are generated.
+ *
+ * Enabled with the {@value #PROPERTY} system property.
+ */
+public class MappedCachingFileHasher extends CachingFileHasher implements TaskOutputsGenerationListener, RootBuildLifecycleListener, Closeable {
+    public static final String PROPERTY = "org.gradle.internal.filehash.mapped";
+
+    private final MappedFileHashCache mappedCache;
+    private final DirectoryMetadataAccessor directoryMetadataAccessor;
+    private final FileTimeStampInspector timestampInspector;
+    private final ConcurrentMap<String, ConcurrentMap<String, ValidatedFile>> directories = new ConcurrentHashMap<String, ConcurrentMap<String, ValidatedFile>>();
+
+    public MappedCachingFileHasher(FileHasher delegate, TaskHistoryStore store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem,
+                                   File mappedCacheFile, DirectoryMetadataAccessor directoryMetadataAccessor) {
+        super(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem);
+        this.mappedCache = MappedFileHashCache.open(mappedCacheFile);
+        this.directoryMetadataAccessor = directoryMetadataAccessor;
+        this.timestampInspector = timestampInspector;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    @Override
+    FileInfo snapshot(File file) {
+        if (mappedCache == null) {
+            return super.snapshot(file);
+        }
+        ValidatedFile validatedFile = getValidatedFile(file);
+        if (validatedFile == null) {
+            // Not a regular file when its directory was read
+            return super.snapshot(file);
+        }
+        return snapshot(file, validatedFile.metadata.getLength(), validatedFile.metadata.getLastModified());
+    }
+
+    @Override
+    FileInfo snapshot(File file, long length, long timestamp) {
+        if (mappedCache == null) {
+            return super.snapshot(file, length, timestamp);
+        }
+        String absolutePath = file.getAbsolutePath();
+        ValidatedFile validatedFile = getValidatedFile(file);
+        if (validatedFile == null || validatedFile.metadata.getLength() != length || validatedFile.metadata.getLastModified() != timestamp
+            || !timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
+            // The file changed since the directory was read, or its timestamp cannot be trusted
+            mappedCache.remove(absolutePath);
+            return super.snapshot(file, length, timestamp);
+        }
+
+        if (validatedFile.hash != null) {
+            return new FileInfo(validatedFile.hash, length, timestamp);
+        }
+        if (mappedCache.remove(absolutePath)) {
+            // The file was replaced, possibly with one of the same length and timestamp, so the persistent cache cannot be trusted either
+            super.discard(absolutePath);
+        }
+        FileInfo info = super.snapshot(file, length, timestamp);
+        DirectoryEntryMetadata metadata = validatedFile.metadata;
+        mappedCache.put(absolutePath, length, timestamp, metadata.getInode(), metadata.getChangeTime(), info.getHash());
+        validatedFile.hash = info.getHash();
+        return info;
+    }
+
+    @Nullable
+    private ValidatedFile getValidatedFile(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+        File parent = absoluteFile.getParentFile();
+        if (parent == null) {
+            return null;
+        }
+        String parentPath = parent.getPath();
+        ConcurrentMap<String, ValidatedFile> entries = directories.get(parentPath);
+        if (entries == null) {
+            entries = readDirectory(parent);
+            ConcurrentMap<String, ValidatedFile> existing = directories.putIfAbsent(parentPath, entries);
+            if (existing != null) {
+                entries = existing;
+            }
+        }
+        return entries.get(absoluteFile.getName());
+    }
+
+    /**
+     * Reads the metadata of the regular files in the given directory, and looks up the hashes that are still valid for them.
+     */
+    private ConcurrentMap<String, ValidatedFile> readDirectory(File dir) {
+        List<String> paths = new ArrayList<String>();
+        List<DirectoryEntryMetadata> files = new ArrayList<DirectoryEntryMetadata>();
+        for (DirectoryEntryMetadata child : directoryMetadataAccessor.statChildren(dir)) {
+            if (child.getType() == FileType.RegularFile) {
+                paths.add(new File(dir, child.getName()).getPath());
+                files.add(child);
+            }
+        }
+        HashCode[] hashes = mappedCache.getAll(paths, files);
+        ConcurrentMap<String, ValidatedFile> entries = new ConcurrentHashMap<String, ValidatedFile>(files.size() * 2);
+        for (int i = 0; i < files.size(); i++) {
+            DirectoryEntryMetadata metadata = files.get(i);
+            entries.put(metadata.getName(), new ValidatedFile(metadata, hashes[i]));
+        }
+        return entries;
+    }
+
+    @Override
+    public void discard(String path) {
+        super.discard(path);
+        if (mappedCache != null) {
+            mappedCache.remove(path);
+            File parent = new File(path).getParentFile();
+            if (parent != null) {
+                directories.remove(parent.getPath());
+            }
+        }
+    }
+
+    @Override
+    public void beforeTaskOutputsGenerated() {
+        directories.clear();
+    }
+
+    @Override
+    public void afterStart() {
+    }
+
+    @Override
+    public void beforeComplete() {
+        directories.clear();
+        if (mappedCache != null) {
+            mappedCache.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mappedCache != null) {
+            mappedCache.close();
+        }
+    }
+
+    /**
+     * The metadata of a file when its directory was read, and its hash once it is known to be valid for that metadata.
+     */
+    private static class ValidatedFile {
+        private final DirectoryEntryMetadata metadata;
+        private volatile HashCode hash;
+
+        ValidatedFile(DirectoryEntryMetadata metadata, @Nullable HashCode hash) {
+            this.metadata = metadata;
+            this.hash = hash;
+        }
+    }
+}
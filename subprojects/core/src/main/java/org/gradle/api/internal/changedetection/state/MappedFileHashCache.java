@@ -0,0 +1,510 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.gradle.api.Nullable;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A table of file content hashes kept in a memory-mapped file, keyed on the path of the file and validated against its length, timestamp, inode and change time.
+ *
+ * The table uses open addressing with fixed size slots, so that a lookup reads a single slot in most cases and does not deserialize anything.
+ * The slots are split into segments, each guarded by its own read-write lock, so that lookups do not wait for each other, and updates only wait
+ * for lookups and updates of the same segment. Growing the table locks all segments.
+ *
+ * The file is locked by the process that uses it, and a process that cannot get the lock does not use the table.
+ * The table is discarded when it was not flushed after its last change, for example because the process that used it crashed.
+ */
+class MappedFileHashCache implements Closeable {
+    private static final Logger LOGGER = Logging.getLogger(MappedFileHashCache.class);
+
+    private static final int MAGIC = 0x47464843;
+    private static final int VERSION = 2;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CLEAN_OFFSET = 20;
+    // The size and number of removed slots of each segment
+    private static final int COUNTS_OFFSET = 64;
+
+    private static final int SEGMENTS = 16;
+    private static final int HEADER_SIZE = COUNTS_OFFSET + SEGMENTS * 8;
+
+    private static final int SLOT_SIZE = 80;
+    private static final int STATE_OFFSET = 0;
+    private static final int KEY_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 24;
+    private static final int LAST_MODIFIED_OFFSET = 32;
+    private static final int INODE_OFFSET = 40;
+    private static final int CHANGE_TIME_OFFSET = 48;
+    private static final int HASH_OFFSET = 56;
+    private static final int HASH_BYTES = 16;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final int MAX_CAPACITY = 1 << 21;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileLock lock;
+    private final ReadWriteLock[] segmentLocks = new ReadWriteLock[SEGMENTS];
+    private final AtomicBoolean clean = new AtomicBoolean();
+    // The following are guarded by the segment locks: reading them requires any segment lock, changing them requires all of them
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int segmentCapacity;
+    // The following are guarded by the lock of their segment
+    private final int[] sizes = new int[SEGMENTS];
+    private final int[] removed = new int[SEGMENTS];
+
+    private MappedFileHashCache(File file, RandomAccessFile randomAccessFile, FileLock lock) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.lock = lock;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segmentLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Opens the table in the given file, creating it when it does not exist. Returns null when the table cannot be used, for example because another process uses it.
+     */
+    @Nullable
+    static MappedFileHashCache open(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            file.getParentFile().mkdirs();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            FileLock lock;
+            try {
+                lock = randomAccessFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                LOGGER.debug("File hash table {} is in use, not using it.", file);
+                randomAccessFile.close();
+                return null;
+            }
+            MappedFileHashCache cache = new MappedFileHashCache(file, randomAccessFile, lock);
+            cache.load();
+            return cache;
+        } catch (IOException e) {
+            LOGGER.debug("Could not open file hash table {}, not using it.", file, e);
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ignored) {
+                    // Ignore
+                }
+            }
+            return null;
+        }
+    }
+
+    private void load() throws IOException {
+        long fileLength = randomAccessFile.length();
+        if (fileLength >= HEADER_SIZE) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileLength);
+            int storedCapacity = buffer.getInt(CAPACITY_OFFSET);
+            if (buffer.getInt(MAGIC_OFFSET) == MAGIC
+                && buffer.getInt(VERSION_OFFSET) == VERSION
+                && buffer.get(CLEAN_OFFSET) == 1
+                && storedCapacity >= SEGMENTS
+                && Integer.bitCount(storedCapacity) == 1
+                && storedCapacity <= MAX_CAPACITY
+                && fileLength >= sizeOf(storedCapacity)) {
+                capacity = storedCapacity;
+                segmentCapacity = storedCapacity / SEGMENTS;
+                for (int segment = 0; segment < SEGMENTS; segment++) {
+                    sizes[segment] = buffer.getInt(COUNTS_OFFSET + segment * 8);
+                    removed[segment] = buffer.getInt(COUNTS_OFFSET + segment * 8 + 4);
+                }
+                clean.set(true);
+                return;
+            }
+            LOGGER.debug("Discarding the content of file hash table {}.", file);
+        }
+        reset(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the hash of the given file when it was stored with the same metadata, or null.
+     */
+    @Nullable
+    HashCode get(String path, long length, long lastModified, long inode, long changeTime) {
+        byte[] key = keyOf(path);
+        Lock segmentLock = segmentLocks[segmentOf(key)].readLock();
+        segmentLock.lock();
+        try {
+            return read(key, length, lastModified, inode, changeTime);
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    /**
+     * Validates the entries of many files at once, such as all the files of a directory, taking the lock of each segment once.
+     * Returns the hash of each file when it was stored with the same metadata, or null, in the order of the given files.
+     */
+    HashCode[] getAll(List<String> paths, List<DirectoryEntryMetadata> metadata) {
+        int count = paths.size();
+        HashCode[] hashes = new HashCode[count];
+        byte[][] keys = new byte[count][];
+        List<List<Integer>> bySegment = new ArrayList<List<Integer>>(SEGMENTS);
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            bySegment.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < count; i++) {
+            keys[i] = keyOf(paths.get(i));
+            bySegment.get(segmentOf(keys[i])).add(i);
+        }
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            List<Integer> indexes = bySegment.get(segment);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            Lock segmentLock = segmentLocks[segment].readLock();
+            segmentLock.lock();
+            try {
+                for (int i : indexes) {
+                    DirectoryEntryMetadata entry = metadata.get(i);
+                    hashes[i] = read(keys[i], entry.getLength(), entry.getLastModified(), entry.getInode(), entry.getChangeTime());
+                }
+            } finally {
+                segmentLock.unlock();
+            }
+        }
+        return hashes;
+    }
+
+    @Nullable
+    private HashCode read(byte[] key, long length, long lastModified, long inode, long changeTime) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        int offset = offsetOf(slot);
+        if (buffer.getLong(offset + LENGTH_OFFSET) != length
+            || buffer.getLong(offset + LAST_MODIFIED_OFFSET) != lastModified
+            || buffer.getLong(offset + INODE_OFFSET) != inode
+            || buffer.getLong(offset + CHANGE_TIME_OFFSET) != changeTime) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_BYTES];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            hash[i] = buffer.get(offset + HASH_OFFSET + i);
+        }
+        return HashCode.fromBytes(hash);
+    }
+
+    /**
+     * Stores the hash of the given file. Hashes of a length other than 128 bits are not stored.
+     */
+    void put(String path, long length, long lastModified, long inode, long changeTime, HashCode hash) {
+        if (hash.bits() != HASH_BYTES * 8) {
+            return;
+        }
+        byte[] key = keyOf(path);
+        int segment = segmentOf(key);
+        while (true) {
+            int currentCapacity;
+            Lock segmentLock = segmentLocks[segment].writeLock();
+            segmentLock.lock();
+            try {
+                int slot = find(key);
+                if (slot < 0 && (sizes[segment] + removed[segment] + 1) * 2 <= segmentCapacity) {
+                    slot = findFree(key);
+                    if (buffer.get(offsetOf(slot) + STATE_OFFSET) == REMOVED) {
+                        removed[segment]--;
+                    }
+                    sizes[segment]++;
+                    writeCounts(segment);
+                }
+                if (slot >= 0) {
+                    write(slot, key, length, lastModified, inode, changeTime, hash);
+                    return;
+                }
+                if (capacity == MAX_CAPACITY && removed[segment] == 0) {
+                    return;
+                }
+                currentCapacity = capacity;
+            } finally {
+                segmentLock.unlock();
+            }
+            rehash(currentCapacity);
+        }
+    }
+
+    private void write(int slot, byte[] key, long length, long lastModified, long inode, long changeTime, HashCode hash) {
+        markDirty();
+        int offset = offsetOf(slot);
+        buffer.put(offset + STATE_OFFSET, USED);
+        for (int i = 0; i < key.length; i++) {
+            buffer.put(offset + KEY_OFFSET + i, key[i]);
+        }
+        buffer.putLong(offset + LENGTH_OFFSET, length);
+        buffer.putLong(offset + LAST_MODIFIED_OFFSET, lastModified);
+        buffer.putLong(offset + INODE_OFFSET, inode);
+        buffer.putLong(offset + CHANGE_TIME_OFFSET, changeTime);
+        byte[] hashBytes = hash.asBytes();
+        for (int i = 0; i < HASH_BYTES; i++) {
+            buffer.put(offset + HASH_OFFSET + i, hashBytes[i]);
+        }
+    }
+
+    /**
+     * Removes the hash of the given file. Returns true when there was one.
+     */
+    boolean remove(String path) {
+        byte[] key = keyOf(path);
+        int segment = segmentOf(key);
+        Lock segmentLock = segmentLocks[segment].writeLock();
+        segmentLock.lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                return false;
+            }
+            markDirty();
+            buffer.put(offsetOf(slot) + STATE_OFFSET, REMOVED);
+            sizes[segment]--;
+            removed[segment]++;
+            writeCounts(segment);
+            return true;
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the table to disk and marks it as clean, so that it can be used by the next process.
+     */
+    void flush() {
+        lockAll();
+        try {
+            doFlush();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void doFlush() {
+        if (clean.get()) {
+            return;
+        }
+        buffer.force();
+        buffer.put(CLEAN_OFFSET, (byte) 1);
+        buffer.force();
+        clean.set(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lockAll();
+        try {
+            doFlush();
+        } finally {
+            try {
+                lock.release();
+            } finally {
+                try {
+                    randomAccessFile.close();
+                } finally {
+                    unlockAll();
+                }
+            }
+        }
+    }
+
+    private void lockAll() {
+        for (ReadWriteLock segmentLock : segmentLocks) {
+            segmentLock.writeLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = SEGMENTS - 1; i >= 0; i--) {
+            segmentLocks[i].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Grows the table, or only drops the removed slots when it cannot grow, unless another thread did so since the given capacity was seen.
+     */
+    private void rehash(int seenCapacity) {
+        lockAll();
+        try {
+            if (capacity != seenCapacity) {
+                return;
+            }
+            rehashLocked(capacity == MAX_CAPACITY ? capacity : capacity * 2);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void rehashLocked(int newCapacity) {
+        List<byte[]> slots = new ArrayList<byte[]>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offsetOf(slot);
+            if (buffer.get(offset + STATE_OFFSET) == USED) {
+                byte[] content = new byte[SLOT_SIZE];
+                for (int i = 0; i < SLOT_SIZE; i++) {
+                    content[i] = buffer.get(offset + i);
+                }
+                slots.add(content);
+            }
+        }
+        reset(newCapacity);
+        for (byte[] content : slots) {
+            byte[] key = new byte[HASH_BYTES];
+            System.arraycopy(content, KEY_OFFSET, key, 0, HASH_BYTES);
+            int offset = offsetOf(findFree(key));
+            for (int i = 0; i < SLOT_SIZE; i++) {
+                buffer.put(offset + i, content[i]);
+            }
+            sizes[segmentOf(key)]++;
+        }
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            writeCounts(segment);
+        }
+    }
+
+    private void reset(int newCapacity) {
+        try {
+            long newLength = sizeOf(newCapacity);
+            // Only grow the file, as a mapped file cannot be truncated on some platforms
+            if (randomAccessFile.length() < newLength) {
+                randomAccessFile.setLength(newLength);
+            }
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, newLength);
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        byte[] zeros = new byte[SLOT_SIZE * 64];
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, newCapacity);
+        capacity = newCapacity;
+        segmentCapacity = newCapacity / SEGMENTS;
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            sizes[segment] = 0;
+            removed[segment] = 0;
+            writeCounts(segment);
+        }
+        clean.set(false);
+    }
+
+    /**
+     * Returns the slot of the given key in its segment, or -1.
+     */
+    private int find(byte[] key) {
+        int base = segmentOf(key) * segmentCapacity;
+        int mask = segmentCapacity - 1;
+        for (int i = 0, slot = indexOf(key) & mask; i < segmentCapacity; i++, slot = (slot + 1) & mask) {
+            int offset = offsetOf(base + slot);
+            byte state = buffer.get(offset + STATE_OFFSET);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == USED && keyMatches(offset, key)) {
+                return base + slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findFree(byte[] key) {
+        int base = segmentOf(key) * segmentCapacity;
+        int mask = segmentCapacity - 1;
+        int slot = indexOf(key) & mask;
+        while (buffer.get(offsetOf(base + slot) + STATE_OFFSET) == USED) {
+            slot = (slot + 1) & mask;
+        }
+        return base + slot;
+    }
+
+    private boolean keyMatches(int offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + KEY_OFFSET + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void markDirty() {
+        if (clean.compareAndSet(true, false)) {
+            buffer.put(CLEAN_OFFSET, (byte) 0);
+        }
+    }
+
+    private void writeCounts(int segment) {
+        buffer.putInt(COUNTS_OFFSET + segment * 8, sizes[segment]);
+        buffer.putInt(COUNTS_OFFSET + segment * 8 + 4, removed[segment]);
+    }
+
+    private static byte[] keyOf(String path) {
+        return Hashing.md5().hashString(path, Charsets.UTF_8).asBytes();
+    }
+
+    private static int segmentOf(byte[] key) {
+        // Uses other bits of the key than the index within the segment
+        return key[4] & (SEGMENTS - 1);
+    }
+
+    private static int indexOf(byte[] key) {
+        return (key[0] & 0xFF) | (key[1] & 0xFF) << 8 | (key[2] & 0xFF) << 16 | (key[3] & 0xFF) << 24;
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long sizeOf(int capacity) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Visits the entries of a zip file as listed in its central directory, so that the name, CRC32 and size of each entry are known before its content is read.
+ * The content of an entry is only read and inflated when the visitor reads from the stream it is given, so that a visitor that can reuse the hash of an
+ * unchanged entry does not pay for inflating it.
+ *
+ * Enabled with the {@value #PROPERTY} system property, in place of {@link ZipTree}.
+ */
+public class RandomAccessZipTree implements ResourceTree {
+    public static final String PROPERTY = "org.gradle.internal.snapshot.jar.incremental";
+
+    private final FileSnapshot zipFile;
+
+    public RandomAccessZipTree(FileSnapshot zipFile) {
+        this.zipFile = zipFile;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    @Override
+    public void visit(ResourceWithContentsVisitor visitor) throws IOException {
+        ZipFile zip = new ZipFile(zipFile.getPath());
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry zipEntry = entries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                LazyEntryInputStream entryInput = new LazyEntryInputStream(zip, zipEntry);
+                try {
+                    visitor.visitZipFileEntry(zipEntry, entryInput);
+                } finally {
+                    entryInput.close();
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(zip);
+        }
+    }
+
+    private static class LazyEntryInputStream extends InputStream {
+        private final ZipFile zip;
+        private final ZipEntry zipEntry;
+        private InputStream delegate;
+
+        LazyEntryInputStream(ZipFile zip, ZipEntry zipEntry) {
+            this.zip = zip;
+            this.zipEntry = zipEntry;
+        }
+
+        private InputStream getDelegate() throws IOException {
+            if (delegate == null) {
+                delegate = zip.getInputStream(zipEntry);
+            }
+            return delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getDelegate().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getDelegate().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return getDelegate().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return getDelegate().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
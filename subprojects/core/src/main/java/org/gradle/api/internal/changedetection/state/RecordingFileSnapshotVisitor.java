@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.HashCode;
+import org.gradle.caching.internal.BuildCacheHasher;
+import org.gradle.caching.internal.DefaultBuildCacheHasher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the file snapshots visited for a file collection, so that they can be replayed to another visitor,
+ * and hashes their paths and contents in visiting order.
+ */
+class RecordingFileSnapshotVisitor implements FileSnapshotVisitor {
+    private final List<Object> visited = new ArrayList<Object>();
+    private final BuildCacheHasher hasher = new DefaultBuildCacheHasher();
+
+    /**
+     * Includes the type of the visitor the snapshots will be replayed to and the configuration of its normalizer in the hash.
+     */
+    RecordingFileSnapshotVisitor(Class<? extends FileSnapshotVisitor> replayedTo, ConfigurableNormalizer normalizer) {
+        hasher.putString(replayedTo.getName());
+        hasher.putString(normalizer.getClass().getName());
+        normalizer.appendConfigurationToHasher(hasher);
+    }
+
+    @Override
+    public void visitFileTreeSnapshot(List<FileSnapshot> descendants) {
+        visited.add(descendants);
+        hasher.putString("tree");
+        hasher.putInt(descendants.size());
+        for (FileSnapshot descendant : descendants) {
+            append(descendant);
+        }
+    }
+
+    @Override
+    public void visitDirectorySnapshot(DirectoryFileSnapshot directory) {
+        visited.add(directory);
+        append(directory);
+    }
+
+    @Override
+    public void visitFileSnapshot(RegularFileSnapshot file) {
+        visited.add(file);
+        append(file);
+    }
+
+    @Override
+    public void visitMissingFileSnapshot(MissingFileSnapshot missingFile) {
+        visited.add(missingFile);
+        append(missingFile);
+    }
+
+    private void append(FileSnapshot snapshot) {
+        hasher.putString(snapshot.getType().name());
+        hasher.putString(snapshot.getPath());
+        hasher.putString(snapshot.getRelativePath().getPathString());
+        hasher.putHash(snapshot.getContent().getContentMd5());
+    }
+
+    /**
+     * Returns the hash of the visited snapshots. Can only be called once.
+     */
+    HashCode getHash() {
+        return hasher.hash();
+    }
+
+    @SuppressWarnings("unchecked")
+    void replay(FileSnapshotVisitor visitor) {
+        for (Object snapshot : visited) {
+            if (snapshot instanceof List) {
+                visitor.visitFileTreeSnapshot((List<FileSnapshot>) snapshot);
+            } else if (snapshot instanceof RegularFileSnapshot) {
+                visitor.visitFileSnapshot((RegularFileSnapshot) snapshot);
+            } else if (snapshot instanceof DirectoryFileSnapshot) {
+                visitor.visitDirectorySnapshot((DirectoryFileSnapshot) snapshot);
+            } else {
+                visitor.visitMissingFileSnapshot((MissingFileSnapshot) snapshot);
+            }
+        }
+    }
+}
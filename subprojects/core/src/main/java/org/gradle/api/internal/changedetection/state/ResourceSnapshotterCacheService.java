@@ -23,6 +23,10 @@ import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.caching.internal.BuildCacheHasher;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+
 public class ResourceSnapshotterCacheService {
     private static final HashCode NO_HASH = Hashing.md5().hashString(CachingResourceHasher.class.getName() + " : no hash", Charsets.UTF_8);
     private final PersistentIndexedCache<HashCode, HashCode> persistentCache;
@@ -52,6 +56,40 @@ public class ResourceSnapshotterCacheService {
         return resourceHash;
     }
 
+    /**
+     * Hashes the given zip entry, reusing the hash of an entry with the same name, CRC32 and size, which are read from the zip file without reading the content of the entry.
+     * The content of the entry is only read when there is no such hash.
+     */
+    public HashCode hashZipEntry(ZipEntry zipEntry, InputStream zipInput, ResourceHasher hasher, byte[] configurationHash) throws IOException {
+        HashCode resourceHashCacheKey = zipEntryHashCacheKey(zipEntry, configurationHash);
+
+        HashCode resourceHash = persistentCache.get(resourceHashCacheKey);
+        if (resourceHash != null) {
+            if (resourceHash.equals(NO_HASH)) {
+                return null;
+            }
+            return resourceHash;
+        }
+
+        resourceHash = hasher.hash(zipEntry, zipInput);
+
+        if (resourceHash != null) {
+            persistentCache.put(resourceHashCacheKey, resourceHash);
+        } else {
+            persistentCache.put(resourceHashCacheKey, NO_HASH);
+        }
+        return resourceHash;
+    }
+
+    private HashCode zipEntryHashCacheKey(ZipEntry zipEntry, byte[] configurationHash) {
+        BuildCacheHasher hasher = new DefaultBuildCacheHasher();
+        hasher.putBytes(configurationHash);
+        hasher.putString(zipEntry.getName());
+        hasher.putLong(zipEntry.getCrc());
+        hasher.putLong(zipEntry.getSize());
+        return hasher.hash();
+    }
+
     private HashCode resourceHashCacheKey(RegularFileSnapshot fileSnapshot, byte[] configurationHash) {
         BuildCacheHasher hasher = new DefaultBuildCacheHasher();
         hasher.putBytes(configurationHash);
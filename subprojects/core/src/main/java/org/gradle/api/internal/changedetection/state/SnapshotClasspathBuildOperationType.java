@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Represents the normalization of a classpath into a {@link FileCollectionSnapshot}, which is shared with other tasks of the build that snapshot an identical classpath.
+ *
+ * The hit rate of the shared snapshots is the proportion of these operations whose result is shared.
+ */
+public final class SnapshotClasspathBuildOperationType implements BuildOperationType<SnapshotClasspathBuildOperationType.Details, SnapshotClasspathBuildOperationType.Result> {
+
+    public interface Details {
+    }
+
+    public interface Result {
+
+        /**
+         * True when an identical classpath was already snapshotted during the build, and its snapshot was reused.
+         */
+        boolean isShared();
+
+        /**
+         * The number of entries in the snapshot.
+         */
+        int getEntryCount();
+
+    }
+
+    private SnapshotClasspathBuildOperationType() {
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.Sets;
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.classpath.CachedJarFileStore;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.file.DefaultFileHierarchySet;
+import org.gradle.internal.file.FileHierarchySet;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.gradle.internal.os.OperatingSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link FileSystemMirror} that keeps its state between builds, and watches the file system to throw away the state of the files that change.
+ *
+ * State for a path is only kept beyond the build in which the path started to be watched, as the path may have changed before the watch was registered.
+ * Changes are applied at the start and at the end of each build. State is still thrown away when task outputs are generated, as events are delivered
+ * asynchronously and may not have arrived by the time the outputs are snapshotted.
+ *
+ * Enabled with the {@value #PROPERTY} system property. Not used on macOS, where the JDK polls for changes, so that a change made just before a build
+ * may not have been seen by the time the build starts.
+ */
+public class WatchingFileSystemMirror extends DefaultFileSystemMirror implements FileWatcherListener, Stoppable {
+    public static final String PROPERTY = "org.gradle.internal.filesystem.watch";
+    private static final Logger LOGGER = Logging.getLogger(WatchingFileSystemMirror.class);
+
+    private final FileWatcherFactory watcherFactory;
+    private final Set<String> changedPaths = Sets.newConcurrentHashSet();
+    private final AtomicBoolean discardAll = new AtomicBoolean();
+    private final Object lock = new Object();
+    private final Action<Throwable> onError = new Action<Throwable>() {
+        @Override
+        public void execute(Throwable throwable) {
+            LOGGER.info("Failed to watch the file system for changes. Discarding file system state at the end of the build.", throwable);
+            discardAll.set(true);
+            synchronized (lock) {
+                stopWatching();
+            }
+        }
+    };
+    // Guarded by lock. The watched paths are also read without the lock, to cheaply skip paths that are already watched.
+    private FileWatcher watcher;
+    private volatile FileHierarchySet watchedPaths = DefaultFileHierarchySet.of();
+    private boolean watchingFailed;
+
+    public WatchingFileSystemMirror(List<CachedJarFileStore> fileStores, FileWatcherFactory watcherFactory) {
+        super(fileStores);
+        this.watcherFactory = watcherFactory;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY) && !OperatingSystem.current().isMacOsX();
+    }
+
+    @Override
+    public void putFile(FileSnapshot file) {
+        super.putFile(file);
+        watch(file.getPath());
+    }
+
+    @Override
+    public void putContent(String path, Snapshot snapshot) {
+        super.putContent(path, snapshot);
+        watch(path);
+    }
+
+    @Override
+    public void putDirectory(FileTreeSnapshot directory) {
+        super.putDirectory(directory);
+        watch(directory.getPath());
+    }
+
+    private void watch(String path) {
+        if (isCached(path) || watchedPaths.contains(path)) {
+            return;
+        }
+        synchronized (lock) {
+            if (watchingFailed || watchedPaths.contains(path)) {
+                return;
+            }
+            // The path may have changed between being snapshotted and being watched
+            changedPaths.add(path);
+            File file = new File(path);
+            try {
+                if (watcher == null) {
+                    watcher = watcherFactory.watch(onError, this);
+                }
+                watcher.watch(FileSystemSubset.builder().add(file).build());
+                watchedPaths = watchedPaths.plus(file);
+            } catch (IOException e) {
+                onError.execute(e);
+                watchingFailed = true;
+            }
+        }
+    }
+
+    @Override
+    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+        if (event.getType() == FileWatcherEvent.Type.UNDEFINED) {
+            discardAll.set(true);
+        } else {
+            changedPaths.add(event.getFile().getAbsolutePath());
+        }
+    }
+
+    @Override
+    public void afterStart() {
+        discardChangedState();
+    }
+
+    @Override
+    public void beforeComplete() {
+        synchronized (lock) {
+            watchingFailed = false;
+            if (watcher != null && !watcher.isRunning()) {
+                discardAll.set(true);
+                stopWatching();
+            }
+        }
+        discardChangedState();
+        discardCachedState();
+    }
+
+    private void discardChangedState() {
+        if (discardAll.getAndSet(false)) {
+            changedPaths.clear();
+            discardNonCachedState();
+            return;
+        }
+        if (changedPaths.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<String>(changedPaths);
+        changedPaths.removeAll(paths);
+        discardNonCachedState(paths);
+    }
+
+    private void stopWatching() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        watchedPaths = DefaultFileHierarchySet.of();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            stopWatching();
+        }
+    }
+}
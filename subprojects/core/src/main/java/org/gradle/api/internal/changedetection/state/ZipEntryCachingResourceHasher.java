@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.HashCode;
+import org.gradle.caching.internal.BuildCacheHasher;
+import org.gradle.caching.internal.DefaultBuildCacheHasher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Caches the result of hashing a {@link ZipEntry} with a {@link ResourceHasher}, keyed on the name, CRC32 and size of the entry.
+ * Entries of which the CRC32 or size is not known up front are hashed each time.
+ * It does not cache the result of hashing {@link RegularFileSnapshot}s.
+ */
+public class ZipEntryCachingResourceHasher implements ResourceHasher {
+    private final ResourceHasher delegate;
+    private final ResourceSnapshotterCacheService resourceSnapshotterCacheService;
+    private final byte[] cacheKeyConfigurationHash;
+
+    public ZipEntryCachingResourceHasher(ResourceHasher delegate, ResourceSnapshotterCacheService resourceSnapshotterCacheService) {
+        this.delegate = delegate;
+        this.resourceSnapshotterCacheService = resourceSnapshotterCacheService;
+        BuildCacheHasher hasher = new DefaultBuildCacheHasher();
+        hasher.putString(getClass().getName());
+        delegate.appendConfigurationToHasher(hasher);
+        this.cacheKeyConfigurationHash = hasher.hash().asBytes();
+    }
+
+    @Override
+    public HashCode hash(RegularFileSnapshot fileSnapshot) {
+        return delegate.hash(fileSnapshot);
+    }
+
+    @Override
+    public HashCode hash(ZipEntry zipEntry, InputStream zipInput) throws IOException {
+        if (zipEntry.getCrc() == -1 || zipEntry.getSize() == -1) {
+            return delegate.hash(zipEntry, zipInput);
+        }
+        return resourceSnapshotterCacheService.hashZipEntry(zipEntry, zipInput, delegate, cacheKeyConfigurationHash);
+    }
+
+    @Override
+    public void appendConfigurationToHasher(BuildCacheHasher hasher) {
+        delegate.appendConfigurationToHasher(hasher);
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.file.collections;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.file.DirectoryTree;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.FileVisitDetails;
@@ -118,19 +119,30 @@ public class DirectoryFileTree implements MinimalFileTree, PatternFilterableFile
         visitFrom(visitor, dir, RelativePath.EMPTY_ROOT);
     }
 
+    /**
+     * Visits the contents of this tree using the given walker instead of the default one.
+     */
+    public void visit(FileVisitor visitor, DirectoryWalker directoryWalker) {
+        visitFrom(visitor, dir, RelativePath.EMPTY_ROOT, directoryWalker);
+    }
+
     /**
      * Process the specified file or directory.  If it is a directory, then its contents
      * (but not the directory itself) will be checked with {@link #isAllowed(FileTreeElement, Spec)} and notified to
      * the listener.  If it is a file, the file will be checked and notified.
      */
     public void visitFrom(FileVisitor visitor, File fileOrDirectory, RelativePath path) {
+        visitFrom(visitor, fileOrDirectory, path, null);
+    }
+
+    private void visitFrom(FileVisitor visitor, File fileOrDirectory, RelativePath path, @Nullable DirectoryWalker directoryWalker) {
         AtomicBoolean stopFlag = new AtomicBoolean();
         Spec<FileTreeElement> spec = patternSet.getAsSpec();
         if (fileOrDirectory.exists()) {
             if (fileOrDirectory.isFile()) {
                 processSingleFile(fileOrDirectory, visitor, spec, stopFlag);
             } else {
-                walkDir(fileOrDirectory, path, visitor, spec, stopFlag);
+                walkDir(fileOrDirectory, path, visitor, spec, stopFlag, directoryWalker);
             }
         } else {
             LOGGER.info("file or directory '{}', not found", fileOrDirectory);
@@ -145,14 +157,16 @@ public class DirectoryFileTree implements MinimalFileTree, PatternFilterableFile
         }
     }
 
-    private void walkDir(File file, RelativePath path, FileVisitor visitor, Spec<FileTreeElement> spec, AtomicBoolean stopFlag) {
-        DirectoryWalker directoryWalker;
-        if (visitor instanceof ReproducibleFileVisitor && ((ReproducibleFileVisitor) visitor).isReproducibleFileOrder()) {
-            directoryWalker = REPRODUCIBLE_DIRECTORY_WALKER;
+    private void walkDir(File file, RelativePath path, FileVisitor visitor, Spec<FileTreeElement> spec, AtomicBoolean stopFlag, @Nullable DirectoryWalker directoryWalker) {
+        DirectoryWalker walker;
+        if (directoryWalker != null) {
+            walker = directoryWalker;
+        } else if (visitor instanceof ReproducibleFileVisitor && ((ReproducibleFileVisitor) visitor).isReproducibleFileOrder()) {
+            walker = REPRODUCIBLE_DIRECTORY_WALKER;
         } else {
-            directoryWalker = directoryWalkerFactory.create();
+            walker = directoryWalkerFactory.create();
         }
-        directoryWalker.walkDir(file, path, visitor, spec, stopFlag, postfix);
+        walker.walkDir(file, path, visitor, spec, stopFlag, postfix);
     }
 
     static boolean isAllowed(FileTreeElement element, Spec<? super FileTreeElement> spec) {
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.collections.jdk7;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.DefaultFileVisitDetails;
+import org.gradle.api.internal.file.collections.DirectoryWalker;
+import org.gradle.api.specs.Spec;
+import org.gradle.concurrent.ParallelismConfiguration;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.ParallelismConfigurationListener;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lists and stats the directories of a tree concurrently, while visiting them on the calling thread.
+ *
+ * Children are visited in sorted order, files before directories, as by {@link org.gradle.api.internal.file.collections.ReproducibleDirectoryWalker},
+ * so the visit order does not depend on how the work was scheduled. The listing of a directory is scheduled as soon as its parent has been visited,
+ * and the visitor waits only for the directory it is about to visit. Listings use up to as many threads as the build may use workers.
+ *
+ * The spec is evaluated on the calling thread, as it may call back into the build. Listings only read from the file system.
+ */
+public class ParallelDirectoryWalker implements DirectoryWalker, Stoppable, ParallelismConfigurationListener {
+    public static final String PARALLEL_PROPERTY = "org.gradle.internal.filewalker.parallel";
+
+    private final FileSystem fileSystem;
+    private final ManagedExecutor executor;
+    private final ParallelismConfigurationManager parallelismConfigurationManager;
+
+    public ParallelDirectoryWalker(FileSystem fileSystem, ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+        this(fileSystem, executorFactory.create("Directory walking", parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount()), parallelismConfigurationManager);
+        parallelismConfigurationManager.addListener(this);
+    }
+
+    public ParallelDirectoryWalker(FileSystem fileSystem, ManagedExecutor executor) {
+        this(fileSystem, executor, null);
+    }
+
+    private ParallelDirectoryWalker(FileSystem fileSystem, ManagedExecutor executor, @Nullable ParallelismConfigurationManager parallelismConfigurationManager) {
+        this.fileSystem = fileSystem;
+        this.executor = executor;
+        this.parallelismConfigurationManager = parallelismConfigurationManager;
+    }
+
+    /**
+     * Returns whether the parallel walker should be used to snapshot directory trees.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PARALLEL_PROPERTY);
+    }
+
+    @Override
+    public void onParallelismConfigurationChange(ParallelismConfiguration parallelismConfiguration) {
+        executor.setFixedPoolSize(parallelismConfiguration.getMaxWorkerCount());
+    }
+
+    @Override
+    public void walkDir(File rootDir, RelativePath rootPath, FileVisitor visitor, Spec<? super FileTreeElement> spec, AtomicBoolean stopFlag, boolean postfix) {
+        Walk walk = new Walk(fileSystem, spec, stopFlag);
+        DirectoryListing root = new DirectoryListing(walk, rootDir, rootPath, null, Collections.singletonList(rootKey(rootDir)));
+        try {
+            schedule(root);
+            visit(root, visitor, walk, postfix);
+        } finally {
+            // Stop listing the rest of the tree if the visitor stopped early or failed
+            walk.abandoned.set(true);
+        }
+    }
+
+    private void schedule(DirectoryListing listing) {
+        try {
+            executor.execute(listing);
+        } catch (RejectedExecutionException e) {
+            // The build is finishing, so list the directory when it is visited
+            listing.run();
+        }
+    }
+
+    private void visit(DirectoryListing listing, FileVisitor visitor, Walk walk, boolean postfix) {
+        listing.await();
+        if (walk.stopFlag.get()) {
+            return;
+        }
+        List<FileVisitDetails> files = new ArrayList<FileVisitDetails>();
+        List<DirectoryListing> directories = new ArrayList<DirectoryListing>();
+        RuntimeException failure = listing.failure;
+        for (Entry entry : listing.entries) {
+            if (!walk.spec.isSatisfiedBy(entry.details)) {
+                continue;
+            }
+            if (entry.brokenLink) {
+                // we only get the attributes of the link itself when it couldn't be followed
+                failure = new GradleException(String.format("Could not list contents of '%s'. Couldn't follow symbolic link.", entry.details.getFile()));
+                break;
+            }
+            if (entry.directory != null) {
+                directories.add(entry.directory);
+            } else {
+                files.add(entry.details);
+            }
+        }
+        // The entries are no longer needed, and the subdirectories are released as they are visited
+        listing.entries = null;
+        if (failure != null) {
+            directories.clear();
+        }
+        for (DirectoryListing directory : directories) {
+            schedule(directory);
+        }
+
+        for (int i = 0; !walk.stopFlag.get() && i < files.size(); i++) {
+            visitor.visitFile(files.get(i));
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        for (int i = 0; !walk.stopFlag.get() && i < directories.size(); i++) {
+            DirectoryListing dir = directories.set(i, null);
+            if (postfix) {
+                visit(dir, visitor, walk, postfix);
+                visitor.visitDir(dir.details);
+            } else {
+                visitor.visitDir(dir.details);
+                visit(dir, visitor, walk, postfix);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (parallelismConfigurationManager != null) {
+            parallelismConfigurationManager.removeListener(this);
+        }
+        executor.stop();
+    }
+
+    private static Object rootKey(File rootDir) {
+        try {
+            return fileKey(rootDir, Files.readAttributes(rootDir.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return fileKey(rootDir, null);
+        }
+    }
+
+    private static Object fileKey(File file, @Nullable BasicFileAttributes attrs) {
+        if (attrs != null && attrs.fileKey() != null) {
+            return attrs.fileKey();
+        }
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static class Walk {
+        final FileSystem fileSystem;
+        final Spec<? super FileTreeElement> spec;
+        final AtomicBoolean stopFlag;
+        final AtomicBoolean abandoned = new AtomicBoolean();
+
+        Walk(FileSystem fileSystem, Spec<? super FileTreeElement> spec, AtomicBoolean stopFlag) {
+            this.fileSystem = fileSystem;
+            this.spec = spec;
+            this.stopFlag = stopFlag;
+        }
+
+        boolean isStopped() {
+            return stopFlag.get() || abandoned.get();
+        }
+    }
+
+    private static class Entry {
+        final FileVisitDetails details;
+        final DirectoryListing directory;
+        final boolean brokenLink;
+
+        Entry(FileVisitDetails details, @Nullable DirectoryListing directory, boolean brokenLink) {
+            this.details = details;
+            this.directory = directory;
+            this.brokenLink = brokenLink;
+        }
+    }
+
+    private static class DirectoryListing implements Runnable {
+        private final Walk walk;
+        private final File dir;
+        private final RelativePath path;
+        private final FileVisitDetails details;
+        // Used to skip symbolic links that point back up the tree
+        private final List<Object> ancestorKeys;
+        private final CountDownLatch listed = new CountDownLatch(1);
+        private List<Entry> entries = new ArrayList<Entry>();
+        private RuntimeException failure;
+
+        DirectoryListing(Walk walk, File dir, RelativePath path, @Nullable FileVisitDetails details, List<Object> ancestorKeys) {
+            this.walk = walk;
+            this.dir = dir;
+            this.path = path;
+            this.details = details;
+            this.ancestorKeys = ancestorKeys;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!walk.isStopped()) {
+                    list();
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                listed.countDown();
+            }
+        }
+
+        void await() {
+            try {
+                listed.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+
+        private void list() {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                if (dir.isDirectory() && !dir.canRead()) {
+                    throw new GradleException(String.format("Could not list contents of directory '%s' as it is not readable.", dir));
+                }
+                // else, might be a link which points to nothing, or has been removed while we're visiting, or ...
+                throw new GradleException(String.format("Could not list contents of '%s'.", dir));
+            }
+            Arrays.sort(children);
+            for (int i = 0; !walk.isStopped() && i < children.length; i++) {
+                File child = children[i];
+                BasicFileAttributes attrs = readAttributes(child);
+                boolean isDirectory = attrs.isDirectory();
+                RelativePath childPath = path.append(!isDirectory, child.getName());
+                FileVisitDetails childDetails = new DefaultFileVisitDetails(child, childPath, walk.stopFlag, walk.fileSystem, walk.fileSystem, isDirectory, attrs.lastModifiedTime().toMillis(), attrs.size());
+                if (attrs.isSymbolicLink()) {
+                    entries.add(new Entry(childDetails, null, true));
+                } else if (isDirectory) {
+                    Object key = fileKey(child, attrs);
+                    if (ancestorKeys.contains(key)) {
+                        continue;
+                    }
+                    List<Object> childAncestorKeys = new ArrayList<Object>(ancestorKeys.size() + 1);
+                    childAncestorKeys.addAll(ancestorKeys);
+                    childAncestorKeys.add(key);
+                    entries.add(new Entry(childDetails, new DirectoryListing(walk, child, childPath, childDetails, childAncestorKeys), false));
+                } else {
+                    entries.add(new Entry(childDetails, null, false));
+                }
+            }
+        }
+
+        private static BasicFileAttributes readAttributes(File file) {
+            try {
+                return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                try {
+                    return Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException linkFailure) {
+                    throw new GradleException(String.format("Could not read path '%s'.", file), linkFailure);
+                }
+            }
+        }
+    }
+}
@@ -17,30 +17,60 @@ package org.gradle.api.internal.hash;
 
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.resource.TextResource;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
+/**
+ * Hashes file content with a {@link FileHashFunction}.
+ *
+ * Large files are read through a memory mapping, which avoids a system call for every buffer full of content.
+ * This is not done on Windows, where a mapped file cannot be deleted until the mapping is garbage collected.
+ */
 public class DefaultFileHasher implements FileHasher {
     private static final byte[] SIGNATURE = Hashing.md5().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
+    private static final long MAPPED_READ_THRESHOLD = 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 256 * 1024 * 1024;
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final HashFunction hashFunction;
+    private final String functionName;
+    private final boolean mappedReads;
+
+    public DefaultFileHasher() {
+        this(FileHashFunction.MD5);
+    }
+
+    public DefaultFileHasher(FileHashFunction function) {
+        this(function, !OperatingSystem.current().isWindows());
+    }
+
+    DefaultFileHasher(FileHashFunction function, boolean mappedReads) {
+        this.hashFunction = function.getHashFunction();
+        this.functionName = function.name();
+        this.mappedReads = mappedReads;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file content.", functionName), e);
         }
     }
 
@@ -54,10 +84,38 @@ public class DefaultFileHasher implements FileHasher {
     @Override
     public HashCode hash(File file) {
         try {
+            if (mappedReads && file.length() >= MAPPED_READ_THRESHOLD) {
+                return doHashMapped(file);
+            }
             InputStream inputStream = new FileInputStream(file);
             return doHash(inputStream);
         } catch (IOException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s'.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s'.", functionName, file), e);
+        }
+    }
+
+    private HashCode doHashMapped(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            byte[] buffer = takeBuffer();
+            try {
+                Hasher hasher = createFileHasher();
+                for (long pos = 0; pos < size; pos += MAPPED_REGION_SIZE) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAPPED_REGION_SIZE, size - pos));
+                    while (region.hasRemaining()) {
+                        int length = Math.min(buffer.length, region.remaining());
+                        region.get(buffer, 0, length);
+                        hasher.putBytes(buffer, 0, length);
+                    }
+                }
+                return hasher.hash();
+            } finally {
+                returnBuffer(buffer);
+            }
+        } finally {
+            randomAccessFile.close();
         }
     }
 
@@ -90,7 +148,7 @@ public class DefaultFileHasher implements FileHasher {
     private byte[] takeBuffer() {
         byte[] buffer = buffers.poll();
         if (buffer == null) {
-            buffer = new byte[8192];
+            buffer = new byte[65536];
         }
         return buffer;
     }
@@ -105,8 +163,8 @@ public class DefaultFileHasher implements FileHasher {
         return hash(fileDetails.getFile());
     }
 
-    private static Hasher createFileHasher() {
-        Hasher hasher = Hashing.md5().newHasher();
+    private Hasher createFileHasher() {
+        Hasher hasher = hashFunction.newHasher();
         hasher.putBytes(SIGNATURE);
         return hasher;
     }
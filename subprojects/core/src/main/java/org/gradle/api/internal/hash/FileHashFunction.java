@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * The function used to hash the content of files. Both produce 128 bit hashes.
+ *
+ * Hashes produced by different functions must not be mixed, so caches of file hashes are kept separately for each function.
+ */
+public enum FileHashFunction {
+    /**
+     * MD5, the default.
+     */
+    MD5(Hashing.md5(), ""),
+
+    /**
+     * 128 bit Murmur3. Much faster than MD5, but not cryptographic, so it should only be used where nobody can plant content with a colliding hash,
+     * for example when the build cache is not shared.
+     */
+    MURMUR3(Hashing.murmur3_128(), "-murmur3");
+
+    public static final String PROPERTY = "org.gradle.internal.filehasher.function";
+
+    private final HashFunction hashFunction;
+    private final String cacheNameSuffix;
+
+    FileHashFunction(HashFunction hashFunction, String cacheNameSuffix) {
+        this.hashFunction = hashFunction;
+        this.cacheNameSuffix = cacheNameSuffix;
+    }
+
+    HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the name of the cache to keep hashes produced by this function in.
+     */
+    public String cacheName(String baseName) {
+        return baseName + cacheNameSuffix;
+    }
+
+    /**
+     * Returns the function selected with the {@value #PROPERTY} system property, which defaults to {@link #MD5}.
+     */
+    public static FileHashFunction fromSystemProperties() {
+        String name = System.getProperty(PROPERTY, "md5");
+        for (FileHashFunction function : values()) {
+            if (function.name().equalsIgnoreCase(name)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("Unknown file hash function '" + name + "', expected one of 'md5' or 'murmur3'.");
+    }
+}
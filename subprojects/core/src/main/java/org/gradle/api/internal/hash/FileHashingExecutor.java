@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import org.gradle.api.Nullable;
+import org.gradle.concurrent.ParallelismConfiguration;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.ParallelismConfigurationListener;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes many files at once, using up to as many threads as the build may use workers.
+ *
+ * The calling thread takes part in the work, so that hashing always makes progress, even when the pool is busy with work for other callers.
+ */
+public class FileHashingExecutor implements Stoppable, ParallelismConfigurationListener {
+    private static final int MIN_FILES_PER_THREAD = 4;
+    private static final FileHashingExecutor SEQUENTIAL = new FileHashingExecutor(null, null, 1);
+
+    private final ManagedExecutor executor;
+    private final ParallelismConfigurationManager parallelismConfigurationManager;
+    private volatile int parallelism;
+
+    public FileHashingExecutor(ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+        this(executorFactory.create("File hashing", parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount()),
+            parallelismConfigurationManager,
+            parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount());
+        parallelismConfigurationManager.addListener(this);
+    }
+
+    private FileHashingExecutor(@Nullable ManagedExecutor executor, @Nullable ParallelismConfigurationManager parallelismConfigurationManager, int parallelism) {
+        this.executor = executor;
+        this.parallelismConfigurationManager = parallelismConfigurationManager;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns an executor that hashes all files on the calling thread.
+     */
+    public static FileHashingExecutor sequential() {
+        return SEQUENTIAL;
+    }
+
+    @Override
+    public void onParallelismConfigurationChange(ParallelismConfiguration parallelismConfiguration) {
+        parallelism = parallelismConfiguration.getMaxWorkerCount();
+        executor.setFixedPoolSize(parallelism);
+    }
+
+    /**
+     * Runs the given hashing jobs, returning once all of them have completed.
+     */
+    public void hashAll(final List<? extends Runnable> jobs) {
+        int threads = Math.min(parallelism, jobs.size() / MIN_FILES_PER_THREAD);
+        if (executor == null || threads <= 1) {
+            for (Runnable job : jobs) {
+                job.run();
+            }
+            return;
+        }
+
+        final AtomicInteger nextJob = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = nextJob.getAndIncrement()) < jobs.size()) {
+                    jobs.get(index).run();
+                }
+            }
+        };
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            futures.add(executor.submit(worker));
+        }
+        Throwable failure = null;
+        try {
+            worker.run();
+        } catch (Throwable t) {
+            failure = t;
+            // Stop the other workers from picking up more jobs
+            nextJob.set(jobs.size());
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+        if (failure != null) {
+            throw UncheckedException.throwAsUncheckedException(failure);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            parallelismConfigurationManager.removeListener(this);
+            executor.stop();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.TaskExecutionContext;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey;
+
+import java.util.Collections;
+
+/**
+ * Starts fetching the cached outputs of a task once it is known to be out-of-date, so that they are downloaded into the local cache
+ * and loaded from there. Tasks that are up-to-date never get here, so they don't cause any downloads.
+ */
+public class PrefetchCachedTaskOutputExecuter implements TaskExecuter {
+    private final BuildCacheController buildCache;
+    private final TaskExecuter delegate;
+
+    public PrefetchCachedTaskOutputExecuter(BuildCacheController buildCache, TaskExecuter delegate) {
+        this.buildCache = buildCache;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
+        TaskOutputCachingBuildCacheKey cacheKey = context.getBuildCacheKey();
+        if (state.getTaskOutputCaching().isEnabled() && cacheKey.isValid() && context.getTaskArtifactState().isAllowedToUseCachedResults()) {
+            buildCache.prefetch(Collections.singleton(cacheKey));
+        }
+        delegate.execute(task, state, context);
+    }
+}
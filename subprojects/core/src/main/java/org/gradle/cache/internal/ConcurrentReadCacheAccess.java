@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.internal.Factory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs reads on the calling thread instead of on the cache worker when no updates are waiting to be done, so that many threads can read at once.
+ *
+ * Only used for stores that can be read while they are written to. When updates are waiting, reads go through the worker as usual,
+ * so that they see the result of these updates.
+ */
+class ConcurrentReadCacheAccess implements AsyncCacheAccess {
+    private final AsyncCacheAccess worker;
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+
+    ConcurrentReadCacheAccess(AsyncCacheAccess worker) {
+        this.worker = worker;
+    }
+
+    @Override
+    public void enqueue(final Runnable task) {
+        pendingUpdates.incrementAndGet();
+        try {
+            worker.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        pendingUpdates.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingUpdates.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> T read(Factory<T> task) {
+        if (pendingUpdates.get() == 0) {
+            return task.create();
+        }
+        return worker.read(task);
+    }
+
+    @Override
+    public void flush() {
+        worker.flush();
+    }
+}
@@ -22,7 +22,6 @@ import org.gradle.api.GradleException;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.cache.PersistentIndexedCacheParameters;
-import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
 import org.gradle.cache.internal.filelock.LockOptions;
 import org.gradle.internal.Factories;
@@ -42,7 +41,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.gradle.cache.internal.FileLockManager.LockMode.Exclusive;
 
@@ -60,28 +61,44 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final File baseDir;
     private final CacheCleanupAction cleanupAction;
     private final ExecutorFactory executorFactory;
-    private final FileAccess fileAccess = new UnitOfWorkFileAccess();
+    private final IndexedCacheStoreFactory storeFactory;
+    private final FileAccess fileAccess;
+    /**
+     * Keeps concurrent readers out while the stores are written to or the file lock is released, see {@link ConcurrentReadFileAccess}.
+     *
+     * When both locks are held, {@link #stateLock} is taken first: the file lock is released while holding the state lock, and waits for this lock.
+     * So this lock must never be held while taking the state lock.
+     */
+    private final ReadWriteLock storeAccessLock = new ReentrantReadWriteLock();
     private final Map<String, IndexedCacheEntry> caches = new HashMap<String, IndexedCacheEntry>();
     private final AbstractCrossProcessCacheAccess crossProcessCacheAccess;
     private final CacheAccessOperationsStack operations;
 
     private ManagedExecutor cacheUpdateExecutor;
     private CacheAccessWorker cacheAccessWorker;
+    private AsyncCacheAccess asyncCacheAccess;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
 
     private boolean open;
     private Thread owner;
-    private FileLock fileLock;
+    // Only cleared while holding the write lock of storeAccessLock, so concurrent readers can use it while holding the read lock
+    private volatile FileLock fileLock;
     private FileLock.State stateAtOpen;
     private Runnable fileLockHeldByOwner;
     private int cacheClosedCount;
 
     public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions lockOptions, File baseDir, FileLockManager lockManager, CacheInitializationAction initializationAction, CacheCleanupAction cleanupAction, ExecutorFactory executorFactory) {
+        this(cacheDisplayName, lockTarget, lockOptions, baseDir, lockManager, initializationAction, cleanupAction, executorFactory, IndexedCacheStoreFactory.BTREE);
+    }
+
+    public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions lockOptions, File baseDir, FileLockManager lockManager, CacheInitializationAction initializationAction, CacheCleanupAction cleanupAction, ExecutorFactory executorFactory, IndexedCacheStoreFactory storeFactory) {
         this.cacheDisplayName = cacheDisplayName;
         this.baseDir = baseDir;
         this.cleanupAction = cleanupAction;
         this.executorFactory = executorFactory;
+        this.storeFactory = storeFactory;
+        this.fileAccess = storeFactory.isConcurrentlyReadable() ? new ConcurrentReadFileAccess() : new UnitOfWorkFileAccess();
         this.operations = new CacheAccessOperationsStack();
 
         Action<FileLock> onFileLockAcquireAction = new Action<FileLock>() {
@@ -117,10 +134,20 @@ public class DefaultCacheAccess implements CacheCoordinator {
             cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this);
             cacheUpdateExecutor = executorFactory.create("Cache worker for " + cacheDisplayName);
             cacheUpdateExecutor.execute(cacheAccessWorker);
+            if (storeFactory.isConcurrentlyReadable()) {
+                asyncCacheAccess = new ConcurrentReadCacheAccess(cacheAccessWorker);
+            } else {
+                asyncCacheAccess = cacheAccessWorker;
+            }
         }
         return cacheAccessWorker;
     }
 
+    private synchronized AsyncCacheAccess getAsyncCacheAccess() {
+        getCacheAccessWorker();
+        return asyncCacheAccess;
+    }
+
     @Override
     public void open() {
         stateLock.lock();
@@ -148,6 +175,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
         if (cacheAccessWorker != null) {
             cacheAccessWorker.stop();
             cacheAccessWorker = null;
+            asyncCacheAccess = null;
         }
         if (cacheUpdateExecutor != null) {
             cacheUpdateExecutor.stop();
@@ -271,8 +299,8 @@ public class DefaultCacheAccess implements CacheCoordinator {
             if (entry == null) {
                 final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
                 LOG.info("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = new Factory<BTreePersistentIndexedCache<K, V>>() {
-                    public BTreePersistentIndexedCache<K, V> create() {
+                Factory<IndexedCacheStore<K, V>> indexedCacheFactory = new Factory<IndexedCacheStore<K, V>>() {
+                    public IndexedCacheStore<K, V> create() {
                         return doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
                     }
                 };
@@ -280,7 +308,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
                 MultiProcessSafePersistentIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
                 CacheDecorator decorator = parameters.getCacheDecorator();
                 if (decorator != null) {
-                    indexedCache = decorator.decorate(cacheFile.getAbsolutePath(), parameters.getCacheName(), indexedCache, crossProcessCacheAccess, getCacheAccessWorker());
+                    indexedCache = decorator.decorate(cacheFile.getAbsolutePath(), parameters.getCacheName(), indexedCache, crossProcessCacheAccess, getAsyncCacheAccess());
                     if (fileLock == null) {
                         useCache(NO_OP);
                     }
@@ -299,8 +327,8 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
-    <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+    <K, V> IndexedCacheStore<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        return storeFactory.create(cacheFile, keySerializer, valueSerializer);
     }
 
     /**
@@ -325,6 +353,8 @@ public class DefaultCacheAccess implements CacheCoordinator {
      */
     private void beforeLockRelease(FileLock fileLock) {
         assert this.fileLock == fileLock;
+        // Wait for concurrent readers, and keep new ones out until the lock has been released
+        storeAccessLock.writeLock().lock();
         try {
             cacheClosedCount++;
             takeOwnershipNow();
@@ -345,6 +375,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
         } finally {
             this.fileLock = null;
             this.stateAtOpen = null;
+            storeAccessLock.writeLock().unlock();
         }
     }
 
@@ -399,6 +430,56 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
+    /**
+     * Lets threads other than the owner read from the stores, for stores that can be read while they are written to.
+     *
+     * Such a thread has to hold the file lock through {@link CrossProcessCacheAccess#withFileLock(Factory)}, as the cache decorators do,
+     * so that the lock is not released while it reads. Writes still mark the lock file as dirty while they run,
+     * so readers are kept out while a write is in progress instead of seeing the lock file as not cleanly unlocked.
+     */
+    private class ConcurrentReadFileAccess extends UnitOfWorkFileAccess {
+        @Override
+        public <T> T readFile(Factory<? extends T> action) throws LockTimeoutException {
+            storeAccessLock.readLock().lock();
+            try {
+                return getFileLockForConcurrentAccess().readFile(action);
+            } finally {
+                storeAccessLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void updateFile(Runnable action) throws LockTimeoutException {
+            storeAccessLock.writeLock().lock();
+            try {
+                getFileLockForConcurrentAccess().updateFile(action);
+            } finally {
+                storeAccessLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void writeFile(Runnable action) throws LockTimeoutException {
+            storeAccessLock.writeLock().lock();
+            try {
+                getFileLockForConcurrentAccess().writeFile(action);
+            } finally {
+                storeAccessLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding {@link #storeAccessLock}, so that the file lock cannot be released while it is used.
+     */
+    private FileLock getFileLockForConcurrentAccess() {
+        FileLock fileLock = this.fileLock;
+        if (fileLock == null) {
+            throw new IllegalStateException(String.format("The %s has not been locked for this thread. File lock: %s, owner: %s", cacheDisplayName, false, owner));
+        }
+        return fileLock;
+    }
+
     Thread getOwner() {
         return owner;
     }
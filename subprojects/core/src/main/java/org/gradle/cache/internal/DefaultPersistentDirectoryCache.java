@@ -43,7 +43,11 @@ public class DefaultPersistentDirectoryCache extends DefaultPersistentDirectoryS
     private boolean didRebuild;
 
     public DefaultPersistentDirectoryCache(File dir, String displayName, CacheValidator validator, Map<String, ?> properties, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, Action<? super PersistentCache> initAction, Action<? super PersistentCache> cleanupAction, FileLockManager lockManager, ExecutorFactory executorFactory) {
-        super(dir, displayName, lockTarget, lockOptions, lockManager, executorFactory);
+        this(dir, displayName, validator, properties, lockTarget, lockOptions, initAction, cleanupAction, lockManager, executorFactory, IndexedCacheStoreFactory.BTREE);
+    }
+
+    public DefaultPersistentDirectoryCache(File dir, String displayName, CacheValidator validator, Map<String, ?> properties, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, Action<? super PersistentCache> initAction, Action<? super PersistentCache> cleanupAction, FileLockManager lockManager, ExecutorFactory executorFactory, IndexedCacheStoreFactory storeFactory) {
+        super(dir, displayName, lockTarget, lockOptions, lockManager, executorFactory, storeFactory);
         this.validator = validator;
         this.initAction = initAction;
         this.cleanupAction = cleanupAction;
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.mapped.MappedHashIndexedCache;
+import org.gradle.internal.serialize.Serializer;
+
+import java.io.File;
+
+/**
+ * Creates the storage for indexed caches.
+ */
+public abstract class IndexedCacheStoreFactory {
+
+    public static final String IMPLEMENTATION_PROPERTY = "org.gradle.cache.internal.indexedcache";
+
+    /**
+     * Stores entries in a B-tree, accessed one block at a time.
+     */
+    public static final IndexedCacheStoreFactory BTREE = new IndexedCacheStoreFactory() {
+        @Override
+        public <K, V> IndexedCacheStore<K, V> create(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+            return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+        }
+    };
+
+    /**
+     * Stores entries in an append-only data file, with a memory-mapped hash index that can be read concurrently.
+     */
+    public static final IndexedCacheStoreFactory MAPPED = new IndexedCacheStoreFactory() {
+        @Override
+        public <K, V> IndexedCacheStore<K, V> create(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+            return new MappedHashIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+        }
+
+        @Override
+        public boolean isConcurrentlyReadable() {
+            return true;
+        }
+    };
+
+    /**
+     * Creates the store for the given cache file. The store may use other files next to the given file.
+     */
+    public abstract <K, V> IndexedCacheStore<K, V> create(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer);
+
+    /**
+     * Returns whether the stores created by this factory can be read from many threads while another thread writes to them.
+     */
+    public boolean isConcurrentlyReadable() {
+        return false;
+    }
+
+    /**
+     * Returns the factory selected with the {@value #IMPLEMENTATION_PROPERTY} system property, which defaults to {@link #BTREE}.
+     */
+    public static IndexedCacheStoreFactory fromSystemProperties() {
+        String implementation = System.getProperty(IMPLEMENTATION_PROPERTY, "btree");
+        if (implementation.equals("btree")) {
+            return BTREE;
+        }
+        if (implementation.equals("mapped")) {
+            return MAPPED;
+        }
+        throw new IllegalArgumentException("Unknown indexed cache implementation '" + implementation + "', expected one of 'btree' or 'mapped'.");
+    }
+}
@@ -15,11 +15,14 @@
  */
 package org.gradle.cache.internal.btree;
 
+import com.google.common.io.Files;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.internal.IndexedCacheStore;
 import org.gradle.internal.io.StreamByteBuffer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.util.GFileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,13 +47,17 @@ import java.util.List;
 // todo - free list leaks disk space
 // todo - merge adjacent free blocks
 // todo - use more efficient lookup for free block with nearest size
-public class BTreePersistentIndexedCache<K, V> {
+public class BTreePersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
     private final File cacheFile;
+    private final Serializer<K> keySerializer;
     private final KeyHasher<K> keyHasher;
     private final Serializer<V> serializer;
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
+    private final int maxFreeListEntries;
+    private final FreeListBlockStore freeListStore;
     private final StateCheckBlockStore store;
     private HeaderBlock header;
 
@@ -61,12 +68,15 @@ public class BTreePersistentIndexedCache<K, V> {
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
         this.cacheFile = cacheFile;
+        this.keySerializer = keySerializer;
         this.keyHasher = new KeyHasher<K>(keySerializer);
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
+        this.maxFreeListEntries = maxFreeListEntries;
         BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
-        store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
+        freeListStore = new FreeListBlockStore(cachingStore, maxFreeListEntries);
+        store = new StateCheckBlockStore(freeListStore);
         try {
             open();
         } catch (Exception e) {
@@ -88,6 +98,17 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    /**
+     * Compacts the file when most of it is taken up by free blocks. This happens while the cache is being closed, so while the owning
+     * process still holds the lock for the cache and other processes have closed the file, and without delaying the first access to the cache.
+     */
+    private void compactIfFragmented() throws Exception {
+        long fileSize = cacheFile.length();
+        if (fileSize >= MIN_COMPACTION_SIZE && freeListStore.getFreeSize() * 2 > fileSize) {
+            doCompact(false);
+        }
+    }
+
     private void doOpen() throws Exception {
         BlockStore.Factory factory = new BlockStore.Factory() {
             public Object create(Class<? extends BlockPayload> type) {
@@ -116,6 +137,7 @@ public class BTreePersistentIndexedCache<K, V> {
         header = store.readFirst(HeaderBlock.class);
     }
 
+    @Override
     public V get(K key) {
         try {
             try {
@@ -133,6 +155,7 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void put(K key, V value) {
         try {
             long hashCode = keyHasher.getHashCode(key);
@@ -158,6 +181,7 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void remove(K key) {
         try {
             Lookup lookup = header.getRoot().find(key);
@@ -190,23 +214,90 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void close() {
         LOGGER.debug("Closing {}", this);
         try {
-            store.close();
+            try {
+                if (store.isOpen()) {
+                    compactIfFragmented();
+                }
+            } finally {
+                store.close();
+            }
         } catch (Exception e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    @Override
     public boolean isOpen() {
         return store.isOpen();
     }
 
+    /**
+     * Rewrites the live entries of this cache into a new file, so that they are stored contiguously and free blocks are released.
+     */
+    public void compact() {
+        try {
+            doCompact(true);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not compact %s.", this), e);
+        }
+    }
+
+    private void doCompact(boolean reopen) throws Exception {
+        LOGGER.debug("Compacting {}", this);
+        File compactedFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".compacted");
+        GFileUtils.deleteQuietly(compactedFile);
+        try {
+            BTreePersistentIndexedCache<K, V> compacted = new BTreePersistentIndexedCache<K, V>(compactedFile, keySerializer, serializer, maxChildIndexEntries, maxFreeListEntries);
+            try {
+                copyEntries(header.getRoot(), compacted);
+                compacted.store.flush();
+            } finally {
+                compacted.store.close();
+            }
+            store.close();
+            try {
+                GFileUtils.forceDelete(cacheFile);
+                Files.move(compactedFile, cacheFile);
+            } finally {
+                if (reopen) {
+                    doOpen();
+                }
+            }
+        } finally {
+            GFileUtils.deleteQuietly(compactedFile);
+        }
+    }
+
+    private void copyEntries(IndexBlock block, BTreePersistentIndexedCache<K, V> target) throws Exception {
+        // Visit the entries in order of their hash, so that the target tree is filled from left to right
+        for (IndexEntry entry : block.entries) {
+            if (!entry.childIndexBlock.isNull()) {
+                copyEntries(store.read(entry.childIndexBlock, IndexBlock.class), target);
+            }
+            DataBlock dataBlock = store.read(entry.dataBlock, DataBlock.class);
+            target.putSerialized(entry.hashCode, dataBlock.buffer);
+        }
+        if (!block.tailPos.isNull()) {
+            copyEntries(store.read(block.tailPos, IndexBlock.class), target);
+        }
+    }
+
+    private void putSerialized(long hashCode, StreamByteBuffer serializedValue) throws Exception {
+        Lookup lookup = header.getRoot().find(hashCode);
+        DataBlock newBlock = new DataBlock(null, serializedValue);
+        store.write(newBlock);
+        lookup.indexBlock.put(hashCode, newBlock.getPos());
+        // Flushed once all entries have been copied
+    }
+
     private void rebuild() throws Exception {
         LOGGER.warn("{} is corrupt. Discarding.", this);
         store.clear();
-        close();
+        store.close();
         doOpen();
     }
 
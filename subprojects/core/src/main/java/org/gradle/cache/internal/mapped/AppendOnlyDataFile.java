@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.mapped;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file that records are only ever appended to. Records are addressed by their offset in the file.
+ *
+ * Appending and reading use positional access, so they can happen concurrently from many threads.
+ */
+class AppendOnlyDataFile {
+    private static final int MAGIC = 0x47444154;
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final AtomicLong end;
+    private final long generation;
+
+    /**
+     * Opens the given file, creating it with the given generation if it does not exist.
+     */
+    AppendOnlyDataFile(File file, long generationForNewFile) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(generationForNewFile).flip();
+                write(header, 0);
+                this.generation = generationForNewFile;
+            } else {
+                ByteBuffer header = readBuffer(0, HEADER_SIZE);
+                if (header == null || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new CorruptedIndexException(file + " is not a data file of a supported version.");
+                }
+                this.generation = header.getLong();
+            }
+            this.end = new AtomicLong(channel.size());
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        } catch (RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    long getSize() {
+        return end.get();
+    }
+
+    long append(byte[] record) throws IOException {
+        long pos = end.getAndAdd(record.length);
+        write(ByteBuffer.wrap(record), pos);
+        return pos;
+    }
+
+    /**
+     * Reads the record at the given offset, or returns {@code null} when the file ends before the record does.
+     */
+    byte[] read(long pos, int length) throws IOException {
+        if (pos < HEADER_SIZE || pos + length > end.get()) {
+            return null;
+        }
+        ByteBuffer buffer = readBuffer(pos, length);
+        return buffer == null ? null : buffer.array();
+    }
+
+    private ByteBuffer readBuffer(long pos, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos + buffer.position());
+            if (read < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void write(ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, pos + buffer.position());
+        }
+    }
+
+    void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
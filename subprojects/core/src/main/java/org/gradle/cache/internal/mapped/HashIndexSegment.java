@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.mapped;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An open addressing hash table of record locations, kept in a memory-mapped file.
+ *
+ * Each slot holds the 64 bit hash of a key and the offset and length of the record for that key in the data file.
+ * A hash of 0 marks an empty slot, and an offset of -1 marks a removed entry.
+ * Hashes may collide, so callers check that the record a slot points to is for the key they are looking for.
+ *
+ * Callers hold the read lock to look up entries, and the write lock to change them.
+ */
+class HashIndexSegment {
+    private static final int MAGIC = 0x47494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int MIN_CAPACITY = 64;
+    private static final long REMOVED = -1;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int used;
+    private long generation;
+
+    interface RecordMatcher {
+        boolean matches(long offset, int length) throws IOException;
+    }
+
+    interface Visitor {
+        void visit(int slot, long offset, int length) throws IOException;
+    }
+
+    /**
+     * Opens the given file, creating an empty index with the given generation if it does not exist.
+     */
+    HashIndexSegment(File file, long generationForNewFile) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            long fileSize = channel.size();
+            if (fileSize == 0) {
+                map(MIN_CAPACITY);
+                generation = generationForNewFile;
+                writeHeader();
+            } else {
+                if (fileSize < HEADER_SIZE) {
+                    throw new CorruptedIndexException(file + " is truncated.");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new CorruptedIndexException(file + " is not an index file of a supported version.");
+                }
+                capacity = buffer.getInt(8);
+                size = buffer.getInt(12);
+                used = buffer.getInt(16);
+                generation = buffer.getLong(24);
+                if (Integer.bitCount(capacity) != 1 || fileSize < slotPosition(capacity) || size < 0 || used < size || used > capacity) {
+                    throw new CorruptedIndexException(file + " has an invalid header.");
+                }
+            }
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        } catch (RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    ReadWriteLock getLock() {
+        return lock;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    void setGeneration(long generation) {
+        this.generation = generation;
+        writeHeader();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the entry for the given key, or -1 if there is none.
+     */
+    int find(long hash, RecordMatcher matcher) throws IOException {
+        int mask = capacity - 1;
+        for (int i = 0, slot = (int) hash & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+            long slotHash = buffer.getLong(slotPosition(slot));
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                long offset = getOffset(slot);
+                if (offset != REMOVED && matcher.matches(offset, getLength(slot))) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    long getOffset(int slot) {
+        return buffer.getLong(slotPosition(slot) + 8);
+    }
+
+    int getLength(int slot) {
+        return buffer.getInt(slotPosition(slot) + 16);
+    }
+
+    /**
+     * Returns true if the record replaces an existing one.
+     */
+    boolean put(long hash, long offset, int length, RecordMatcher matcher) throws IOException {
+        int existing = find(hash, matcher);
+        if (existing >= 0) {
+            setLocation(existing, offset, length);
+            return true;
+        }
+        if (used + 1 > capacity - capacity / 4) {
+            rehash(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(size + 1, 1)) * 4));
+        }
+        int mask = capacity - 1;
+        int slot = (int) hash & mask;
+        while (buffer.getLong(slotPosition(slot)) != 0 && getOffset(slot) != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+        if (buffer.getLong(slotPosition(slot)) == 0) {
+            used++;
+        }
+        size++;
+        setLocation(slot, offset, length);
+        buffer.putLong(slotPosition(slot), hash);
+        writeHeader();
+        return false;
+    }
+
+    void setLocation(int slot, long offset, int length) {
+        int pos = slotPosition(slot);
+        buffer.putLong(pos + 8, offset);
+        buffer.putInt(pos + 16, length);
+    }
+
+    boolean remove(long hash, RecordMatcher matcher) throws IOException {
+        int slot = find(hash, matcher);
+        if (slot < 0) {
+            return false;
+        }
+        // Keep the hash, so that lookups continue probing past this slot
+        setLocation(slot, REMOVED, 0);
+        size--;
+        writeHeader();
+        return true;
+    }
+
+    void visitEntries(Visitor visitor) throws IOException {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (buffer.getLong(slotPosition(slot)) != 0) {
+                long offset = getOffset(slot);
+                if (offset != REMOVED) {
+                    visitor.visit(slot, offset, getLength(slot));
+                }
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) throws IOException {
+        long[] hashes = new long[size];
+        long[] offsets = new long[size];
+        int[] lengths = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long slotHash = buffer.getLong(slotPosition(slot));
+            if (slotHash != 0 && getOffset(slot) != REMOVED) {
+                hashes[count] = slotHash;
+                offsets[count] = getOffset(slot);
+                lengths[count] = getLength(slot);
+                count++;
+            }
+        }
+
+        map(newCapacity);
+        for (int pos = HEADER_SIZE; pos < slotPosition(newCapacity); pos += 8) {
+            buffer.putLong(pos, 0);
+        }
+        int mask = newCapacity - 1;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) hashes[i] & mask;
+            while (buffer.getLong(slotPosition(slot)) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            setLocation(slot, offsets[i], lengths[i]);
+            buffer.putLong(slotPosition(slot), hashes[i]);
+        }
+        size = count;
+        used = count;
+        writeHeader();
+    }
+
+    private void map(int newCapacity) throws IOException {
+        // The file only ever grows, as a region that is still mapped cannot be truncated on all platforms
+        long mappedSize = Math.max(slotPosition(newCapacity), channel.size());
+        MappedByteBuffer previous = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        capacity = newCapacity;
+        if (previous != null) {
+            // Entries are copied from the previous mapping, so it is no longer needed
+            MappedBuffers.unmap(previous);
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, size);
+        buffer.putInt(16, used);
+        buffer.putLong(24, generation);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the index to disk and releases the mapping. Waits for any readers to finish.
+     */
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+                MappedBuffers.unmap(buffer);
+                buffer = null;
+            }
+            randomAccessFile.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
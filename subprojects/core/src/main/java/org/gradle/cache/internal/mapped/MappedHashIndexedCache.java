@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.mapped;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.internal.IndexedCacheStore;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An indexed cache store that can be read and written from many threads at once.
+ *
+ * Records are appended to a data file and located through a hash index that is split into segments, each kept in its own memory-mapped
+ * file and guarded by its own read-write lock. Lookups of keys in different segments do not contend, and lookups in the same segment
+ * only wait for writes to that segment.
+ *
+ * Records that are replaced or removed stay in the data file until the store is compacted, which happens when it is closed and most of
+ * the data file is no longer used. Compacting on close keeps the cost off the first access to the store in a build. Working out how much
+ * of the data file is used means visiting the whole index, so this is only done when records have been replaced or removed since the
+ * store was opened.
+ */
+public class MappedHashIndexedCache<K, V> implements IndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedHashIndexedCache.class);
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int SEGMENT_BITS = 4;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final File cacheFile;
+    private final File dir;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final HashIndexSegment[] segments = new HashIndexSegment[1 << SEGMENT_BITS];
+    private AppendOnlyDataFile data;
+    private volatile boolean open;
+    // Records are only discarded by replacing or removing them, so the store needs no compaction check on close unless this is set
+    private volatile boolean recordsDiscarded;
+
+    public MappedHashIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this.cacheFile = cacheFile;
+        this.dir = new File(cacheFile.getParentFile(), Files.getNameWithoutExtension(cacheFile.getName()) + ".mapped");
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        try {
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + cacheFile.getName() + " (" + cacheFile + ")";
+    }
+
+    private void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        try {
+            doOpen();
+        } catch (CorruptedIndexException e) {
+            LOGGER.warn("{} is corrupt. Discarding.", this);
+            closeFiles();
+            GFileUtils.deleteDirectory(dir);
+            doOpen();
+        }
+        open = true;
+    }
+
+    private void doOpen() throws IOException {
+        GFileUtils.mkdirs(dir);
+        File dataFile = dataFile();
+        File compactedFile = compactedDataFile();
+        boolean newStore = !dataFile.exists();
+        data = new AppendOnlyDataFile(dataFile, 0);
+        for (int i = 0; i < segments.length; i++) {
+            File indexFile = new File(dir, "index-" + i + ".bin");
+            if (newStore) {
+                GFileUtils.deleteQuietly(indexFile);
+            } else if (!indexFile.exists()) {
+                throw new CorruptedIndexException(indexFile + " is missing.");
+            }
+            segments[i] = new HashIndexSegment(indexFile, data.getGeneration());
+        }
+        if (compactedFile.exists()) {
+            finishCompaction(compactedFile);
+        }
+        for (HashIndexSegment segment : segments) {
+            if (segment.getGeneration() != data.getGeneration()) {
+                throw new CorruptedIndexException(segment.getFile() + " does not belong to " + data.getFile() + ".");
+            }
+        }
+    }
+
+    private File dataFile() {
+        return new File(dir, "data.bin");
+    }
+
+    private File compactedDataFile() {
+        return new File(dir, "data.bin.compacted");
+    }
+
+    private void compactIfRequired() throws IOException {
+        if (data == null || !recordsDiscarded) {
+            return;
+        }
+        long dataSize = data.getSize() - AppendOnlyDataFile.HEADER_SIZE;
+        if (dataSize < MIN_COMPACTION_SIZE) {
+            return;
+        }
+        final long[] liveSize = new long[1];
+        for (HashIndexSegment segment : segments) {
+            segment.visitEntries(new HashIndexSegment.Visitor() {
+                @Override
+                public void visit(int slot, long offset, int length) {
+                    liveSize[0] += length;
+                }
+            });
+        }
+        if (liveSize[0] * 2 < dataSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the live records into a new data file, then points the index at it.
+     *
+     * The new data file has the next generation. If the process stops before all index segments have been updated, the segments no longer
+     * match either data file and the store is discarded when it is next opened.
+     */
+    private void compact() throws IOException {
+        LOGGER.debug("Compacting {}", this);
+        File compactedFile = compactedDataFile();
+        GFileUtils.deleteQuietly(compactedFile);
+        final AppendOnlyDataFile compacted = new AppendOnlyDataFile(compactedFile, data.getGeneration() + 1);
+        try {
+            for (final HashIndexSegment segment : segments) {
+                segment.visitEntries(new HashIndexSegment.Visitor() {
+                    @Override
+                    public void visit(int slot, long offset, int length) throws IOException {
+                        byte[] record = data.read(offset, length);
+                        if (record == null) {
+                            throw new CorruptedIndexException(segment.getFile() + " refers to a record beyond the end of " + data.getFile() + ".");
+                        }
+                        segment.setLocation(slot, compacted.append(record), length);
+                    }
+                });
+                segment.setGeneration(compacted.getGeneration());
+            }
+        } finally {
+            compacted.close();
+        }
+        finishCompaction(compactedFile);
+    }
+
+    private void finishCompaction(File compactedFile) throws IOException {
+        AppendOnlyDataFile compacted = new AppendOnlyDataFile(compactedFile, data.getGeneration());
+        long generation = compacted.getGeneration();
+        compacted.close();
+        if (generation != segments[0].getGeneration()) {
+            // Compaction did not finish
+            GFileUtils.deleteQuietly(compactedFile);
+            return;
+        }
+        data.close();
+        File dataFile = dataFile();
+        GFileUtils.forceDelete(dataFile);
+        if (!compactedFile.renameTo(dataFile)) {
+            throw new IOException(String.format("Could not rename %s to %s.", compactedFile, dataFile));
+        }
+        data = new AppendOnlyDataFile(dataFile, generation);
+    }
+
+    @Override
+    public V get(K key) {
+        try {
+            byte[] keyBytes = serializeKey(key);
+            long hash = hash(keyBytes);
+            HashIndexSegment segment = segmentFor(hash);
+            RecordMatcher matcher = new RecordMatcher(keyBytes);
+            Lock lock = segment.getLock().readLock();
+            lock.lock();
+            try {
+                if (segment.find(hash, matcher) < 0) {
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            byte[] record = matcher.record;
+            int valueOffset = 4 + keyBytes.length;
+            KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(record, valueOffset, record.length - valueOffset));
+            return valueSerializer.read(decoder);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        try {
+            byte[] keyBytes = serializeKey(key);
+            ByteArrayOutputStream recordStream = new ByteArrayOutputStream();
+            recordStream.write(ByteBuffer.allocate(4).putInt(keyBytes.length).array());
+            recordStream.write(keyBytes);
+            KryoBackedEncoder encoder = new KryoBackedEncoder(recordStream);
+            valueSerializer.write(encoder, value);
+            encoder.flush();
+            byte[] record = recordStream.toByteArray();
+
+            // Append outside the lock, so that writers to the same segment only contend for the index update
+            long offset = data.append(record);
+            long hash = hash(keyBytes);
+            HashIndexSegment segment = segmentFor(hash);
+            Lock lock = segment.getLock().writeLock();
+            lock.lock();
+            try {
+                if (segment.put(hash, offset, record.length, new RecordMatcher(keyBytes))) {
+                    recordsDiscarded = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        try {
+            byte[] keyBytes = serializeKey(key);
+            long hash = hash(keyBytes);
+            HashIndexSegment segment = segmentFor(hash);
+            Lock lock = segment.getLock().writeLock();
+            lock.lock();
+            try {
+                if (segment.remove(hash, new RecordMatcher(keyBytes))) {
+                    recordsDiscarded = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Closing {}", this);
+        open = false;
+        try {
+            try {
+                compactIfRequired();
+            } finally {
+                closeFiles();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != null) {
+                segments[i].close();
+                segments[i] = null;
+            }
+        }
+        if (data != null) {
+            data.close();
+            data = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    private byte[] serializeKey(K key) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(outputStream, 64);
+        keySerializer.write(encoder, key);
+        encoder.flush();
+        return outputStream.toByteArray();
+    }
+
+    private static long hash(byte[] keyBytes) {
+        long hash = HASH_FUNCTION.hashBytes(keyBytes).asLong();
+        // 0 marks an empty slot in the index
+        return hash == 0 ? 1 : hash;
+    }
+
+    private HashIndexSegment segmentFor(long hash) {
+        // The index segments use the low bits of the hash to find a slot, so pick the segment using the high bits
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Checks whether a record is for a given key, keeping the last record that was read.
+     */
+    private class RecordMatcher implements HashIndexSegment.RecordMatcher {
+        private final byte[] keyBytes;
+        private byte[] record;
+
+        RecordMatcher(byte[] keyBytes) {
+            this.keyBytes = keyBytes;
+        }
+
+        @Override
+        public boolean matches(long offset, int length) throws IOException {
+            if (length < 4 + keyBytes.length) {
+                return false;
+            }
+            byte[] candidate = data.read(offset, length);
+            if (candidate == null || ByteBuffer.wrap(candidate).getInt() != keyBytes.length) {
+                // Treat a record that is not complete as missing
+                return false;
+            }
+            for (int i = 0; i < keyBytes.length; i++) {
+                if (candidate[4 + i] != keyBytes[i]) {
+                    return false;
+                }
+            }
+            record = candidate;
+            return true;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.gradle.caching.configuration;
 
 import org.gradle.api.Incubating;
+import org.gradle.api.Nullable;
 
 /**
  * Base implementation for build cache service configuration.
@@ -27,6 +28,7 @@ import org.gradle.api.Incubating;
 public abstract class AbstractBuildCache implements BuildCache {
     private boolean enabled = true;
     private boolean push;
+    private String codec;
 
     /**
      * {@inheritDoc}
@@ -59,4 +61,25 @@ public abstract class AbstractBuildCache implements BuildCache {
     public void setPush(boolean push) {
         this.push = push;
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 4.2
+     */
+    @Nullable
+    @Override
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 4.2
+     */
+    @Override
+    public void setCodec(@Nullable String codec) {
+        this.codec = codec;
+    }
 }
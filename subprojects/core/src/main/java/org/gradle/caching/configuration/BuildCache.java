@@ -17,6 +17,7 @@
 package org.gradle.caching.configuration;
 
 import org.gradle.api.Incubating;
+import org.gradle.api.Nullable;
 
 
 /**
@@ -46,4 +47,20 @@ public interface BuildCache {
      * Sets whether pushing to the build cache is enabled.
      */
     void setPush(boolean enabled);
+
+    /**
+     * Returns the codec used to write entries to the build cache, or {@code null} to use the default codec.
+     *
+     * @since 4.2
+     */
+    @Nullable
+    String getCodec();
+
+    /**
+     * Sets the codec used to write entries to the build cache. Available codecs are {@code none}, {@code fast}, {@code default} and {@code best}.
+     * Entries written with any codec can be read regardless of the codec that is set.
+     *
+     * @since 4.2
+     */
+    void setCodec(@Nullable String codec);
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.api.Nullable;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A build cache service that can check whether it has entries for many keys at once.
+ */
+public interface BatchingBuildCacheService extends BuildCacheService {
+
+    /**
+     * Returns those of the given keys that the cache has entries for, or {@code null} if the cache cannot answer this in a single request.
+     */
+    @Nullable
+    Set<BuildCacheKey> contains(Collection<BuildCacheKey> keys) throws BuildCacheException;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * A load of an entry held by the in-memory tier of the build cache.
+ *
+ * Only emitted when the entry is in memory. Lookups of entries that are not in memory are counted by {@link BuildCacheInMemoryTierBuildOperationType}.
+ * The load may fail, in which case the entry is dropped from memory and loaded from the other build caches instead.
+ */
+public final class BuildCacheInMemoryLoadBuildOperationType implements BuildOperationType<BuildCacheInMemoryLoadBuildOperationType.Details, BuildCacheInMemoryLoadBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The cache key.
+         */
+        String getCacheKey();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of bytes of the loaded cache artifact.
+         */
+        long getArchiveSize();
+
+        /**
+         * The number of entries in the loaded cache artifact.
+         */
+        long getArchiveEntryCount();
+
+    }
+
+    private BuildCacheInMemoryLoadBuildOperationType() {
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Describes how the in-memory tier of the build cache was used during a build.
+ *
+ * Emitted when the build cache is closed at the end of the build.
+ */
+public final class BuildCacheInMemoryTierBuildOperationType implements BuildOperationType<BuildCacheInMemoryTierBuildOperationType.Details, BuildCacheInMemoryTierBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The number of entries loaded from memory during the build.
+         */
+        long getHitCount();
+
+        /**
+         * The number of entries that were looked up during the build but were not in memory.
+         */
+        long getMissCount();
+
+        /**
+         * The number of entries evicted from memory during the build.
+         */
+        long getEvictionCount();
+
+        /**
+         * The number of entries held in memory at the end of the build.
+         */
+        long getEntryCount();
+
+        /**
+         * The total size in bytes of the entries held in memory at the end of the build.
+         */
+        long getSize();
+
+    }
+
+    public interface Result {
+    }
+
+    private BuildCacheInMemoryTierBuildOperationType() {
+    }
+}
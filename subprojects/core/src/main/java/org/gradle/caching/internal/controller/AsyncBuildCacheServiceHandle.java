@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.Nullable;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.internal.progress.BuildOperationState;
+import org.gradle.util.GFileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Performs stores in the background, so that they do not hold up the build.
+ *
+ * Entries are packed into a file on the calling thread, as the task outputs may change once the calling task has finished.
+ * The file is then stored by the delegate handle on a background thread, which still emits a build operation per store.
+ * As the task that stored the entry may have finished by the time it is uploaded, these operations belong to the operation of the build,
+ * which only finishes after the pending stores are done.
+ * The number of stores waiting to be performed is bounded. When all slots are taken, new stores either wait or are dropped.
+ * Closing the handle waits for all pending stores to finish.
+ */
+class AsyncBuildCacheServiceHandle implements BuildCacheServiceHandle {
+
+    private static final Logger LOGGER = Logging.getLogger(AsyncBuildCacheServiceHandle.class);
+
+    private final BuildCacheServiceHandle delegate;
+    private final BuildCacheServiceRole role;
+    private final ManagedExecutor executor;
+    private final Semaphore pendingStores;
+    private final boolean dropWhenFull;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final BuildOperationState parentOperation;
+    private final AtomicInteger droppedStores = new AtomicInteger();
+    private boolean closed;
+
+    AsyncBuildCacheServiceHandle(
+        BuildCacheServiceHandle delegate,
+        BuildCacheServiceRole role,
+        ManagedExecutor executor,
+        int maxPendingStores,
+        boolean dropWhenFull,
+        TemporaryFileProvider temporaryFileProvider,
+        BuildOperationExecutor buildOperationExecutor,
+        @Nullable BuildOperationState parentOperation
+    ) {
+        this.delegate = delegate;
+        this.role = role;
+        this.executor = executor;
+        this.pendingStores = new Semaphore(maxPendingStores);
+        this.dropWhenFull = dropWhenFull;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.parentOperation = parentOperation;
+    }
+
+    @Override
+    public BuildCacheService getService() {
+        return delegate.getService();
+    }
+
+    @Override
+    public boolean canLoad() {
+        return delegate.canLoad();
+    }
+
+    @Override
+    public <T> T doLoad(BuildCacheLoadCommand<T> command) {
+        return delegate.doLoad(command);
+    }
+
+    @Override
+    public boolean canStore() {
+        return delegate.canStore();
+    }
+
+    @Override
+    public void doStore(final BuildCacheStoreCommand command) {
+        if (command instanceof LocalCacheEntryStoreCommand) {
+            // Reads the entry from the local cache, so it can be run later as it is
+            submit(command.getKey(), new Runnable() {
+                @Override
+                public void run() {
+                    delegate.doStore(command);
+                }
+            });
+            return;
+        }
+
+        File file = temporaryFileProvider.createTemporaryFile("gradle_cache", "upload");
+        BuildCacheStoreCommand.Result result;
+        try {
+            result = pack(command, file);
+        } catch (IOException e) {
+            GFileUtils.deleteQuietly(file);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            GFileUtils.deleteQuietly(file);
+            throw e;
+        }
+        submitFileStore(command.getKey(), file, result);
+    }
+
+    @Override
+    public void doStore(BuildCacheKey key, File file, BuildCacheStoreCommand.Result storeResult) {
+        // The caller removes the file once we return, so take it over
+        File upload = temporaryFileProvider.createTemporaryFile("gradle_cache", "upload");
+        try {
+            Files.move(file, upload);
+        } catch (IOException e) {
+            GFileUtils.deleteQuietly(upload);
+            throw new UncheckedIOException(e);
+        }
+        submitFileStore(key, upload, storeResult);
+    }
+
+    @Override
+    public File createStoreFile(BuildCacheKey key) {
+        return null;
+    }
+
+    @Override
+    public BuildCacheStoreCommand storedEntry(BuildCacheKey key, BuildCacheStoreCommand.Result storeResult) {
+        return null;
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        return false;
+    }
+
+    private BuildCacheStoreCommand.Result pack(BuildCacheStoreCommand command, File file) throws IOException {
+        OutputStream output = null;
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(file));
+            return command.store(output, role);
+        } catch (FileNotFoundException e) {
+            throw new BuildCacheException("Couldn't create local file for cache entry", e);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private void submitFileStore(final BuildCacheKey key, final File file, final BuildCacheStoreCommand.Result storeResult) {
+        boolean submitted = false;
+        try {
+            submitted = submit(key, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delegate.doStore(key, file, storeResult);
+                    } finally {
+                        GFileUtils.deleteQuietly(file);
+                    }
+                }
+            });
+        } finally {
+            if (!submitted) {
+                GFileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    private boolean submit(final BuildCacheKey key, final Runnable store) {
+        if (dropWhenFull) {
+            if (!pendingStores.tryAcquire()) {
+                droppedStores.incrementAndGet();
+                LOGGER.info("Not storing entry {} in {} build cache, as too many stores are pending.", key, role.getDisplayName());
+                return false;
+            }
+        } else {
+            pendingStores.acquireUninterruptibly();
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runInBuildOperation(key, store);
+                    } finally {
+                        pendingStores.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingStores.release();
+            throw e;
+        }
+        return true;
+    }
+
+    private void runInBuildOperation(final BuildCacheKey key, final Runnable store) {
+        if (parentOperation == null) {
+            store.run();
+            return;
+        }
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                store.run();
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Store entry " + key + " in " + role.getDisplayName() + " build cache in the background")
+                    .parent(parentOperation);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            LOGGER.debug("Waiting for pending stores in {} build cache", role.getDisplayName());
+            executor.stop();
+        } finally {
+            int dropped = droppedStores.get();
+            if (dropped > 0) {
+                LOGGER.warn("{} {} not stored in the {} build cache because too many stores were pending.", dropped, dropped == 1 ? "entry was" : "entries were", role.getDisplayName());
+            }
+            delegate.close();
+        }
+    }
+}
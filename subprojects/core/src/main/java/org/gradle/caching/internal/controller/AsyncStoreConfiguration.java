@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.gradle.api.Nullable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.progress.BuildOperationState;
+
+/**
+ * How stores in the remote build cache are performed in the background.
+ */
+final class AsyncStoreConfiguration {
+
+    final ExecutorFactory executorFactory;
+    final int concurrency;
+    final int maxPendingStores;
+    final boolean dropWhenFull;
+
+    /**
+     * The operation of the build, which is still running when pending stores are waited for at the end of the build.
+     */
+    @Nullable
+    final BuildOperationState buildOperation;
+
+    AsyncStoreConfiguration(ExecutorFactory executorFactory, int concurrency, int maxPendingStores, boolean dropWhenFull, @Nullable BuildOperationState buildOperation) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency of background stores must be at least 1, but was " + concurrency + ".");
+        }
+        if (maxPendingStores < concurrency) {
+            throw new IllegalArgumentException("Number of pending background stores must be at least the concurrency (" + concurrency + "), but was " + maxPendingStores + ".");
+        }
+        this.executorFactory = executorFactory;
+        this.concurrency = concurrency;
+        this.maxPendingStores = maxPendingStores;
+        this.dropWhenFull = dropWhenFull;
+        this.buildOperation = buildOperation;
+    }
+}
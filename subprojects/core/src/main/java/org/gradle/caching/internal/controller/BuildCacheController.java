@@ -17,9 +17,11 @@
 package org.gradle.caching.internal.controller;
 
 import org.gradle.api.Nullable;
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 
 import java.io.Closeable;
+import java.util.Collection;
 
 /**
  * Internal coordinator of build cache operations.
@@ -33,6 +35,12 @@ public interface BuildCacheController extends Closeable {
 
     void store(BuildCacheStoreCommand command);
 
+    /**
+     * Hints that entries for the given keys are about to be loaded.
+     * The entries may be fetched from the remote cache in the background, so that loading them later is faster.
+     */
+    void prefetch(Collection<? extends BuildCacheKey> keys);
+
     @Override
     void close();
 
@@ -34,6 +34,7 @@ import org.gradle.caching.configuration.BuildCache;
 import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal;
 import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperationType;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.CallableBuildOperation;
@@ -48,6 +49,18 @@ import java.util.Map;
 
 public final class BuildCacheControllerFactory {
 
+    public static final String ASYNC_REMOTE_STORE_PROPERTY = "org.gradle.caching.remote.async";
+    public static final String ASYNC_REMOTE_STORE_CONCURRENCY_PROPERTY = "org.gradle.caching.remote.async.concurrency";
+    public static final String ASYNC_REMOTE_STORE_QUEUE_SIZE_PROPERTY = "org.gradle.caching.remote.async.queuesize";
+    public static final String ASYNC_REMOTE_STORE_DROP_WHEN_FULL_PROPERTY = "org.gradle.caching.remote.async.dropwhenfull";
+    public static final String PREFETCH_PROPERTY = "org.gradle.caching.remote.prefetch";
+    public static final String PREFETCH_CONCURRENCY_PROPERTY = "org.gradle.caching.remote.prefetch.concurrency";
+    public static final String IN_MEMORY_SIZE_PROPERTY = "org.gradle.caching.memory.size";
+
+    private static final int DEFAULT_ASYNC_REMOTE_STORE_CONCURRENCY = 2;
+    private static final int DEFAULT_ASYNC_REMOTE_STORE_QUEUE_SIZE = 64;
+    private static final int DEFAULT_PREFETCH_CONCURRENCY = 4;
+
     private static final Logger LOGGER = Logging.getLogger(BuildCacheControllerFactory.class);
 
     public static BuildCacheController create(
@@ -55,7 +68,9 @@ public final class BuildCacheControllerFactory {
         final GradleInternal gradle,
         final BuildCacheConfigurationInternal buildCacheConfiguration,
         final TemporaryFileProvider temporaryFileProvider,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory,
+        final InMemoryBuildCacheTier inMemoryBuildCacheTier
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -109,7 +124,10 @@ public final class BuildCacheControllerFactory {
                         toConfiguration(local, remote, localDescribedService, remoteDescribedService),
                         buildOperationExecutor,
                         temporaryFileProvider,
-                        startParameter.getShowStacktrace() != ShowStacktrace.INTERNAL_EXCEPTIONS
+                        startParameter.getShowStacktrace() != ShowStacktrace.INTERNAL_EXCEPTIONS,
+                        asyncRemoteStoreConfiguration(executorFactory, gradle),
+                        prefetchConfiguration(executorFactory, gradle),
+                        configuredInMemoryTier(inMemoryBuildCacheTier)
                     );
                 }
             }
@@ -122,6 +140,43 @@ public final class BuildCacheControllerFactory {
         });
     }
 
+    @Nullable
+    private static AsyncStoreConfiguration asyncRemoteStoreConfiguration(ExecutorFactory executorFactory, GradleInternal gradle) {
+        if (!Boolean.getBoolean(ASYNC_REMOTE_STORE_PROPERTY)) {
+            return null;
+        }
+        return new AsyncStoreConfiguration(
+            executorFactory,
+            Integer.getInteger(ASYNC_REMOTE_STORE_CONCURRENCY_PROPERTY, DEFAULT_ASYNC_REMOTE_STORE_CONCURRENCY),
+            Integer.getInteger(ASYNC_REMOTE_STORE_QUEUE_SIZE_PROPERTY, DEFAULT_ASYNC_REMOTE_STORE_QUEUE_SIZE),
+            Boolean.getBoolean(ASYNC_REMOTE_STORE_DROP_WHEN_FULL_PROPERTY),
+            gradle.getBuildOperation()
+        );
+    }
+
+    @Nullable
+    private static PrefetchConfiguration prefetchConfiguration(ExecutorFactory executorFactory, GradleInternal gradle) {
+        if (!Boolean.getBoolean(PREFETCH_PROPERTY)) {
+            return null;
+        }
+        return new PrefetchConfiguration(
+            executorFactory,
+            Integer.getInteger(PREFETCH_CONCURRENCY_PROPERTY, DEFAULT_PREFETCH_CONCURRENCY),
+            gradle.getBuildOperation()
+        );
+    }
+
+    @Nullable
+    private static InMemoryBuildCacheTier configuredInMemoryTier(InMemoryBuildCacheTier inMemoryBuildCacheTier) {
+        // Size in megabytes
+        Integer size = Integer.getInteger(IN_MEMORY_SIZE_PROPERTY);
+        if (size == null || size == 0) {
+            return null;
+        }
+        inMemoryBuildCacheTier.configure(size * 1024L * 1024L);
+        return inMemoryBuildCacheTier;
+    }
+
     private static BuildCacheServicesConfiguration toConfiguration(BuildCache local, BuildCache remote, DescribedBuildCacheService localDescribedService, DescribedBuildCacheService remoteDescribedService) {
         return new BuildCacheServicesConfiguration(
             localDescribedService == null ? null : localDescribedService.service,
@@ -38,8 +38,36 @@ public interface BuildCacheServiceHandle extends Closeable {
 
     void doStore(BuildCacheStoreCommand command);
 
+    /**
+     * Stores the entry that has already been written to the given file.
+     *
+     * The file may be moved into the build cache, so it cannot be used afterwards.
+     */
     void doStore(BuildCacheKey key, File file, BuildCacheStoreCommand.Result storeResult);
 
+    /**
+     * Creates a file to write the entry for the given key to, which {@link #doStore(BuildCacheKey, File, BuildCacheStoreCommand.Result)} can then move into the cache instead of copying it.
+     *
+     * Returns {@code null} if the cache cannot take over files.
+     */
+    @Nullable
+    File createStoreFile(BuildCacheKey key);
+
+    /**
+     * Returns a command that writes the entry stored in this cache under the given key, reading it back from the cache.
+     *
+     * Returns {@code null} if the cache cannot provide its entries this way.
+     */
+    @Nullable
+    BuildCacheStoreCommand storedEntry(BuildCacheKey key, BuildCacheStoreCommand.Result storeResult);
+
+    /**
+     * Returns whether this cache is known to have an entry for the given key, without loading it.
+     *
+     * Returns {@code false} if the cache cannot tell without loading the entry.
+     */
+    boolean containsLocally(BuildCacheKey key);
+
     @Override
     void close();
 }
@@ -26,9 +26,17 @@ public interface BuildCacheStoreCommand {
     BuildCacheKey getKey();
 
     /**
-     * Called at-most-once to initiate writing the artifact to the output stream.
+     * Returns whether the artifact written for each build cache differs, in which case it is written separately for each of them
+     * rather than once for both.
      */
-    Result store(OutputStream outputStream) throws IOException;
+    boolean isTargetSpecific();
+
+    /**
+     * Called at-most-once per build cache to initiate writing the artifact to the output stream.
+     *
+     * @param target the build cache the artifact is written for. When the artifact is written once to be stored in both build caches, this is {@link BuildCacheServiceRole#REMOTE}.
+     */
+    Result store(OutputStream outputStream, BuildCacheServiceRole target) throws IOException;
 
     interface Result {
 
@@ -25,12 +25,14 @@ import java.io.OutputStream;
 public class CommandBackedEntryWriter implements BuildCacheEntryWriter {
 
     private final BuildCacheStoreCommand command;
+    private final BuildCacheServiceRole role;
 
     private BuildCacheStoreCommand.Result result;
     private long bytes;
 
-    public CommandBackedEntryWriter(BuildCacheStoreCommand command) {
+    public CommandBackedEntryWriter(BuildCacheStoreCommand command, BuildCacheServiceRole role) {
         this.command = command;
+        this.role = role;
     }
 
     @Override
@@ -41,7 +43,7 @@ public class CommandBackedEntryWriter implements BuildCacheEntryWriter {
 //        }
 
         CountingOutputStream countingOutputStream = new CountingOutputStream(output);
-        result = command.store(countingOutputStream);
+        result = command.store(countingOutputStream, role);
         bytes = countingOutputStream.getCount();
     }
 
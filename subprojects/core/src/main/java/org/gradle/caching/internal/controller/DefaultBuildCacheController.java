@@ -17,14 +17,22 @@
 package org.gradle.caching.internal.controller;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheStats;
 import org.apache.commons.io.IOUtils;
 import org.gradle.api.Nullable;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.BuildCacheInMemoryTierBuildOperationType;
+import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.util.GFileUtils;
 
 import java.io.BufferedOutputStream;
@@ -33,6 +41,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
@@ -47,25 +56,87 @@ public class DefaultBuildCacheController implements BuildCacheController {
 
     private final TemporaryFileProvider temporaryFileProvider;
 
+    @Nullable
+    private final RemoteEntryPrefetcher prefetcher;
+
+    @Nullable
+    private final InMemoryBuildCacheTier memory;
+    private final CacheStats memoryStatsAtStart;
+    private final BuildOperationExecutor buildOperationExecutor;
+
     public DefaultBuildCacheController(
         BuildCacheServicesConfiguration config,
         BuildOperationExecutor buildOperationExecutor,
         TemporaryFileProvider temporaryFileProvider,
         boolean logStackTraces
+    ) {
+        this(config, buildOperationExecutor, temporaryFileProvider, logStackTraces, null, null, null);
+    }
+
+    DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        TemporaryFileProvider temporaryFileProvider,
+        boolean logStackTraces,
+        @Nullable AsyncStoreConfiguration asyncRemoteStores,
+        @Nullable PrefetchConfiguration prefetch,
+        @Nullable InMemoryBuildCacheTier memory
     ) {
         this.local = toHandle(config.local, config.localPush, BuildCacheServiceRole.LOCAL, buildOperationExecutor, logStackTraces);
-        this.remote = toHandle(config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+        BuildCacheServiceHandle remote = toHandle(config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+        if (asyncRemoteStores != null && config.remote != null && config.remotePush) {
+            remote = new AsyncBuildCacheServiceHandle(
+                remote,
+                BuildCacheServiceRole.REMOTE,
+                asyncRemoteStores.executorFactory.create("Remote build cache store", asyncRemoteStores.concurrency),
+                asyncRemoteStores.maxPendingStores,
+                asyncRemoteStores.dropWhenFull,
+                temporaryFileProvider,
+                buildOperationExecutor,
+                asyncRemoteStores.buildOperation
+            );
+        }
+        this.remote = remote;
         this.temporaryFileProvider = temporaryFileProvider;
+        if (prefetch != null && config.remote != null) {
+            this.prefetcher = new RemoteEntryPrefetcher(
+                remote,
+                local,
+                prefetch.executorFactory.create("Remote build cache prefetch", prefetch.concurrency),
+                buildOperationExecutor,
+                prefetch.buildOperation
+            );
+        } else {
+            this.prefetcher = null;
+        }
+        this.memory = memory;
+        this.memoryStatsAtStart = memory == null ? null : memory.stats();
+        this.buildOperationExecutor = buildOperationExecutor;
     }
 
     @Nullable
     @Override
     public <T> T load(BuildCacheLoadCommand<T> command) {
+        if (memory != null) {
+            T metadata = memory.load(command, buildOperationExecutor);
+            if (metadata != null) {
+                return metadata;
+            }
+            command = memory.recording(command);
+        }
         T metadata = null;
         if (local.canLoad()) {
             metadata = local.doLoad(command);
         }
-        if (metadata == null && remote.canLoad()) {
+        if (metadata != null) {
+            return metadata;
+        }
+        RemoteEntryPrefetcher.Outcome prefetched = prefetcher == null ? RemoteEntryPrefetcher.Outcome.UNKNOWN : prefetcher.await(command.getKey());
+        if (prefetched == RemoteEntryPrefetcher.Outcome.STORED_LOCALLY && local.canLoad()) {
+            // The entry arrived in the local cache while it was being loaded from there
+            metadata = local.doLoad(command);
+        }
+        if (metadata == null && remote.canLoad() && prefetched != RemoteEntryPrefetcher.Outcome.MISSING) {
             metadata = remote.doLoad(command);
         }
         return metadata;
@@ -73,11 +144,18 @@ public class DefaultBuildCacheController implements BuildCacheController {
 
     @Override
     public void store(BuildCacheStoreCommand command) {
+        if (memory != null) {
+            command = memory.recording(command);
+        }
         boolean localStore = local.canStore();
         boolean remoteStore = remote.canStore();
 
-        if (localStore && remoteStore) {
+        if (localStore && remoteStore && !command.isTargetSpecific()) {
             doStoreBoth(command);
+        } else if (localStore && remoteStore) {
+            // The entry is written differently for each cache, so it cannot be written once for both
+            local.doStore(command);
+            remote.doStore(command);
         } else if (localStore) {
             local.doStore(command);
         } else if (remoteStore) {
@@ -86,6 +164,11 @@ public class DefaultBuildCacheController implements BuildCacheController {
     }
 
     private void doStoreBoth(BuildCacheStoreCommand command) {
+        File localDestination = local.createStoreFile(command.getKey());
+        if (localDestination != null) {
+            doStoreBothThroughLocal(command, localDestination);
+            return;
+        }
         File destination = temporaryFileProvider.createTemporaryFile("gradle_cache", "entry");
         try {
             BuildCacheStoreCommand.Result result = doTmpFileStore(command, destination);
@@ -98,11 +181,33 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
     }
 
+    /**
+     * Writes the entry directly into the local cache, and uploads it to the remote cache from there.
+     * This way the entry is only written once.
+     */
+    private void doStoreBothThroughLocal(BuildCacheStoreCommand command, File destination) {
+        BuildCacheKey key = command.getKey();
+        try {
+            BuildCacheStoreCommand.Result result = doTmpFileStore(command, destination);
+            local.doStore(key, destination, result);
+            if (destination.exists()) {
+                // Storing in the local cache failed, upload the file we have
+                remote.doStore(key, destination, result);
+            } else {
+                remote.doStore(local.storedEntry(key, result));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            GFileUtils.deleteQuietly(destination);
+        }
+    }
+
     private BuildCacheStoreCommand.Result doTmpFileStore(BuildCacheStoreCommand storeOp, File destination) throws IOException {
         OutputStream fileOutputStream = null;
         try {
             fileOutputStream = new BufferedOutputStream(new FileOutputStream(destination));
-            return storeOp.store(fileOutputStream);
+            return storeOp.store(fileOutputStream, BuildCacheServiceRole.REMOTE);
         } catch (FileNotFoundException e) {
             throw new BuildCacheException("Couldn't create local file for cache entry", e);
         } finally {
@@ -110,15 +215,94 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
     }
 
+    @Override
+    public void prefetch(Collection<? extends BuildCacheKey> keys) {
+        if (prefetcher != null) {
+            prefetcher.prefetch(keys);
+        }
+    }
+
     @Override
     public void close() {
-        CompositeStoppable.stoppable(local, remote).stop();
+        // Remote stores may still be reading entries from the local cache
+        CompositeStoppable.stoppable(prefetcher, remote, local, new Stoppable() {
+            @Override
+            public void stop() {
+                reportMemoryUsage();
+            }
+        }).stop();
+    }
+
+    private void reportMemoryUsage() {
+        if (memory == null) {
+            return;
+        }
+        final CacheStats stats = memory.stats().minus(memoryStatsAtStart);
+        final long entryCount = memory.entryCount();
+        final long size = memory.size();
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                context.setResult(MemoryUsageResult.INSTANCE);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Report in-memory build cache usage")
+                    .details(new MemoryUsageDetails(stats, entryCount, size));
+            }
+        });
+    }
+
+    private static class MemoryUsageDetails implements BuildCacheInMemoryTierBuildOperationType.Details {
+        private final CacheStats stats;
+        private final long entryCount;
+        private final long size;
+
+        private MemoryUsageDetails(CacheStats stats, long entryCount, long size) {
+            this.stats = stats;
+            this.entryCount = entryCount;
+            this.size = size;
+        }
+
+        @Override
+        public long getHitCount() {
+            return stats.hitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return stats.missCount();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return stats.evictionCount();
+        }
+
+        @Override
+        public long getEntryCount() {
+            return entryCount;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private static class MemoryUsageResult implements BuildCacheInMemoryTierBuildOperationType.Result {
+        private static final MemoryUsageResult INSTANCE = new MemoryUsageResult();
     }
 
     private static BuildCacheServiceHandle toHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces) {
-        return service == null
-            ? NullBuildCacheServiceHandle.INSTANCE
-            : new DefaultBuildCacheServiceHandle(service, push, role, buildOperationExecutor, logStackTraces);
+        if (service == null) {
+            return NullBuildCacheServiceHandle.INSTANCE;
+        }
+        if (service instanceof LocalBuildCacheService) {
+            return new LocalBuildCacheServiceHandle((LocalBuildCacheService) service, push, role, buildOperationExecutor, logStackTraces);
+        }
+        return new DefaultBuildCacheServiceHandle(service, push, role, buildOperationExecutor, logStackTraces);
     }
 
 }
@@ -133,7 +133,7 @@ class DefaultBuildCacheServiceHandle implements BuildCacheServiceHandle {
         doStoreInner(command.getKey(), new Factory<BuildCacheStoreBuildOperationType.Result>() {
             @Override
             public BuildCacheStoreBuildOperationType.Result create() {
-                CommandBackedEntryWriter entryWriter = new CommandBackedEntryWriter(command);
+                CommandBackedEntryWriter entryWriter = new CommandBackedEntryWriter(command, role);
                 service.store(command.getKey(), entryWriter);
                 if (entryWriter.getResult() == null) {
                     throw noStoreException();
@@ -149,17 +149,39 @@ class DefaultBuildCacheServiceHandle implements BuildCacheServiceHandle {
         doStoreInner(key, new Factory<BuildCacheStoreBuildOperationType.Result>() {
             @Override
             public BuildCacheStoreBuildOperationType.Result create() {
-                FileCopyBuildCacheEntryWriter fileWriter = new FileCopyBuildCacheEntryWriter(file);
-                service.store(key, fileWriter);
-                if (fileWriter.copied) {
-                    return new StoreOperationResult(file.length(), storeResult.getArtifactEntryCount());
-                } else {
-                    throw noStoreException();
-                }
+                return storeFile(key, file, storeResult);
             }
         });
     }
 
+    /**
+     * Stores the entry that has already been written to the given file, by copying it to the service.
+     */
+    protected BuildCacheStoreBuildOperationType.Result storeFile(BuildCacheKey key, File file, BuildCacheStoreCommand.Result storeResult) {
+        FileCopyBuildCacheEntryWriter fileWriter = new FileCopyBuildCacheEntryWriter(file);
+        service.store(key, fileWriter);
+        if (fileWriter.copied) {
+            return new StoreOperationResult(file.length(), storeResult.getArtifactEntryCount());
+        } else {
+            throw noStoreException();
+        }
+    }
+
+    @Override
+    public File createStoreFile(BuildCacheKey key) {
+        return null;
+    }
+
+    @Override
+    public BuildCacheStoreCommand storedEntry(BuildCacheKey key, BuildCacheStoreCommand.Result storeResult) {
+        return null;
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        return false;
+    }
+
     private void doStoreInner(final BuildCacheKey key, final Factory<BuildCacheStoreBuildOperationType.Result> resultFactory) {
         final String description = "Store entry " + key + " in " + role.getDisplayName() + " build cache";
         buildOperationExecutor.run(new RunnableBuildOperation() {
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.gradle.api.Nullable;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.BuildCacheInMemoryLoadBuildOperationType;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps recently used build cache entries in memory, so that they can be loaded again without going to the local or remote cache.
+ *
+ * Lives as long as the daemon. Entries are evicted least recently used first once their total size would exceed the configured maximum.
+ * Entries larger than a fraction of the maximum size are not kept.
+ */
+public class InMemoryBuildCacheTier {
+
+    private static final Logger LOGGER = Logging.getLogger(InMemoryBuildCacheTier.class);
+    private static final int CONCURRENCY_LEVEL = 4;
+
+    private Cache<String, byte[]> entries;
+    private long maxSize;
+
+    /**
+     * Sets the maximum total size of the entries to keep. Changing the size drops all entries.
+     */
+    synchronized void configure(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Size of in-memory build cache must be positive, but was " + maxSize + ".");
+        }
+        if (entries == null || maxSize != this.maxSize) {
+            this.maxSize = maxSize;
+            this.entries = CacheBuilder.newBuilder()
+                .concurrencyLevel(CONCURRENCY_LEVEL)
+                .maximumWeight(maxSize)
+                .weigher(new Weigher<String, byte[]>() {
+                    @Override
+                    public int weigh(String key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .recordStats()
+                .build();
+        }
+    }
+
+    private synchronized Cache<String, byte[]> entries() {
+        if (entries == null) {
+            throw new IllegalStateException("In-memory build cache has not been configured.");
+        }
+        return entries;
+    }
+
+    private synchronized long maxEntrySize() {
+        // Each segment of the cache gets an equal share of the maximum size
+        return maxSize / (CONCURRENCY_LEVEL * 2);
+    }
+
+    CacheStats stats() {
+        return entries().stats();
+    }
+
+    long entryCount() {
+        return entries().size();
+    }
+
+    long size() {
+        long size = 0;
+        for (byte[] entry : entries().asMap().values()) {
+            size += entry.length;
+        }
+        return size;
+    }
+
+    /**
+     * Loads the entry from memory, in a build operation if the entry is in memory.
+     *
+     * An entry that cannot be loaded is dropped, so that it is loaded from the other build caches instead.
+     *
+     * @return the metadata of the loaded entry, or {@code null} if the entry is not in memory or could not be loaded.
+     */
+    @Nullable
+    <T> T load(final BuildCacheLoadCommand<T> command, BuildOperationExecutor buildOperationExecutor) {
+        final BuildCacheKey key = command.getKey();
+        final byte[] entry = entries().getIfPresent(key.getHashCode());
+        if (entry == null) {
+            return null;
+        }
+        return buildOperationExecutor.call(new CallableBuildOperation<T>() {
+            @Override
+            public T call(BuildOperationContext context) {
+                try {
+                    BuildCacheLoadCommand.Result<T> result = command.load(new ByteArrayInputStream(entry));
+                    T metadata = result.getMetadata();
+                    if (metadata == null) {
+                        throw new IllegalStateException("Build cache load command " + command + " returned null metadata");
+                    }
+                    context.setResult(new LoadResult(entry.length, result.getArtifactEntryCount()));
+                    return metadata;
+                } catch (Exception e) {
+                    context.failed(e);
+                    entries().invalidate(key.getHashCode());
+                    LOGGER.warn("Could not load entry {} from in-memory build cache, loading it from the other build caches instead: {}", key, e.getMessage());
+                    return null;
+                }
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Load entry " + key + " from in-memory build cache")
+                    .details(new LoadDetails(key.getHashCode()));
+            }
+        });
+    }
+
+    /**
+     * Returns a command that keeps the loaded entry in memory, in addition to loading it with the given command.
+     */
+    <T> BuildCacheLoadCommand<T> recording(final BuildCacheLoadCommand<T> command) {
+        return new BuildCacheLoadCommand<T>() {
+            @Override
+            public BuildCacheKey getKey() {
+                return command.getKey();
+            }
+
+            @Override
+            public Result<T> load(InputStream inputStream) {
+                EntryRecorder recorder = new EntryRecorder(maxEntrySize());
+                TeeInputStream teeInputStream = new TeeInputStream(inputStream, recorder);
+                Result<T> result = command.load(teeInputStream);
+                try {
+                    // The command may stop reading before the end of the entry
+                    ByteStreams.exhaust(teeInputStream);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                recorder.recordAs(command.getKey());
+                return result;
+            }
+
+            @Override
+            public String toString() {
+                return command.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns a command that keeps the stored entry in memory, in addition to storing it with the given command.
+     */
+    BuildCacheStoreCommand recording(final BuildCacheStoreCommand command) {
+        return new BuildCacheStoreCommand() {
+            @Override
+            public BuildCacheKey getKey() {
+                return command.getKey();
+            }
+
+            @Override
+            public boolean isTargetSpecific() {
+                return command.isTargetSpecific();
+            }
+
+            @Override
+            public Result store(OutputStream outputStream, BuildCacheServiceRole target) throws IOException {
+                EntryRecorder recorder = new EntryRecorder(maxEntrySize());
+                Result result = command.store(new TeeOutputStream(outputStream, recorder), target);
+                recorder.recordAs(command.getKey());
+                return result;
+            }
+        };
+    }
+
+    private static class LoadDetails implements BuildCacheInMemoryLoadBuildOperationType.Details {
+        private final String cacheKey;
+
+        LoadDetails(String cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public String getCacheKey() {
+            return cacheKey;
+        }
+    }
+
+    private static class LoadResult implements BuildCacheInMemoryLoadBuildOperationType.Result {
+        private final long archiveSize;
+        private final long archiveEntryCount;
+
+        LoadResult(long archiveSize, long archiveEntryCount) {
+            this.archiveSize = archiveSize;
+            this.archiveEntryCount = archiveEntryCount;
+        }
+
+        @Override
+        public long getArchiveSize() {
+            return archiveSize;
+        }
+
+        @Override
+        public long getArchiveEntryCount() {
+            return archiveEntryCount;
+        }
+    }
+
+    private class EntryRecorder extends OutputStream {
+        private final long maxSize;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        EntryRecorder(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) {
+            if (reserve(1)) {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (reserve(len)) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        private boolean reserve(int len) {
+            if (buffer != null && buffer.size() + len > maxSize) {
+                // Too large to keep, stop recording
+                buffer = null;
+            }
+            return buffer != null;
+        }
+
+        void recordAs(BuildCacheKey key) {
+            if (buffer != null) {
+                entries().put(key.getHashCode(), buffer.toByteArray());
+            }
+        }
+    }
+}
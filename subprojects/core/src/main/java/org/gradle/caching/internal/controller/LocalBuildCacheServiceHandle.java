@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.BuildCacheStoreBuildOperationType;
+import org.gradle.caching.internal.controller.operations.StoreOperationResult;
+import org.gradle.caching.local.internal.LocalBuildCacheService;
+import org.gradle.internal.operations.BuildOperationExecutor;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * A handle for a local build cache that keeps its entries in files, which moves entries written to a file into the cache instead of copying them.
+ */
+class LocalBuildCacheServiceHandle extends DefaultBuildCacheServiceHandle {
+
+    private final LocalBuildCacheService localService;
+
+    LocalBuildCacheServiceHandle(LocalBuildCacheService service, boolean push, BuildCacheServiceRole role, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces) {
+        super(service, push, role, buildOperationExecutor, logStackTraces);
+        this.localService = service;
+    }
+
+    @Override
+    protected BuildCacheStoreBuildOperationType.Result storeFile(BuildCacheKey key, File file, BuildCacheStoreCommand.Result storeResult) {
+        long size = file.length();
+        localService.storeLocally(key, file);
+        return new StoreOperationResult(size, storeResult.getArtifactEntryCount());
+    }
+
+    @Override
+    public File createStoreFile(BuildCacheKey key) {
+        return canStore() ? localService.createTempFile(key) : null;
+    }
+
+    @Override
+    public BuildCacheStoreCommand storedEntry(BuildCacheKey key, BuildCacheStoreCommand.Result storeResult) {
+        return new LocalCacheEntryStoreCommand(key, localService, storeResult);
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        if (!canLoad()) {
+            return false;
+        }
+        InputStream input = localService.openLocally(key);
+        if (input == null) {
+            return false;
+        }
+        IOUtils.closeQuietly(input);
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.LocalBuildCacheService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes an entry that has already been stored in the local build cache, by reading it back from there.
+ *
+ * The local cache is not locked while the entry is written, so that a slow upload does not block other builds using the local cache.
+ */
+class LocalCacheEntryStoreCommand implements BuildCacheStoreCommand {
+
+    private final BuildCacheKey key;
+    private final LocalBuildCacheService localService;
+    private final Result result;
+
+    LocalCacheEntryStoreCommand(BuildCacheKey key, LocalBuildCacheService localService, Result result) {
+        this.key = key;
+        this.localService = localService;
+        this.result = result;
+    }
+
+    @Override
+    public BuildCacheKey getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean isTargetSpecific() {
+        return false;
+    }
+
+    @Override
+    public Result store(OutputStream outputStream, BuildCacheServiceRole target) throws IOException {
+        InputStream input = localService.openLocally(key);
+        if (input == null) {
+            throw new BuildCacheException("Entry " + key + " is no longer present in the local build cache");
+        }
+        try {
+            ByteStreams.copy(input, outputStream);
+        } finally {
+            input.close();
+        }
+        return result;
+    }
+}
@@ -57,6 +57,21 @@ public class NullBuildCacheServiceHandle implements BuildCacheServiceHandle {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public File createStoreFile(BuildCacheKey key) {
+        return null;
+    }
+
+    @Override
+    public BuildCacheStoreCommand storedEntry(BuildCacheKey key, BuildCacheStoreCommand.Result storeResult) {
+        return null;
+    }
+
+    @Override
+    public boolean containsLocally(BuildCacheKey key) {
+        return false;
+    }
+
     @Override
     public void close() {
 
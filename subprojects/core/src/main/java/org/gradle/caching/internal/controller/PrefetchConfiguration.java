@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.gradle.api.Nullable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.progress.BuildOperationState;
+
+/**
+ * How entries are fetched from the remote build cache ahead of being loaded.
+ */
+final class PrefetchConfiguration {
+
+    final ExecutorFactory executorFactory;
+    final int concurrency;
+
+    /**
+     * The operation of the build, which the work done in the background belongs to.
+     */
+    @Nullable
+    final BuildOperationState buildOperation;
+
+    PrefetchConfiguration(ExecutorFactory executorFactory, int concurrency, @Nullable BuildOperationState buildOperation) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency of prefetching must be at least 1, but was " + concurrency + ".");
+        }
+        this.executorFactory = executorFactory;
+        this.concurrency = concurrency;
+        this.buildOperation = buildOperation;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.gradle.api.Nullable;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.BatchingBuildCacheService;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.internal.progress.BuildOperationState;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches entries from the remote build cache into the local build cache in the background, before they are loaded.
+ *
+ * Keys that are requested while a batch is being checked are collected into the next batch.
+ * When the remote cache can check many keys at once, only the entries it has are downloaded, and the keys it doesn't have are remembered
+ * so that loading them doesn't need to ask the remote cache again.
+ * Otherwise every entry is requested on its own, in parallel, unless the local cache already has it.
+ * When the local cache cannot take over downloaded files, only the check is done.
+ *
+ * Entries are downloaded and stored through the handles of the caches, so failures are reported and counted as for any other load or store.
+ * As the tasks that will load the entries are not running yet, the build operations for this work belong to the operation of the build.
+ */
+class RemoteEntryPrefetcher implements Stoppable {
+
+    private static final Logger LOGGER = Logging.getLogger(RemoteEntryPrefetcher.class);
+
+    enum Outcome {
+        /**
+         * The remote cache does not have the entry.
+         */
+        MISSING,
+        /**
+         * The entry was stored in the local cache.
+         */
+        STORED_LOCALLY,
+        /**
+         * Prefetching the entry failed, or the remote cache did not provide it without telling whether it has it.
+         * The entry should be loaded from the remote cache as if it had not been prefetched.
+         */
+        FAILED,
+        /**
+         * Nothing is known about the entry, as it was not prefetched.
+         */
+        UNKNOWN
+    }
+
+    private final BuildCacheServiceHandle remote;
+    private final BuildCacheServiceHandle local;
+    private final ManagedExecutor executor;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final BuildOperationState parentOperation;
+    private final ConcurrentMap<String, Prefetch> prefetches = new ConcurrentHashMap<String, Prefetch>();
+    private final Queue<BuildCacheKey> pendingKeys = new ConcurrentLinkedQueue<BuildCacheKey>();
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    RemoteEntryPrefetcher(
+        BuildCacheServiceHandle remote,
+        BuildCacheServiceHandle local,
+        ManagedExecutor executor,
+        BuildOperationExecutor buildOperationExecutor,
+        @Nullable BuildOperationState parentOperation
+    ) {
+        this.remote = remote;
+        this.local = local;
+        this.executor = executor;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.parentOperation = parentOperation;
+    }
+
+    public void prefetch(Collection<? extends BuildCacheKey> keys) {
+        for (BuildCacheKey key : keys) {
+            if (prefetches.putIfAbsent(key.getHashCode(), new Prefetch()) == null) {
+                pendingKeys.add(key);
+            }
+        }
+        scheduleCheck();
+    }
+
+    /**
+     * Waits for the prefetch of the given key to finish, if there is one, and forgets about it.
+     */
+    public Outcome await(BuildCacheKey key) {
+        String hashCode = key.getHashCode();
+        Prefetch prefetch = prefetches.get(hashCode);
+        if (prefetch == null) {
+            return Outcome.UNKNOWN;
+        }
+        Uninterruptibles.awaitUninterruptibly(prefetch.done);
+        prefetches.remove(hashCode, prefetch);
+        return prefetch.outcome;
+    }
+
+    private void scheduleCheck() {
+        if (!pendingKeys.isEmpty() && checking.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final List<BuildCacheKey> batch = new ArrayList<BuildCacheKey>();
+                            BuildCacheKey key;
+                            while ((key = pendingKeys.poll()) != null) {
+                                batch.add(key);
+                            }
+                            try {
+                                runInBuildOperation("Prefetch " + batch.size() + " entries from remote build cache", new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        check(batch);
+                                    }
+                                });
+                            } catch (RuntimeException e) {
+                                LOGGER.info("Could not prefetch {} entries from remote build cache: {}", batch.size(), e.getMessage());
+                                finish(batch, Outcome.FAILED);
+                            }
+                        } finally {
+                            checking.set(false);
+                            scheduleCheck();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The executor has been stopped, so nothing will check the pending keys
+                checking.set(false);
+                List<BuildCacheKey> abandoned = new ArrayList<BuildCacheKey>();
+                BuildCacheKey key;
+                while ((key = pendingKeys.poll()) != null) {
+                    abandoned.add(key);
+                }
+                finish(abandoned, Outcome.UNKNOWN);
+                LOGGER.info("Could not prefetch {} entries from remote build cache: {}", abandoned.size(), e.getMessage());
+            }
+        }
+    }
+
+    private void check(List<BuildCacheKey> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!remote.canLoad()) {
+            finish(batch, Outcome.UNKNOWN);
+            return;
+        }
+
+        Set<BuildCacheKey> present = null;
+        BuildCacheService service = remote.getService();
+        if (service instanceof BatchingBuildCacheService) {
+            try {
+                present = ((BatchingBuildCacheService) service).contains(batch);
+            } catch (Exception e) {
+                LOGGER.info("Could not check for {} entries in remote build cache: {}", batch.size(), e.getMessage());
+            }
+        }
+
+        for (BuildCacheKey key : batch) {
+            if (present != null && !present.contains(key)) {
+                finish(key, Outcome.MISSING);
+            } else if (!local.canStore()) {
+                finish(key, Outcome.UNKNOWN);
+            } else {
+                download(key);
+            }
+        }
+    }
+
+    private void download(final BuildCacheKey key) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Outcome outcome = Outcome.FAILED;
+                    try {
+                        outcome = downloadInBuildOperation(key);
+                    } catch (Exception e) {
+                        LOGGER.info("Could not prefetch entry {} from remote build cache: {}", key, e.getMessage());
+                    } finally {
+                        finish(key, outcome);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            finish(key, Outcome.FAILED);
+            throw e;
+        }
+    }
+
+    private Outcome downloadInBuildOperation(final BuildCacheKey key) {
+        final Outcome[] outcome = {Outcome.FAILED};
+        runInBuildOperation("Prefetch entry " + key + " from remote build cache", new Runnable() {
+            @Override
+            public void run() {
+                outcome[0] = downloadIntoLocal(key);
+            }
+        });
+        return outcome[0];
+    }
+
+    private Outcome downloadIntoLocal(BuildCacheKey key) {
+        if (local.containsLocally(key)) {
+            return Outcome.STORED_LOCALLY;
+        }
+        if (!remote.canLoad()) {
+            return Outcome.UNKNOWN;
+        }
+        File file = local.createStoreFile(key);
+        if (file == null) {
+            return Outcome.UNKNOWN;
+        }
+        try {
+            DownloadResult result = remote.doLoad(new DownloadCommand(key, file));
+            if (result == null) {
+                // Either the entry is missing or loading it failed, which the remote handle has already reported.
+                // Only a check of the remote cache says for sure that the entry is missing, so leave it to the task to load it again
+                return Outcome.FAILED;
+            }
+            local.doStore(key, file, result);
+            return file.exists() ? Outcome.UNKNOWN : Outcome.STORED_LOCALLY;
+        } finally {
+            GFileUtils.deleteQuietly(file);
+        }
+    }
+
+    private void runInBuildOperation(final String displayName, final Runnable action) {
+        if (parentOperation == null) {
+            action.run();
+            return;
+        }
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                action.run();
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName(displayName)
+                    .parent(parentOperation);
+            }
+        });
+    }
+
+    private void finish(Collection<BuildCacheKey> keys, Outcome outcome) {
+        for (BuildCacheKey key : keys) {
+            finish(key, outcome);
+        }
+    }
+
+    private void finish(BuildCacheKey key, Outcome outcome) {
+        Prefetch prefetch = prefetches.get(key.getHashCode());
+        if (prefetch != null) {
+            prefetch.finish(outcome);
+        }
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+        prefetches.clear();
+    }
+
+    private static class Prefetch {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Outcome outcome = Outcome.UNKNOWN;
+
+        void finish(Outcome outcome) {
+            this.outcome = outcome;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Copies the entry to the given file as it is, without unpacking it.
+     */
+    private static class DownloadCommand implements BuildCacheLoadCommand<DownloadResult> {
+        private final BuildCacheKey key;
+        private final File destination;
+
+        DownloadCommand(BuildCacheKey key, File destination) {
+            this.key = key;
+            this.destination = destination;
+        }
+
+        @Override
+        public BuildCacheKey getKey() {
+            return key;
+        }
+
+        @Override
+        public Result<DownloadResult> load(InputStream inputStream) {
+            try {
+                Files.asByteSink(destination).writeFrom(inputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return DownloadResult.INSTANCE;
+        }
+
+        @Override
+        public String toString() {
+            return "Prefetch entry " + key;
+        }
+    }
+
+    private static class DownloadResult implements BuildCacheLoadCommand.Result<DownloadResult>, BuildCacheStoreCommand.Result {
+        private static final DownloadResult INSTANCE = new DownloadResult();
+
+        @Override
+        public long getArtifactEntryCount() {
+            // The entry is not unpacked, so the number of entries in it is not known
+            return 0;
+        }
+
+        @Override
+        public DownloadResult getMetadata() {
+            return this;
+        }
+    }
+}
@@ -16,16 +16,22 @@
 
 package org.gradle.caching.internal.tasks;
 
+import com.google.common.base.Objects;
 import org.gradle.BuildResult;
 import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.InstantiatorFactory;
 import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory;
+import org.gradle.caching.internal.controller.InMemoryBuildCacheTier;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.os.OperatingSystem;
@@ -38,15 +44,23 @@ import org.gradle.util.GradleVersion;
 import java.io.File;
 
 public class BuildCacheTaskServices {
+    public static final String PARALLEL_PACKING_PROPERTY = "org.gradle.caching.internal.parallelpacking";
 
     TaskCacheKeyCalculator createTaskCacheKeyCalculator() {
         return new TaskCacheKeyCalculator();
     }
 
     TaskOutputPacker createTaskResultPacker(
-        FileSystem fileSystem
+        FileSystem fileSystem,
+        ExecutorFactory executorFactory,
+        ParallelismConfigurationManager parallelismConfigurationManager
     ) {
-        return new GZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem));
+        if (Boolean.getBoolean(PARALLEL_PACKING_PROPERTY)) {
+            int parallelism = parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount();
+            ManagedExecutor executor = executorFactory.create("Build cache entry packing", parallelism);
+            return new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, executor), executor, parallelism);
+        }
+        return new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem));
     }
 
     TaskOutputOriginFactory createTaskOutputOriginFactory(
@@ -61,9 +75,28 @@ public class BuildCacheTaskServices {
 
     TaskOutputCacheCommandFactory createTaskOutputCacheCommandFactory(
         TaskOutputPacker taskOutputPacker,
-        TaskOutputOriginFactory taskOutputOriginFactory
+        FileSystem fileSystem,
+        TaskOutputOriginFactory taskOutputOriginFactory,
+        BuildCacheConfigurationInternal buildCacheConfiguration
     ) {
-        return new TaskOutputCacheCommandFactory(taskOutputPacker, taskOutputOriginFactory);
+        String localCodec = buildCacheConfiguration.getLocal().getCodec();
+        String remoteCodec = buildCacheConfiguration.getRemote() == null ? null : buildCacheConfiguration.getRemote().getCodec();
+        TaskOutputPacker localPacker = packerForCodec(localCodec, taskOutputPacker, fileSystem);
+        // Use the same packer for both caches when they use the same codec, so that an entry stored in both is only packed once
+        TaskOutputPacker remotePacker = Objects.equal(localCodec, remoteCodec) ? localPacker : packerForCodec(remoteCodec, taskOutputPacker, fileSystem);
+        return new TaskOutputCacheCommandFactory(localPacker, remotePacker, taskOutputOriginFactory);
+    }
+
+    private static TaskOutputPacker packerForCodec(@Nullable String codecName, TaskOutputPacker defaultPacker, FileSystem fileSystem) {
+        if (codecName == null) {
+            return defaultPacker;
+        }
+        TaskOutputCodec codec = TaskOutputCodecs.forName(codecName);
+        if (defaultPacker instanceof ParallelGZipTaskOutputPacker) {
+            // Keep packing in parallel when a codec is chosen as well
+            return ((ParallelGZipTaskOutputPacker) defaultPacker).withCodec(codec);
+        }
+        return new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem), codec);
     }
 
     // TODO: Should live in BuildCacheServices
@@ -76,14 +109,18 @@ public class BuildCacheTaskServices {
         BuildOperationExecutor buildOperationExecutor,
         TemporaryFileProvider temporaryFileProvider,
         InstantiatorFactory instantiatorFactory,
-        GradleInternal gradle
+        GradleInternal gradle,
+        ExecutorFactory executorFactory,
+        InMemoryBuildCacheTier inMemoryBuildCacheTier
     ) {
         final BuildCacheController controller = BuildCacheControllerFactory.create(
             buildOperationExecutor,
             gradle,
             buildCacheConfiguration,
             temporaryFileProvider,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            executorFactory,
+            inMemoryBuildCacheTier
         );
 
         // Stop the controller early so that any logging emitted during stopping is visible.
@@ -26,32 +26,38 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.SortedSet;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
- * Adds compression and CRC32 checks to the packed task output.
+ * Compresses the packed task output using the given codec.
+ *
+ * Entries written with any of the {@link TaskOutputCodecs} can be unpacked.
  */
-public class GZipTaskOutputPacker implements TaskOutputPacker {
+public class CompressingTaskOutputPacker implements TaskOutputPacker {
     private final TaskOutputPacker delegate;
+    private final TaskOutputCodec codec;
+
+    public CompressingTaskOutputPacker(TaskOutputPacker delegate) {
+        this(delegate, TaskOutputCodecs.DEFAULT);
+    }
 
-    public GZipTaskOutputPacker(TaskOutputPacker delegate) {
+    public CompressingTaskOutputPacker(TaskOutputPacker delegate, TaskOutputCodec codec) {
         this.delegate = delegate;
+        this.codec = codec;
     }
 
     @Override
     public PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, OutputStream output, TaskOutputOriginWriter writeOrigin) {
-        GZIPOutputStream gzipOutput = createGzipOutputStream(output);
+        OutputStream compressedOutput = createCompressedOutputStream(output);
         try {
-            return delegate.pack(propertySpecs, gzipOutput, writeOrigin);
+            return delegate.pack(propertySpecs, compressedOutput, writeOrigin);
         } finally {
-            IOUtils.closeQuietly(gzipOutput);
+            IOUtils.closeQuietly(compressedOutput);
         }
     }
 
-    private GZIPOutputStream createGzipOutputStream(OutputStream output) {
+    private OutputStream createCompressedOutputStream(OutputStream output) {
         try {
-            return new GZIPOutputStream(output);
+            return codec.compress(output);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -59,17 +65,17 @@ public class GZipTaskOutputPacker implements TaskOutputPacker {
 
     @Override
     public UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) {
-        GZIPInputStream gzipInput = createGzipInputStream(input);
+        InputStream decompressedInput = createDecompressedInputStream(input);
         try {
-            return delegate.unpack(propertySpecs, gzipInput, readOrigin);
+            return delegate.unpack(propertySpecs, decompressedInput, readOrigin);
         } finally {
-            IOUtils.closeQuietly(gzipInput);
+            IOUtils.closeQuietly(decompressedInput);
         }
     }
 
-    private GZIPInputStream createGzipInputStream(InputStream input) {
+    static InputStream createDecompressedInputStream(InputStream input) {
         try {
-            return new GZIPInputStream(input);
+            return TaskOutputCodecs.decompress(input);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
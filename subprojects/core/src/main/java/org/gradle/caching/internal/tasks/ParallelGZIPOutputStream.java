@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.gradle.internal.UncheckedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a GZIP stream while compressing blocks of the data concurrently, in the way pigz does.
+ *
+ * <p>The data is split into fixed size blocks, and each block is deflated independently on the given executor,
+ * primed with the last 32 KB of the previous block as the dictionary. Blocks other than the last one are
+ * ended with a sync flush, so that the compressed blocks can simply be concatenated into a single deflate stream.
+ * The result is a regular, single member GZIP stream that can be read with {@link java.util.zip.GZIPInputStream}.</p>
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = new byte[]{
+        (byte) 0x1f, (byte) 0x8b, // Magic number
+        Deflater.DEFLATED,        // Compression method
+        0,                        // Flags
+        0, 0, 0, 0,               // Modification time
+        0,                        // Extra flags
+        (byte) 0xff               // Operating system (unknown)
+    };
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int level;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final Deque<Future<byte[]>> blocksInFlight = new ArrayDeque<Future<byte[]>>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] singleByte = new byte[1];
+    private byte[] block;
+    private int blockLength;
+    private byte[] dictionary;
+    private long totalLength;
+    private boolean closed;
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor, int parallelism) throws IOException {
+        this(out, executor, parallelism, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor, int parallelism, int level) throws IOException {
+        this(out, executor, parallelism, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    ParallelGZIPOutputStream(OutputStream out, ExecutorService executor, int parallelism, int level, int blockSize) throws IOException {
+        this.out = out;
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = Math.max(1, parallelism) * 2;
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        crc.update(bytes, offset, length);
+        totalLength += length;
+        while (length > 0) {
+            int count = Math.min(length, blockSize - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = blockLength == block.length ? block : Arrays.copyOf(block, blockLength);
+        blocksInFlight.add(executor.submit(new CompressBlock(data, dictionary, level, last)));
+        dictionary = data.length >= DICTIONARY_SIZE ? Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length) : null;
+        block = new byte[blockSize];
+        blockLength = 0;
+        while (blocksInFlight.size() >= maxBlocksInFlight) {
+            writeCompletedBlock();
+        }
+    }
+
+    private void writeCompletedBlock() throws IOException {
+        Future<byte[]> next = blocksInFlight.removeFirst();
+        try {
+            out.write(next.get());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while compressing build cache entry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw UncheckedException.throwAsUncheckedException(cause);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!blocksInFlight.isEmpty()) {
+                writeCompletedBlock();
+            }
+            writeTrailer();
+        } finally {
+            for (Future<byte[]> future : blocksInFlight) {
+                future.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        byte[] trailer = new byte[8];
+        writeInt((int) crc.getValue(), trailer, 0);
+        writeInt((int) totalLength, trailer, 4);
+        out.write(trailer);
+    }
+
+    private static void writeInt(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static class CompressBlock implements Callable<byte[]> {
+        private final byte[] data;
+        private final byte[] dictionary;
+        private final int level;
+        private final boolean last;
+
+        CompressBlock(byte[] data, byte[] dictionary, int level, boolean last) {
+            this.data = data;
+            this.dictionary = dictionary;
+            this.level = level;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(data);
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+                byte[] buffer = new byte[16 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, count);
+                    }
+                } else {
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, count);
+                    } while (count == buffer.length);
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.SortedSet;
+import java.util.zip.Deflater;
+
+/**
+ * Adds compression and CRC32 checks to the packed task output, compressing blocks of the output concurrently.
+ *
+ * The produced entries are regular GZIP streams, so they can be unpacked by {@link CompressingTaskOutputPacker} and vice versa.
+ */
+public class ParallelGZipTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    private final TaskOutputPacker delegate;
+    private final ManagedExecutor executor;
+    private final int parallelism;
+    private final int level;
+
+    public ParallelGZipTaskOutputPacker(TaskOutputPacker delegate, ManagedExecutor executor, int parallelism) {
+        this(delegate, executor, parallelism, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private ParallelGZipTaskOutputPacker(TaskOutputPacker delegate, ManagedExecutor executor, int parallelism, int level) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.level = level;
+    }
+
+    /**
+     * Returns a packer that stores entries with the given codec, still packing and unpacking with this packer's executor.
+     *
+     * The returned packer shares the executor of this packer, which remains responsible for stopping it.
+     */
+    public TaskOutputPacker withCodec(TaskOutputCodec codec) {
+        Integer codecLevel = TaskOutputCodecs.getDeflateLevel(codec);
+        if (codecLevel == null) {
+            // Nothing to compress, but the delegate still unpacks in parallel
+            return new CompressingTaskOutputPacker(delegate, codec);
+        }
+        return new ParallelGZipTaskOutputPacker(delegate, executor, parallelism, codecLevel);
+    }
+
+    @Override
+    public PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, OutputStream output, TaskOutputOriginWriter writeOrigin) {
+        ParallelGZIPOutputStream gzipOutput = createGzipOutputStream(output);
+        try {
+            PackResult result = delegate.pack(propertySpecs, gzipOutput, writeOrigin);
+            gzipOutput.close();
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            IOUtils.closeQuietly(gzipOutput);
+        }
+    }
+
+    private ParallelGZIPOutputStream createGzipOutputStream(OutputStream output) {
+        try {
+            return new ParallelGZIPOutputStream(output, executor, parallelism, level);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) {
+        InputStream decompressedInput = CompressingTaskOutputPacker.createDecompressedInputStream(input);
+        try {
+            return delegate.unpack(propertySpecs, decompressedInput, readOrigin);
+        } finally {
+            IOUtils.closeQuietly(decompressedInput);
+        }
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+}
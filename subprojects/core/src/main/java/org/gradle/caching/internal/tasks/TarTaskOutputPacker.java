@@ -20,6 +20,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
@@ -29,6 +30,7 @@ import org.apache.tools.tar.TarOutputStream;
 import org.apache.tools.zip.UnixStat;
 import org.gradle.api.GradleException;
 import org.gradle.api.JavaVersion;
+import org.gradle.api.Nullable;
 import org.gradle.api.Transformer;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileVisitDetails;
@@ -44,16 +46,24 @@ import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
 import org.gradle.internal.IoActions;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
@@ -69,12 +79,24 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
     private static final Pattern PROPERTY_PATH = Pattern.compile("(missing-)?property-([^/]+)(?:/(.*))?");
     private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
 
+    private static final int MAX_CONCURRENTLY_WRITTEN_FILE_SIZE = 1024 * 1024;
+    private static final long MAX_BYTES_WRITTEN_CONCURRENTLY = 64 * 1024 * 1024;
+
     private final DefaultDirectoryWalkerFactory directoryWalkerFactory;
     private final FileSystem fileSystem;
+    private final ExecutorService unpackExecutor;
 
     public TarTaskOutputPacker(FileSystem fileSystem) {
+        this(fileSystem, null);
+    }
+
+    /**
+     * Creates a packer that writes unpacked files using the given executor, if any.
+     */
+    public TarTaskOutputPacker(FileSystem fileSystem, @Nullable ExecutorService unpackExecutor) {
         this.directoryWalkerFactory = new DefaultDirectoryWalkerFactory(JavaVersion.current(), fileSystem);
         this.fileSystem = fileSystem;
+        this.unpackExecutor = unpackExecutor;
     }
 
     @Override
@@ -227,6 +249,20 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
     }
 
     private UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, TarInputStream tarInput, TaskOutputOriginReader readOriginAction) throws IOException {
+        if (unpackExecutor == null) {
+            return unpack(propertySpecs, tarInput, readOriginAction, null);
+        }
+        ConcurrentFileWriter fileWriter = new ConcurrentFileWriter(unpackExecutor);
+        try {
+            UnpackResult result = unpack(propertySpecs, tarInput, readOriginAction, fileWriter);
+            fileWriter.awaitCompletion();
+            return result;
+        } finally {
+            fileWriter.cancel();
+        }
+    }
+
+    private UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, TarInputStream tarInput, TaskOutputOriginReader readOriginAction, @Nullable ConcurrentFileWriter fileWriter) throws IOException {
         Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecsMap = Maps.uniqueIndex(propertySpecs, new Function<TaskFilePropertySpec, String>() {
             @Override
             public String apply(TaskFilePropertySpec propertySpec) {
@@ -259,7 +295,7 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
 
                 boolean outputMissing = matcher.group(1) != null;
                 String childPath = matcher.group(3);
-                unpackPropertyEntry(propertySpec, tarInput, entry, childPath, outputMissing);
+                unpackPropertyEntry(propertySpec, tarInput, entry, childPath, outputMissing, fileWriter);
             }
         }
         if (originMetadata == null) {
@@ -269,7 +305,7 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         return new UnpackResult(originMetadata, entries);
     }
 
-    private void unpackPropertyEntry(ResolvedTaskOutputFilePropertySpec propertySpec, InputStream input, TarEntry entry, String childPath, boolean missing) throws IOException {
+    private void unpackPropertyEntry(ResolvedTaskOutputFilePropertySpec propertySpec, InputStream input, TarEntry entry, String childPath, boolean missing, @Nullable ConcurrentFileWriter fileWriter) throws IOException {
         File propertyRoot = propertySpec.getOutputFile();
         if (propertyRoot == null) {
             throw new IllegalStateException("Optional property should have a value: " + propertySpec.getPropertyName());
@@ -305,15 +341,24 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
             outputFile = new File(propertyRoot, childPath);
         }
 
+        //noinspection OctalInteger
+        int mode = entry.getMode() & 0777;
+        long lastModified = getModificationTime(entry);
         if (isDirEntry) {
             FileUtils.forceMkdir(outputFile);
+        } else if (fileWriter != null && entry.getSize() <= MAX_CONCURRENTLY_WRITTEN_FILE_SIZE) {
+            byte[] contents = new byte[(int) entry.getSize()];
+            ByteStreams.readFully(input, contents);
+            fileWriter.write(outputFile, contents, mode, lastModified);
+            return;
         } else {
             Files.asByteSink(outputFile).writeFrom(input);
         }
+        restoreMetadata(outputFile, mode, lastModified);
+    }
 
-        //noinspection OctalInteger
-        fileSystem.chmod(outputFile, entry.getMode() & 0777);
-        long lastModified = getModificationTime(entry);
+    private void restoreMetadata(File outputFile, int mode, long lastModified) {
+        fileSystem.chmod(outputFile, mode);
         if (!outputFile.setLastModified(lastModified)) {
             throw new UnsupportedOperationException(String.format("Could not set modification time for '%s'", outputFile));
         }
@@ -367,4 +412,62 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         lastModified += TimeUnit.NANOSECONDS.toMillis(excessNanos);
         return lastModified;
     }
+
+    /**
+     * Writes unpacked files on an executor, while keeping the amount of data waiting to be written bounded.
+     */
+    private class ConcurrentFileWriter {
+        private final ExecutorService executor;
+        private final Deque<Future<?>> pendingWrites = new ArrayDeque<Future<?>>();
+        private final Deque<Integer> pendingSizes = new ArrayDeque<Integer>();
+        private long pendingBytes;
+
+        ConcurrentFileWriter(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void write(final File outputFile, final byte[] contents, final int mode, final long lastModified) throws IOException {
+            pendingWrites.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    Files.write(contents, outputFile);
+                    restoreMetadata(outputFile, mode, lastModified);
+                    return null;
+                }
+            }));
+            pendingSizes.add(contents.length);
+            pendingBytes += contents.length;
+            while (pendingBytes > MAX_BYTES_WRITTEN_CONCURRENTLY) {
+                awaitOldest();
+            }
+        }
+
+        void awaitCompletion() throws IOException {
+            while (!pendingWrites.isEmpty()) {
+                awaitOldest();
+            }
+        }
+
+        private void awaitOldest() throws IOException {
+            Future<?> write = pendingWrites.removeFirst();
+            pendingBytes -= pendingSizes.removeFirst();
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while unpacking task outputs");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw UncheckedException.throwAsUncheckedException(cause);
+            }
+        }
+
+        void cancel() {
+            for (Future<?> write : pendingWrites) {
+                write.cancel(false);
+            }
+        }
+    }
 }
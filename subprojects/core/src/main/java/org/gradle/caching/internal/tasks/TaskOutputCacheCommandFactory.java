@@ -23,6 +23,7 @@ import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.internal.controller.BuildCacheLoadCommand;
+import org.gradle.caching.internal.controller.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.BuildCacheStoreCommand;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
@@ -37,11 +38,22 @@ public class TaskOutputCacheCommandFactory {
 
     private static final Logger LOGGER = Logging.getLogger(TaskOutputCacheCommandFactory.class);
 
-    private final TaskOutputPacker packer;
+    private final TaskOutputPacker localPacker;
+    private final TaskOutputPacker remotePacker;
     private final TaskOutputOriginFactory taskOutputOriginFactory;
 
     public TaskOutputCacheCommandFactory(TaskOutputPacker packer, TaskOutputOriginFactory taskOutputOriginFactory) {
-        this.packer = packer;
+        this(packer, packer, taskOutputOriginFactory);
+    }
+
+    /**
+     * Creates a factory that packs entries differently for the local and the remote build cache.
+     *
+     * Both packers must be able to unpack entries written by either of them.
+     */
+    public TaskOutputCacheCommandFactory(TaskOutputPacker localPacker, TaskOutputPacker remotePacker, TaskOutputOriginFactory taskOutputOriginFactory) {
+        this.localPacker = localPacker;
+        this.remotePacker = remotePacker;
         this.taskOutputOriginFactory = taskOutputOriginFactory;
     }
 
@@ -77,7 +89,7 @@ public class TaskOutputCacheCommandFactory {
         @Override
         public BuildCacheLoadCommand.Result<TaskOutputOriginMetadata> load(InputStream input) {
             taskOutputsGenerationListener.beforeTaskOutputsGenerated();
-            final TaskOutputPacker.UnpackResult unpackResult = packer.unpack(outputProperties, input, taskOutputOriginFactory.createReader(task));
+            final TaskOutputPacker.UnpackResult unpackResult = localPacker.unpack(outputProperties, input, taskOutputOriginFactory.createReader(task));
             LOGGER.info("Unpacked output for {} from cache (took {}).", task, clock.getElapsed());
 
             return new BuildCacheLoadCommand.Result<TaskOutputOriginMetadata>() {
@@ -114,8 +126,14 @@ public class TaskOutputCacheCommandFactory {
         }
 
         @Override
-        public BuildCacheStoreCommand.Result store(OutputStream output) throws IOException {
+        public boolean isTargetSpecific() {
+            return localPacker != remotePacker;
+        }
+
+        @Override
+        public BuildCacheStoreCommand.Result store(OutputStream output, BuildCacheServiceRole target) throws IOException {
             LOGGER.info("Packing {}", task.getPath());
+            TaskOutputPacker packer = target == BuildCacheServiceRole.LOCAL ? localPacker : remotePacker;
             final TaskOutputPacker.PackResult packResult = packer.pack(outputProperties, output, taskOutputOriginFactory.createWriter(task, clock.getElapsedMillis()));
             return new BuildCacheStoreCommand.Result() {
                 @Override
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses packed task output before it is stored in a build cache.
+ *
+ * <p>Entries must be recognizable from their content, so that they can be unpacked regardless
+ * of which codec was used to store them. See {@link TaskOutputCodecs#decompress(java.io.InputStream)}.</p>
+ */
+public interface TaskOutputCodec {
+    /**
+     * The name used to select this codec.
+     */
+    String getName();
+
+    /**
+     * Wraps the given stream so that data written to it is compressed. Closing the returned stream closes the given stream.
+     */
+    OutputStream compress(OutputStream output) throws IOException;
+}
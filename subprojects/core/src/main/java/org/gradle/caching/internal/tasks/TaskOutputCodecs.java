@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import org.gradle.api.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The codecs available for build cache entries.
+ *
+ * <p>All compressing codecs produce GZIP streams and differ only in the trade-off between speed and ratio,
+ * while uncompressed entries are plain TAR archives. This way the format of an entry can be told from its first bytes,
+ * and caches containing entries written with different codecs keep working.</p>
+ */
+public final class TaskOutputCodecs {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+    /**
+     * Stores entries without compression, which is the cheapest option when the cache is on a fast local disk or network.
+     */
+    public static final TaskOutputCodec NONE = new TaskOutputCodec() {
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return output;
+        }
+    };
+
+    public static final TaskOutputCodec FAST = new DeflateCodec("fast", Deflater.BEST_SPEED);
+    public static final TaskOutputCodec DEFAULT = new DeflateCodec("default", Deflater.DEFAULT_COMPRESSION);
+    public static final TaskOutputCodec BEST = new DeflateCodec("best", Deflater.BEST_COMPRESSION);
+
+    private static final Map<String, TaskOutputCodec> CODECS_BY_NAME = ImmutableMap.of(
+        NONE.getName(), NONE,
+        FAST.getName(), FAST,
+        DEFAULT.getName(), DEFAULT,
+        BEST.getName(), BEST
+    );
+
+    private TaskOutputCodecs() {
+    }
+
+    public static TaskOutputCodec forName(String name) {
+        TaskOutputCodec codec = CODECS_BY_NAME.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException(String.format("Unknown build cache entry codec '%s', available codecs are: %s.", name, Joiner.on(", ").join(CODECS_BY_NAME.keySet())));
+        }
+        return codec;
+    }
+
+    /**
+     * Wraps the given stream so that it yields the uncompressed entry, whichever codec was used to write it.
+     */
+    public static InputStream decompress(InputStream input) throws IOException {
+        PushbackInputStream pushbackInput = new PushbackInputStream(input, 2);
+        byte[] magic = new byte[2];
+        int read = 0;
+        while (read < magic.length) {
+            int count = pushbackInput.read(magic, read, magic.length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        pushbackInput.unread(magic, 0, read);
+        if (read == magic.length && (magic[0] & 0xff) == GZIP_MAGIC_FIRST && (magic[1] & 0xff) == GZIP_MAGIC_SECOND) {
+            return new GZIPInputStream(pushbackInput, BUFFER_SIZE);
+        }
+        return pushbackInput;
+    }
+
+    /**
+     * Returns the deflate level the given codec compresses with, or {@code null} if it does not compress.
+     */
+    @Nullable
+    static Integer getDeflateLevel(TaskOutputCodec codec) {
+        return codec instanceof DeflateCodec ? ((DeflateCodec) codec).level : null;
+    }
+
+    private static class DeflateCodec implements TaskOutputCodec {
+        private final String name;
+        private final int level;
+
+        DeflateCodec(String name, int level) {
+            this.name = name;
+            this.level = level;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.gradle.api.Nullable;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes a cache entry stored in a {@link ContentAddressedDirectoryBuildCacheService}.
+ *
+ * A packed entry is recorded as the list of its TAR entry headers, with the contents of each file
+ * entry replaced by a reference to a blob in the content store, along with whether the TAR was gzipped.
+ * Entries that cannot be parsed as a TAR are stored as a single opaque blob.
+ */
+class CacheEntryManifest {
+    private static final int FORMAT_VERSION = 2;
+
+    private final String rawContentHash;
+    private final List<Entry> entries;
+    private final boolean compressed;
+
+    private CacheEntryManifest(@Nullable String rawContentHash, List<Entry> entries, boolean compressed) {
+        this.rawContentHash = rawContentHash;
+        this.entries = entries;
+        this.compressed = compressed;
+    }
+
+    static CacheEntryManifest raw(String contentHash) {
+        return new CacheEntryManifest(contentHash, ImmutableList.<Entry>of(), false);
+    }
+
+    static CacheEntryManifest packed(List<Entry> entries, boolean compressed) {
+        return new CacheEntryManifest(null, ImmutableList.copyOf(entries), compressed);
+    }
+
+    boolean isRaw() {
+        return rawContentHash != null;
+    }
+
+    /**
+     * The hash of the whole entry if it was stored as an opaque blob.
+     */
+    @Nullable
+    String getRawContentHash() {
+        return rawContentHash;
+    }
+
+    /**
+     * Whether the packed entry was a gzipped TAR, and should be loaded as one.
+     */
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    Set<String> getContentHashes() {
+        if (rawContentHash != null) {
+            return Sets.newHashSet(rawContentHash);
+        }
+        Set<String> hashes = Sets.newHashSet();
+        for (Entry entry : entries) {
+            if (entry.contentHash != null) {
+                hashes.add(entry.contentHash);
+            }
+        }
+        return hashes;
+    }
+
+    void writeTo(File file) throws IOException {
+        KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(file));
+        try {
+            write(encoder);
+        } finally {
+            encoder.close();
+        }
+    }
+
+    static CacheEntryManifest readFrom(File file) throws IOException {
+        KryoBackedDecoder decoder = new KryoBackedDecoder(new FileInputStream(file));
+        try {
+            return read(decoder);
+        } finally {
+            decoder.close();
+        }
+    }
+
+    private void write(Encoder encoder) throws IOException {
+        encoder.writeSmallInt(FORMAT_VERSION);
+        encoder.writeNullableString(rawContentHash);
+        encoder.writeBoolean(compressed);
+        encoder.writeSmallInt(entries.size());
+        for (Entry entry : entries) {
+            encoder.writeString(entry.name);
+            encoder.writeSmallInt(entry.mode);
+            encoder.writeLong(entry.modTime);
+            encoder.writeLong(entry.groupId);
+            encoder.writeSmallLong(entry.size);
+            encoder.writeNullableString(entry.contentHash);
+        }
+    }
+
+    private static CacheEntryManifest read(Decoder decoder) throws IOException {
+        int version = decoder.readSmallInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache entry manifest version: " + version);
+        }
+        String rawContentHash = decoder.readNullableString();
+        boolean compressed = decoder.readBoolean();
+        int count = decoder.readSmallInt();
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            String name = decoder.readString();
+            int mode = decoder.readSmallInt();
+            long modTime = decoder.readLong();
+            long groupId = decoder.readLong();
+            long size = decoder.readSmallLong();
+            String contentHash = decoder.readNullableString();
+            entries.add(new Entry(name, mode, modTime, groupId, size, contentHash));
+        }
+        return new CacheEntryManifest(rawContentHash, entries.build(), compressed);
+    }
+
+    static class Entry {
+        final String name;
+        final int mode;
+        final long modTime;
+        final long groupId;
+        final long size;
+        final String contentHash;
+
+        Entry(String name, int mode, long modTime, long groupId, long size, @Nullable String contentHash) {
+            this.name = name;
+            this.mode = mode;
+            this.modTime = modTime;
+            this.groupId = groupId;
+            this.size = size;
+            this.contentHash = contentHash;
+        }
+    }
+}
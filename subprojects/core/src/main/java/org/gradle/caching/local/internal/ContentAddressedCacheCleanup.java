@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.Factories;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.gradle.caching.local.internal.ContentAddressedDirectoryBuildCacheService.CONTENT_DIR;
+import static org.gradle.caching.local.internal.ContentAddressedDirectoryBuildCacheService.ENTRIES_DIR;
+import static org.gradle.caching.local.internal.ContentAddressedDirectoryBuildCacheService.PARTIAL_SUFFIX;
+
+/**
+ * Removes the least recently used entries from a {@link ContentAddressedDirectoryBuildCacheService} until the cache fits into its target size.
+ *
+ * Content is only removed once no remaining entry references it, so removing an entry only reclaims the space of the content unique to it.
+ */
+public class ContentAddressedCacheCleanup implements Action<PersistentCache> {
+    private static final Logger LOGGER = Logging.getLogger(ContentAddressedCacheCleanup.class);
+    private static final Comparator<File> OLDEST_FIRST = Ordering.natural().onResultOf(new Function<File, Comparable>() {
+        @Override
+        public Comparable apply(File input) {
+            return input.lastModified();
+        }
+    });
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final long targetSizeInMB;
+
+    public ContentAddressedCacheCleanup(BuildOperationExecutor buildOperationExecutor, long targetSizeInMB) {
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.targetSizeInMB = targetSizeInMB;
+    }
+
+    @Override
+    public void execute(final PersistentCache persistentCache) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                cleanup(persistentCache);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Clean up " + persistentCache);
+            }
+        });
+    }
+
+    void cleanup(final PersistentCache persistentCache) {
+        // Stores in other processes write content before the manifest referencing it, so hold the lock to never see content that is about to be referenced
+        persistentCache.withFileLock(Factories.toFactory(new Runnable() {
+            @Override
+            public void run() {
+                cleanupLocked(persistentCache);
+            }
+        }));
+    }
+
+    private void cleanupLocked(PersistentCache persistentCache) {
+        File entriesDir = new File(persistentCache.getBaseDir(), ENTRIES_DIR);
+        File contentDir = new File(persistentCache.getBaseDir(), CONTENT_DIR);
+
+        File[] manifestFiles = entriesDir.listFiles();
+        if (manifestFiles == null) {
+            manifestFiles = new File[0];
+        }
+        Arrays.sort(manifestFiles, OLDEST_FIRST);
+
+        // All sizes are in bytes
+        long totalSize = 0;
+        long targetSize = targetSizeInMB * 1024 * 1024;
+
+        Map<String, Integer> referenceCounts = Maps.newHashMap();
+        List<File> manifests = Lists.newArrayList();
+        List<Set<String>> manifestReferences = Lists.newArrayList();
+        for (File manifestFile : manifestFiles) {
+            if (manifestFile.getName().endsWith(PARTIAL_SUFFIX)) {
+                continue;
+            }
+            Set<String> references;
+            try {
+                references = CacheEntryManifest.readFrom(manifestFile).getContentHashes();
+            } catch (Exception e) {
+                LOGGER.debug("Removing unreadable build cache entry " + manifestFile, e);
+                FileUtils.deleteQuietly(manifestFile);
+                continue;
+            }
+            for (String contentHash : references) {
+                Integer count = referenceCounts.get(contentHash);
+                referenceCounts.put(contentHash, count == null ? 1 : count + 1);
+            }
+            manifests.add(manifestFile);
+            manifestReferences.add(references);
+            totalSize += manifestFile.length();
+        }
+
+        Map<String, File> contentFiles = Maps.newHashMap();
+        File[] fanOutDirs = contentDir.listFiles();
+        if (fanOutDirs != null) {
+            for (File fanOutDir : fanOutDirs) {
+                File[] files = fanOutDir.listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File contentFile : files) {
+                    contentFiles.put(contentFile.getName(), contentFile);
+                    totalSize += contentFile.length();
+                }
+            }
+        }
+
+        LOGGER.info("{} consuming {} (target: {} MB).", persistentCache, FileUtils.byteCountToDisplaySize(totalSize), targetSizeInMB);
+
+        Set<String> unreferenced = Sets.newHashSet(contentFiles.keySet());
+        unreferenced.removeAll(referenceCounts.keySet());
+        long removedSize = 0;
+        int removedEntries = 0;
+        for (String contentHash : unreferenced) {
+            removedSize += delete(contentFiles.get(contentHash));
+        }
+
+        for (int i = 0; i < manifests.size() && totalSize - removedSize > targetSize; i++) {
+            File manifestFile = manifests.get(i);
+            removedSize += delete(manifestFile);
+            removedEntries++;
+            for (String contentHash : manifestReferences.get(i)) {
+                int count = referenceCounts.get(contentHash) - 1;
+                if (count == 0) {
+                    referenceCounts.remove(contentHash);
+                    File contentFile = contentFiles.get(contentHash);
+                    if (contentFile != null) {
+                        removedSize += delete(contentFile);
+                    }
+                } else {
+                    referenceCounts.put(contentHash, count);
+                }
+            }
+        }
+
+        if (removedSize > 0) {
+            LOGGER.info("{} removing {} cache entries ({} reclaimed).", persistentCache, removedEntries, FileUtils.byteCountToDisplaySize(removedSize));
+        }
+    }
+
+    private static long delete(File file) {
+        long size = file.length();
+        try {
+            FileUtils.forceDelete(file);
+            return size;
+        } catch (IOException e) {
+            LOGGER.debug("Could not clean up cache " + file, e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.apache.tools.tar.TarOutputStream;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.cache.CacheBuilder;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentCache;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.Factory;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.util.GFileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.gradle.cache.internal.FileLockManager.LockMode.None;
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * A local build cache that stores the contents of packed task outputs only once.
+ *
+ * <p>Incoming entries are expected to be TAR archives, gzipped or not, as produced by the task output packer.
+ * Each file in the archive is stored once in the content store under its SHA-1 hash, while the entry
+ * itself is recorded as a small {@link CacheEntryManifest} referencing that content. When an entry is
+ * loaded, the archive is streamed from the content store without compression, so no inflating is
+ * required on the way out.</p>
+ *
+ * <pre>
+ * baseDir/entries/&lt;cache key&gt;       manifests
+ * baseDir/content/&lt;xx&gt;/&lt;sha1&gt;      file contents, fanned out by the first two characters of the hash
+ * </pre>
+ */
+public class ContentAddressedDirectoryBuildCacheService implements BuildCacheService {
+    private static final Logger LOGGER = Logging.getLogger(ContentAddressedDirectoryBuildCacheService.class);
+    static final String ENTRIES_DIR = "entries";
+    static final String CONTENT_DIR = "content";
+    static final String PARTIAL_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_MAGIC_OFFSET = 257;
+    private static final byte[] TAR_MAGIC = {'u', 's', 't', 'a', 'r'};
+
+    private final PersistentCache persistentCache;
+    private final File entriesDir;
+    private final File contentDir;
+
+    public ContentAddressedDirectoryBuildCacheService(CacheRepository cacheRepository, BuildOperationExecutor buildOperationExecutor, File baseDir, long targetCacheSize) {
+        this.entriesDir = new File(baseDir, ENTRIES_DIR);
+        this.contentDir = new File(baseDir, CONTENT_DIR);
+        this.persistentCache = cacheRepository
+            .cache(DirectoryBuildCacheService.checkDirectory(baseDir))
+            .withCleanup(new ContentAddressedCacheCleanup(buildOperationExecutor, targetCacheSize))
+            .withDisplayName("Build cache")
+            .withLockOptions(mode(None))
+            .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
+            .open();
+    }
+
+    static File getContentFile(File contentDir, String contentHash) {
+        return new File(new File(contentDir, contentHash.substring(0, 2)), contentHash);
+    }
+
+    @Override
+    public boolean load(final BuildCacheKey key, final BuildCacheEntryReader reader) throws BuildCacheException {
+        // We need to lock here because garbage collection can be under way in another process
+        return persistentCache.withFileLock(new Factory<Boolean>() {
+            @Override
+            public Boolean create() {
+                File manifestFile = new File(entriesDir, key.getHashCode());
+                if (!manifestFile.isFile()) {
+                    return false;
+                }
+
+                CacheEntryManifest manifest;
+                try {
+                    manifest = CacheEntryManifest.readFrom(manifestFile);
+                } catch (IOException ex) {
+                    LOGGER.debug("Removing unreadable build cache entry " + manifestFile, ex);
+                    FileUtils.deleteQuietly(manifestFile);
+                    return false;
+                }
+
+                try {
+                    if (!hasAllContent(manifest)) {
+                        // Content removed behind our back, the entry cannot be used anymore
+                        FileUtils.deleteQuietly(manifestFile);
+                        return false;
+                    }
+
+                    // Mark as recently used
+                    GFileUtils.touch(manifestFile);
+
+                    Closer closer = Closer.create();
+                    InputStream input = closer.register(manifest.isRaw()
+                        ? new BufferedInputStream(new FileInputStream(getContentFile(contentDir, manifest.getRawContentHash())))
+                        : new PackedEntryInputStream(contentDir, manifest));
+                    try {
+                        reader.readFrom(input);
+                    } finally {
+                        closer.close();
+                    }
+                    return true;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+    }
+
+    private boolean hasAllContent(CacheEntryManifest manifest) {
+        for (String contentHash : manifest.getContentHashes()) {
+            if (!getContentFile(contentDir, contentHash).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
+        final String hashCode = key.getHashCode();
+        final File tempFile;
+        try {
+            tempFile = File.createTempFile(hashCode, PARTIAL_SUFFIX, persistentCache.getBaseDir());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        try {
+            try {
+                Closer closer = Closer.create();
+                OutputStream output = closer.register(new FileOutputStream(tempFile));
+                try {
+                    result.writeTo(output);
+                } finally {
+                    closer.close();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            persistentCache.useCache(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        CacheEntryManifest manifest = ingest(tempFile);
+                        File manifestFile = new File(entriesDir, hashCode);
+                        File tempManifestFile = new File(entriesDir, hashCode + PARTIAL_SUFFIX);
+                        GFileUtils.mkdirs(entriesDir);
+                        manifest.writeTo(tempManifestFile);
+                        moveInto(tempManifestFile, manifestFile);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private CacheEntryManifest ingest(File packedEntry) throws IOException {
+        byte[] header = readHeader(packedEntry);
+        if (isGzipped(header)) {
+            return ingestPacked(packedEntry, true);
+        }
+        if (isTar(header)) {
+            return ingestPacked(packedEntry, false);
+        }
+        // Not a packed task output, store the entry as is
+        return CacheEntryManifest.raw(storeContent(packedEntry));
+    }
+
+    private static byte[] readHeader(File file) throws IOException {
+        byte[] header = new byte[TAR_MAGIC_OFFSET + TAR_MAGIC.length];
+        InputStream input = new FileInputStream(file);
+        try {
+            int read = ByteStreams.read(input, header, 0, header.length);
+            return read == header.length ? header : Arrays.copyOf(header, read);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static boolean isGzipped(byte[] header) {
+        return header.length >= 2 && (header[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff) && (header[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    private static boolean isTar(byte[] header) {
+        if (header.length < TAR_MAGIC_OFFSET + TAR_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < TAR_MAGIC.length; i++) {
+            if (header[TAR_MAGIC_OFFSET + i] != TAR_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CacheEntryManifest ingestPacked(File packedEntry, boolean compressed) throws IOException {
+        Closer closer = Closer.create();
+        try {
+            InputStream fileInput = closer.register(new BufferedInputStream(new FileInputStream(packedEntry)));
+            InputStream input = compressed ? closer.register(new GZIPInputStream(fileInput)) : fileInput;
+            TarInputStream tarInput = closer.register(new TarInputStream(input));
+            List<CacheEntryManifest.Entry> entries = Lists.newArrayList();
+            TarEntry tarEntry;
+            while ((tarEntry = tarInput.getNextEntry()) != null) {
+                String contentHash = tarEntry.isDirectory() ? null : storeContent(tarInput);
+                entries.add(new CacheEntryManifest.Entry(
+                    tarEntry.getName(),
+                    tarEntry.getMode(),
+                    tarEntry.getModTime().getTime(),
+                    tarEntry.getLongGroupId(),
+                    tarEntry.getSize(),
+                    contentHash
+                ));
+            }
+            return CacheEntryManifest.packed(entries, compressed);
+        } finally {
+            closer.close();
+        }
+    }
+
+    private String storeContent(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return storeContent(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private String storeContent(InputStream input) throws IOException {
+        GFileUtils.mkdirs(contentDir);
+        File tempFile = File.createTempFile("content", PARTIAL_SUFFIX, contentDir);
+        try {
+            HashingOutputStream output = new HashingOutputStream(Hashing.sha1(), new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                ByteStreams.copy(input, output);
+            } finally {
+                output.close();
+            }
+            String contentHash = output.hash().toString();
+            File contentFile = getContentFile(contentDir, contentHash);
+            if (!contentFile.isFile()) {
+                GFileUtils.mkdirs(contentFile.getParentFile());
+                moveInto(tempFile, contentFile);
+            }
+            return contentHash;
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private static void moveInto(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            FileUtils.deleteQuietly(target);
+            FileUtils.moveFile(source, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        persistentCache.close();
+    }
+
+    /**
+     * Reassembles a packed entry from the content store while it is being read, so that loading an entry never writes it out in full.
+     *
+     * Each step writes either the header of the next TAR entry or the next chunk of the current file to an in-memory buffer, which the reads are then served from.
+     */
+    private static class PackedEntryInputStream extends InputStream {
+        private final File contentDir;
+        private final Iterator<CacheEntryManifest.Entry> entries;
+        private final ReadableByteArrayOutputStream buffer = new ReadableByteArrayOutputStream();
+        private final TarOutputStream tarOutput;
+        private final byte[] copyBuffer = new byte[BUFFER_SIZE];
+        private InputStream content;
+        private int position;
+        private boolean finished;
+
+        PackedEntryInputStream(File contentDir, CacheEntryManifest manifest) throws IOException {
+            this.contentDir = contentDir;
+            this.entries = manifest.getEntries().iterator();
+            this.tarOutput = new TarOutputStream(manifest.isCompressed() ? new StoredGZIPOutputStream(buffer) : buffer, "utf-8");
+            tarOutput.setLongFileMode(TarOutputStream.LONGFILE_POSIX);
+            tarOutput.setBigNumberMode(TarOutputStream.BIGNUMBER_POSIX);
+            tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == buffer.size()) {
+                if (finished) {
+                    return -1;
+                }
+                buffer.reset();
+                position = 0;
+                writeNext();
+            }
+            int count = buffer.copyTo(position, b, off, len);
+            position += count;
+            return count;
+        }
+
+        private void writeNext() throws IOException {
+            if (content != null) {
+                int count = content.read(copyBuffer);
+                if (count >= 0) {
+                    tarOutput.write(copyBuffer, 0, count);
+                } else {
+                    content.close();
+                    content = null;
+                    tarOutput.closeEntry();
+                }
+            } else if (entries.hasNext()) {
+                CacheEntryManifest.Entry entry = entries.next();
+                TarEntry tarEntry = new TarEntry(entry.name);
+                tarEntry.setMode(entry.mode);
+                tarEntry.setModTime(entry.modTime);
+                tarEntry.setGroupId(entry.groupId);
+                tarEntry.setSize(entry.size);
+                tarOutput.putNextEntry(tarEntry);
+                if (entry.contentHash != null) {
+                    content = new FileInputStream(getContentFile(contentDir, entry.contentHash));
+                } else {
+                    tarOutput.closeEntry();
+                }
+            } else {
+                tarOutput.close();
+                finished = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (content != null) {
+                content.close();
+                content = null;
+            }
+        }
+    }
+
+    private static class ReadableByteArrayOutputStream extends ByteArrayOutputStream {
+        ReadableByteArrayOutputStream() {
+            super(BUFFER_SIZE);
+        }
+
+        int copyTo(int position, byte[] b, int off, int len) {
+            int length = Math.min(len, count - position);
+            System.arraycopy(buf, position, b, off, length);
+            return length;
+        }
+    }
+
+    /**
+     * Writes a gzip stream without compressing the data, so that reading it back is only a matter of copying.
+     */
+    private static class StoredGZIPOutputStream extends GZIPOutputStream {
+        StoredGZIPOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.NO_COMPRESSION);
+        }
+    }
+}
@@ -27,7 +27,6 @@ import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
-import org.gradle.caching.BuildCacheService;
 import org.gradle.internal.Factory;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
@@ -36,14 +35,16 @@ import org.gradle.util.GFileUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 import static org.gradle.cache.internal.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
-public class DirectoryBuildCacheService implements BuildCacheService {
+public class DirectoryBuildCacheService implements LocalBuildCacheService {
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
 
@@ -58,7 +59,7 @@ public class DirectoryBuildCacheService implements BuildCacheService {
             .open();
     }
 
-    private static File checkDirectory(File directory) {
+    static File checkDirectory(File directory) {
         if (directory.exists()) {
             if (!directory.isDirectory()) {
                 throw new IllegalArgumentException(String.format("Cache directory %s must be a directory", directory));
@@ -108,15 +109,29 @@ public class DirectoryBuildCacheService implements BuildCacheService {
     }
 
     @Override
-    public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
-        final String hashCode = key.getHashCode();
-        final File tempFile;
-        try {
-            tempFile = File.createTempFile(hashCode, ".part", persistentCache.getBaseDir());
-        } catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-        }
+    public InputStream openLocally(final BuildCacheKey key) throws BuildCacheException {
+        // Open the entry while holding the lock, an entry that is open can still be read when garbage collection removes it
+        return persistentCache.withFileLock(new Factory<InputStream>() {
+            @Override
+            public InputStream create() {
+                LocallyAvailableResource resource = fileStore.get(key.getHashCode());
+                if (resource == null) {
+                    return null;
+                }
+                // Mark as recently used
+                GFileUtils.touch(resource.getFile());
+                try {
+                    return new FileInputStream(resource.getFile());
+                } catch (FileNotFoundException ex) {
+                    return null;
+                }
+            }
+        });
+    }
 
+    @Override
+    public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
+        final File tempFile = createTempFile(key);
         try {
             try {
                 Closer closer = Closer.create();
@@ -129,17 +144,31 @@ public class DirectoryBuildCacheService implements BuildCacheService {
             } catch (IOException ex) {
                 throw new UncheckedIOException(ex);
             }
-            persistentCache.useCache(new Runnable() {
-                @Override
-                public void run() {
-                    fileStore.move(hashCode, tempFile);
-                }
-            });
+            storeLocally(key, tempFile);
         } finally {
             FileUtils.deleteQuietly(tempFile);
         }
     }
 
+    @Override
+    public File createTempFile(BuildCacheKey key) throws BuildCacheException {
+        try {
+            return File.createTempFile(key.getHashCode(), ".part", persistentCache.getBaseDir());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void storeLocally(final BuildCacheKey key, final File file) throws BuildCacheException {
+        persistentCache.useCache(new Runnable() {
+            @Override
+            public void run() {
+                fileStore.move(key.getHashCode(), file);
+            }
+        });
+    }
+
     @Override
     public void close() throws IOException {
         persistentCache.close();
@@ -31,8 +31,14 @@ import java.io.File;
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
+    private static final String CONTENT_ADDRESSED_BUILD_CACHE_KEY = "build-cache-cas-" + BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
 
+    /**
+     * When set to {@code true}, the local cache stores each file of an entry once in a content-addressed store.
+     */
+    public static final String CONTENT_ADDRESSED_PROPERTY = "org.gradle.caching.local.contentaddressed";
+
     private final CacheRepository cacheRepository;
     private final CacheScopeMapping cacheScopeMapping;
     private final FileResolver resolver;
@@ -48,16 +54,21 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
+        boolean contentAddressed = Boolean.getBoolean(CONTENT_ADDRESSED_PROPERTY);
         Object cacheDirectory = configuration.getDirectory();
         File target;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
         } else {
-            target = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
+            target = cacheScopeMapping.getBaseDirectory(null, contentAddressed ? CONTENT_ADDRESSED_BUILD_CACHE_KEY : BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         }
 
         describer.type(DIRECTORY_BUILD_CACHE_TYPE).config("location", target.getAbsolutePath());
 
+        if (contentAddressed) {
+            describer.config("layout", "content-addressed");
+            return new ContentAddressedDirectoryBuildCacheService(cacheRepository, buildOperationExecutor, target, configuration.getTargetSizeInMB());
+        }
         return new DirectoryBuildCacheService(cacheRepository, buildOperationExecutor, target, configuration.getTargetSizeInMB());
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.Nullable;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * A build cache service that keeps its entries in files, and can take ownership of an entry that has already been written to a file.
+ */
+public interface LocalBuildCacheService extends BuildCacheService {
+
+    /**
+     * Creates an empty file to write the entry for the given key to, before it is stored with {@link #storeLocally(BuildCacheKey, File)}.
+     *
+     * The file is created next to the cache entries, so that storing it only needs a rename.
+     */
+    File createTempFile(BuildCacheKey key) throws BuildCacheException;
+
+    /**
+     * Stores the given file as the entry for the given key, by moving it into the cache.
+     */
+    void storeLocally(BuildCacheKey key, File file) throws BuildCacheException;
+
+    /**
+     * Opens the stored entry for the given key, or returns {@code null} if there is none.
+     *
+     * Unlike {@link #load(BuildCacheKey, org.gradle.caching.BuildCacheEntryReader)}, the cache is only locked while the entry is opened,
+     * so that reading it, for example to upload it to a remote cache, does not keep other processes from using the cache. The caller closes the stream.
+     */
+    @Nullable
+    InputStream openLocally(BuildCacheKey key) throws BuildCacheException;
+}
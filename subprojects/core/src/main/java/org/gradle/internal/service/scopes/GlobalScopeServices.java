@@ -41,6 +41,7 @@ import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.file.TmpDirTemporaryFileProvider;
 import org.gradle.api.internal.file.collections.DefaultDirectoryFileTreeFactory;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
+import org.gradle.api.internal.hash.FileHashingExecutor;
 import org.gradle.api.internal.model.DefaultObjectFactory;
 import org.gradle.api.internal.model.NamedObjectInstantiator;
 import org.gradle.api.internal.provider.DefaultProviderFactory;
@@ -52,6 +53,8 @@ import org.gradle.api.tasks.util.internal.PatternSpecFactory;
 import org.gradle.cache.internal.CacheFactory;
 import org.gradle.cache.internal.DefaultCacheFactory;
 import org.gradle.cache.internal.FileLockManager;
+import org.gradle.cache.internal.IndexedCacheStoreFactory;
+import org.gradle.caching.internal.controller.InMemoryBuildCacheTier;
 import org.gradle.cli.CommandLineConverter;
 import org.gradle.configuration.DefaultImportsReader;
 import org.gradle.configuration.ImportsReader;
@@ -189,7 +192,7 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
 
 
     protected CacheFactory createCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory) {
-        return new DefaultCacheFactory(fileLockManager, executorFactory);
+        return new DefaultCacheFactory(fileLockManager, executorFactory, IndexedCacheStoreFactory.fromSystemProperties());
     }
 
     ClassLoaderRegistry createClassLoaderRegistry(ClassPathRegistry classPathRegistry, LegacyTypesSupport legacyTypesSupport) {
@@ -234,6 +237,10 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
         return new InMemoryCacheDecoratorFactory(environment.isLongLivingProcess(), cacheFactory);
     }
 
+    InMemoryBuildCacheTier createInMemoryBuildCacheTier() {
+        return new InMemoryBuildCacheTier();
+    }
+
 
     DirectoryFileTreeFactory createDirectoryFileTreeFactory(Factory<PatternSet> patternSetFactory, FileSystem fileSystem) {
         return new DefaultDirectoryFileTreeFactory(patternSetFactory, fileSystem);
@@ -333,6 +340,10 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
         return new DefaultParallelismConfigurationManager(listenerManager);
     }
 
+    FileHashingExecutor createFileHashingExecutor(ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+        return new FileHashingExecutor(executorFactory, parallelismConfigurationManager);
+    }
+
     PatternSpecFactory createPatternSpecFactory() {
         return new CachingPatternSpecFactory();
     }
@@ -25,6 +25,7 @@ import org.gradle.api.internal.changedetection.changes.DefaultTaskArtifactStateR
 import org.gradle.api.internal.changedetection.changes.ShortCircuitTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.state.CacheBackedFileSnapshotRepository;
 import org.gradle.api.internal.changedetection.state.CacheBackedTaskHistoryRepository;
+import org.gradle.api.internal.changedetection.state.ContentAddressedFileSnapshotRepository;
 import org.gradle.api.internal.changedetection.state.DefaultFileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.DefaultTaskHistoryStore;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
@@ -41,6 +42,7 @@ import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ExecuteAtMostOnceTaskExecuter;
+import org.gradle.api.internal.tasks.execution.PrefetchCachedTaskOutputExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveBuildCacheKeyExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveTaskArtifactStateTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveTaskOutputCachingStateExecuter;
@@ -113,6 +115,7 @@ public class TaskExecutionServices {
                 taskOutputCacheCommandFactory,
                 executer
             );
+            executer = new PrefetchCachedTaskOutputExecuter(buildCacheController, executer);
         }
         executer = new SkipUpToDateTaskExecuter(executer);
         executer = new ResolveTaskOutputCachingStateExecuter(taskOutputCacheEnabled, executer);
@@ -143,21 +146,36 @@ public class TaskExecutionServices {
         return new DefaultFileCollectionSnapshotterRegistry(snapshotters.build());
     }
 
-    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryStore cacheAccess, StartParameter startParameter, StringInterner stringInterner, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter, BuildInvocationScopeId buildInvocationScopeId) {
+    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryStore cacheAccess, StartParameter startParameter, StringInterner stringInterner, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter, BuildInvocationScopeId buildInvocationScopeId, BuildOperationExecutor buildOperationExecutor) {
         SerializerRegistry serializerRegistry = new DefaultSerializerRegistry();
         for (FileCollectionSnapshotter snapshotter : fileCollectionSnapshotterRegistry.getAllSnapshotters()) {
             snapshotter.registerSerializers(serializerRegistry);
         }
 
-        TaskHistoryRepository taskHistoryRepository = new CacheBackedTaskHistoryRepository(
-            cacheAccess,
-            new CacheBackedFileSnapshotRepository(cacheAccess,
-                serializerRegistry.build(FileCollectionSnapshot.class),
-                new RandomLongIdGenerator()
-            ),
-            stringInterner,
-            buildInvocationScopeId
-        );
+        TaskHistoryRepository taskHistoryRepository;
+        if (ContentAddressedFileSnapshotRepository.isEnabled()) {
+            taskHistoryRepository = new CacheBackedTaskHistoryRepository(
+                cacheAccess,
+                "taskHistoryContentAddressed",
+                new ContentAddressedFileSnapshotRepository(cacheAccess,
+                    serializerRegistry.build(FileCollectionSnapshot.class),
+                    stringInterner,
+                    new RandomLongIdGenerator()
+                ),
+                stringInterner,
+                buildInvocationScopeId
+            );
+        } else {
+            taskHistoryRepository = new CacheBackedTaskHistoryRepository(
+                cacheAccess,
+                new CacheBackedFileSnapshotRepository(cacheAccess,
+                    serializerRegistry.build(FileCollectionSnapshot.class),
+                    new RandomLongIdGenerator()
+                ),
+                stringInterner,
+                buildInvocationScopeId
+            );
+        }
 
         return new ShortCircuitTaskArtifactStateRepository(
             startParameter,
@@ -169,7 +187,8 @@ public class TaskExecutionServices {
                 fileCollectionFactory,
                 classLoaderHierarchyHasher,
                 cacheKeyCalculator,
-                valueSnapshotter
+                valueSnapshotter,
+                buildOperationExecutor
             )
         );
     }
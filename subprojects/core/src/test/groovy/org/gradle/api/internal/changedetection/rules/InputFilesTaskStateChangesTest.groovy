@@ -16,11 +16,14 @@
 
 package org.gradle.api.internal.changedetection.rules
 
+import com.google.common.collect.ImmutableSortedMap
 import org.gradle.api.UncheckedIOException
+import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotter
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRegistry
 import org.gradle.api.internal.changedetection.state.GenericFileCollectionSnapshotter
 import org.gradle.api.internal.changedetection.state.TaskExecution
+import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.normalization.internal.InputNormalizationStrategy
 import spock.lang.Issue
 import spock.lang.Subject
@@ -51,4 +54,66 @@ class InputFilesTaskStateChangesTest extends AbstractTaskStateChangesTest {
         e.message.contains("input")
         e.cause == cause
     }
+
+    def "snapshots on demand up to the first changed property"() {
+        def snapshotter = Mock(FileCollectionSnapshotter)
+        def snapshotterRegistry = Stub(FileCollectionSnapshotterRegistry) {
+            getSnapshotter(GenericFileCollectionSnapshotter) >> snapshotter
+        }
+        def previousSnapshots = [a: Mock(FileCollectionSnapshot), b: Mock(FileCollectionSnapshot), c: Mock(FileCollectionSnapshot)]
+        def currentSnapshots = [a: Mock(FileCollectionSnapshot), b: Mock(FileCollectionSnapshot), c: Mock(FileCollectionSnapshot)]
+        def previous = Stub(TaskExecution) {
+            getInputFilesSnapshot() >> ImmutableSortedMap.copyOf(previousSnapshots)
+        }
+        def current = Mock(TaskExecution)
+        def change = new DescriptiveChange("b changed")
+        mockInputs.getFileProperties() >> fileProperties(a: "a", b: "b", c: "c")
+
+        when:
+        def changes = new InputFilesTaskStateChanges(previous, current, stubTask, snapshotterRegistry, normalizationStrategy, true)
+
+        then:
+        0 * snapshotter._
+        0 * current._
+
+        when:
+        def firstChange = changes.iterator().next()
+
+        then:
+        firstChange == change
+        1 * snapshotter.snapshot({ it.files == [new File("a")] as Set }, _, _, _) >> currentSnapshots.a
+        1 * currentSnapshots.a.iterateContentChangesSince(previousSnapshots.a, _) >> Collections.emptyIterator()
+        1 * snapshotter.snapshot({ it.files == [new File("b")] as Set }, _, _, _) >> currentSnapshots.b
+        1 * currentSnapshots.b.iterateContentChangesSince(previousSnapshots.b, _) >> [change].iterator()
+        0 * snapshotter._
+        0 * current._
+
+        when:
+        changes.snapshotAfterTask()
+
+        then:
+        1 * snapshotter.snapshot({ it.files == [new File("c")] as Set }, _, _, _) >> currentSnapshots.c
+        1 * current.setInputFilesSnapshot(ImmutableSortedMap.copyOf(currentSnapshots))
+        0 * snapshotter._
+    }
+
+    def "snapshots properties as build operations when given an executor"() {
+        def snapshotter = Stub(FileCollectionSnapshotter)
+        def snapshotterRegistry = Stub(FileCollectionSnapshotterRegistry) {
+            getSnapshotter(GenericFileCollectionSnapshotter) >> snapshotter
+        }
+        def currentSnapshots = [a: Stub(FileCollectionSnapshot), b: Stub(FileCollectionSnapshot)]
+        snapshotter.snapshot({ it.files == [new File("a")] as Set }, _, _, _) >> currentSnapshots.a
+        snapshotter.snapshot({ it.files == [new File("b")] as Set }, _, _, _) >> currentSnapshots.b
+        def current = Mock(TaskExecution)
+        def buildOperationExecutor = new TestBuildOperationExecutor()
+        mockInputs.getFileProperties() >> fileProperties(a: "a", b: "b")
+
+        when:
+        new InputFilesTaskStateChanges(Stub(TaskExecution), current, stubTask, snapshotterRegistry, normalizationStrategy, false, buildOperationExecutor)
+
+        then:
+        1 * current.setInputFilesSnapshot(ImmutableSortedMap.copyOf(currentSnapshots))
+        buildOperationExecutor.operations*.displayName == ["Snapshot input files of task 'testTask' property 'a'", "Snapshot input files of task 'testTask' property 'b'"]
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.base.Charsets
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
+import org.gradle.api.file.RelativePath
+import spock.lang.Specification
+
+class CompactDirectoryTreeSnapshotTest extends Specification {
+    static final String ROOT = new File("root").absolutePath
+
+    def "packs directory tree and restores the same elements"() {
+        def elements = [
+            file("a.txt"),
+            dir("dir"),
+            file("dir", "b.txt"),
+            dir("dir", "sub"),
+            file("dir", "sub", "c.txt"),
+            file("d.txt")
+        ]
+
+        when:
+        def snapshot = CompactDirectoryTreeSnapshot.of(ROOT, elements)
+
+        then:
+        snapshot instanceof CompactDirectoryTreeSnapshot
+        snapshot.path == ROOT
+        snapshot.descendants.size() == elements.size()
+        [snapshot.descendants, elements].transpose().each { FileSnapshot restored, FileSnapshot original ->
+            assert restored.path == original.path
+            assert restored.relativePath == original.relativePath
+            assert restored.name == original.name
+            assert restored.type == original.type
+            assert !restored.root
+            assert restored.content == original.content
+            assert restored.content.isContentAndMetadataUpToDate(original.content)
+        }
+    }
+
+    def "creates the snapshots of the elements once"() {
+        def snapshot = CompactDirectoryTreeSnapshot.of(ROOT, [dir("dir"), file("dir", "a.txt")])
+
+        expect:
+        snapshot.descendants.is(snapshot.descendants)
+    }
+
+    def "packs empty directory tree"() {
+        expect:
+        CompactDirectoryTreeSnapshot.of(ROOT, []).descendants.empty
+    }
+
+    def "does not pack elements it cannot restore"() {
+        expect:
+        CompactDirectoryTreeSnapshot.of(ROOT, elements) instanceof DirectoryTreeDetails
+
+        where:
+        elements << [
+            // Parent directory not included
+            [file("dir", "a.txt")],
+            // Hash of a different length
+            [new RegularFileSnapshot(path("a.txt"), new RelativePath(true, "a.txt"), false, new FileHashSnapshot(HashCode.fromInt(1)))]
+        ]
+    }
+
+    private FileSnapshot file(String... segments) {
+        def hash = Hashing.md5().hashString(segments.join("/"), Charsets.UTF_8)
+        return new RegularFileSnapshot(path(segments), new RelativePath(true, segments), false, new FileHashSnapshot(hash, segments.length * 1000L))
+    }
+
+    private FileSnapshot dir(String... segments) {
+        return new DirectoryFileSnapshot(path(segments), new RelativePath(false, segments), false)
+    }
+
+    private String path(String... segments) {
+        return ([ROOT] + segments.toList()).join(File.separator)
+    }
+}
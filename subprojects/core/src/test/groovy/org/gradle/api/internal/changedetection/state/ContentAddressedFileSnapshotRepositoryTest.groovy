@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.base.Charsets
+import com.google.common.hash.Hashing
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.internal.id.LongIdGenerator
+import org.gradle.internal.serialize.Serializer
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import spock.lang.Specification
+
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.ORDERED
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.UNORDERED
+
+class ContentAddressedFileSnapshotRepositoryTest extends Specification {
+    final caches = [:]
+    final TaskHistoryStore cacheAccess = Stub() {
+        createCache(_, _, _, _, _) >> { String name, Class keyType, serializer, int maxInMemory, boolean cacheInMemoryForShortLivedProcesses ->
+            def cache = new CountingIndexedCache(serializer)
+            caches[name] = cache
+            return cache
+        }
+    }
+    final stringInterner = new StringInterner()
+    final repository = new ContentAddressedFileSnapshotRepository(cacheAccess, new DefaultFileCollectionSnapshot.SerializerImpl(stringInterner), stringInterner, new LongIdGenerator())
+
+    def "can fetch a snapshot that was added"() {
+        def snapshot = snapshot(2000, ORDERED)
+
+        when:
+        def id = repository.add(snapshot)
+        def result = repository.get(id)
+
+        then:
+        result instanceof DefaultFileCollectionSnapshot
+        result.snapshots.keySet() as List == snapshot.snapshots.keySet() as List
+        result.snapshots.values()*.normalizedPath == snapshot.snapshots.values()*.normalizedPath
+        result.snapshots.values()*.snapshot*.hash == snapshot.snapshots.values()*.snapshot*.hash
+        result.compareStrategy == ORDERED
+        !result.pathIsAbsolute
+    }
+
+    def "can fetch an empty snapshot"() {
+        when:
+        def result = repository.get(repository.add(FileCollectionSnapshot.EMPTY))
+
+        then:
+        result.snapshots.isEmpty()
+        result.compareStrategy == UNORDERED
+        result.pathIsAbsolute
+    }
+
+    def "stores identical snapshots once"() {
+        when:
+        def id1 = repository.add(snapshot(2000))
+        def chunkCount = chunks.size()
+        def id2 = repository.add(snapshot(2000))
+
+        then:
+        id1 == id2
+        chunks.size() == chunkCount
+        trees.size() == 1
+
+        when:
+        repository.remove(id1)
+
+        then:
+        repository.get(id2).snapshots.size() == 2000
+
+        when:
+        repository.remove(id2)
+
+        then:
+        repository.get(id2) == null
+        trees.isEmpty()
+        chunks.isEmpty()
+        caches["fileSnapshotChunkReferences"].keySet().isEmpty()
+    }
+
+    def "only stores the chunk that differs from a stored snapshot"() {
+        def original = snapshot(2000)
+        def changed = snapshot(2000, UNORDERED, "/file1000")
+
+        when:
+        def id1 = repository.add(original)
+        def chunkCount = chunks.size()
+        def id2 = repository.add(changed)
+
+        then:
+        chunkCount > 1
+        id1 != id2
+        chunks.size() == chunkCount + 1
+        repository.get(id2).snapshots["/file1000"].snapshot.hash == changed.snapshots["/file1000"].snapshot.hash
+
+        when:
+        repository.remove(id1)
+
+        then:
+        chunks.size() == chunkCount
+        repository.get(id1) == null
+        repository.get(id2).snapshots.size() == 2000
+    }
+
+    def "replacing a snapshot only updates the chunks that differ"() {
+        def original = snapshot(2000)
+        def changed = snapshot(2000, UNORDERED, "/file1000")
+        def references = caches["fileSnapshotChunkReferences"]
+
+        given:
+        def id1 = repository.add(original)
+        def chunkCount = chunks.size()
+        references.updates = 0
+
+        when:
+        def id2 = repository.replace(id1, changed)
+
+        then:
+        // One reference added for the new chunk, one removed for the chunk it replaces
+        references.updates == 2
+        chunks.size() == chunkCount
+        repository.get(id1) == null
+        repository.get(id2).snapshots["/file1000"].snapshot.hash == changed.snapshots["/file1000"].snapshot.hash
+    }
+
+    def "replacing a snapshot with an identical one keeps the chunks"() {
+        given:
+        def id1 = repository.add(snapshot(2000))
+        def chunkCount = chunks.size()
+
+        when:
+        def id2 = repository.replace(id1, snapshot(2000))
+
+        then:
+        id2 == id1
+        chunks.size() == chunkCount
+        repository.get(id2).snapshots.size() == 2000
+    }
+
+    def "treats a snapshot with a missing chunk as missing"() {
+        given:
+        def id = repository.add(snapshot(2000))
+        caches["fileSnapshotChunks"].remove(chunks.first())
+
+        expect:
+        repository.get(id) == null
+    }
+
+    def "removing an unknown snapshot does nothing"() {
+        when:
+        repository.remove(12)
+
+        then:
+        noExceptionThrown()
+    }
+
+    private static class CountingIndexedCache extends InMemoryIndexedCache {
+        int updates
+
+        CountingIndexedCache(Serializer serializer) {
+            super(serializer)
+        }
+
+        @Override
+        void put(Object key, Object value) {
+            updates++
+            super.put(key, value)
+        }
+
+        @Override
+        void remove(Object key) {
+            updates++
+            super.remove(key)
+        }
+    }
+
+    private Set<?> getChunks() {
+        caches["fileSnapshotChunks"].keySet()
+    }
+
+    private Set<?> getTrees() {
+        caches["fileSnapshotTrees"].keySet()
+    }
+
+    private static DefaultFileCollectionSnapshot snapshot(int count, TaskFilePropertyCompareStrategy compareStrategy = UNORDERED, String changedPath = null) {
+        Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>()
+        for (int i = 0; i < count; i++) {
+            def path = "/file" + i
+            def hash = Hashing.md5().hashString(path == changedPath ? "changed" : path, Charsets.UTF_8)
+            snapshots.put(path, new DefaultNormalizedFileSnapshot("file" + i, new FileHashSnapshot(hash)))
+        }
+        return new DefaultFileCollectionSnapshot(snapshots, compareStrategy, false)
+    }
+}
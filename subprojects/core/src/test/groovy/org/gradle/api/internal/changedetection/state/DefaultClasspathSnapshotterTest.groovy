@@ -21,6 +21,7 @@ import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.hash.DefaultFileHasher
+import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.serialize.HashCodeSerializer
 import org.gradle.normalization.internal.InputNormalizationStrategy
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -51,6 +52,8 @@ class DefaultClasspathSnapshotterTest extends Specification {
         directoryFileTreeFactory,
         fileSystemSnapshotter,
         stringInterner)
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    def classpathSnapshotCache = new ClasspathSnapshotCache(buildOperationExecutor)
 
     def "directories and missing files are ignored"() {
         def emptyDir = file('root/emptyDir').createDir()
@@ -203,6 +206,67 @@ class DefaultClasspathSnapshotterTest extends Specification {
         values == ['f31495fd1bb4b8c3b8fb1f46a68adf9e', '4c54ecab47d005e6862ced54627c6208'] as Set
     }
 
+    def "shares snapshot of identical classpath"() {
+        def zipFile = file('library.jar')
+        file('zipContents').create {
+            file('firstFile.txt').text = "Some text"
+        }.zipTo(zipFile)
+        def classes = file('classes').create {
+            file('thirdFile.txt').text = "Third file"
+        }
+        def sharingSnapshotter = sharingSnapshotter()
+
+        when:
+        def first = sharingSnapshotter.snapshot(files(zipFile, classes), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+        def second = sharingSnapshotter.snapshot(files(zipFile, classes), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+
+        then:
+        second.is(first)
+        snapshotResults*.shared == [false, true]
+        snapshotResults*.entryCount == [2, 2]
+        first.snapshots.keySet() as List == snapshotter.snapshot(files(zipFile, classes), null, null, InputNormalizationStrategy.NOT_CONFIGURED).snapshots.keySet() as List
+    }
+
+    def "does not share snapshot of classpath with different order or content"() {
+        def firstFile = file('first.txt') << "first"
+        def secondFile = file('second.txt') << "second"
+        def sharingSnapshotter = sharingSnapshotter()
+
+        when:
+        def original = sharingSnapshotter.snapshot(files(firstFile, secondFile), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+        def reordered = sharingSnapshotter.snapshot(files(secondFile, firstFile), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+        fileSystemMirror.beforeTaskOutputsGenerated()
+        firstFile << "changed"
+        def changed = sharingSnapshotter.snapshot(files(firstFile, secondFile), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+
+        then:
+        !reordered.is(original)
+        !changed.is(original)
+        snapshotResults*.shared == [false, false, false]
+    }
+
+    def "discards shared snapshots at the end of the build"() {
+        def firstFile = file('first.txt') << "first"
+        def sharingSnapshotter = sharingSnapshotter()
+
+        when:
+        def original = sharingSnapshotter.snapshot(files(firstFile), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+        classpathSnapshotCache.beforeComplete()
+        def afterBuild = sharingSnapshotter.snapshot(files(firstFile), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
+
+        then:
+        !afterBuild.is(original)
+        snapshotResults*.shared == [false, false]
+    }
+
+    def sharingSnapshotter() {
+        new DefaultClasspathSnapshotter(cacheService, directoryFileTreeFactory, fileSystemSnapshotter, stringInterner, classpathSnapshotCache)
+    }
+
+    def getSnapshotResults() {
+        buildOperationExecutor.log.all(SnapshotClasspathBuildOperationType)*.result
+    }
+
     def snapshot(TestFile... classpath) {
         fileSystemMirror.beforeTaskOutputsGenerated()
         def fileCollectionSnapshot = snapshotter.snapshot(files(classpath), null, null, InputNormalizationStrategy.NOT_CONFIGURED)
@@ -19,7 +19,11 @@ package org.gradle.api.internal.changedetection.state
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.hash.DefaultFileHasher
+import org.gradle.api.internal.hash.FileHashingExecutor
 import org.gradle.caching.internal.DefaultBuildCacheHasher
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration
+import org.gradle.internal.concurrent.ParallelismConfigurationManager
 import org.gradle.internal.nativeintegration.filesystem.FileType
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
@@ -198,6 +202,30 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         hash(snapshot) != hash(snapshot2)
     }
 
+    def "hashes files of a directory tree in parallel"() {
+        def d = tmpDir.createDir("d")
+        100.times {
+            d.createFile("d${it % 10}/f$it") << "content $it"
+        }
+        def parallelismConfigurationManager = Stub(ParallelismConfigurationManager) {
+            getParallelismConfiguration() >> new DefaultParallelismConfiguration(false, 4)
+        }
+        def hashingExecutor = new FileHashingExecutor(new DefaultExecutorFactory(), parallelismConfigurationManager)
+        def parallelSnapshotter = new DefaultFileSystemSnapshotter(fileHasher, new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), new DefaultFileSystemMirror([]), hashingExecutor, null)
+
+        when:
+        def snapshot = parallelSnapshotter.snapshotDirectoryTree(d)
+        def expected = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        snapshot.descendants.size() == 110
+        snapshot.descendants*.path == expected.descendants*.path
+        snapshot.descendants*.content == expected.descendants*.content
+
+        cleanup:
+        hashingExecutor?.stop()
+    }
+
     def hash(Snapshot snapshot) {
         def builder = new DefaultBuildCacheHasher()
         snapshot.appendToHasher(builder)
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.base.Charsets
+import com.google.common.hash.HashCode
+import com.google.common.hash.Hashing
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata
+import org.gradle.internal.nativeintegration.filesystem.FileType
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MappedFileHashCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def file = tmpDir.file("hashes.mapped")
+    MappedFileHashCache cache
+
+    def setup() {
+        cache = MappedFileHashCache.open(file)
+    }
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "returns hash stored with same metadata"() {
+        def hash = hash("a")
+
+        when:
+        cache.put("/a", 10, 20, 30, 40, hash)
+
+        then:
+        cache.get("/a", 10, 20, 30, 40) == hash
+        cache.get("/a", 11, 20, 30, 40) == null
+        cache.get("/a", 10, 21, 30, 40) == null
+        cache.get("/a", 10, 20, 31, 40) == null
+        cache.get("/a", 10, 20, 30, 41) == null
+        cache.get("/b", 10, 20, 30, 40) == null
+    }
+
+    def "validates many files at once"() {
+        given:
+        (0..<100).each { cache.put("/dir/file" + it, it, it, it, it, hash("file" + it)) }
+
+        when:
+        def paths = (0..<100).collect { "/dir/file" + it } + ["/dir/unknown"]
+        def metadata = (0..<100).collect {
+            // Every third file was replaced since it was hashed
+            new DirectoryEntryMetadata("file" + it, FileType.RegularFile, it, it, it % 3 == 0 ? it + 1 : it, it)
+        } + [new DirectoryEntryMetadata("unknown", FileType.RegularFile, 0, 0, 0, 0)]
+        def hashes = cache.getAll(paths, metadata)
+
+        then:
+        hashes.length == 101
+        (0..<100).every { hashes[it] == (it % 3 == 0 ? null : hash("file" + it)) }
+        hashes[100] == null
+    }
+
+    def "removes hash"() {
+        cache.put("/a", 10, 20, 30, 40, hash("a"))
+
+        expect:
+        cache.remove("/a")
+        cache.get("/a", 10, 20, 30, 40) == null
+        !cache.remove("/a")
+    }
+
+    def "does not store hashes of other lengths"() {
+        when:
+        cache.put("/a", 10, 20, 30, 40, HashCode.fromInt(1))
+
+        then:
+        cache.get("/a", 10, 20, 30, 40) == null
+    }
+
+    def "keeps hashes when growing"() {
+        when:
+        (0..<20000).each { cache.put("/file" + it, it, it, it, it, hash("file" + it)) }
+        (0..<20000).step(2) { cache.remove("/file" + it) }
+
+        then:
+        (0..<20000).every { cache.get("/file" + it, it, it, it, it) == (it % 2 == 0 ? null : hash("file" + it)) }
+    }
+
+    def "keeps hashes stored concurrently while growing"() {
+        def failures = Collections.synchronizedList([])
+
+        when:
+        def threads = (0..<4).collect { thread ->
+            Thread.start {
+                try {
+                    (0..<5000).each {
+                        def path = "/thread" + thread + "/file" + it
+                        cache.put(path, it, it, it, it, hash(path))
+                        assert cache.get(path, it, it, it, it) == hash(path)
+                    }
+                } catch (Throwable t) {
+                    failures << t
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        failures.empty
+        (0..<4).every { thread -> (0..<5000).every { cache.get("/thread" + thread + "/file" + it, it, it, it, it) == hash("/thread" + thread + "/file" + it) } }
+    }
+
+    def "keeps hashes across processes"() {
+        cache.put("/a", 10, 20, 30, 40, hash("a"))
+
+        when:
+        cache.close()
+        cache = MappedFileHashCache.open(file)
+
+        then:
+        cache.get("/a", 10, 20, 30, 40) == hash("a")
+    }
+
+    def "cannot be used by more than one process at a time"() {
+        expect:
+        MappedFileHashCache.open(file) == null
+    }
+
+    def "discards content of corrupt table"() {
+        cache.put("/a", 10, 20, 30, 40, hash("a"))
+        cache.close()
+        file.bytes = new byte[100]
+
+        when:
+        cache = MappedFileHashCache.open(file)
+
+        then:
+        cache.get("/a", 10, 20, 30, 40) == null
+    }
+
+    private static HashCode hash(String content) {
+        return Hashing.md5().hashString(content, Charsets.UTF_8)
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.Action
+import org.gradle.internal.classpath.CachedJarFileStore
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherListener
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class WatchingFileSystemMirrorTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def watcher = Mock(FileWatcher)
+    def watcherFactory = Mock(FileWatcherFactory)
+    Action<? super Throwable> onError
+    WatchingFileSystemMirror mirror
+    TestFile cacheDir
+
+    def setup() {
+        cacheDir = tmpDir.createDir("cache")
+        def fileStore = Stub(CachedJarFileStore)
+        fileStore.fileStoreRoots >> [cacheDir]
+        _ * watcherFactory.watch(_, _) >> { Action<? super Throwable> action, FileWatcherListener listener ->
+            onError = action
+            watcher
+        }
+        _ * watcher.running >> true
+        mirror = new WatchingFileSystemMirror([fileStore], watcherFactory)
+    }
+
+    def "keeps state about a file across builds once it is watched"() {
+        def file = tmpDir.file("a")
+
+        when:
+        mirror.afterStart()
+        mirror.putFile(fileSnapshot(file))
+        mirror.putContent(file.path, Stub(Snapshot))
+
+        then:
+        1 * watcher.watch({ it.contains(file) })
+        0 * watcher.watch(_)
+
+        when:
+        mirror.beforeComplete()
+
+        then:
+        // Discarded, as the file may have changed before it was watched
+        mirror.getFile(file.path) == null
+        mirror.getContent(file.path) == null
+
+        when:
+        mirror.afterStart()
+        mirror.putFile(fileSnapshot(file))
+        mirror.beforeComplete()
+        mirror.afterStart()
+
+        then:
+        0 * watcher.watch(_)
+        mirror.getFile(file.path) != null
+    }
+
+    def "discards state about changed files, their descendants and the directories containing them"() {
+        def dir = tmpDir.file("dir")
+        def file = dir.file("sub/a")
+        def sibling = tmpDir.file("b")
+        def changedDir = tmpDir.file("changed")
+        def descendant = changedDir.file("c")
+        watchedAcrossBuilds(dir, file, sibling, descendant)
+
+        expect:
+        [dir, file, sibling, descendant].every { mirror.getFile(it.path) != null }
+        mirror.getDirectoryTree(dir.path) != null
+
+        when:
+        mirror.onChange(watcher, FileWatcherEvent.modify(file))
+        mirror.onChange(watcher, FileWatcherEvent.delete(changedDir))
+        mirror.afterStart()
+
+        then:
+        mirror.getFile(file.path) == null
+        mirror.getFile(dir.path) == null
+        mirror.getDirectoryTree(dir.path) == null
+        mirror.getFile(descendant.path) == null
+        mirror.getFile(sibling.path) != null
+    }
+
+    def "discards all state when changes are unknown"() {
+        def file = tmpDir.file("a")
+        watchedAcrossBuilds(file)
+
+        when:
+        mirror.onChange(watcher, FileWatcherEvent.undefined())
+        mirror.afterStart()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards all state and watches again when watching fails"() {
+        def file = tmpDir.file("a")
+        watchedAcrossBuilds(file)
+
+        when:
+        onError.execute(new RuntimeException("broken"))
+        mirror.beforeComplete()
+
+        then:
+        mirror.getFile(file.path) == null
+
+        when:
+        mirror.afterStart()
+        mirror.putFile(fileSnapshot(file))
+
+        then:
+        1 * watcher.watch(_)
+    }
+
+    def "does not watch files that live in the caches"() {
+        def file = cacheDir.file("some/dir/a")
+
+        when:
+        mirror.afterStart()
+        mirror.putFile(fileSnapshot(file))
+
+        then:
+        0 * watcherFactory.watch(_, _)
+        mirror.getFile(file.path) != null
+
+        when:
+        mirror.beforeComplete()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards state about non-cached files when task outputs are generated"() {
+        def file = tmpDir.file("a")
+        watchedAcrossBuilds(file)
+
+        when:
+        mirror.beforeTaskOutputsGenerated()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "stops watcher when stopped"() {
+        mirror.putFile(fileSnapshot(tmpDir.file("a")))
+
+        when:
+        mirror.stop()
+
+        then:
+        1 * watcher.stop()
+    }
+
+    private void watchedAcrossBuilds(TestFile... files) {
+        2.times {
+            mirror.afterStart()
+            files.each {
+                mirror.putFile(fileSnapshot(it))
+            }
+            mirror.putDirectory(treeSnapshot(files[0]))
+            mirror.beforeComplete()
+        }
+    }
+
+    private FileSnapshot fileSnapshot(File file) {
+        def snapshot = Stub(FileSnapshot)
+        _ * snapshot.path >> file.path
+        return snapshot
+    }
+
+    private FileTreeSnapshot treeSnapshot(File file) {
+        def snapshot = Stub(FileTreeSnapshot)
+        _ * snapshot.path >> file.path
+        return snapshot
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.hash.Hashing
+import org.gradle.api.file.RelativePath
+import org.gradle.internal.serialize.HashCodeSerializer
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ZipEntryCachingResourceHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def delegate = Mock(ResourceHasher)
+    def cachingHasher = new ZipEntryCachingResourceHasher(delegate, new ResourceSnapshotterCacheService(new InMemoryIndexedCache(new HashCodeSerializer())))
+
+    def "caches the result for entries with the same name, CRC32 and size"() {
+        def expectedHash = Hashing.md5().hashInt(1)
+        def inputStream = Stub(InputStream)
+
+        when:
+        def actualHash = cachingHasher.hash(entry("a.class", 1, 10), inputStream)
+
+        then:
+        1 * delegate.hash(_, inputStream) >> expectedHash
+        0 * _
+        actualHash == expectedHash
+
+        when:
+        actualHash = cachingHasher.hash(entry("a.class", 1, 10), inputStream)
+
+        then:
+        0 * _
+        actualHash == expectedHash
+
+        when:
+        cachingHasher.hash(entry("b.class", 1, 10), inputStream)
+        cachingHasher.hash(entry("a.class", 2, 10), inputStream)
+        cachingHasher.hash(entry("a.class", 1, 11), inputStream)
+
+        then:
+        3 * delegate.hash(_, inputStream) >> expectedHash
+    }
+
+    def "caches 'no signature' results too"() {
+        when:
+        def actualHash = cachingHasher.hash(entry("a.class", 1, 10), Stub(InputStream))
+
+        then:
+        1 * delegate.hash(_, _) >> null
+        actualHash == null
+
+        when:
+        actualHash = cachingHasher.hash(entry("a.class", 1, 10), Stub(InputStream))
+
+        then:
+        0 * delegate.hash(_, _)
+        actualHash == null
+    }
+
+    def "does not cache entries without CRC32 or size"() {
+        def zipEntry = new ZipEntry("a.class")
+        def expectedHash = Hashing.md5().hashInt(1)
+
+        when:
+        cachingHasher.hash(zipEntry, Stub(InputStream))
+        cachingHasher.hash(zipEntry, Stub(InputStream))
+
+        then:
+        2 * delegate.hash(zipEntry, _) >> expectedHash
+    }
+
+    def "does not cache regular files"() {
+        def fileSnapshot = new RegularFileSnapshot("path", RelativePath.parse(true, "path"), false, new FileHashSnapshot(Hashing.md5().hashInt(0)))
+
+        when:
+        cachingHasher.hash(fileSnapshot)
+        cachingHasher.hash(fileSnapshot)
+
+        then:
+        2 * delegate.hash(fileSnapshot)
+    }
+
+    def "hashes changed jar the same as when hashing every entry"() {
+        def jar = tmpDir.file("lib.jar")
+        writeJar(jar, ["a.class": "a", "b.class": "b"])
+        def hasher = new ZipEntryCachingResourceHasher(new RuntimeClasspathResourceHasher(), new ResourceSnapshotterCacheService(new InMemoryIndexedCache(new HashCodeSerializer())))
+        def jarSnapshot = new RegularFileSnapshot(jar.absolutePath, RelativePath.parse(true, "lib.jar"), false, new FileHashSnapshot(Hashing.md5().hashInt(0)))
+        def builder = new ClasspathEntrySnapshotBuilder(hasher, null)
+
+        when:
+        new RandomAccessZipTree(jarSnapshot).visit(builder)
+        def hash = builder.hash
+        writeJar(jar, ["a.class": "a", "b.class": "changed"])
+        def changedBuilder = new ClasspathEntrySnapshotBuilder(hasher, null)
+        new RandomAccessZipTree(jarSnapshot).visit(changedBuilder)
+        def uncachedBuilder = new ClasspathEntrySnapshotBuilder(new RuntimeClasspathResourceHasher(), null)
+        new ZipTree(jarSnapshot).visit(uncachedBuilder)
+
+        then:
+        changedBuilder.hash != hash
+        changedBuilder.hash == uncachedBuilder.hash
+    }
+
+    private static ZipEntry entry(String name, long crc, long size) {
+        def zipEntry = new ZipEntry(name)
+        zipEntry.crc = crc
+        zipEntry.size = size
+        return zipEntry
+    }
+
+    private static void writeJar(File jar, Map<String, String> entries) {
+        def output = new ZipOutputStream(new FileOutputStream(jar))
+        try {
+            entries.each { name, content ->
+                output.putNextEntry(new ZipEntry(name))
+                output.write(content.bytes)
+                output.closeEntry()
+            }
+        } finally {
+            output.close()
+        }
+    }
+}
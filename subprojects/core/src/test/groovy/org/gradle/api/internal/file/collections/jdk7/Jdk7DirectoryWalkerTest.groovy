@@ -19,6 +19,7 @@ package org.gradle.api.internal.file.collections.jdk7
 import com.google.common.base.Charsets
 import org.gradle.api.GradleException
 import org.gradle.api.JavaVersion
+import org.gradle.api.file.FileTreeElement
 import org.gradle.api.file.FileVisitDetails
 import org.gradle.api.file.FileVisitor
 import org.gradle.api.internal.file.TestFiles
@@ -27,6 +28,7 @@ import org.gradle.api.internal.file.collections.DirectoryFileTree
 import org.gradle.api.internal.file.collections.ReproducibleDirectoryWalker
 import org.gradle.api.tasks.util.PatternSet
 import org.gradle.internal.Factory
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.Requires
@@ -35,6 +37,7 @@ import org.gradle.util.TestPrecondition
 import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Issue
+import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
@@ -51,11 +54,18 @@ class Jdk7DirectoryWalkerTest extends Specification {
     @Rule
     SetSystemProperties setSystemPropertiesRule
 
+    @Shared
+    ParallelDirectoryWalker parallelWalker = new ParallelDirectoryWalker(TestFiles.fileSystem(), new DefaultExecutorFactory().create("Directory walking", 4))
+
 
     def cleanup() {
         Charset.defaultCharset = null // clear cache
     }
 
+    def cleanupSpec() {
+        parallelWalker.stop()
+    }
+
     // java.nio2 cannot access files with unicode characters when using single-byte non-unicode platform encoding
     // bug seems to show up only on JDK7 when file.encoding != sun.jnu.encoding
     @Issue("GRADLE-2181")
@@ -109,7 +119,7 @@ class Jdk7DirectoryWalkerTest extends Specification {
         !visited.contains(doesNotExist.absolutePath)
 
         where:
-        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker()]
+        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker(), parallelWalker]
     }
 
     def "both DirectoryWalker implementations return same set of files and attributes"() {
@@ -127,6 +137,68 @@ class Jdk7DirectoryWalkerTest extends Specification {
         checkFileVisitDetailsEqual(visitedWithDefaultWalker, visitedWithJdk7Walker)
     }
 
+    @Unroll
+    def "parallel walker visits files in the same order as the reproducible walker - postfix: #postfix"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        generateFilesAndSubDirectories(rootDir, 10, 5, 3, 1, new AtomicInteger(0))
+
+        when:
+        def visitedWithParallelWalker = walkFiles(rootDir, parallelWalker, postfix)
+        def visitedWithReproducibleWalker = walkFiles(rootDir, new ReproducibleDirectoryWalker(TestFiles.fileSystem()), postfix)
+
+        then:
+        visitedWithParallelWalker.size() == 340
+        visitedWithParallelWalker*.relativePath == visitedWithReproducibleWalker*.relativePath
+        checkFileVisitDetailsEqual(visitedWithReproducibleWalker, visitedWithParallelWalker)
+
+        where:
+        postfix << [false, true]
+    }
+
+    def "parallel walker stops walking when visitor stops"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        generateFilesAndSubDirectories(rootDir, 10, 5, 3, 1, new AtomicInteger(0))
+        def fileTree = new DirectoryFileTree(rootDir, new PatternSet(), { parallelWalker } as Factory, TestFiles.fileSystem(), false)
+        def visited = []
+        def visitClosure = { FileVisitDetails details ->
+            visited << details
+            if (visited.size() == 15) {
+                details.stopVisiting()
+            }
+        }
+        def fileVisitor = [visitFile: visitClosure, visitDir: visitClosure] as FileVisitor
+
+        when:
+        fileTree.visit(fileVisitor)
+
+        then:
+        visited.size() == 15
+    }
+
+    def "parallel walker evaluates spec on the visiting thread"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        generateFilesAndSubDirectories(rootDir, 10, 5, 3, 1, new AtomicInteger(0))
+        def patterns = new PatternSet()
+        def threads = [] as Set
+        patterns.exclude { FileTreeElement element ->
+            threads << Thread.currentThread()
+            false
+        }
+        def fileTree = new DirectoryFileTree(rootDir, patterns, TestFiles.fileSystem())
+        def visited = []
+        def visitClosure = { FileVisitDetails details -> visited << details }
+
+        when:
+        fileTree.visit([visitFile: visitClosure, visitDir: visitClosure] as FileVisitor, parallelWalker)
+
+        then:
+        !visited.empty
+        threads == [Thread.currentThread()] as Set
+    }
+
     private void checkFileVisitDetailsEqual(List<FileVisitDetails> visitedWithDefaultWalker, List<FileVisitDetails> visitedWithJdk7Walker) {
         visitedWithDefaultWalker.each { FileVisitDetails details ->
             def detailsFromJdk7Walker = visitedWithJdk7Walker.find { it.file.absolutePath == details.file.absolutePath }
@@ -154,8 +226,8 @@ class Jdk7DirectoryWalkerTest extends Specification {
         }
     }
 
-    private List<FileVisitDetails> walkFiles(rootDir, walkerInstance) {
-        def fileTree = new DirectoryFileTree(rootDir, new PatternSet(), { walkerInstance } as Factory, TestFiles.fileSystem(), false)
+    private List<FileVisitDetails> walkFiles(rootDir, walkerInstance, boolean postfix = false) {
+        def fileTree = new DirectoryFileTree(rootDir, new PatternSet(), { walkerInstance } as Factory, TestFiles.fileSystem(), postfix)
         def visited = []
         def visitClosure = { visited << it }
         def fileVisitor = [visitFile: visitClosure, visitDir: visitClosure] as FileVisitor
@@ -191,7 +263,7 @@ class Jdk7DirectoryWalkerTest extends Specification {
         link.delete()
 
         where:
-        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker()]
+        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker(), parallelWalker]
     }
 
     @Requires(TestPrecondition.SYMLINKS)
@@ -222,7 +294,7 @@ class Jdk7DirectoryWalkerTest extends Specification {
         link.delete()
 
         where:
-        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker()]
+        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker(), parallelWalker]
     }
 
     @Requires(TestPrecondition.SYMLINKS)
@@ -251,7 +323,7 @@ class Jdk7DirectoryWalkerTest extends Specification {
         link.delete()
 
         where:
-        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker()]
+        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker(), parallelWalker]
     }
 
     @Issue("GRADLE-3400")
@@ -285,7 +357,7 @@ class Jdk7DirectoryWalkerTest extends Specification {
         link.delete()
 
         where:
-        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker()]
+        walkerInstance << [new DefaultDirectoryWalker(), new Jdk7DirectoryWalker(), new ReproducibleDirectoryWalker(), parallelWalker]
     }
 
     def "file walker sees a snapshot of file metadata even if files are deleted after walking has started"() {
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    @Unroll
+    def "hashes #size byte file with #function the same way whether it is mapped or streamed"() {
+        def file = tmpDir.file("file")
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        file.bytes = content
+
+        expect:
+        def streamed = new DefaultFileHasher(function, false).hash(file)
+        def mapped = new DefaultFileHasher(function, true).hash(file)
+        streamed == mapped
+        streamed == new DefaultFileHasher(function, false).hash(new ByteArrayInputStream(content))
+
+        where:
+        [function, size] << [FileHashFunction.values(), [0, 100, 65537, 3 * 1024 * 1024 + 17]].combinations()
+    }
+
+    def "hash functions produce different hashes of the same length"() {
+        def file = tmpDir.file("file") << "content"
+
+        expect:
+        def md5 = new DefaultFileHasher(FileHashFunction.MD5).hash(file)
+        def murmur3 = new DefaultFileHasher(FileHashFunction.MURMUR3).hash(file)
+        md5 != murmur3
+        md5.bits() == murmur3.bits()
+        md5 == new DefaultFileHasher().hash(file)
+    }
+
+    def "selects hash function with system property"() {
+        when:
+        System.setProperty(FileHashFunction.PROPERTY, "murmur3")
+
+        then:
+        FileHashFunction.fromSystemProperties() == FileHashFunction.MURMUR3
+        FileHashFunction.fromSystemProperties().cacheName("fileHashes") == "fileHashes-murmur3"
+
+        when:
+        System.clearProperty(FileHashFunction.PROPERTY)
+
+        then:
+        FileHashFunction.fromSystemProperties() == FileHashFunction.MD5
+        FileHashFunction.fromSystemProperties().cacheName("fileHashes") == "fileHashes"
+
+        when:
+        System.setProperty(FileHashFunction.PROPERTY, "sha1")
+        FileHashFunction.fromSystemProperties()
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown file hash function 'sha1', expected one of 'md5' or 'murmur3'."
+
+        cleanup:
+        System.clearProperty(FileHashFunction.PROPERTY)
+    }
+}
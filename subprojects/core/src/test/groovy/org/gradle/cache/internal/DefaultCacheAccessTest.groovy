@@ -50,6 +50,15 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
         }
     }
 
+    private DefaultCacheAccess newConcurrentlyReadableAccess(LockMode lockMode) {
+        new DefaultCacheAccess("<display-name>", lockFile, mode(lockMode), cacheDir, lockManager, initializationAction, cleanupAction, executorFactory, IndexedCacheStoreFactory.MAPPED) {
+            @Override
+            <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+                return backingCache
+            }
+        }
+    }
+
     def "acquires lock on open and releases on close when lock mode is shared"() {
         def access = newAccess(Shared)
 
@@ -524,6 +533,109 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
         mode << [Exclusive, None]
     }
 
+    @Unroll
+    def "concurrent #operation holds off release of the file lock by another thread until it has finished"() {
+        def access = newConcurrentlyReadableAccess(None)
+        def contendedAction
+        def work = {
+            instant.accessStarted
+            thread.block()
+            instant.accessFinished
+        }
+
+        given:
+        lockManager.lock(lockFile, mode(Exclusive), "<display-name>") >> lock
+        lockManager.allowContention(lock, _) >> { lock, callback -> contendedAction = callback }
+        lock.readFile(_) >> { Factory factory -> factory.create() }
+        lock.updateFile(_) >> { Runnable action -> action.run() }
+        lock.close() >> { instant.released }
+        access.open()
+
+        when:
+        async {
+            start {
+                access.useCache {
+                    instant.locked
+                    thread.blockUntil.accessStarted
+                    // Another process wants the lock, so it is released when this thread is done with the cache
+                    contendedAction.run()
+                }
+            }
+            start {
+                thread.blockUntil.locked
+                access.fileAccess."$operation"(work)
+            }
+        }
+
+        then:
+        instant.released > instant.accessFinished
+
+        where:
+        operation << ["readFile", "updateFile"]
+    }
+
+    @Unroll
+    def "concurrent #operation holds off release of the file lock when contended until it has finished"() {
+        def access = newConcurrentlyReadableAccess(None)
+        def contendedAction
+        def work = {
+            instant.accessStarted
+            thread.block()
+            instant.accessFinished
+        }
+
+        given:
+        lockManager.lock(lockFile, mode(Exclusive), "<display-name>") >> lock
+        lockManager.allowContention(lock, _) >> { lock, callback -> contendedAction = callback }
+        lock.readFile(_) >> { Factory factory -> factory.create() }
+        lock.updateFile(_) >> { Runnable action -> action.run() }
+        lock.close() >> { instant.released }
+        access.open()
+        access.useCache {}
+
+        when:
+        async {
+            start {
+                access.fileAccess."$operation"(work)
+            }
+            start {
+                thread.blockUntil.accessStarted
+                // The cache is not in use, so the lock is released straight away
+                contendedAction.run()
+            }
+        }
+
+        then:
+        instant.released > instant.accessFinished
+
+        where:
+        operation << ["readFile", "updateFile"]
+    }
+
+    @Unroll
+    def "concurrent #operation fails once the file lock has been released"() {
+        def access = newConcurrentlyReadableAccess(None)
+        def contendedAction
+
+        given:
+        lockManager.lock(lockFile, mode(Exclusive), "<display-name>") >> lock
+        lockManager.allowContention(lock, _) >> { lock, callback -> contendedAction = callback }
+        access.open()
+        access.useCache {}
+        contendedAction.run()
+
+        when:
+        access.fileAccess."$operation"({ "result" })
+
+        then:
+        thrown(IllegalStateException)
+        0 * lock.readFile(_)
+        0 * lock.updateFile(_)
+
+        where:
+        operation << ["readFile", "updateFile"]
+    }
+
     def "can close cache when the cache has not been used"() {
         def access = newAccess(None)
 
@@ -233,6 +233,64 @@ public class BTreePersistentIndexedCacheTest {
         cache.close();
     }
 
+    @Test
+    public void compactionKeepsLiveEntriesAndShrinksFile() {
+        createCache();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            values.add(i);
+        }
+        checkAdds(values);
+        long len = cacheFile.length();
+
+        for (int i = 0; i < 2000; i++) {
+            if (i % 10 != 0) {
+                cache.remove(String.format("key_%d", i));
+            }
+        }
+
+        cache.compact();
+
+        assertThat(cacheFile.length(), lessThan(len / 4));
+        for (int i = 0; i < 2000; i++) {
+            assertThat(cache.get(String.format("key_%d", i)), equalTo(i % 10 == 0 ? i : null));
+        }
+        cache.put("key_new", 12);
+        cache.reset();
+        assertThat(cache.get("key_new"), equalTo(12));
+        assertThat(cache.get("key_10"), equalTo(10));
+        assertThat(tmpDir.file("cache.bin.compacted").exists(), equalTo(false));
+
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void compactsFragmentedFileWhenClosed() {
+        BTreePersistentIndexedCache<String, String> cache = new BTreePersistentIndexedCache<String, String>(cacheFile, stringSerializer, stringSerializer);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            value.append('x');
+        }
+        for (int i = 0; i < 2000; i++) {
+            cache.put(String.format("key_%d", i), value.toString());
+        }
+        for (int i = 100; i < 2000; i++) {
+            cache.remove(String.format("key_%d", i));
+        }
+        long len = cacheFile.length();
+        cache.close();
+
+        assertThat(cacheFile.length(), lessThan(len / 2));
+        assertThat(tmpDir.file("cache.bin.compacted").exists(), equalTo(false));
+
+        cache = new BTreePersistentIndexedCache<String, String>(cacheFile, stringSerializer, stringSerializer);
+
+        assertThat(cache.get("key_99"), equalTo(value.toString()));
+        assertNull(cache.get("key_100"));
+        cache.verify();
+        cache.close();
+    }
+
     @Test
     public void canHandleLargeNumberOfEntries() {
         createCache();
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.mapped
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+
+class MappedHashIndexedCacheTest extends ConcurrentSpec {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheFile = tmpDir.file("cache.bin")
+    MappedHashIndexedCache<String, String> cache
+
+    def setup() {
+        cache = createCache()
+    }
+
+    def cleanup() {
+        if (cache.open) {
+            cache.close()
+        }
+    }
+
+    def "returns null for unknown entry"() {
+        expect:
+        cache.get("unknown") == null
+    }
+
+    def "can add, update and remove entries"() {
+        when:
+        cache.put("a", "1")
+        cache.put("b", "2")
+
+        then:
+        cache.get("a") == "1"
+        cache.get("b") == "2"
+
+        when:
+        cache.put("a", "3")
+        cache.remove("b")
+
+        then:
+        cache.get("a") == "3"
+        cache.get("b") == null
+
+        when:
+        cache.remove("unknown")
+        cache.put("b", "4")
+
+        then:
+        cache.get("b") == "4"
+    }
+
+    def "persists entries when reopened"() {
+        given:
+        cache.put("a", "1")
+        cache.put("b", "2")
+        cache.put("a", "3")
+        cache.remove("b")
+
+        when:
+        reopen()
+
+        then:
+        cache.get("a") == "3"
+        cache.get("b") == null
+    }
+
+    def "grows index to hold many entries"() {
+        when:
+        10000.times { cache.put("key-$it".toString(), "value-$it".toString()) }
+        reopen()
+
+        then:
+        10000.times { assert cache.get("key-$it".toString()) == "value-$it".toString() }
+    }
+
+    def "can reuse slots of removed entries"() {
+        when:
+        10.times { round ->
+            1000.times { cache.put("key-$it".toString(), "value-$round".toString()) }
+            1000.times { cache.remove("key-$it".toString()) }
+        }
+        cache.put("key-1", "value")
+
+        then:
+        cache.get("key-1") == "value"
+        cache.get("key-2") == null
+    }
+
+    def "compacts data file on close when most records are no longer used"() {
+        def value = "x" * 1000
+        def dataFile = new File(cacheFile.parentFile, "cache.mapped/data.bin")
+
+        given:
+        2000.times { cache.put("key-${it % 10}".toString(), value + it) }
+        def sizeBefore = dataFile.length()
+
+        when:
+        cache.close()
+
+        then:
+        dataFile.length() < sizeBefore / 10
+
+        when:
+        cache = createCache()
+
+        then:
+        dataFile.length() < sizeBefore / 10
+        10.times { assert cache.get("key-$it".toString()) == value + (1990 + it) }
+
+        when:
+        cache.put("new", "value")
+        reopen()
+
+        then:
+        cache.get("new") == "value"
+        cache.get("key-0") == value + 1990
+    }
+
+    def "discards entries when index does not match data file"() {
+        given:
+        cache.put("a", "1")
+        cache.close()
+
+        when:
+        def indexFile = new File(cacheFile.parentFile, "cache.mapped/index-0.bin")
+        indexFile.bytes = new byte[8]
+        cache = createCache()
+
+        then:
+        cache.get("a") == null
+
+        when:
+        cache.put("a", "2")
+
+        then:
+        cache.get("a") == "2"
+    }
+
+    def "can read and write entries from many threads"() {
+        when:
+        async {
+            8.times { thread ->
+                start {
+                    500.times {
+                        def key = "key-${thread}-${it}".toString()
+                        cache.put(key, "value-$it".toString())
+                        assert cache.get(key) == "value-$it".toString()
+                        assert cache.get("key-${(thread + 1) % 8}-${it}".toString()) in [null, "value-$it".toString()]
+                    }
+                }
+            }
+        }
+        reopen()
+
+        then:
+        8.times { thread ->
+            500.times { assert cache.get("key-${thread}-${it}".toString()) == "value-$it".toString() }
+        }
+    }
+
+    private MappedHashIndexedCache<String, String> createCache() {
+        new MappedHashIndexedCache<String, String>(cacheFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER)
+    }
+
+    private void reopen() {
+        cache.close()
+        cache = createCache()
+    }
+}
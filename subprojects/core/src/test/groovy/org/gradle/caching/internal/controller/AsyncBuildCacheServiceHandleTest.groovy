@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller
+
+import org.gradle.api.internal.file.DefaultTemporaryFileProvider
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.caching.internal.BuildCacheStoreBuildOperationType
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.progress.BuildOperationState
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class AsyncBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def key = Stub(BuildCacheKey)
+    def service = Mock(BuildCacheService)
+    def operations = new TestBuildOperationExecutor()
+    def temporaryFileProvider = new DefaultTemporaryFileProvider({ tmpDir.file("tmp") })
+    def storeCommand = Stub(BuildCacheStoreCommand) {
+        getKey() >> key
+        store(_, _) >> { OutputStream output, BuildCacheServiceRole target ->
+            output << "entry"
+            Stub(BuildCacheStoreCommand.Result)
+        }
+    }
+
+    def "stores entry in the background and waits for pending stores on close"() {
+        def handle = createHandle(2, false)
+        def release = new CountDownLatch(1)
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        handle.doStore(storeCommand)
+        def storedBeforeRelease = stored.size()
+        release.countDown()
+        handle.close()
+
+        then:
+        1 * service.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            release.await()
+            writer.writeTo(stored)
+        }
+        1 * service.close()
+
+        and:
+        storedBeforeRelease == 0
+        stored.toString() == "entry"
+        operations.log.all(BuildCacheStoreBuildOperationType).size() == 1
+        tmpDir.file("tmp").listFiles().length == 0
+    }
+
+    def "drops stores when too many are pending"() {
+        def handle = createHandle(1, true)
+        def release = new CountDownLatch(1)
+
+        when:
+        handle.doStore(storeCommand)
+        handle.doStore(storeCommand)
+        release.countDown()
+        handle.close()
+
+        then:
+        1 * service.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            release.await()
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+        tmpDir.file("tmp").listFiles().length == 0
+    }
+
+    def "stores in the background as children of the build operation"() {
+        def buildOperation = Stub(BuildOperationState) {
+            getId() >> "build"
+        }
+        def handle = createHandle(2, false, buildOperation)
+
+        when:
+        handle.doStore(storeCommand)
+        handle.close()
+
+        then:
+        1 * service.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+
+        and:
+        def upload = operations.log.descriptors.find { it.displayName.endsWith("in the background") }
+        upload.parentId == "build"
+        operations.log.all(BuildCacheStoreBuildOperationType).size() == 1
+    }
+
+    private AsyncBuildCacheServiceHandle createHandle(int maxPendingStores, boolean dropWhenFull, BuildOperationState buildOperation = null) {
+        def delegate = new DefaultBuildCacheServiceHandle(service, true, BuildCacheServiceRole.REMOTE, operations, false)
+        new AsyncBuildCacheServiceHandle(delegate, BuildCacheServiceRole.REMOTE, new DefaultExecutorFactory().create("test", 1), maxPendingStores, dropWhenFull, temporaryFileProvider, operations, buildOperation)
+    }
+}
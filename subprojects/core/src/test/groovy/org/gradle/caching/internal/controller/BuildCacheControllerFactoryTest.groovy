@@ -30,6 +30,7 @@ import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration
 import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperationType
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.reflect.DirectInstantiator
 import org.gradle.testing.internal.util.Specification
@@ -65,7 +66,9 @@ class BuildCacheControllerFactoryTest extends Specification {
             gradle,
             config,
             temporaryFileProvider,
-            DirectInstantiator.INSTANCE
+            DirectInstantiator.INSTANCE,
+            Mock(ExecutorFactory),
+            new InMemoryBuildCacheTier()
         )
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
@@ -18,11 +18,17 @@ package org.gradle.caching.internal.controller
 
 import org.gradle.api.GradleException
 import org.gradle.api.internal.file.DefaultTemporaryFileProvider
+import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheException
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
+import org.gradle.caching.internal.BatchingBuildCacheService
 import org.gradle.caching.internal.BuildCacheDisableServiceBuildOperationType
+import org.gradle.caching.internal.BuildCacheInMemoryLoadBuildOperationType
+import org.gradle.caching.internal.BuildCacheInMemoryTierBuildOperationType
+import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.io.NullOutputStream
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -176,4 +182,322 @@ class DefaultBuildCacheControllerTest extends Specification {
             reason == NON_RECOVERABLE_ERROR
         }
     }
+
+    def "stores entry in local cache without copying it and uploads it from there"() {
+        def localService = Mock(LocalBuildCacheService)
+        def stagingFile = tmpDir.file("staging.part")
+        def storedFile = tmpDir.file("stored")
+        def command = Stub(BuildCacheStoreCommand) {
+            getKey() >> key
+            store(_, _) >> { OutputStream output, BuildCacheServiceRole target ->
+                output << "entry"
+                Stub(BuildCacheStoreCommand.Result)
+            }
+        }
+        def controller = new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(localService, true, remote, true),
+            operations,
+            new DefaultTemporaryFileProvider({ tmpDir.file("dir") }),
+            false
+        )
+        def uploaded = new ByteArrayOutputStream()
+
+        when:
+        controller.store(command)
+
+        then:
+        1 * localService.createTempFile(key) >> stagingFile
+        1 * localService.storeLocally(key, stagingFile) >> { assert stagingFile.renameTo(storedFile) }
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(uploaded)
+        }
+        1 * localService.openLocally(key) >> { new FileInputStream(storedFile) }
+        0 * localService.load(_, _)
+        0 * localService.store(_, _)
+
+        and:
+        uploaded.toString() == "entry"
+        !stagingFile.exists()
+    }
+
+    def "writes entry separately for each cache when it is written differently for each"() {
+        def targets = []
+        def command = Stub(BuildCacheStoreCommand) {
+            getKey() >> key
+            isTargetSpecific() >> true
+            store(_, _) >> { OutputStream output, BuildCacheServiceRole target ->
+                targets << target
+                output << target.name()
+                Stub(BuildCacheStoreCommand.Result)
+            }
+        }
+        def localEntry = new ByteArrayOutputStream()
+        def remoteEntry = new ByteArrayOutputStream()
+
+        when:
+        controller.store(command)
+
+        then:
+        1 * local.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(localEntry)
+        }
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(remoteEntry)
+        }
+
+        and:
+        targets == [BuildCacheServiceRole.LOCAL, BuildCacheServiceRole.REMOTE]
+        localEntry.toString() == "LOCAL"
+        remoteEntry.toString() == "REMOTE"
+    }
+
+    def "does not load entries from remote cache that it reported missing when prefetching"() {
+        def prefetchKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def batchingRemote = Mock(BatchingBuildCacheService)
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> prefetchKey
+        }
+        def controller = createPrefetchingController(local, batchingRemote)
+
+        when:
+        controller.prefetch([prefetchKey])
+        def result = controller.load(command)
+        controller.close()
+
+        then:
+        result == null
+        1 * batchingRemote.contains([prefetchKey]) >> ([] as Set)
+        1 * local.load(prefetchKey, _) >> false
+        0 * batchingRemote.load(_, _)
+    }
+
+    def "prefetches entries from remote cache into local cache"() {
+        def prefetchKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def localService = Mock(LocalBuildCacheService)
+        def stagingFile = tmpDir.file("staging.part")
+        def storedFile = tmpDir.file("stored")
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> prefetchKey
+            load(_) >> { InputStream input ->
+                assert input.text == "entry"
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        def controller = createPrefetchingController(localService, remote)
+
+        when:
+        controller.prefetch([prefetchKey])
+        def result = controller.load(command)
+        controller.close()
+
+        then:
+        result == "metadata"
+        1 * remote.load(prefetchKey, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        1 * localService.openLocally(prefetchKey) >> null
+        1 * localService.createTempFile(prefetchKey) >> stagingFile
+        1 * localService.storeLocally(prefetchKey, stagingFile) >> { assert stagingFile.renameTo(storedFile) }
+        // Loading from the local cache is retried when the entry arrives while it is being loaded
+        (1..2) * localService.load(prefetchKey, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            if (!storedFile.exists()) {
+                return false
+            }
+            storedFile.withInputStream { reader.readFrom(it) }
+            true
+        }
+    }
+
+    def "loads entries from remote cache again when prefetching them failed"() {
+        def prefetchKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def localService = Mock(LocalBuildCacheService)
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> prefetchKey
+            load(_) >> { InputStream input ->
+                assert input.text == "entry"
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        def controller = createPrefetchingController(localService, remote)
+
+        when:
+        controller.prefetch([prefetchKey])
+        def result = controller.load(command)
+        controller.close()
+
+        then:
+        result == "metadata"
+        1 * localService.openLocally(prefetchKey) >> null
+        1 * localService.createTempFile(prefetchKey) >> tmpDir.file("staging.part")
+        0 * localService.storeLocally(_, _)
+        1 * localService.load(prefetchKey, _) >> false
+        2 * remote.load(prefetchKey, _) >> { throw new BuildCacheException("prefetch failed") } >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+    }
+
+    def "does not prefetch entries that are already in the local cache"() {
+        def prefetchKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def localService = Mock(LocalBuildCacheService)
+        def command = Stub(BuildCacheLoadCommand) {
+            getKey() >> prefetchKey
+            load(_) >> { InputStream input ->
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        def controller = createPrefetchingController(localService, remote)
+
+        when:
+        controller.prefetch([prefetchKey])
+        def result = controller.load(command)
+        controller.close()
+
+        then:
+        result == "metadata"
+        (0..1) * localService.openLocally(prefetchKey) >> new ByteArrayInputStream("entry".bytes)
+        1 * localService.load(prefetchKey, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        0 * localService.createTempFile(_)
+        0 * remote.load(_, _)
+    }
+
+    private DefaultBuildCacheController createPrefetchingController(BuildCacheService localService, BuildCacheService remoteService) {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(localService, true, remoteService, true),
+            operations,
+            new DefaultTemporaryFileProvider({ tmpDir.file("dir") }),
+            false,
+            null,
+            new PrefetchConfiguration(new DefaultExecutorFactory(), 1, null),
+            null
+        )
+    }
+
+    def "loads entries stored during the build from memory"() {
+        def memoryKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def command = Stub(BuildCacheStoreCommand) {
+            getKey() >> memoryKey
+            store(_, _) >> { OutputStream output, BuildCacheServiceRole target ->
+                output << "entry"
+                Stub(BuildCacheStoreCommand.Result)
+            }
+        }
+        def loadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> memoryKey
+            load(_) >> { InputStream input ->
+                assert input.text == "entry"
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        def memory = new InMemoryBuildCacheTier()
+        memory.configure(1024 * 1024)
+        def controller = new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(local, true, null, false),
+            operations,
+            new DefaultTemporaryFileProvider({ tmpDir.file("dir") }),
+            false,
+            null,
+            null,
+            memory
+        )
+
+        when:
+        controller.store(command)
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        result == "metadata"
+        1 * local.store(memoryKey, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+        0 * local.load(_, _)
+
+        and:
+        operations.log.mostRecentDetails(BuildCacheInMemoryLoadBuildOperationType).cacheKey == "0123abcd"
+        operations.log.mostRecentResult(BuildCacheInMemoryLoadBuildOperationType).archiveSize == "entry".length()
+
+        and:
+        def details = operations.log.mostRecentDetails(BuildCacheInMemoryTierBuildOperationType)
+        details.hitCount == 1
+        details.missCount == 0
+        details.entryCount == 1
+        details.size == "entry".length()
+    }
+
+    def "loads entry from the other caches when it cannot be loaded from memory"() {
+        def memoryKey = Stub(BuildCacheKey) {
+            getHashCode() >> "0123abcd"
+        }
+        def command = Stub(BuildCacheStoreCommand) {
+            getKey() >> memoryKey
+            store(_, _) >> { OutputStream output, BuildCacheServiceRole target ->
+                output << "entry"
+                Stub(BuildCacheStoreCommand.Result)
+            }
+        }
+        def attempts = 0
+        def loadCommand = Stub(BuildCacheLoadCommand) {
+            getKey() >> memoryKey
+            load(_) >> { InputStream input ->
+                if (attempts++ == 0) {
+                    throw new RuntimeException("broken")
+                }
+                Stub(BuildCacheLoadCommand.Result) {
+                    getMetadata() >> "metadata"
+                }
+            }
+        }
+        def memory = new InMemoryBuildCacheTier()
+        memory.configure(1024 * 1024)
+        def controller = new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(local, true, null, false),
+            operations,
+            new DefaultTemporaryFileProvider({ tmpDir.file("dir") }),
+            false,
+            null,
+            null,
+            memory
+        )
+
+        when:
+        controller.store(command)
+        def result = controller.load(loadCommand)
+
+        then:
+        result == "metadata"
+        1 * local.store(memoryKey, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+        1 * local.load(memoryKey, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+
+        and:
+        operations.log.all(BuildCacheInMemoryLoadBuildOperationType).size() == 1
+        memory.entryCount() == 1
+    }
 }
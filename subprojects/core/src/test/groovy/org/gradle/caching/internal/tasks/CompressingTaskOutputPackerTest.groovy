@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType.DIRECTORY
+
+class CompressingTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
+    def fileSystem = Stub(FileSystem) {
+        getUnixMode(_) >> 0644
+    }
+    TaskOutputPacker packer = new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem))
+
+    @Unroll
+    def "can unpack entry written with #storeCodec codec using packer for #loadCodec codec"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("file.txt") << ("some line of text\n" * 1000)
+        sourceOutputDir.file("sub-dir/other.txt") << "other"
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        packer = new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem), TaskOutputCodecs.forName(storeCodec))
+        pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)
+        packer = new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem), TaskOutputCodecs.forName(loadCodec))
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetOutputDir)
+
+        then:
+        targetOutputDir.file("file.txt").text == sourceOutputDir.file("file.txt").text
+        targetOutputDir.file("sub-dir/other.txt").text == "other"
+
+        where:
+        storeCodec | loadCodec
+        "none"     | "default"
+        "fast"     | "none"
+        "default"  | "best"
+        "best"     | "fast"
+    }
+
+    def "higher levels compress better"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        def random = new Random(1234L)
+        100.times { i ->
+            sourceOutputDir.file("file-${i}.txt") << (1..200).collect { "key.${random.nextInt(1000)} = value ${random.nextInt(100000)}" }.join("\n")
+        }
+        def sizes = ["none", "fast", "best"].collect { codec ->
+            def output = new ByteArrayOutputStream()
+            packer = new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem), TaskOutputCodecs.forName(codec))
+            pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)
+            output.size()
+        }
+
+        expect:
+        sizes[0] > sizes[1]
+        sizes[1] > sizes[2]
+    }
+
+    def "fails for unknown codec"() {
+        when:
+        TaskOutputCodecs.forName("unknown")
+
+        then:
+        def ex = thrown IllegalArgumentException
+        ex.message == "Unknown build cache entry codec 'unknown', available codecs are: none, fast, default, best."
+    }
+}
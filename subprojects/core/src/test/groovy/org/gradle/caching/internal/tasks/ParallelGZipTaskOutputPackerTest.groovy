@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import spock.lang.Unroll
+
+import java.util.zip.Deflater
+import java.util.zip.GZIPInputStream
+
+import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType.DIRECTORY
+
+class ParallelGZipTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
+    def fileSystem = Stub(FileSystem) {
+        getUnixMode(_) >> 0644
+    }
+    def executor = new DefaultExecutorFactory().create("test", 4)
+    def parallelPacker = new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, executor), executor, 4)
+
+    @Override
+    TaskOutputPacker getPacker() {
+        return parallelPacker
+    }
+
+    def cleanup() {
+        parallelPacker.stop()
+    }
+
+    def "can pack and unpack directory with many files"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        200.times { i ->
+            sourceOutputDir.file("dir-${i % 10}/file-${i}.txt") << ("content of file ${i}\n" * (i * 100))
+        }
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetOutputDir)
+
+        then:
+        200.times { i ->
+            assert targetOutputDir.file("dir-${i % 10}/file-${i}.txt").text == sourceOutputDir.file("dir-${i % 10}/file-${i}.txt").text
+        }
+    }
+
+    def "produces entries that can be unpacked by the sequential packer"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("large.txt") << ("some line of text\n" * 100000)
+        sourceOutputDir.file("small.txt") << "small"
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)
+        new CompressingTaskOutputPacker(new TarTaskOutputPacker(fileSystem)).unpack(
+            [new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetOutputDir)] as SortedSet,
+            new ByteArrayInputStream(output.toByteArray()),
+            readOrigin
+        )
+
+        then:
+        targetOutputDir.file("large.txt").text == sourceOutputDir.file("large.txt").text
+        targetOutputDir.file("small.txt").text == "small"
+    }
+
+    @Unroll
+    def "packs in parallel with the #codec codec"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("large.txt") << ("some line of text\n" * 100000)
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+        def codecPacker = parallelPacker.withCodec(TaskOutputCodecs.forName(codec))
+
+        when:
+        codecPacker.pack([new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)] as SortedSet, output, writeOrigin)
+        codecPacker.unpack([new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetOutputDir)] as SortedSet, new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targetOutputDir.file("large.txt").text == sourceOutputDir.file("large.txt").text
+        (output.toByteArray()[0] == (byte) 0x1f) == compressed
+
+        where:
+        codec     | compressed
+        "none"    | false
+        "fast"    | true
+        "best"    | true
+    }
+
+    @Unroll
+    def "compressed stream of #size bytes can be read with GZIPInputStream"() {
+        def random = new Random(size)
+        def data = new byte[size]
+        // Compressible, but not trivially so
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (random.nextInt(16) + 'a')
+        }
+        def compressed = new ByteArrayOutputStream()
+
+        when:
+        def gzipOutput = new ParallelGZIPOutputStream(compressed, executor, 4, Deflater.DEFAULT_COMPRESSION, 64 * 1024)
+        gzipOutput.write(data, 0, size.intdiv(3) as int)
+        gzipOutput.write(data, size.intdiv(3) as int, size - size.intdiv(3) as int)
+        gzipOutput.close()
+
+        then:
+        new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).bytes == data
+        size < 1024 || compressed.size() < size
+
+        where:
+        size << [0, 1, 1000, 64 * 1024, 64 * 1024 + 1, 1024 * 1024 + 17]
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.apache.tools.tar.TarEntry
+import org.apache.tools.tar.TarInputStream
+import org.apache.tools.tar.TarOutputStream
+import org.gradle.cache.CacheBuilder
+import org.gradle.cache.CacheRepository
+import org.gradle.cache.PersistentCache
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.Factory
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+@UsesNativeServices
+@CleanupTestDirectory
+class ContentAddressedDirectoryBuildCacheServiceTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+    def persistentCache = Mock(PersistentCache) {
+        getBaseDir() >> cacheDir
+        withFileLock(_) >> { Factory action -> action.create() }
+        useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+    def cacheBuilder = Mock(CacheBuilder) {
+        open() >> persistentCache
+        _ * _(_) >> { cacheBuilder }
+    }
+    def cacheRepository = Mock(CacheRepository) {
+        cache(cacheDir) >> cacheBuilder
+    }
+    def service = new ContentAddressedDirectoryBuildCacheService(cacheRepository, new TestBuildOperationExecutor(), cacheDir, Long.MAX_VALUE)
+
+    def "stores identical file contents only once"() {
+        when:
+        service.store(key("first")) { OutputStream output -> output.write(packed("METADATA": "first", "property-out/": null, "property-out/a.class": "shared")) }
+        service.store(key("second")) { OutputStream output -> output.write(packed("METADATA": "second", "property-out/": null, "property-out/b.class": "shared")) }
+
+        then:
+        cacheDir.file("entries").list().sort() == ["first", "second"]
+        contentFiles().size() == 3
+    }
+
+    def "can load stored entry"() {
+        def contents = ["METADATA": "metadata", "property-out/": null, "property-out/sub/": null, "property-out/sub/file.txt": "file", "property-out/empty.txt": ""]
+        service.store(key("entry")) { OutputStream output -> output.write(packed(contents)) }
+
+        when:
+        def loaded = null
+        def found = service.load(key("entry"), { InputStream input -> loaded = unpacked(input) } as BuildCacheEntryReader)
+
+        then:
+        found
+        loaded == contents
+    }
+
+    def "stores identical file contents of uncompressed entries only once"() {
+        def contents = ["METADATA": "first", "property-out/": null, "property-out/a.class": "shared"]
+
+        when:
+        service.store(key("first")) { OutputStream output -> output.write(packed(contents, false)) }
+        service.store(key("second")) { OutputStream output -> output.write(packed("METADATA": "second", "property-out/": null, "property-out/b.class": "shared", false)) }
+
+        then:
+        contentFiles().size() == 3
+
+        when:
+        def loaded = null
+        service.load(key("first"), { InputStream input -> loaded = unpacked(input, false) } as BuildCacheEntryReader)
+
+        then:
+        loaded == contents
+    }
+
+    def "treats entry with missing content as a miss"() {
+        service.store(key("entry")) { OutputStream output -> output.write(packed("METADATA": "metadata", "property-out": "content")) }
+        contentFiles().find { it.text == "content" }.delete()
+        def reader = Mock(BuildCacheEntryReader)
+
+        when:
+        def found = service.load(key("entry"), reader)
+
+        then:
+        !found
+        0 * reader._
+        !cacheDir.file("entries/entry").exists()
+    }
+
+    def "does not find missing entry"() {
+        expect:
+        !service.load(key("missing"), Mock(BuildCacheEntryReader))
+    }
+
+    def "stores entries that are not packed as a single blob"() {
+        service.store(key("raw")) { OutputStream output -> output << "not a packed entry" }
+
+        when:
+        def loaded = null
+        service.load(key("raw"), { InputStream input -> loaded = input.text } as BuildCacheEntryReader)
+
+        then:
+        loaded == "not a packed entry"
+        contentFiles().size() == 1
+    }
+
+    def "does not store partial result"() {
+        when:
+        service.store(key("entry")) { OutputStream output ->
+            output << "abcd"
+            throw new RuntimeException("Simulated write error")
+        }
+
+        then:
+        def ex = thrown RuntimeException
+        ex.message == "Simulated write error"
+        cacheDir.listFiles() as List == []
+    }
+
+    def "cleanup removes oldest entries but keeps content still referenced"() {
+        service.store(key("old")) { OutputStream output -> output.write(packed("METADATA": "old", "property-large": "x" * (1536 * 1024), "property-shared": "shared")) }
+        service.store(key("new")) { OutputStream output -> output.write(packed("METADATA": "new", "property-shared": "shared")) }
+        cacheDir.file("entries/old").lastModified = 0
+
+        when:
+        new ContentAddressedCacheCleanup(new TestBuildOperationExecutor(), 1).cleanup(persistentCache)
+
+        then:
+        cacheDir.file("entries").list() as List == ["new"]
+        contentFiles()*.length().sort() == ["new".length(), "shared".length()]
+    }
+
+    def "cleanup holds the file lock so that it does not race with stores in other processes"() {
+        def lockedCache = Mock(PersistentCache) {
+            getBaseDir() >> cacheDir
+        }
+
+        when:
+        new ContentAddressedCacheCleanup(new TestBuildOperationExecutor(), 1).cleanup(lockedCache)
+
+        then:
+        1 * lockedCache.withFileLock(_)
+    }
+
+    def "cleanup keeps everything when cache is smaller than limit"() {
+        service.store(key("old")) { OutputStream output -> output.write(packed("METADATA": "old", "property-shared": "shared")) }
+        service.store(key("new")) { OutputStream output -> output.write(packed("METADATA": "new", "property-shared": "shared")) }
+
+        when:
+        new ContentAddressedCacheCleanup(new TestBuildOperationExecutor(), 1).cleanup(persistentCache)
+
+        then:
+        cacheDir.file("entries").list().sort() == ["new", "old"]
+        contentFiles().size() == 3
+    }
+
+    private List<File> contentFiles() {
+        def files = []
+        cacheDir.file("content").eachFileRecurse { if (it.file) { files << it } }
+        return files
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        return Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private static byte[] packed(Map<String, String> contents, boolean compressed = true) {
+        def bytes = new ByteArrayOutputStream()
+        def tarOutput = new TarOutputStream(compressed ? new GZIPOutputStream(bytes) : bytes, "utf-8")
+        contents.each { name, text ->
+            def entry = new TarEntry(name)
+            if (text != null) {
+                def data = text.bytes
+                entry.size = data.length
+                tarOutput.putNextEntry(entry)
+                tarOutput.write(data)
+            } else {
+                tarOutput.putNextEntry(entry)
+            }
+            tarOutput.closeEntry()
+        }
+        tarOutput.close()
+        return bytes.toByteArray()
+    }
+
+    private static Map<String, String> unpacked(InputStream input, boolean compressed = true) {
+        def contents = [:]
+        def tarInput = new TarInputStream(compressed ? new GZIPInputStream(input) : input)
+        def entry
+        while ((entry = tarInput.nextEntry) != null) {
+            if (entry.directory) {
+                contents[entry.name] = null
+            } else {
+                def data = new ByteArrayOutputStream()
+                tarInput.copyEntryContents(data)
+                contents[entry.name] = data.toString()
+            }
+        }
+        return contents
+    }
+}
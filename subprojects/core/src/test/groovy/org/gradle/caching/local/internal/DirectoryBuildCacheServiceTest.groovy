@@ -20,6 +20,7 @@ import org.gradle.cache.CacheBuilder
 import org.gradle.cache.CacheRepository
 import org.gradle.cache.PersistentCache
 import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.Factory
 import org.gradle.internal.operations.BuildOperationExecutor
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -66,4 +67,39 @@ class DirectoryBuildCacheServiceTest extends Specification {
         cacheDir.listFiles() as List == []
         1 * key.getHashCode() >> hashCode
     }
+
+    def "entry opened for reading can be read after the lock is released"() {
+        def storedFile = cacheDir.file("1234abcd")
+        storedFile.text = "entry"
+        def locked = false
+
+        when:
+        def input = service.openLocally(key)
+
+        then:
+        1 * persistentCache.withFileLock(_) >> { Factory action ->
+            locked = true
+            try {
+                action.create()
+            } finally {
+                locked = false
+            }
+        }
+        _ * key.getHashCode() >> "1234abcd"
+
+        and:
+        !locked
+        input.text == "entry"
+
+        cleanup:
+        input?.close()
+    }
+
+    def "does not open missing entry"() {
+        persistentCache.withFileLock(_) >> { Factory action -> action.create() }
+        key.getHashCode() >> "1234abcd"
+
+        expect:
+        service.openLocally(key) == null
+    }
 }
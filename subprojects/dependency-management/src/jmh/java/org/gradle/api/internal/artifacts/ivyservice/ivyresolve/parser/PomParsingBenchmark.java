@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.internal.nativeintegration.services.FileSystems;
+import org.gradle.internal.nativeintegration.services.NativeServices;
+import org.gradle.internal.nativeplatform.filesystem.FileSystem;
+import org.gradle.internal.resource.local.LocalFileStandInExternalResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares parsing POMs into the pruned element tree used by {@link PomReader} with parsing them into a full DOM, as was done before.
+ *
+ * Each invocation parses a single POM of the corpus, so that the scores and the garbage reported by the GC profiler ({@code -prof gc}) are per descriptor.
+ * The corpus is either a set of generated POMs resembling those found in public repositories, or all the POMs found in a directory, such as a local Maven
+ * repository, passed with {@code -p corpus=<directory>}.
+ */
+@State(Scope.Benchmark)
+public class PomParsingBenchmark {
+    private static final int GENERATED_POMS = 500;
+    private static final byte[] M2_ENTITIES;
+
+    static {
+        try {
+            M2_ENTITIES = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Param({"generated"})
+    String corpus;
+
+    private File tempDir;
+    private FileSystem fileSystem;
+    private ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+    private DocumentBuilderFactory documentBuilderFactory;
+    private List<File> poms;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tempDir = Files.createTempDir();
+        NativeServices.initialize(new File(tempDir, "native"));
+        fileSystem = FileSystems.getDefault();
+        moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory();
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setValidating(false);
+
+        List<File> candidates;
+        if (corpus.equals("generated")) {
+            candidates = generatePoms(new File(tempDir, "poms"), new Random(1234L));
+        } else {
+            candidates = new ArrayList<File>(FileUtils.listFiles(new File(corpus), new String[]{"pom"}, true));
+            Collections.sort(candidates);
+        }
+        // Leave out the POMs that cannot be parsed, to not benchmark failures
+        poms = new ArrayList<File>();
+        for (File candidate : candidates) {
+            try {
+                readPom(candidate);
+                poms.add(candidate);
+            } catch (Exception e) {
+                // Ignore
+            }
+        }
+        if (poms.isEmpty()) {
+            throw new IllegalStateException("No POMs found in " + corpus);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        File next(List<File> poms) {
+            File pom = poms.get(next);
+            next = (next + 1) % poms.size();
+            return pom;
+        }
+    }
+
+    @Benchmark
+    public PomReader prunedTree(Cursor cursor) throws Exception {
+        return new PomReader(new LocalFileStandInExternalResource(cursor.next(poms), fileSystem), moduleIdentifierFactory);
+    }
+
+    @Benchmark
+    public Document fullDom(Cursor cursor) throws Exception {
+        InputStream inputStream = new FileInputStream(cursor.next(poms));
+        try {
+            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+            documentBuilder.setEntityResolver(new EntityResolver() {
+                public InputSource resolveEntity(String publicId, String systemId) {
+                    if (systemId != null && systemId.endsWith("m2-entities.ent")) {
+                        return new InputSource(new ByteArrayInputStream(M2_ENTITIES));
+                    }
+                    return null;
+                }
+            });
+            return documentBuilder.parse(new PomDomParser.AddDTDFilterInputStream(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Parses the given POM and reads what is needed to build the meta-data of the module.
+     */
+    private int readPom(File pom) throws Exception {
+        PomReader pomReader = new PomReader(new LocalFileStandInExternalResource(pom, fileSystem), moduleIdentifierFactory);
+        pomReader.getPackaging();
+        pomReader.getDescription();
+        pomReader.getRelocation();
+        return pomReader.parseDependencyMgt().size() + pomReader.getDependencies().size();
+    }
+
+    private static List<File> generatePoms(File dir, Random random) throws IOException {
+        List<File> poms = new ArrayList<File>();
+        for (int i = 0; i < GENERATED_POMS; i++) {
+            File pom = new File(dir, "module-" + i + ".pom");
+            Files.createParentDirs(pom);
+            FileUtils.writeStringToFile(pom, pomContent(i, random), "UTF-8");
+            poms.add(pom);
+        }
+        return poms;
+    }
+
+    private static String pomContent(int index, Random random) {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        pom.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        pom.append("    xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/maven-v4_0_0.xsd\">\n");
+        pom.append("  <modelVersion>4.0.0</modelVersion>\n");
+        pom.append("  <groupId>org.example.group").append(index % 20).append("</groupId>\n");
+        pom.append("  <artifactId>module-").append(index).append("</artifactId>\n");
+        pom.append("  <version>1.").append(index % 7).append(".0</version>\n");
+        pom.append("  <packaging>jar</packaging>\n");
+        pom.append("  <name>Module ").append(index).append("</name>\n");
+        pom.append("  <description>An example module &amp; some of its dependencies, with a description that spans\n");
+        pom.append("    a couple of lines like many published modules do.</description>\n");
+        pom.append("  <url>https://example.org/module-").append(index).append("</url>\n");
+        pom.append("  <licenses>\n    <license>\n      <name>The Apache Software License, Version 2.0</name>\n");
+        pom.append("      <url>http://www.apache.org/licenses/LICENSE-2.0.txt</url>\n      <distribution>repo</distribution>\n    </license>\n  </licenses>\n");
+        pom.append("  <scm>\n    <connection>scm:git:git://example.org/module-").append(index).append(".git</connection>\n");
+        pom.append("    <url>https://example.org/module-").append(index).append("</url>\n  </scm>\n");
+        pom.append("  <developers>\n");
+        for (int i = 0; i < 1 + random.nextInt(5); i++) {
+            pom.append("    <developer>\n      <id>dev").append(i).append("</id>\n      <name>Developer ").append(i).append("</name>\n");
+            pom.append("      <email>dev").append(i).append("@example.org</email>\n    </developer>\n");
+        }
+        pom.append("  </developers>\n");
+
+        pom.append("  <properties>\n");
+        pom.append("    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n");
+        pom.append("    <library.version>2.").append(random.nextInt(10)).append("</library.version>\n");
+        pom.append("  </properties>\n");
+
+        // Some of the modules are BOMs, with many dependency management entries
+        if (index % 10 == 0) {
+            pom.append("  <dependencyManagement>\n    <dependencies>\n");
+            for (int i = 0; i < 50 + random.nextInt(150); i++) {
+                appendDependency(pom, "      ", "org.example.managed", "managed-" + i, "${library.version}", null);
+            }
+            pom.append("    </dependencies>\n  </dependencyManagement>\n");
+        }
+
+        pom.append("  <dependencies>\n");
+        for (int i = 0; i < random.nextInt(25); i++) {
+            appendDependency(pom, "    ", "org.example.group" + random.nextInt(20), "module-" + random.nextInt(GENERATED_POMS), "1." + random.nextInt(7) + ".0", i % 5 == 0 ? "test" : null);
+        }
+        pom.append("  </dependencies>\n");
+
+        pom.append("  <build>\n    <plugins>\n");
+        for (int i = 0; i < 3 + random.nextInt(6); i++) {
+            pom.append("      <plugin>\n        <groupId>org.apache.maven.plugins</groupId>\n        <artifactId>maven-plugin-").append(i).append("</artifactId>\n");
+            pom.append("        <version>3.").append(i).append("</version>\n        <configuration>\n");
+            pom.append("          <source>1.6</source>\n          <target>1.6</target>\n          <excludes>\n            <exclude>**/internal/**</exclude>\n");
+            pom.append("          </excludes>\n        </configuration>\n        <executions>\n          <execution>\n            <goals>\n");
+            pom.append("              <goal>jar</goal>\n            </goals>\n          </execution>\n        </executions>\n      </plugin>\n");
+        }
+        pom.append("    </plugins>\n  </build>\n");
+
+        pom.append("  <profiles>\n    <profile>\n      <id>release</id>\n      <build>\n        <plugins>\n          <plugin>\n");
+        pom.append("            <artifactId>maven-gpg-plugin</artifactId>\n          </plugin>\n        </plugins>\n      </build>\n    </profile>\n  </profiles>\n");
+        pom.append("</project>\n");
+        return pom.toString();
+    }
+
+    private static void appendDependency(StringBuilder pom, String indent, String groupId, String artifactId, String version, String scope) {
+        pom.append(indent).append("<dependency>\n");
+        pom.append(indent).append("  <groupId>").append(groupId).append("</groupId>\n");
+        pom.append(indent).append("  <artifactId>").append(artifactId).append("</artifactId>\n");
+        pom.append(indent).append("  <version>").append(version).append("</version>\n");
+        if (scope != null) {
+            pom.append(indent).append("  <scope>").append(scope).append("</scope>\n");
+        }
+        pom.append(indent).append("</dependency>\n");
+    }
+}
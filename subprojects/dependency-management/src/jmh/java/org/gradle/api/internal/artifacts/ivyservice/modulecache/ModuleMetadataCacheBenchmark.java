@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionSelector;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
+import org.gradle.internal.component.external.descriptor.Artifact;
+import org.gradle.internal.component.external.descriptor.DefaultExclude;
+import org.gradle.internal.component.external.descriptor.MavenScope;
+import org.gradle.internal.component.external.descriptor.MutableModuleDescriptorState;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.DefaultMutableMavenModuleResolveMetadata;
+import org.gradle.internal.component.external.model.MavenDependencyMetadata;
+import org.gradle.internal.component.model.DefaultIvyArtifactName;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.Exclude;
+import org.gradle.internal.resource.local.PathKeyFileStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures loading the cached meta-data of all the modules of a large dependency graph from a fully warm module meta-data cache, which is what
+ * resolving the graph costs in a build where all of the meta-data is cached.
+ *
+ * Run it against the revision before a change to the cache format to compare the formats.
+ */
+@State(Scope.Benchmark)
+public class ModuleMetadataCacheBenchmark {
+    private static final String REPOSITORY_ID = "0123456789abcdef0123456789abcdef";
+    private static final MavenScope[] SCOPES = {MavenScope.Compile, MavenScope.Compile, MavenScope.Runtime, MavenScope.Test, MavenScope.Provided};
+
+    @Param({"1000", "10000"})
+    int modules;
+
+    private File tempDir;
+    private ModuleMetadataStore store;
+    private List<ModuleComponentAtRepositoryKey> keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tempDir = Files.createTempDir();
+        ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory();
+        store = new ModuleMetadataStore(new PathKeyFileStore(new File(tempDir, "descriptors")), new ModuleMetadataSerializer(), moduleIdentifierFactory, new ModuleExclusions(moduleIdentifierFactory));
+
+        Random random = new Random(1234L);
+        keys = new ArrayList<ModuleComponentAtRepositoryKey>(modules);
+        for (int i = 0; i < modules; i++) {
+            ModuleComponentIdentifier componentId = DefaultModuleComponentIdentifier.newId(group(i), "module-" + i, "1." + (i % 10) + ".0");
+            MutableModuleDescriptorState descriptor = new MutableModuleDescriptorState(componentId, "release", false);
+            descriptor.setDescription("Module " + i + " of the graph");
+            descriptor.addArtifact(new DefaultIvyArtifactName("module-" + i, "jar", "jar"), Collections.singleton("master"));
+
+            // Modules depend on modules later in the graph, with the versions of these modules spread over the groups
+            List<DependencyMetadata> dependencies = new ArrayList<DependencyMetadata>();
+            int dependencyCount = i + 1 < modules ? random.nextInt(15) : 0;
+            for (int j = 0; j < dependencyCount; j++) {
+                int target = i + 1 + random.nextInt(modules - i - 1);
+                List<Exclude> excludes = random.nextInt(4) == 0
+                    ? Collections.<Exclude>singletonList(new DefaultExclude(moduleIdentifierFactory.module(group(target + 1), "module-" + (target + 1))))
+                    : Collections.<Exclude>emptyList();
+                dependencies.add(new MavenDependencyMetadata(SCOPES[random.nextInt(SCOPES.length)], random.nextInt(10) == 0,
+                    DefaultModuleVersionSelector.newSelector(group(target), "module-" + target, "1." + (target % 10) + ".0"), Collections.<Artifact>emptyList(), excludes));
+            }
+
+            DefaultMutableMavenModuleResolveMetadata metadata = new DefaultMutableMavenModuleResolveMetadata(
+                DefaultModuleVersionIdentifier.newId(componentId.getGroup(), componentId.getModule(), componentId.getVersion()), componentId, descriptor, "jar", false, dependencies);
+            ModuleComponentAtRepositoryKey key = new ModuleComponentAtRepositoryKey(REPOSITORY_ID, componentId);
+            store.putModuleDescriptor(key, metadata.asImmutable());
+            keys.add(key);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Benchmark
+    public int loadGraphFromWarmCache() {
+        int dependencies = 0;
+        for (ModuleComponentAtRepositoryKey key : keys) {
+            dependencies += store.getModuleDescriptor(key).asImmutable().getDependencies().size();
+        }
+        return dependencies;
+    }
+
+    private static String group(int module) {
+        return "org.example.group" + (module % 50);
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionSelector;
+import org.gradle.api.internal.artifacts.ResolveContext;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ComponentResolutionState;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ModuleConflictResolver;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.conflicts.DefaultConflictHandler;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.api.specs.Specs;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector;
+import org.gradle.internal.component.local.model.DefaultLocalComponentMetadata;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.Exclude;
+import org.gradle.internal.component.model.IvyArtifactName;
+import org.gradle.internal.component.model.LocalComponentDependencyMetadata;
+import org.gradle.internal.operations.BuildOperation;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.BuildOperationWorker;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationState;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.resolver.DependencyToComponentIdResolver;
+import org.gradle.internal.resolve.resolver.ResolveContextToComponentResolver;
+import org.gradle.internal.resolve.result.BuildableComponentIdResolveResult;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares resolving a dependency graph on cold caches with and without fetching meta-data ahead of the traversal.
+ *
+ * The meta-data comes from a stand-in repository that waits for the given latency the first time the meta-data of a component is requested, and keeps it in memory
+ * afterwards, like the in-memory cache in front of a remote repository does. Modules are requested in two versions, so that the traversal has conflicts to resolve.
+ */
+@State(Scope.Benchmark)
+public class DependencyGraphTraversalBenchmark {
+    private static final int LAYERS = 6;
+    private static final int MODULES_PER_LAYER = 40;
+    private static final int DEPENDENCIES_PER_MODULE = 4;
+    private static final int WORKERS = 8;
+
+    @Param({"serial", "speculative"})
+    String mode;
+
+    @Param({"20"})
+    long latencyMillis;
+
+    private final Map<ComponentIdentifier, ComponentResolveMetadata> repository = new HashMap<ComponentIdentifier, ComponentResolveMetadata>();
+    private final DefaultImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory();
+    private DefaultLocalComponentMetadata root;
+    private ExecutorService workers;
+    private BuildOperationExecutor buildOperationExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (mode.equals("speculative")) {
+            System.setProperty(SpeculativeMetadataFetcher.PROPERTY, "true");
+        }
+        workers = Executors.newFixedThreadPool(WORKERS);
+        buildOperationExecutor = new ThreadPoolBuildOperationExecutor(workers);
+
+        root = component("root", "1.0");
+        for (int module = 0; module < MODULES_PER_LAYER; module++) {
+            addDependency(root, 0, module, module % 2 == 0 ? "1.0" : "1.1");
+        }
+        for (int layer = 0; layer < LAYERS; layer++) {
+            for (int module = 0; module < MODULES_PER_LAYER; module++) {
+                for (String version : new String[]{"1.0", "1.1"}) {
+                    DefaultLocalComponentMetadata component = component(name(layer, module), version);
+                    if (layer + 1 < LAYERS) {
+                        for (int dependency = 0; dependency < DEPENDENCIES_PER_MODULE; dependency++) {
+                            int target = (module * 7 + dependency * 13) % MODULES_PER_LAYER;
+                            addDependency(component, layer + 1, target, (module + dependency) % 2 == 0 ? "1.0" : "1.1");
+                        }
+                    }
+                    repository.put(component.getComponentId(), component);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.clearProperty(SpeculativeMetadataFetcher.PROPERTY);
+        workers.shutdownNow();
+    }
+
+    @Benchmark
+    public int resolveGraph() {
+        DependencyGraphBuilder builder = new DependencyGraphBuilder(new StandInIdResolver(), new StandInRepository(repository, latencyMillis), new RootResolver(root),
+            new DefaultConflictHandler(new HighestVersionResolver(), ModuleReplacementsData.NO_OP), Specs.<DependencyMetadata>satisfyAll(), null, moduleIdentifierFactory,
+            new ModuleExclusions(moduleIdentifierFactory), buildOperationExecutor);
+        NodeCountingVisitor visitor = new NodeCountingVisitor();
+        builder.resolve(new StandInResolveContext(root), visitor);
+        return visitor.nodes;
+    }
+
+    private static String name(int layer, int module) {
+        return "layer" + layer + "-module" + module;
+    }
+
+    private static DefaultLocalComponentMetadata component(String name, String version) {
+        ModuleVersionIdentifier id = DefaultModuleVersionIdentifier.newId("org.test", name, version);
+        // The attributes schema is not used, as every dependency names the configuration it targets
+        DefaultLocalComponentMetadata metadata = new DefaultLocalComponentMetadata(id, DefaultModuleComponentIdentifier.newId(id), "release", null);
+        metadata.addConfiguration("default", "default", Collections.<String>emptySet(), Collections.singleton("default"), true, true, ImmutableAttributes.EMPTY, true, true);
+        return metadata;
+    }
+
+    private static void addDependency(DefaultLocalComponentMetadata from, int layer, int module, String version) {
+        ModuleVersionSelector selector = DefaultModuleVersionSelector.newSelector("org.test", name(layer, module), version);
+        from.addDependency(new LocalComponentDependencyMetadata(DefaultModuleComponentSelector.newSelector(selector), selector, "default", null, "default",
+            Collections.<IvyArtifactName>emptySet(), Collections.<Exclude>emptyList(), false, false, true));
+    }
+
+    /**
+     * Waits for the latency the first time the meta-data of a component is requested.
+     */
+    private static class StandInRepository implements ComponentMetaDataResolver {
+        private final Map<ComponentIdentifier, ComponentResolveMetadata> repository;
+        private final ConcurrentMap<ComponentIdentifier, ComponentResolveMetadata> inMemory = new ConcurrentHashMap<ComponentIdentifier, ComponentResolveMetadata>();
+        private final long latencyMillis;
+
+        StandInRepository(Map<ComponentIdentifier, ComponentResolveMetadata> repository, long latencyMillis) {
+            this.repository = repository;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+            ComponentResolveMetadata metadata = inMemory.get(identifier);
+            if (metadata == null) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                metadata = repository.get(identifier);
+                inMemory.put(identifier, metadata);
+            }
+            result.resolved(metadata);
+        }
+
+        @Override
+        public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+            return inMemory.containsKey(identifier);
+        }
+    }
+
+    private static class StandInIdResolver implements DependencyToComponentIdResolver {
+        @Override
+        public void resolve(DependencyMetadata dependency, BuildableComponentIdResolveResult result) {
+            ModuleVersionSelector requested = dependency.getRequested();
+            ModuleVersionIdentifier id = DefaultModuleVersionIdentifier.newId(requested.getGroup(), requested.getName(), requested.getVersion());
+            result.resolved(DefaultModuleComponentIdentifier.newId(id), id);
+        }
+    }
+
+    private static class RootResolver implements ResolveContextToComponentResolver {
+        private final ComponentResolveMetadata root;
+
+        RootResolver(ComponentResolveMetadata root) {
+            this.root = root;
+        }
+
+        @Override
+        public void resolve(ResolveContext resolveContext, BuildableComponentResolveResult result) {
+            result.resolved(root);
+        }
+    }
+
+    private static class HighestVersionResolver implements ModuleConflictResolver {
+        @Override
+        public <T extends ComponentResolutionState> T select(Collection<? extends T> candidates) {
+            T selected = null;
+            for (T candidate : candidates) {
+                if (selected == null || candidate.getVersion().compareTo(selected.getVersion()) > 0) {
+                    selected = candidate;
+                }
+            }
+            return selected;
+        }
+    }
+
+    private static class StandInResolveContext implements ResolveContext {
+        private final ComponentResolveMetadata root;
+
+        StandInResolveContext(ComponentResolveMetadata root) {
+            this.root = root;
+        }
+
+        @Override
+        public String getName() {
+            return "default";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "default";
+        }
+
+        @Override
+        public ResolutionStrategyInternal getResolutionStrategy() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ComponentResolveMetadata toRootComponentMetaData() {
+            return root;
+        }
+    }
+
+    private static class NodeCountingVisitor implements DependencyGraphVisitor {
+        int nodes;
+
+        @Override
+        public void start(DependencyGraphNode root) {
+        }
+
+        @Override
+        public void visitNode(DependencyGraphNode node) {
+            nodes++;
+        }
+
+        @Override
+        public void visitSelector(DependencyGraphSelector selector) {
+        }
+
+        @Override
+        public void visitEdges(DependencyGraphNode node) {
+        }
+
+        @Override
+        public void finish(DependencyGraphNode root) {
+        }
+    }
+
+    /**
+     * Runs the operations of {@link #runAll} on a fixed size pool, standing in for the build operation workers.
+     */
+    private static class ThreadPoolBuildOperationExecutor implements BuildOperationExecutor {
+        private final ExecutorService executor;
+
+        ThreadPoolBuildOperationExecutor(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void run(RunnableBuildOperation buildOperation) {
+            buildOperation.run(null);
+        }
+
+        @Override
+        public <T> T call(CallableBuildOperation<T> buildOperation) {
+            return buildOperation.call(null);
+        }
+
+        @Override
+        public <O extends RunnableBuildOperation> void runAll(Action<BuildOperationQueue<O>> schedulingAction) {
+            PoolQueue<O> queue = new PoolQueue<O>(executor);
+            schedulingAction.execute(queue);
+            queue.waitForCompletion();
+        }
+
+        @Override
+        public <O extends BuildOperation> void runAll(BuildOperationWorker<O> worker, Action<BuildOperationQueue<O>> schedulingAction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BuildOperationState getCurrentOperation() {
+            return null;
+        }
+    }
+
+    private static class PoolQueue<O extends RunnableBuildOperation> implements BuildOperationQueue<O> {
+        private final ExecutorService executor;
+        private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        PoolQueue(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void add(final O operation) {
+            Future<?> future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    operation.run(null);
+                }
+            });
+            synchronized (futures) {
+                futures.add(future);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (futures) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public void waitForCompletion() {
+            // Operations may add further operations while running
+            int waited = 0;
+            while (true) {
+                Future<?> next;
+                synchronized (futures) {
+                    if (waited == futures.size()) {
+                        return;
+                    }
+                    next = futures.get(waited);
+                }
+                try {
+                    next.get();
+                } catch (CancellationException e) {
+                    // Ignore
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                waited++;
+            }
+        }
+
+        @Override
+        public void setLogLocation(String logLocation) {
+        }
+    }
+}
@@ -53,6 +53,8 @@ import org.gradle.api.internal.artifacts.ivyservice.publisher.IvyBackedArtifactP
 import org.gradle.api.internal.artifacts.ivyservice.publisher.IvyXmlModuleDescriptorWriter;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolvedGraphCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.SharedResolvedGraphs;
 import org.gradle.api.internal.artifacts.mvnsettings.LocalMavenRepositoryLocator;
 import org.gradle.api.internal.artifacts.query.ArtifactResolutionQueryFactory;
 import org.gradle.api.internal.artifacts.query.DefaultArtifactResolutionQueryFactory;
@@ -232,7 +234,11 @@ public class DefaultDependencyManagementServices implements DependencyManagement
                                                        ImmutableModuleIdentifierFactory moduleIdentifierFactory,
                                                        ImmutableAttributesFactory attributesFactory,
                                                        BuildOperationExecutor buildOperationExecutor,
-                                                       ArtifactTypeRegistry artifactTypeRegistry) {
+                                                       ArtifactTypeRegistry artifactTypeRegistry,
+                                                       ResolvedGraphCache resolvedGraphCache,
+                                                       VersionSelectorScheme versionSelectorScheme,
+                                                       SharedResolvedGraphs sharedResolvedGraphs) {
+            boolean useResolvedGraphCache = ResolvedGraphCache.isEnabled() && !startParameter.isRefreshDependencies();
             return new ErrorHandlingConfigurationResolver(
                     new ShortCircuitEmptyConfigurationResolver(
                         new DefaultConfigurationResolver(
@@ -250,7 +256,10 @@ public class DefaultDependencyManagementServices implements DependencyManagement
                                 attributesSchema),
                             moduleIdentifierFactory,
                             buildOperationExecutor,
-                            artifactTypeRegistry),
+                            artifactTypeRegistry,
+                            useResolvedGraphCache ? resolvedGraphCache : null,
+                            versionSelectorScheme,
+                            SharedResolvedGraphs.isEnabled() ? sharedResolvedGraphs : null),
                         componentIdentifierFactory,
                         moduleIdentifierFactory));
         }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts;
+
+import org.gradle.api.Nullable;
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Details about looking up the dependency graph of a configuration that resolves the same dependencies in the same way, to share it with another configuration.
+ * The lookup happens for each configuration whose graph could be shared, whether or not a graph was found.
+ *
+ * @since 4.2
+ */
+public final class ShareResolvedGraphBuildOperationType implements BuildOperationType<ShareResolvedGraphBuildOperationType.Details, ShareResolvedGraphBuildOperationType.Result> {
+
+    public interface Details {
+
+        String getConfigurationPath();
+
+        /**
+         * The configuration whose graph is shared, or null when there was no graph to share.
+         */
+        @Nullable
+        String getSharedConfigurationPath();
+
+        /**
+         * The number of graphs shared in the build so far, including this one if it was shared.
+         */
+        int getSharedGraphCount();
+
+        /**
+         * The number of graphs that could have been shared in the build so far. Together with {@link #getSharedGraphCount()}, this gives the rate at which
+         * graphs are shared.
+         */
+        int getShareableGraphCount();
+
+    }
+
+    public interface Result {
+
+    }
+
+    public static class DetailsImpl implements Details {
+
+        private final String configuration;
+        private final String sharedConfiguration;
+        private final int sharedGraphCount;
+        private final int shareableGraphCount;
+
+        public DetailsImpl(String configuration, @Nullable String sharedConfiguration, int sharedGraphCount, int shareableGraphCount) {
+            this.configuration = configuration;
+            this.sharedConfiguration = sharedConfiguration;
+            this.sharedGraphCount = sharedGraphCount;
+            this.shareableGraphCount = shareableGraphCount;
+        }
+
+        public String getConfigurationPath() {
+            return configuration;
+        }
+
+        @Nullable
+        public String getSharedConfigurationPath() {
+            return sharedConfiguration;
+        }
+
+        public int getSharedGraphCount() {
+            return sharedGraphCount;
+        }
+
+        public int getShareableGraphCount() {
+            return shareableGraphCount;
+        }
+
+    }
+
+    public final static Result RESULT = new Result() {
+    };
+
+    private ShareResolvedGraphBuildOperationType() {
+    }
+
+}
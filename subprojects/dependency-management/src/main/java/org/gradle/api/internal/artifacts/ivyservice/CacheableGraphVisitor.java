@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Determines whether a graph resolves the same way for as long as its inputs do not change, which is not the case when it contains changing modules,
+ * dynamic versions, components that are not modules or failures, or a module with the same identity as the root.
+ */
+class CacheableGraphVisitor implements DependencyGraphVisitor {
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final Set<ModuleIdentifier> modules = new HashSet<ModuleIdentifier>();
+    private ModuleIdentifier rootModule;
+    private long rootResultId;
+    private boolean cacheable = true;
+
+    CacheableGraphVisitor(VersionSelectorScheme versionSelectorScheme) {
+        this.versionSelectorScheme = versionSelectorScheme;
+    }
+
+    boolean isCacheable() {
+        return cacheable && !modules.contains(rootModule);
+    }
+
+    long getRootResultId() {
+        return rootResultId;
+    }
+
+    Set<ModuleIdentifier> getModules() {
+        return modules;
+    }
+
+    @Override
+    public void start(DependencyGraphNode root) {
+        rootModule = root.getOwner().getModuleVersion().getModule();
+        rootResultId = root.getOwner().getResultId();
+    }
+
+    @Override
+    public void visitNode(DependencyGraphNode node) {
+        for (DependencyGraphEdge edge : node.getOutgoingEdges()) {
+            if (edge.getFailure() != null) {
+                // A failure may not happen again
+                cacheable = false;
+            }
+        }
+        if (node.isRoot()) {
+            return;
+        }
+        modules.add(node.getOwner().getModuleVersion().getModule());
+        if (!(node.getOwner().getComponentId() instanceof ModuleComponentIdentifier) || node.getOwner().getMetadata().isChanging() || !node.getOutgoingFileEdges().isEmpty()) {
+            cacheable = false;
+        }
+    }
+
+    @Override
+    public void visitSelector(DependencyGraphSelector selector) {
+        ComponentSelector requested = selector.getRequested();
+        if (!(requested instanceof ModuleComponentSelector) || versionSelectorScheme.parseSelector(((ModuleComponentSelector) requested).getVersion()).isDynamic()) {
+            cacheable = false;
+        }
+    }
+
+    @Override
+    public void visitEdges(DependencyGraphNode node) {
+    }
+
+    @Override
+    public void finish(DependencyGraphNode root) {
+    }
+}
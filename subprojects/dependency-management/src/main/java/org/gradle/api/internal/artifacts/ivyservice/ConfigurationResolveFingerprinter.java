@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.ClientModule;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.ExcludeRule;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.repositories.FlatDirectoryArtifactRepository;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.internal.artifacts.ComponentMetadataProcessor;
+import org.gradle.api.internal.artifacts.ComponentModuleMetadataProcessor;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.Module;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dsl.ComponentModuleMetadataContainer;
+import org.gradle.api.internal.artifacts.dsl.DefaultComponentMetadataHandler;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry;
+import org.gradle.api.internal.attributes.AttributeContainerInternal;
+import org.gradle.util.GradleVersion;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Calculates a fingerprint of the inputs to the resolution of the dependency graph of a configuration, for configurations whose graph is fully determined
+ * by their declared dependencies, resolution strategy, repositories and the meta-data those repositories serve.
+ *
+ * There is no fingerprint for a configuration that has dependencies on projects, files or client modules, or on changing modules, or whose resolution is
+ * affected by rules, as what these resolve to cannot be known up front. Dependencies on dynamic versions have a fingerprint, and need to be detected while
+ * resolving.
+ *
+ * The fingerprint does not include the identity of the project that owns the configuration, so that configurations of different projects can share their
+ * graph. The graph of a configuration also depends on the identity of its project when the graph contains a module with the same identity, which needs to be
+ * checked before sharing it.
+ */
+class ConfigurationResolveFingerprinter {
+    private ConfigurationResolveFingerprinter() {
+    }
+
+    /**
+     * Returns the fingerprint of the given configuration, without the identity of its project, or null when it has none.
+     */
+    @Nullable
+    static HashCode fingerprint(ConfigurationInternal configuration, List<ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules globalRules) {
+        ResolutionStrategyInternal resolutionStrategy = configuration.getResolutionStrategy();
+        if (hasRules(globalRules) || resolutionStrategy.getDependencySubstitution().hasRules() || !resolutionStrategy.getComponentSelection().getRules().isEmpty()) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.md5().newHasher();
+        putString(hasher, GradleVersion.current().getVersion());
+
+        hasher.putInt(configuration.getAllDependencies().size());
+        for (Dependency dependency : configuration.getAllDependencies()) {
+            if (!(dependency instanceof ExternalModuleDependency) || dependency instanceof ClientModule) {
+                return null;
+            }
+            ExternalModuleDependency moduleDependency = (ExternalModuleDependency) dependency;
+            if (moduleDependency.isChanging()) {
+                return null;
+            }
+            putString(hasher, moduleDependency.getGroup());
+            putString(hasher, moduleDependency.getName());
+            putString(hasher, moduleDependency.getVersion());
+            putString(hasher, moduleDependency.getTargetConfiguration());
+            hasher.putBoolean(moduleDependency.isTransitive());
+            hasher.putBoolean(moduleDependency.isForce());
+            putExcludeRules(hasher, moduleDependency.getExcludeRules());
+            hasher.putInt(moduleDependency.getArtifacts().size());
+            for (DependencyArtifact artifact : moduleDependency.getArtifacts()) {
+                putString(hasher, artifact.getName());
+                putString(hasher, artifact.getType());
+                putString(hasher, artifact.getExtension());
+                putString(hasher, artifact.getClassifier());
+                putString(hasher, artifact.getUrl());
+            }
+        }
+
+        for (Configuration configurationInHierarchy : configuration.getHierarchy()) {
+            putExcludeRules(hasher, configurationInHierarchy.getExcludeRules());
+        }
+        putAttributes(hasher, configuration.getAttributes());
+
+        List<String> forcedModules = new ArrayList<String>();
+        for (ModuleVersionSelector forcedModule : resolutionStrategy.getForcedModules()) {
+            forcedModules.add(forcedModule.getGroup() + ":" + forcedModule.getName() + ":" + forcedModule.getVersion());
+        }
+        Collections.sort(forcedModules);
+        hasher.putInt(forcedModules.size());
+        for (String forcedModule : forcedModules) {
+            putString(hasher, forcedModule);
+        }
+        putString(hasher, resolutionStrategy.getConflictResolution().getClass().getName());
+
+        hasher.putInt(repositories.size());
+        for (ResolutionAwareRepository repository : repositories) {
+            putRepository(hasher, repository);
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Returns the fingerprint of the given configuration, including the identity of its project.
+     */
+    static HashCode withProjectIdentity(HashCode fingerprint, ConfigurationInternal configuration) {
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putBytes(fingerprint.asBytes());
+        putString(hasher, configuration.getIdentityPath().toString());
+        Module module = configuration.getModule();
+        putString(hasher, module.getProjectPath());
+        putString(hasher, module.getGroup());
+        putString(hasher, module.getName());
+        putString(hasher, module.getVersion());
+        putString(hasher, module.getStatus());
+        return hasher.hash();
+    }
+
+    /**
+     * Returns the fingerprint of the given configuration, including the inputs to the artifacts of its graph that belong to the project that owns it.
+     */
+    static HashCode withArtifactInputs(HashCode fingerprint, ConfigurationInternal configuration, ArtifactTypeRegistry artifactTypeRegistry) {
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putBytes(fingerprint.asBytes());
+        putString(hasher, configuration.getResolutionStrategy().getSortOrder().name());
+        // The artifact types determine the attributes of the variants of the components in the graph
+        TreeMap<String, AttributeContainerInternal> artifactTypes = new TreeMap<String, AttributeContainerInternal>();
+        for (ArtifactTypeDefinition artifactType : artifactTypeRegistry.create()) {
+            artifactTypes.put(artifactType.getName(), (AttributeContainerInternal) artifactType.getAttributes());
+        }
+        hasher.putInt(artifactTypes.size());
+        for (String name : artifactTypes.keySet()) {
+            putString(hasher, name);
+            putAttributes(hasher, artifactTypes.get(name));
+        }
+        return hasher.hash();
+    }
+
+    private static boolean hasRules(GlobalDependencyResolutionRules globalRules) {
+        if (globalRules.getDependencySubstitutionRules().hasRules()) {
+            return true;
+        }
+        ComponentMetadataProcessor metadataProcessor = globalRules.getComponentMetadataProcessor();
+        if (metadataProcessor != ComponentMetadataProcessor.NO_OP
+            && !(metadataProcessor instanceof DefaultComponentMetadataHandler && !((DefaultComponentMetadataHandler) metadataProcessor).hasRules())) {
+            return true;
+        }
+        ComponentModuleMetadataProcessor moduleMetadataProcessor = globalRules.getModuleMetadataProcessor();
+        if (moduleMetadataProcessor == ComponentModuleMetadataProcessor.NO_OP) {
+            return false;
+        }
+        return !(moduleMetadataProcessor.getModuleReplacements() instanceof ComponentModuleMetadataContainer)
+            || ((ComponentModuleMetadataContainer) moduleMetadataProcessor.getModuleReplacements()).hasReplacements();
+    }
+
+    /**
+     * Adds what determines the meta-data a repository serves. Avoids creating a resolver for the repository where its configuration is known,
+     * as a resolver is expensive to create.
+     */
+    private static void putRepository(Hasher hasher, ResolutionAwareRepository repository) {
+        putString(hasher, repository.getClass().getName());
+        if (repository instanceof MavenArtifactRepository) {
+            MavenArtifactRepository mavenRepository = (MavenArtifactRepository) repository;
+            putString(hasher, String.valueOf(mavenRepository.getUrl()));
+            hasher.putInt(mavenRepository.getArtifactUrls().size());
+            for (URI artifactUrl : mavenRepository.getArtifactUrls()) {
+                putString(hasher, artifactUrl.toString());
+            }
+        } else if (repository instanceof FlatDirectoryArtifactRepository) {
+            Set<File> dirs = ((FlatDirectoryArtifactRepository) repository).getDirs();
+            hasher.putInt(dirs.size());
+            for (File dir : dirs) {
+                putString(hasher, dir.getAbsolutePath());
+            }
+        } else {
+            putString(hasher, repository.createResolver().getId());
+        }
+    }
+
+    private static void putExcludeRules(Hasher hasher, Set<ExcludeRule> excludeRules) {
+        hasher.putInt(excludeRules.size());
+        for (ExcludeRule excludeRule : excludeRules) {
+            putString(hasher, excludeRule.getGroup());
+            putString(hasher, excludeRule.getModule());
+        }
+    }
+
+    private static void putAttributes(Hasher hasher, AttributeContainerInternal attributes) {
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (Attribute<?> attribute : attributes.keySet()) {
+            sorted.put(attribute.getName(), String.valueOf(attributes.getAttribute(attribute)));
+        }
+        hasher.putInt(sorted.size());
+        for (String name : sorted.keySet()) {
+            putString(hasher, name);
+            putString(hasher, sorted.get(name));
+        }
+    }
+
+    private static void putString(Hasher hasher, @Nullable String value) {
+        if (value == null) {
+            hasher.putBoolean(false);
+            return;
+        }
+        hasher.putBoolean(true);
+        hasher.putInt(value.length());
+        hasher.putString(value, Charsets.UTF_8);
+    }
+}
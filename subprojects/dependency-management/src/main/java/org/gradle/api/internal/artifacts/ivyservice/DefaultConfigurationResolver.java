@@ -17,26 +17,42 @@
 package org.gradle.api.internal.artifacts.ivyservice;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.ResolveException;
 import org.gradle.api.artifacts.UnresolvedDependency;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.artifacts.result.ResolutionResult;
 import org.gradle.api.artifacts.result.ResolvedComponentResult;
 import org.gradle.api.internal.artifacts.ArtifactDependencyResolver;
 import org.gradle.api.internal.artifacts.ConfigurationResolver;
+import org.gradle.api.internal.artifacts.DefaultResolverResults;
 import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.api.internal.artifacts.ResolverResults;
+import org.gradle.api.internal.artifacts.ShareResolvedGraphBuildOperationType;
 import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.ArtifactVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.BuildDependenciesOnlyVisitedArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.BuildDependenciesVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultResolvedArtifactsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DependencyArtifactsVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactsResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedFileDependencyResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ComponentResult;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.CompositeDependencyArtifactsVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.CompositeDependencyGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.DefaultResolvedConfigurationBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.DefaultTransientConfigurationResultsLoader;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolutionFailureCollector;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationDependencyGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedGraphResults;
@@ -44,24 +60,37 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.Tran
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.TransientConfigurationResultsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.TransientConfigurationResultsLoader;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedLocalComponentsResultGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DefaultComponentResult;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.FileDependencyCollectingGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.VersionSelectionReasons;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.RecordingBinaryStore;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ReplayBinaryStore;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolvedGraphCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.SharedResolvedGraphs;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
 import org.gradle.api.internal.artifacts.transform.ArtifactTransforms;
 import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry;
+import org.gradle.api.internal.attributes.AttributeContainerInternal;
 import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
 import org.gradle.api.internal.cache.BinaryStore;
 import org.gradle.api.internal.cache.Store;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.internal.Transformers;
 import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
 import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.util.CollectionUtils;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -82,6 +111,9 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final BuildOperationExecutor buildOperationExecutor;
     private final ArtifactTypeRegistry artifactTypeRegistry;
+    private final ResolvedGraphCache resolvedGraphCache;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final SharedResolvedGraphs sharedResolvedGraphs;
 
     public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, RepositoryHandler repositories,
                                         GlobalDependencyResolutionRules metadataHandler,
@@ -92,6 +124,26 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
                                         ImmutableModuleIdentifierFactory moduleIdentifierFactory,
                                         BuildOperationExecutor buildOperationExecutor,
                                         ArtifactTypeRegistry artifactTypeRegistry) {
+        this(resolver, repositories, metadataHandler, storeFactory, buildProjectDependencies, attributesSchema, artifactTransforms, moduleIdentifierFactory, buildOperationExecutor, artifactTypeRegistry, null, null, null);
+    }
+
+    /**
+     * Creates a resolver that serves the graph of a configuration from the given cache when its inputs did not change, or shares it with a configuration
+     * of another project with the same inputs, deferring resolution of the graph until its artifacts are requested. The version selector scheme is used to
+     * detect graphs that cannot be cached or shared.
+     */
+    public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, RepositoryHandler repositories,
+                                        GlobalDependencyResolutionRules metadataHandler,
+                                        ResolutionResultsStoreFactory storeFactory,
+                                        boolean buildProjectDependencies,
+                                        AttributesSchemaInternal attributesSchema,
+                                        ArtifactTransforms artifactTransforms,
+                                        ImmutableModuleIdentifierFactory moduleIdentifierFactory,
+                                        BuildOperationExecutor buildOperationExecutor,
+                                        ArtifactTypeRegistry artifactTypeRegistry,
+                                        @Nullable ResolvedGraphCache resolvedGraphCache,
+                                        @Nullable VersionSelectorScheme versionSelectorScheme,
+                                        @Nullable SharedResolvedGraphs sharedResolvedGraphs) {
         this.resolver = resolver;
         this.repositories = repositories;
         this.metadataHandler = metadataHandler;
@@ -102,6 +154,9 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.buildOperationExecutor = buildOperationExecutor;
         this.artifactTypeRegistry = artifactTypeRegistry;
+        this.resolvedGraphCache = resolvedGraphCache;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.sharedResolvedGraphs = sharedResolvedGraphs;
     }
 
     @Override
@@ -115,6 +170,87 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
 
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) {
         List<ResolutionAwareRepository> resolutionAwareRepositories = CollectionUtils.collect(repositories, Transformers.cast(ResolutionAwareRepository.class));
+        HashCode sharedFingerprint = null;
+        HashCode fingerprint = null;
+        if (resolvedGraphCache != null || sharedResolvedGraphs != null) {
+            sharedFingerprint = ConfigurationResolveFingerprinter.fingerprint(configuration, resolutionAwareRepositories, metadataHandler);
+        }
+        if (sharedFingerprint != null && resolvedGraphCache != null) {
+            fingerprint = ConfigurationResolveFingerprinter.withProjectIdentity(sharedFingerprint, configuration);
+            ResolvedGraphCache.CachedGraph cachedGraph = resolvedGraphCache.get(fingerprint);
+            if (cachedGraph != null) {
+                if (!cachedGraph.isArtifactsRequested()) {
+                    replayGraph(configuration, resolutionAwareRepositories, cachedGraph.getGraph(), fingerprint, results);
+                    return;
+                }
+                // The artifacts were needed before, and can only be resolved along with the graph, so resolve it now and keep it that way until the
+                // module meta-data changes, after which the graph is stored again
+                fingerprint = null;
+            }
+        }
+        HashCode shareKey = null;
+        if (sharedFingerprint != null && sharedResolvedGraphs != null) {
+            shareKey = ConfigurationResolveFingerprinter.withArtifactInputs(sharedFingerprint, configuration, artifactTypeRegistry);
+            if (shareGraph(configuration, resolutionAwareRepositories, shareKey, results)) {
+                return;
+            }
+        }
+        resolveGraph(configuration, resolutionAwareRepositories, shareKey, fingerprint, results);
+    }
+
+    /**
+     * Shares the graph and artifacts resolved for a configuration of another project, when there is one. The lookup runs as a build operation either way,
+     * so that the rate at which graphs are shared can be tracked.
+     */
+    private boolean shareGraph(final ConfigurationInternal configuration, final List<ResolutionAwareRepository> resolutionAwareRepositories, HashCode shareKey, final ResolverResults results) {
+        final ComponentResolveMetadata rootMetadata = configuration.toRootComponentMetaData();
+        final SharedResolvedGraphs.SharedGraph graph = sharedResolvedGraphs.get(shareKey, rootMetadata.getId().getModule());
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                if (graph != null) {
+                    replaySharedGraph(configuration, resolutionAwareRepositories, graph, rootMetadata, results);
+                }
+                context.setResult(ShareResolvedGraphBuildOperationType.RESULT);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                String configurationPath = configuration.getIdentityPath().toString();
+                String displayName = graph != null
+                    ? "Share resolved dependency graph of " + graph.getConfigurationPath() + " with " + configurationPath
+                    : "Look up shared dependency graph for " + configurationPath;
+                return BuildOperationDescriptor.displayName(displayName)
+                    .details(new ShareResolvedGraphBuildOperationType.DetailsImpl(configurationPath, graph != null ? graph.getConfigurationPath() : null, sharedResolvedGraphs.getHits(), sharedResolvedGraphs.getLookups()));
+            }
+        });
+        return graph != null;
+    }
+
+    private void replaySharedGraph(ConfigurationInternal configuration, List<ResolutionAwareRepository> resolutionAwareRepositories, SharedResolvedGraphs.SharedGraph graph,
+                                   ComponentResolveMetadata rootMetadata, ResolverResults results) {
+        StoreSet stores = storeFactory.createStoreSet();
+        ComponentResult root = new DefaultComponentResult(graph.getRootResultId(), rootMetadata.getId(), VersionSelectionReasons.ROOT, rootMetadata.getComponentId());
+        ResolutionResult resolutionResult = new StreamingResolutionResultBuilder(new ReplayBinaryStore(graph.getGraph()), stores.newModelCache(), moduleIdentifierFactory).complete(root);
+        // A shared graph has no failures and no project dependencies
+        Set<UnresolvedDependency> failures = Collections.emptySet();
+        results.graphResolved(resolutionResult, new ResolvedLocalComponentsResultGraphVisitor(), new BuildDependenciesOnlyVisitedArtifactSet(failures, graph.getArtifactsResults(), artifactTransforms));
+        // The artifacts do not depend on the dependency declarations, but the old model does, so it is only built when needed
+        TransientConfigurationResultsLoader transientConfigurationResultsLoader = new DeferredTransientConfigurationResultsLoader(new DeferredGraphResolution(configuration, resolutionAwareRepositories, null));
+        results.retainState(new ArtifactResolveState(failures, graph.getArtifactsResults(), graph.getFileDependencyResults(), transientConfigurationResultsLoader));
+    }
+
+    private void replayGraph(ConfigurationInternal configuration, List<ResolutionAwareRepository> resolutionAwareRepositories, byte[] graph, HashCode fingerprint, ResolverResults results) {
+        StoreSet stores = storeFactory.createStoreSet();
+        ResolutionResult resolutionResult = new StreamingResolutionResultBuilder(new ReplayBinaryStore(graph), stores.newModelCache(), moduleIdentifierFactory).complete(null);
+        DeferredGraphResolution deferredResolution = new DeferredGraphResolution(configuration, resolutionAwareRepositories, fingerprint);
+        // A replayed graph has no project dependencies
+        results.graphResolved(resolutionResult, new ResolvedLocalComponentsResultGraphVisitor(), deferredResolution);
+        results.retainState(deferredResolution);
+    }
+
+    private void resolveGraph(ConfigurationInternal configuration, List<ResolutionAwareRepository> resolutionAwareRepositories, @Nullable HashCode shareKey, @Nullable HashCode fingerprint,
+                              ResolverResults results) {
         StoreSet stores = storeFactory.createStoreSet();
 
         BinaryStore oldModelStore = stores.nextBinaryStore();
@@ -124,6 +260,15 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         ResolvedConfigurationDependencyGraphVisitor oldModelVisitor = new ResolvedConfigurationDependencyGraphVisitor(oldModelBuilder);
 
         BinaryStore newModelStore = stores.nextBinaryStore();
+        RecordingBinaryStore recordingStore = null;
+        CacheableGraphVisitor cacheableGraphVisitor = null;
+        // Read before resolving, so that a change to the module meta-data while resolving makes the graph stale
+        long metadataGeneration = fingerprint != null ? resolvedGraphCache.getMetadataGeneration() : 0;
+        if (shareKey != null || fingerprint != null) {
+            recordingStore = new RecordingBinaryStore(newModelStore);
+            newModelStore = recordingStore;
+            cacheableGraphVisitor = new CacheableGraphVisitor(versionSelectorScheme);
+        }
         Store<ResolvedComponentResult> newModelCache = stores.newModelCache();
         StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(newModelStore, newModelCache, moduleIdentifierFactory);
 
@@ -132,7 +277,7 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         DefaultResolvedArtifactsBuilder artifactsBuilder = new DefaultResolvedArtifactsBuilder(buildProjectDependencies, configuration.getResolutionStrategy().getSortOrder());
         FileDependencyCollectingGraphVisitor fileDependencyVisitor = new FileDependencyCollectingGraphVisitor();
         ResolutionFailureCollector failureCollector = new ResolutionFailureCollector();
-        DependencyGraphVisitor graphVisitor = new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector);
+        DependencyGraphVisitor graphVisitor = new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector, cacheableGraphVisitor == null ? DependencyGraphVisitor.NO_OP : cacheableGraphVisitor);
         DependencyArtifactsVisitor artifactsVisitor = new CompositeDependencyArtifactsVisitor(oldModelVisitor, fileDependencyVisitor, artifactsBuilder);
 
         resolver.resolve(configuration, resolutionAwareRepositories, metadataHandler, Specs.<DependencyMetadata>satisfyAll(), graphVisitor, artifactsVisitor, attributesSchema, artifactTypeRegistry);
@@ -143,35 +288,114 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
 
         Set<UnresolvedDependency> failures = failureCollector.complete();
         results.graphResolved(newModelBuilder.complete(), localComponentsVisitor, new BuildDependenciesOnlyVisitedArtifactSet(failures, artifactsResults, artifactTransforms));
+        if (recordingStore != null && failures.isEmpty() && cacheableGraphVisitor.isCacheable()) {
+            byte[] graph = recordingStore.getRecorded();
+            if (fingerprint != null) {
+                resolvedGraphCache.put(fingerprint, metadataGeneration, graph);
+            }
+            if (shareKey != null) {
+                sharedResolvedGraphs.put(shareKey, new SharedResolvedGraphs.SharedGraph(configuration.getIdentityPath().toString(), graph, cacheableGraphVisitor.getRootResultId(),
+                    cacheableGraphVisitor.getModules(), artifactsResults, fileDependencyResults));
+            }
+        }
 
-        results.retainState(new ArtifactResolveState(graphResults, artifactsResults, fileDependencyResults, failures, oldTransientModelBuilder));
+        results.retainState(new ArtifactResolveState(failures, artifactsResults, fileDependencyResults, new DefaultTransientConfigurationResultsLoader(oldTransientModelBuilder, graphResults)));
     }
 
     public void resolveArtifacts(ConfigurationInternal configuration, ResolverResults results) {
-        ArtifactResolveState resolveState = (ArtifactResolveState) results.getArtifactResolveState();
-        ResolvedGraphResults graphResults = resolveState.graphResults;
-        VisitedArtifactsResults artifactResults = resolveState.artifactsResults;
-        TransientConfigurationResultsBuilder transientConfigurationResultsBuilder = resolveState.transientConfigurationResultsBuilder;
-
-        TransientConfigurationResultsLoader transientConfigurationResultsFactory = new TransientConfigurationResultsLoader(transientConfigurationResultsBuilder, graphResults);
-
-        DefaultLenientConfiguration result = new DefaultLenientConfiguration(configuration, resolveState.failures, artifactResults, resolveState.fileDependencyResults, transientConfigurationResultsFactory, artifactTransforms, buildOperationExecutor);
+        Object state = results.getArtifactResolveState();
+        if (state instanceof DeferredGraphResolution) {
+            state = ((DeferredGraphResolution) state).getResults().getArtifactResolveState();
+        }
+        ArtifactResolveState resolveState = (ArtifactResolveState) state;
+        DefaultLenientConfiguration result = new DefaultLenientConfiguration(configuration, resolveState.failures, resolveState.artifactsResults, resolveState.fileDependencyResults, resolveState.transientConfigurationResultsLoader, artifactTransforms, buildOperationExecutor);
         results.artifactsResolved(new DefaultResolvedConfiguration(result), result);
     }
 
     private static class ArtifactResolveState {
-        final ResolvedGraphResults graphResults;
+        final Set<UnresolvedDependency> failures;
         final VisitedArtifactsResults artifactsResults;
         final VisitedFileDependencyResults fileDependencyResults;
-        final Set<UnresolvedDependency> failures;
-        final TransientConfigurationResultsBuilder transientConfigurationResultsBuilder;
+        final TransientConfigurationResultsLoader transientConfigurationResultsLoader;
 
-        ArtifactResolveState(ResolvedGraphResults graphResults, VisitedArtifactsResults artifactsResults, VisitedFileDependencyResults fileDependencyResults, Set<UnresolvedDependency> failures, TransientConfigurationResultsBuilder transientConfigurationResultsBuilder) {
-            this.graphResults = graphResults;
+        ArtifactResolveState(Set<UnresolvedDependency> failures, VisitedArtifactsResults artifactsResults, VisitedFileDependencyResults fileDependencyResults, TransientConfigurationResultsLoader transientConfigurationResultsLoader) {
+            this.failures = failures;
             this.artifactsResults = artifactsResults;
             this.fileDependencyResults = fileDependencyResults;
-            this.failures = failures;
-            this.transientConfigurationResultsBuilder = transientConfigurationResultsBuilder;
+            this.transientConfigurationResultsLoader = transientConfigurationResultsLoader;
+        }
+    }
+
+    /**
+     * Loads the old model of a configuration whose graph and artifacts were shared with another configuration. The old model refers to the dependencies
+     * declared by the configuration, so the graph of the configuration is resolved again the first time it is needed, and the old model loaded from
+     * that resolution, along with its own artifacts.
+     */
+    private class DeferredTransientConfigurationResultsLoader implements TransientConfigurationResultsLoader {
+        private final DeferredGraphResolution deferredResolution;
+
+        DeferredTransientConfigurationResultsLoader(DeferredGraphResolution deferredResolution) {
+            this.deferredResolution = deferredResolution;
+        }
+
+        @Override
+        public TransientConfigurationResults create(SelectedArtifactResults artifactResults) {
+            ArtifactResolveState resolveState = (ArtifactResolveState) deferredResolution.getResults().getArtifactResolveState();
+            ImmutableAttributes attributes = deferredResolution.configuration.getAttributes().asImmutable();
+            // Select the artifacts of the resolved graph in the same way as the shared artifacts were selected
+            SelectedArtifactResults ownArtifactResults = resolveState.artifactsResults.select(Specs.<ComponentIdentifier>satisfyAll(), artifactTransforms.variantSelector(attributes, false));
+            return resolveState.transientConfigurationResultsLoader.create(ownArtifactResults);
+        }
+    }
+
+    /**
+     * Resolves the graph of a configuration whose resolution result was served from the cache or shared, the first time its artifacts or old model are needed.
+     * The cache is told about it, so that the graph is resolved up front in later builds rather than twice, for as long as the module meta-data does not change.
+     *
+     * The build dependencies of the configuration are known without resolving the graph, as a graph that can be cached only contains module components.
+     */
+    private class DeferredGraphResolution implements VisitedArtifactSet {
+        private final ConfigurationInternal configuration;
+        private final List<ResolutionAwareRepository> repositories;
+        private final HashCode fingerprint;
+        private ResolverResults results;
+
+        DeferredGraphResolution(ConfigurationInternal configuration, List<ResolutionAwareRepository> repositories, @Nullable HashCode fingerprint) {
+            this.configuration = configuration;
+            this.repositories = repositories;
+            this.fingerprint = fingerprint;
+        }
+
+        synchronized ResolverResults getResults() {
+            if (results == null) {
+                if (fingerprint != null) {
+                    resolvedGraphCache.artifactsRequested(fingerprint);
+                }
+                DefaultResolverResults resolverResults = new DefaultResolverResults();
+                try {
+                    resolveGraph(configuration, repositories, null, null, resolverResults);
+                } catch (ResolveException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ResolveException(configuration.getDisplayName(), e);
+                }
+                results = resolverResults;
+            }
+            return results;
+        }
+
+        @Override
+        public SelectedArtifactSet select(Spec<? super Dependency> dependencySpec, AttributeContainerInternal requestedAttributes, Spec<? super ComponentIdentifier> componentSpec, boolean allowNoMatchingVariant) {
+            return new SelectedArtifactSet() {
+                @Override
+                public void collectBuildDependencies(BuildDependenciesVisitor visitor) {
+                }
+
+                @Override
+                public void visitArtifacts(ArtifactVisitor visitor, boolean continueOnSelectionFailure) {
+                    throw new UnsupportedOperationException("Artifacts have not been resolved.");
+                }
+            };
         }
     }
 }
@@ -16,39 +16,60 @@
 
 package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.SAXParser;
 import java.io.*;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Parses a POM into a tree of {@link PomElement}s, which only contains the elements that are used to build the meta-data of a module.
+ *
+ * The POM is streamed through a SAX parser, and the elements that are not needed, such as the build, reporting and developer sections, are skipped
+ * rather than being built into a full DOM first.
+ */
 public final class PomDomParser {
-    private PomDomParser() {}
+    private static final Set<String> PROJECT_CHILDREN = ImmutableSet.of("groupId", "artifactId", "version", "packaging", "description", "parent",
+        "distributionManagement", "properties", "dependencies", "dependencyManagement", "profiles");
 
-    public static String getTextContent(Element element) {
-        StringBuilder result = new StringBuilder();
+    /**
+     * The children to keep of the elements whose children are not all needed. All children are kept for the other elements.
+     */
+    private static final Map<String, Set<String>> RETAINED_CHILDREN = ImmutableMap.<String, Set<String>>of(
+        "distributionManagement", ImmutableSet.of("relocation"),
+        "dependencyManagement", ImmutableSet.of("dependencies"),
+        "profiles", ImmutableSet.of("profile"),
+        "profile", ImmutableSet.of("id", "activation", "properties", "dependencies", "dependencyManagement"));
 
-        NodeList childNodes = element.getChildNodes();
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node child = childNodes.item(i);
+    private PomDomParser() {}
 
-            switch (child.getNodeType()) {
-                case Node.CDATA_SECTION_NODE:
-                case Node.TEXT_NODE:
-                    result.append(child.getNodeValue());
-                    break;
-                default:
-                    break;
-            }
-        }
+    /**
+     * Parses the given POM. The root element is always kept, whatever its name.
+     */
+    public static PomElement parse(SAXParser parser, InputStream stream, String systemId, EntityResolver entityResolver) throws IOException, SAXException {
+        InputSource source = new InputSource(stream);
+        source.setSystemId(systemId);
+        PomElementBuilder builder = new PomElementBuilder(entityResolver);
+        parser.parse(source, builder);
+        return builder.root;
+    }
 
-        return result.toString();
+    public static String getTextContent(PomElement element) {
+        return element.text;
     }
 
-    public static String getFirstChildText(Element parentElem, String name) {
-        Element node = getFirstChildElement(parentElem, name);
+    public static String getFirstChildText(PomElement parentElem, String name) {
+        PomElement node = getFirstChildElement(parentElem, name);
         if (node != null) {
             return getTextContent(node);
         } else {
@@ -56,32 +77,113 @@ public final class PomDomParser {
         }
     }
 
-    public static Element getFirstChildElement(Element parentElem, String name) {
+    public static PomElement getFirstChildElement(PomElement parentElem, String name) {
         if (parentElem == null) {
             return null;
         }
-        NodeList childs = parentElem.getChildNodes();
-        for (int i = 0; i < childs.getLength(); i++) {
-            Node node = childs.item(i);
-            if (node instanceof Element && name.equals(node.getNodeName())) {
-                return (Element) node;
+        for (PomElement child : parentElem.children) {
+            if (name.equals(child.name)) {
+                return child;
             }
         }
         return null;
     }
 
-    public static List<Element> getAllChilds(Element parent) {
-        List<Element> r = new LinkedList<Element>();
-        if (parent != null) {
-            NodeList childs = parent.getChildNodes();
-            for (int i = 0; i < childs.getLength(); i++) {
-                Node node = childs.item(i);
-                if (node instanceof Element) {
-                    r.add((Element) node);
+    public static List<PomElement> getAllChilds(PomElement parent) {
+        if (parent == null) {
+            return Collections.emptyList();
+        }
+        return parent.children;
+    }
+
+    /**
+     * An element of a POM, with its text content and child elements.
+     */
+    public static final class PomElement {
+        private final String name;
+        private String text = "";
+        private List<PomElement> children = Collections.emptyList();
+
+        private PomElement(String name) {
+            this.name = name;
+        }
+
+        public String getNodeName() {
+            return name;
+        }
+
+        private void addChild(PomElement child) {
+            if (children.isEmpty()) {
+                children = new ArrayList<PomElement>(4);
+            }
+            children.add(child);
+        }
+    }
+
+    private static class PomElementBuilder extends DefaultHandler {
+        private final EntityResolver entityResolver;
+        private final List<PomElement> elements = new ArrayList<PomElement>();
+        private final List<StringBuilder> texts = new ArrayList<StringBuilder>();
+        private PomElement root;
+        private int skipDepth;
+
+        PomElementBuilder(EntityResolver entityResolver) {
+            this.entityResolver = entityResolver;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) throws IOException, SAXException {
+            return entityResolver.resolveEntity(publicId, systemId);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (skipDepth > 0) {
+                skipDepth++;
+                return;
+            }
+            PomElement element = new PomElement(qName);
+            if (root == null) {
+                root = element;
+            } else {
+                PomElement parent = elements.get(elements.size() - 1);
+                Set<String> retained = parent == root ? PROJECT_CHILDREN : RETAINED_CHILDREN.get(parent.name);
+                if (retained != null && !retained.contains(qName)) {
+                    skipDepth = 1;
+                    return;
                 }
+                parent.addChild(element);
+            }
+            elements.add(element);
+            texts.add(null);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (skipDepth > 0 || elements.isEmpty()) {
+                return;
+            }
+            int current = texts.size() - 1;
+            StringBuilder text = texts.get(current);
+            if (text == null) {
+                text = new StringBuilder(length);
+                texts.set(current, text);
+            }
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            PomElement element = elements.remove(elements.size() - 1);
+            StringBuilder text = texts.remove(texts.size() - 1);
+            if (text != null) {
+                element.text = text.toString();
             }
         }
-        return r;
     }
 
     public static final class AddDTDFilterInputStream extends FilterInputStream {
@@ -31,6 +31,7 @@ import org.gradle.internal.hash.HashValue;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.util.BuildCommencedTimeProvider;
@@ -39,12 +40,14 @@ import org.slf4j.LoggerFactory;
 
 public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultModuleMetaDataCache.class);
+    private static final String GENERATION_KEY = "generation";
 
     private final BuildCommencedTimeProvider timeProvider;
     private final CacheLockingManager cacheLockingManager;
 
     private final ModuleMetadataStore moduleMetadataStore;
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache;
+    private PersistentIndexedCache<String, Long> generationCache;
 
     public DefaultModuleMetaDataCache(BuildCommencedTimeProvider timeProvider, CacheLockingManager cacheLockingManager, ArtifactCacheMetaData artifactCacheMetaData, ImmutableModuleIdentifierFactory moduleIdentifierFactory, ModuleExclusions moduleExclusions) {
         this.timeProvider = timeProvider;
@@ -64,6 +67,36 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
         return cacheLockingManager.createCache("module-metadata", new RevisionKeySerializer(), new ModuleMetadataCacheEntrySerializer());
     }
 
+    private synchronized PersistentIndexedCache<String, Long> getGenerationCache() {
+        if (generationCache == null) {
+            generationCache = cacheLockingManager.createCache("module-metadata-generation", BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.LONG_SERIALIZER);
+        }
+        return generationCache;
+    }
+
+    @Override
+    public long getGeneration() {
+        final PersistentIndexedCache<String, Long> generationCache = getGenerationCache();
+        return cacheLockingManager.useCache(new Factory<Long>() {
+            @Override
+            public Long create() {
+                Long generation = generationCache.get(GENERATION_KEY);
+                return generation == null ? 0L : generation;
+            }
+        });
+    }
+
+    private void nextGeneration() {
+        final PersistentIndexedCache<String, Long> generationCache = getGenerationCache();
+        cacheLockingManager.useCache(new Runnable() {
+            @Override
+            public void run() {
+                Long generation = generationCache.get(GENERATION_KEY);
+                generationCache.put(GENERATION_KEY, generation == null ? 1L : generation + 1);
+            }
+        });
+    }
+
     public CachedMetaData getCachedModuleDescriptor(ModuleComponentRepository repository, ModuleComponentIdentifier componentId) {
         final ModuleComponentAtRepositoryKey key = createKey(repository, componentId);
         final PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache = getCache();
@@ -81,6 +114,7 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
                 if (metadata == null) {
                     // Descriptor file has been deleted - ignore the entry
                     cache.remove(key);
+                    nextGeneration();
                     return null;
                 }
                 return new DefaultCachedMetaData(entry, entry.configure(metadata), timeProvider);
@@ -92,6 +126,7 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
         LOGGER.debug("Recording absence of module descriptor in cache: {} [changing = {}]", id, false);
         ModuleMetadataCacheEntry entry = ModuleMetadataCacheEntry.forMissingModule(timeProvider.getCurrentTime());
         getCache().put(createKey(repository, id), entry);
+        nextGeneration();
         return new DefaultCachedMetaData(entry, null, timeProvider);
     }
 
@@ -104,6 +139,7 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
                 LocallyAvailableResource resource = moduleMetadataStore.putModuleDescriptor(key, metadata);
                 ModuleMetadataCacheEntry entry = createEntry(metadata, resource.getSha1());
                 getCache().put(key, entry);
+                nextGeneration();
                 return new DefaultCachedMetaData(entry, null, timeProvider);
             }
         });
@@ -30,6 +30,11 @@ public interface ModuleMetaDataCache {
 
     CachedMetaData getCachedModuleDescriptor(ModuleComponentRepository repository, ModuleComponentIdentifier id);
 
+    /**
+     * Returns a number that changes whenever an entry of this cache is added, replaced or removed, by this process or another one.
+     */
+    long getGeneration();
+
     interface CachedMetaData {
         ResolvedModuleVersion getModuleVersion();
 
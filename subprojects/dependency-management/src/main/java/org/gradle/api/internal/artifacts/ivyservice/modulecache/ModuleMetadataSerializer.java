@@ -51,14 +51,25 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Serializes the meta-data of a module for the module meta-data cache.
+ *
+ * Each string is written once per module, the first time it is used, and is referred to by its index in the strings written so far afterwards. The
+ * coordinates, configuration names, scopes and artifact types of a module are mostly the same few strings, so this makes the cached meta-data smaller and
+ * faster to read, and the meta-data read shares the instances of these strings.
+ */
 public class ModuleMetadataSerializer {
     private static final byte TYPE_IVY = 1;
     private static final byte TYPE_MAVEN = 2;
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+    private static final int STRING_INDEX_OFFSET = 2;
 
     public MutableModuleComponentResolveMetadata read(Decoder decoder, ImmutableModuleIdentifierFactory moduleIdentifierFactory, ModuleExclusions moduleExclusions) throws IOException {
         return new Reader(decoder, moduleIdentifierFactory).read();
@@ -70,6 +81,7 @@ public class ModuleMetadataSerializer {
 
     private static class Writer {
         private final Encoder encoder;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
 
         private Writer(Encoder encoder) {
             this.encoder = encoder;
@@ -230,11 +242,25 @@ public class ModuleMetadataSerializer {
         }
 
         private void writeString(String str) throws IOException {
-            encoder.writeString(str);
+            if (str == null) {
+                throw new IllegalArgumentException("Cannot encode a null string.");
+            }
+            writeNullableString(str);
         }
 
         private void writeNullableString(String str) throws IOException {
-            encoder.writeNullableString(str);
+            if (str == null) {
+                encoder.writeSmallInt(NULL_STRING);
+                return;
+            }
+            Integer index = strings.get(str);
+            if (index != null) {
+                encoder.writeSmallInt(index + STRING_INDEX_OFFSET);
+                return;
+            }
+            strings.put(str, strings.size());
+            encoder.writeSmallInt(NEW_STRING);
+            encoder.writeString(str);
         }
 
         private void writeBoolean(boolean b) throws IOException {
@@ -278,6 +304,7 @@ public class ModuleMetadataSerializer {
     private static class Reader {
         private final Decoder decoder;
         private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+        private final List<String> strings = new ArrayList<String>();
         private MutableModuleDescriptorState md;
         private ModuleComponentIdentifier id;
         private ModuleVersionIdentifier mvi;
@@ -468,11 +495,25 @@ public class ModuleMetadataSerializer {
         }
 
         private String readString() throws IOException {
-            return decoder.readString();
+            String str = readNullableString();
+            if (str == null) {
+                throw new IllegalStateException("Unexpected null string found.");
+            }
+            return str;
         }
 
         private String readNullableString() throws IOException {
-            return decoder.readNullableString();
+            int code = decoder.readSmallInt();
+            switch (code) {
+                case NULL_STRING:
+                    return null;
+                case NEW_STRING:
+                    String str = decoder.readString();
+                    strings.add(str);
+                    return str;
+                default:
+                    return strings.get(code - STRING_INDEX_OFFSET);
+            }
         }
 
         private boolean readBoolean() throws IOException {
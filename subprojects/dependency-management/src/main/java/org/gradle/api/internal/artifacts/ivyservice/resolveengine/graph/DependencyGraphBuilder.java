@@ -19,6 +19,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.artifacts.ModuleDependency;
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
@@ -118,7 +119,17 @@ public class DependencyGraphBuilder {
         final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, metaDataResolver, edgeFilter, attributesSchema, moduleIdentifierFactory, moduleExclusions);
         conflictHandler.registerResolver(new DirectDependencyForcingResolver(resolveState.root.component));
 
-        traverseGraph(resolveState);
+        if (SpeculativeMetadataFetcher.isEnabled()) {
+            final SpeculativeMetadataFetcher fetcher = new SpeculativeMetadataFetcher(metaDataResolver, edgeFilter, attributesSchema);
+            fetcher.fetchWhile(buildOperationExecutor, new Runnable() {
+                @Override
+                public void run() {
+                    traverseGraph(resolveState, fetcher);
+                }
+            });
+        } else {
+            traverseGraph(resolveState, null);
+        }
 
         resolveState.root.component.setSelectionReason(VersionSelectionReasons.ROOT);
 
@@ -128,8 +139,10 @@ public class DependencyGraphBuilder {
 
     /**
      * Traverses the dependency graph, resolving conflicts and building the paths from the root configuration.
+     *
+     * @param fetcher fetches meta-data ahead of the traversal, or null to only fetch the meta-data for the outgoing edges of the node being visited concurrently
      */
-    private void traverseGraph(final ResolveState resolveState) {
+    private void traverseGraph(final ResolveState resolveState, @Nullable SpeculativeMetadataFetcher fetcher) {
         resolveState.onMoreSelected(resolveState.root);
         final List<EdgeState> dependencies = Lists.newArrayList();
         final List<EdgeState> dependenciesMissingLocalMetadata = Lists.newArrayList();
@@ -145,7 +158,7 @@ public class DependencyGraphBuilder {
                 dependenciesMissingLocalMetadata.clear();
                 node.visitOutgoingDependencies(dependencies);
 
-                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache);
+                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache, fetcher);
 
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
@@ -203,13 +216,18 @@ public class DependencyGraphBuilder {
                               final List<EdgeState> dependencies,
                               final List<EdgeState> dependenciesMissingMetadataLocally,
                               final ResolveState resolveState,
-                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache,
+                              @Nullable SpeculativeMetadataFetcher fetcher) {
         if (dependencies.isEmpty()) {
             return;
         }
         performSelectionSerially(dependencies, resolveState);
-        computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
-        downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
+        if (fetcher != null) {
+            fetchMetadataAhead(node, dependencies, fetcher, componentIdentifierCache);
+        } else {
+            computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
+            downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
+        }
         attachToTargetRevisionsSerially(dependencies);
 
     }
@@ -240,6 +258,24 @@ public class DependencyGraphBuilder {
         });
     }
 
+    private void fetchMetadataAhead(NodeState node, List<EdgeState> dependencies, SpeculativeMetadataFetcher fetcher, Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+        List<ComponentIdentifier> fetched = Lists.newArrayList();
+        for (EdgeState dependency : dependencies) {
+            ComponentState state = dependency.targetModuleRevision;
+            if (state != null && !state.fastResolve() && performPreemptiveDownload(state.state)) {
+                ComponentIdentifier componentId = toComponentId(state.getId(), componentIdentifierCache);
+                if (!metaDataResolver.isFetchingMetadataCheap(componentId)) {
+                    fetcher.fetch(componentId, dependency.dependencyMetadata, node.component.metaData, node.metaData);
+                    fetched.add(componentId);
+                }
+            }
+        }
+        // Wait for the fetches to complete, so that attaching the edges finds the meta-data in memory rather than fetching it again
+        for (ComponentIdentifier componentId : fetched) {
+            fetcher.await(componentId);
+        }
+    }
+
     private void performSelectionSerially(List<EdgeState> dependencies, ResolveState resolveState) {
         for (EdgeState dependency : dependencies) {
             ComponentState moduleRevision = dependency.resolveModuleRevisionId();
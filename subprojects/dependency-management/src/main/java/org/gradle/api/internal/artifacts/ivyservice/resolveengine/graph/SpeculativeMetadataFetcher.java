@@ -0,0 +1,276 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionRangeSelector;
+import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.specs.Spec;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fetches the meta-data of the components that the graph traversal is likely to reach ahead of the traversal, so that meta-data requests are kept outstanding
+ * across the whole graph instead of only for the outgoing edges of the node being visited.
+ *
+ * The fetcher does not change the graph. It resolves meta-data with the same resolver as the traversal, which keeps resolved meta-data in memory for the build,
+ * and the traversal picks the meta-data up when it reaches the component, so the result is the same as without the fetcher. Starting from the target of an edge,
+ * the fetcher follows the dependencies of the configurations that the edge would select, for every version it reaches, as it cannot know which versions will win
+ * conflict resolution. Dependencies on a dynamic version or on something other than a module are not followed, as resolving them needs the substitution rules
+ * and version listings that only the traversal applies.
+ *
+ * Fetches that the traversal waits for are run before speculative ones. A fetch that no worker has started yet is run by the traversal itself.
+ *
+ * Enabled with the {@value #PROPERTY} system property.
+ */
+class SpeculativeMetadataFetcher {
+    public static final String PROPERTY = "org.gradle.internal.resolve.speculative";
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpeculativeMetadataFetcher.class);
+
+    private enum State {
+        Queued, Running, Done
+    }
+
+    private final ComponentMetaDataResolver resolver;
+    private final Spec<? super DependencyMetadata> edgeFilter;
+    private final AttributesSchemaInternal attributesSchema;
+
+    // Lock protects the following state
+    private final Object lock = new Object();
+    private final Map<ComponentIdentifier, Fetch> fetches = new HashMap<ComponentIdentifier, Fetch>();
+    private final LinkedList<Fetch> awaited = new LinkedList<Fetch>();
+    private final LinkedList<Fetch> speculative = new LinkedList<Fetch>();
+    private BuildOperationQueue<RunnableBuildOperation> queue;
+    private boolean stopped;
+
+    SpeculativeMetadataFetcher(ComponentMetaDataResolver resolver, Spec<? super DependencyMetadata> edgeFilter, AttributesSchemaInternal attributesSchema) {
+        this.resolver = resolver;
+        this.edgeFilter = edgeFilter;
+        this.attributesSchema = attributesSchema;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Runs the given traversal, fetching meta-data on the build operation workers while it runs. Fetches that are not started when the traversal completes are discarded.
+     */
+    public void fetchWhile(BuildOperationExecutor buildOperationExecutor, final Runnable traversal) {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+            @Override
+            public void execute(BuildOperationQueue<RunnableBuildOperation> buildOperationQueue) {
+                synchronized (lock) {
+                    queue = buildOperationQueue;
+                }
+                try {
+                    traversal.run();
+                } catch (Throwable t) {
+                    // Rethrown as is below, rather than as a failure to populate the queue
+                    failure.set(t);
+                } finally {
+                    synchronized (lock) {
+                        stopped = true;
+                        awaited.clear();
+                        speculative.clear();
+                    }
+                    buildOperationQueue.cancel();
+                }
+            }
+        });
+        if (failure.get() != null) {
+            throw UncheckedException.throwAsUncheckedException(failure.get());
+        }
+    }
+
+    /**
+     * Fetches the meta-data of the target of the given edge, ahead of the traversal waiting for it.
+     */
+    public void fetch(ComponentIdentifier id, DependencyMetadata dependency, ComponentResolveMetadata fromComponent, ConfigurationMetadata fromConfiguration) {
+        enqueue(new Fetch(id, dependency, fromComponent, fromConfiguration), true);
+    }
+
+    /**
+     * Waits for the meta-data of the given component to be fetched, if a fetch was queued for it. Runs the fetch when it has not been started yet.
+     */
+    public void await(ComponentIdentifier id) {
+        Fetch fetch;
+        synchronized (lock) {
+            fetch = fetches.get(id);
+            if (fetch == null) {
+                return;
+            }
+            while (fetch.state == State.Running) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+            if (fetch.state != State.Queued) {
+                return;
+            }
+            fetch.state = State.Running;
+        }
+        run(fetch);
+    }
+
+    private void enqueue(Fetch fetch, boolean awaitedByTraversal) {
+        BuildOperationQueue<RunnableBuildOperation> queue;
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            Fetch existing = fetches.get(fetch.id);
+            if (existing != null) {
+                if (awaitedByTraversal && existing.state == State.Queued && speculative.remove(existing)) {
+                    awaited.add(existing);
+                }
+                return;
+            }
+            fetches.put(fetch.id, fetch);
+            if (awaitedByTraversal) {
+                awaited.add(fetch);
+            } else {
+                speculative.add(fetch);
+            }
+            queue = this.queue;
+        }
+        // Each operation runs the most urgent queued fetch, which is not necessarily this one
+        queue.add(new FetchOperation());
+    }
+
+    private Fetch takeNext() {
+        synchronized (lock) {
+            Fetch next = awaited.poll();
+            if (next == null) {
+                next = speculative.poll();
+            }
+            if (next != null) {
+                next.state = State.Running;
+            }
+            return next;
+        }
+    }
+
+    private void run(Fetch fetch) {
+        ComponentResolveMetadata metadata = null;
+        try {
+            DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+            resolver.resolve(fetch.id, DefaultComponentOverrideMetadata.forDependency(fetch.dependency), result);
+            if (result.getFailure() == null) {
+                metadata = result.getMetaData();
+            }
+        } catch (Throwable t) {
+            // The traversal resolves the component again, and reports the failure
+            LOGGER.debug("Could not fetch meta-data for {} ahead of traversal.", fetch.id, t);
+        } finally {
+            synchronized (lock) {
+                fetch.state = State.Done;
+                lock.notifyAll();
+            }
+        }
+        if (metadata != null) {
+            try {
+                fetchDependencies(fetch, metadata);
+            } catch (Throwable t) {
+                LOGGER.debug("Could not select the dependencies of {} to fetch ahead of traversal.", fetch.id, t);
+            }
+        }
+    }
+
+    private void fetchDependencies(Fetch fetch, ComponentResolveMetadata target) {
+        if (!fetch.dependency.isTransitive()) {
+            return;
+        }
+        for (ConfigurationMetadata configuration : fetch.dependency.selectConfigurations(fetch.fromComponent, fetch.fromConfiguration, target, attributesSchema)) {
+            if (!configuration.isTransitive()) {
+                continue;
+            }
+            for (DependencyMetadata dependency : configuration.getDependencies()) {
+                ComponentIdentifier id = toStaticModuleComponentId(dependency.getSelector());
+                if (id != null && edgeFilter.isSatisfiedBy(dependency)) {
+                    enqueue(new Fetch(id, dependency, target, configuration), false);
+                }
+            }
+        }
+    }
+
+    private static ComponentIdentifier toStaticModuleComponentId(ComponentSelector selector) {
+        if (!(selector instanceof ModuleComponentSelector)) {
+            return null;
+        }
+        ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+        String version = moduleSelector.getVersion();
+        if (version == null || version.endsWith("+") || version.startsWith("latest.") || VersionRangeSelector.ALL_RANGE.matcher(version).matches()) {
+            return null;
+        }
+        return DefaultModuleComponentIdentifier.newId(moduleSelector.getGroup(), moduleSelector.getModule(), version);
+    }
+
+    private static class Fetch {
+        final ComponentIdentifier id;
+        final DependencyMetadata dependency;
+        final ComponentResolveMetadata fromComponent;
+        final ConfigurationMetadata fromConfiguration;
+        State state = State.Queued;
+
+        Fetch(ComponentIdentifier id, DependencyMetadata dependency, ComponentResolveMetadata fromComponent, ConfigurationMetadata fromConfiguration) {
+            this.id = id;
+            this.dependency = dependency;
+            this.fromComponent = fromComponent;
+            this.fromConfiguration = fromConfiguration;
+        }
+    }
+
+    private class FetchOperation implements RunnableBuildOperation {
+        @Override
+        public void run(BuildOperationContext context) {
+            Fetch fetch = takeNext();
+            if (fetch != null) {
+                SpeculativeMetadataFetcher.this.run(fetch);
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Fetch meta-data ahead of dependency graph traversal");
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.artifacts.component.ComponentSelector;
 import org.gradle.api.artifacts.result.ResolutionResult;
 import org.gradle.api.artifacts.result.ResolvedComponentResult;
@@ -70,8 +71,15 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
     }
 
     public ResolutionResult complete() {
+        return complete(null);
+    }
+
+    /**
+     * Completes the result, replacing the component of the root with the given component when not null. The replacement must have the same result id as the root it replaces.
+     */
+    public ResolutionResult complete(@Nullable ComponentResult root) {
         BinaryStore.BinaryData data = store.done();
-        RootFactory rootSource = new RootFactory(data, failures, cache, componentSelectorSerializer, dependencyResultSerializer, componentResultSerializer);
+        RootFactory rootSource = new RootFactory(data, failures, cache, componentSelectorSerializer, dependencyResultSerializer, componentResultSerializer, root);
         return new DefaultResolutionResult(rootSource);
     }
 
@@ -148,14 +156,16 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
         private final Object lock = new Object();
         private final ComponentSelectorSerializer componentSelectorSerializer;
         private final DependencyResultSerializer dependencyResultSerializer;
+        private final ComponentResult root;
 
-        RootFactory(BinaryStore.BinaryData data, Map<ComponentSelector, ModuleVersionResolveException> failures, Store<ResolvedComponentResult> cache, ComponentSelectorSerializer componentSelectorSerializer, DependencyResultSerializer dependencyResultSerializer, ComponentResultSerializer componentResultSerializer) {
+        RootFactory(BinaryStore.BinaryData data, Map<ComponentSelector, ModuleVersionResolveException> failures, Store<ResolvedComponentResult> cache, ComponentSelectorSerializer componentSelectorSerializer, DependencyResultSerializer dependencyResultSerializer, ComponentResultSerializer componentResultSerializer, @Nullable ComponentResult root) {
             this.data = data;
             this.failures = failures;
             this.cache = cache;
             this.componentResultSerializer = componentResultSerializer;
             this.componentSelectorSerializer = componentSelectorSerializer;
             this.dependencyResultSerializer = dependencyResultSerializer;
+            this.root = root;
         }
 
         public ResolvedComponentResult create() {
@@ -199,6 +209,9 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
                             return root;
                         case COMPONENT:
                             ComponentResult component = componentResultSerializer.read(decoder);
+                            if (root != null && root.getResultId().equals(component.getResultId())) {
+                                component = root;
+                            }
                             builder.visitComponent(component);
                             break;
                         case SELECTOR:
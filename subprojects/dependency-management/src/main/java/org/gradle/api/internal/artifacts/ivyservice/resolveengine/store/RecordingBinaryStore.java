@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.internal.cache.BinaryStore;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link BinaryStore} that also keeps a copy of what is written to it in memory, so that it can be replayed by a {@link ReplayBinaryStore} later.
+ */
+public class RecordingBinaryStore implements BinaryStore {
+    private final BinaryStore delegate;
+    private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+    private final KryoBackedEncoder encoder = new KryoBackedEncoder(recorded);
+
+    public RecordingBinaryStore(BinaryStore delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(WriteAction write) {
+        delegate.write(write);
+        try {
+            write.write(encoder);
+        } catch (Exception e) {
+            throw new RuntimeException("Problems recording the data written to " + delegate, e);
+        }
+    }
+
+    @Override
+    public BinaryData done() {
+        encoder.flush();
+        return delegate.done();
+    }
+
+    /**
+     * Returns what was written to this store, once it is done.
+     */
+    public byte[] getRecorded() {
+        return recorded.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "Recording " + delegate;
+    }
+}
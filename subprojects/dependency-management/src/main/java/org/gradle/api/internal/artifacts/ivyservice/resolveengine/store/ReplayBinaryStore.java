@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.internal.cache.BinaryStore;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A read-only {@link BinaryStore} over data recorded by a {@link RecordingBinaryStore}.
+ */
+public class ReplayBinaryStore implements BinaryStore {
+    private final byte[] data;
+
+    public ReplayBinaryStore(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public void write(WriteAction write) {
+        throw new UnsupportedOperationException("Cannot write to " + this);
+    }
+
+    @Override
+    public BinaryData done() {
+        return new ReplayBinaryData();
+    }
+
+    @Override
+    public String toString() {
+        return "Replayed binary store (" + data.length + " bytes)";
+    }
+
+    private class ReplayBinaryData implements BinaryData {
+        private Decoder decoder;
+
+        @Override
+        public <T> T read(ReadAction<T> readAction) {
+            if (decoder == null) {
+                decoder = new KryoBackedDecoder(new ByteArrayInputStream(data));
+            }
+            try {
+                return readAction.read(decoder);
+            } catch (Exception e) {
+                throw new RuntimeException("Problems reading data from " + ReplayBinaryStore.this, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            decoder = null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetaDataCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+/**
+ * Keeps the serialized resolution result of a dependency graph across builds, keyed by a fingerprint of everything that went into resolving the graph.
+ *
+ * The cache does not know what goes into the fingerprint: it is up to the caller to only store graphs that resolve the same way for as long as their inputs
+ * and the module meta-data they were resolved from do not change. A graph is no longer served once the module meta-data cache has changed since the graph
+ * was resolved.
+ *
+ * A graph is only worth serving when the artifacts of the configuration are not needed, as the artifacts can only be resolved together with the graph.
+ * The cache remembers the configurations whose artifacts were requested, so that these are resolved up front in later builds. This is forgotten along
+ * with the graphs once the module meta-data cache changes, so that the graph of such a configuration is stored and served again.
+ *
+ * Enabled with the {@value #PROPERTY} system property.
+ */
+public class ResolvedGraphCache {
+    public static final String PROPERTY = "org.gradle.internal.resolve.graphcache";
+
+    private final CacheLockingManager cacheLockingManager;
+    private final ModuleMetaDataCache moduleMetaDataCache;
+    private PersistentIndexedCache<HashCode, CachedGraph> cache;
+
+    public ResolvedGraphCache(CacheLockingManager cacheLockingManager, ModuleMetaDataCache moduleMetaDataCache) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.moduleMetaDataCache = moduleMetaDataCache;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    private synchronized PersistentIndexedCache<HashCode, CachedGraph> getCache() {
+        if (cache == null) {
+            cache = cacheLockingManager.createCache("resolved-graphs", BaseSerializerFactory.HASHCODE_SERIALIZER, new CachedGraphSerializer());
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the current generation of the module meta-data, to be stored with a graph that is about to be resolved.
+     */
+    public long getMetadataGeneration() {
+        return moduleMetaDataCache.getGeneration();
+    }
+
+    /**
+     * Returns the entry for the graph with the given fingerprint, or null when there is none or the entry was made while the module meta-data was different.
+     */
+    @Nullable
+    public CachedGraph get(HashCode fingerprint) {
+        CachedGraph graph = getCache().get(fingerprint);
+        if (graph == null) {
+            return null;
+        }
+        return graph.getMetadataGeneration() == getMetadataGeneration() ? graph : null;
+    }
+
+    /**
+     * Stores the serialized resolution result of a graph, resolved from the module meta-data of the given generation.
+     */
+    public void put(HashCode fingerprint, long metadataGeneration, byte[] graph) {
+        getCache().put(fingerprint, new CachedGraph(metadataGeneration, false, graph));
+    }
+
+    /**
+     * Records that the artifacts of the configuration with the given fingerprint were requested. Its graph is no longer served, until the module meta-data
+     * changes.
+     */
+    public void artifactsRequested(HashCode fingerprint) {
+        getCache().put(fingerprint, new CachedGraph(getMetadataGeneration(), true, new byte[0]));
+    }
+
+    public static class CachedGraph {
+        private final long metadataGeneration;
+        private final boolean artifactsRequested;
+        private final byte[] graph;
+
+        CachedGraph(long metadataGeneration, boolean artifactsRequested, byte[] graph) {
+            this.metadataGeneration = metadataGeneration;
+            this.artifactsRequested = artifactsRequested;
+            this.graph = graph;
+        }
+
+        long getMetadataGeneration() {
+            return metadataGeneration;
+        }
+
+        /**
+         * Returns whether the artifacts of the configuration were requested, in which case there is no graph to serve.
+         */
+        public boolean isArtifactsRequested() {
+            return artifactsRequested;
+        }
+
+        /**
+         * Returns the resolution result, as recorded by a {@link RecordingBinaryStore}.
+         */
+        public byte[] getGraph() {
+            return graph;
+        }
+    }
+
+    private static class CachedGraphSerializer extends AbstractSerializer<CachedGraph> {
+        @Override
+        public void write(Encoder encoder, CachedGraph value) throws Exception {
+            encoder.writeLong(value.metadataGeneration);
+            encoder.writeBoolean(value.artifactsRequested);
+            encoder.writeBinary(value.graph);
+        }
+
+        @Override
+        public CachedGraph read(Decoder decoder) throws Exception {
+            long metadataGeneration = decoder.readLong();
+            boolean artifactsRequested = decoder.readBoolean();
+            byte[] graph = decoder.readBinary();
+            return new CachedGraph(metadataGeneration, artifactsRequested, graph);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactsResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedFileDependencyResults;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the serialized resolution results of the dependency graphs resolved during a build, along with their artifacts, so that configurations of different
+ * projects that resolve the same dependencies in the same way can share a single resolution. The graphs are keyed by a fingerprint of everything that went into
+ * resolving them and their artifacts, except the identity of the project that owns the configuration.
+ *
+ * Enabled with the {@value #PROPERTY} system property.
+ */
+public class SharedResolvedGraphs {
+    public static final String PROPERTY = "org.gradle.internal.resolve.sharegraphs";
+
+    private final Map<HashCode, SharedGraph> graphs = new HashMap<HashCode, SharedGraph>();
+    private int lookups;
+    private int hits;
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Returns the graph with the given fingerprint that can be shared with a configuration of the given module, or null when there is none.
+     */
+    @Nullable
+    public synchronized SharedGraph get(HashCode fingerprint, ModuleIdentifier module) {
+        lookups++;
+        SharedGraph graph = graphs.get(fingerprint);
+        // The graph of a project that is also a module in the graph would be resolved differently
+        if (graph == null || graph.modules.contains(module)) {
+            return null;
+        }
+        hits++;
+        return graph;
+    }
+
+    public synchronized void put(HashCode fingerprint, SharedGraph graph) {
+        if (!graphs.containsKey(fingerprint)) {
+            graphs.put(fingerprint, graph);
+        }
+    }
+
+    /**
+     * Returns the number of graphs that were looked up, which is the number of graphs that could have been shared.
+     */
+    public synchronized int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the number of graphs that were shared.
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public static class SharedGraph {
+        private final String configurationPath;
+        private final byte[] graph;
+        private final long rootResultId;
+        private final Set<ModuleIdentifier> modules;
+        private final VisitedArtifactsResults artifactsResults;
+        private final VisitedFileDependencyResults fileDependencyResults;
+
+        /**
+         * @param configurationPath the configuration the graph was resolved for.
+         * @param graph the resolution result, as recorded by a {@link RecordingBinaryStore}.
+         * @param rootResultId the result id of the root of the graph, whose component is replaced when the graph is shared.
+         * @param modules the modules in the graph, other than the root.
+         * @param artifactsResults the artifacts of the graph.
+         * @param fileDependencyResults the file dependencies of the graph.
+         */
+        public SharedGraph(String configurationPath, byte[] graph, long rootResultId, Set<ModuleIdentifier> modules, VisitedArtifactsResults artifactsResults,
+                           VisitedFileDependencyResults fileDependencyResults) {
+            this.configurationPath = configurationPath;
+            this.graph = graph;
+            this.rootResultId = rootResultId;
+            this.modules = modules;
+            this.artifactsResults = artifactsResults;
+            this.fileDependencyResults = fileDependencyResults;
+        }
+
+        public String getConfigurationPath() {
+            return configurationPath;
+        }
+
+        public byte[] getGraph() {
+            return graph;
+        }
+
+        public long getRootResultId() {
+            return rootResultId;
+        }
+
+        public VisitedArtifactsResults getArtifactsResults() {
+            return artifactsResults;
+        }
+
+        public VisitedFileDependencyResults getFileDependencyResults() {
+            return fileDependencyResults;
+        }
+    }
+}
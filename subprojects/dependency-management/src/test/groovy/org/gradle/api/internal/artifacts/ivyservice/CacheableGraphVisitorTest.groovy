@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.TestComponentIdentifiers
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import spock.lang.Specification
+
+class CacheableGraphVisitorTest extends Specification {
+    def visitor = new CacheableGraphVisitor(new DefaultVersionSelectorScheme(new DefaultVersionComparator()))
+    def root = node(1, "org", "root", "1.0", true)
+
+    def "graph of static module versions is cacheable"() {
+        def dep1 = node(2, "org", "dep1", "1.0")
+        def dep2 = node(3, "org", "dep2", "2.0")
+
+        when:
+        visit(root, dep1, dep2)
+        visitor.visitSelector(selector(1, "org", "dep1", "1.0"))
+        visitor.visitSelector(selector(2, "org", "dep2", "2.0"))
+
+        then:
+        visitor.cacheable
+        visitor.rootResultId == 1
+        visitor.modules*.name as Set == ["dep1", "dep2"] as Set
+    }
+
+    def "graph with dynamic version is not cacheable"() {
+        when:
+        visit(root, node(2, "org", "dep1", "1.2"))
+        visitor.visitSelector(selector(1, "org", "dep1", version))
+
+        then:
+        !visitor.cacheable
+
+        where:
+        version << ["1.+", "latest.release", "[1.0,2.0)"]
+    }
+
+    def "graph with changing module is not cacheable"() {
+        when:
+        visit(root, node(2, "org", "dep1", "1.0-SNAPSHOT", false, true))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with component that is not a module is not cacheable"() {
+        when:
+        visit(root, node(2, "org", "lib", "1.0", false, false, TestComponentIdentifiers.newProjectId(":lib")))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph with failure is not cacheable"() {
+        def edge = Stub(DependencyGraphEdge)
+        edge.failure >> new ModuleVersionResolveException(DefaultModuleComponentSelector.newSelector("org", "dep1", "1.0"), new RuntimeException())
+
+        when:
+        visit(node(1, "org", "root", "1.0", true, false, null, [edge] as Set))
+
+        then:
+        !visitor.cacheable
+    }
+
+    def "graph that contains the module of the root is not cacheable"() {
+        when:
+        visit(root, node(2, "org", "root", "0.9"))
+
+        then:
+        !visitor.cacheable
+    }
+
+    private void visit(DependencyGraphNode root, DependencyGraphNode... nodes) {
+        visitor.start(root)
+        visitor.visitNode(root)
+        nodes.each { visitor.visitNode(it) }
+        visitor.finish(root)
+    }
+
+    private DependencyGraphNode node(Long resultId, String org, String name, String version, boolean isRoot = false, boolean changing = false,
+                                     ComponentIdentifier componentId = null, Set<DependencyGraphEdge> outgoingEdges = [] as Set) {
+        def metadata = Stub(ComponentResolveMetadata)
+        metadata.changing >> changing
+
+        def component = Stub(DependencyGraphComponent)
+        component.resultId >> resultId
+        component.moduleVersion >> DefaultModuleVersionIdentifier.newId(org, name, version)
+        component.componentId >> (componentId ?: DefaultModuleComponentIdentifier.newId(org, name, version))
+        component.metadata >> metadata
+
+        def node = Stub(DependencyGraphNode)
+        node.root >> isRoot
+        node.owner >> component
+        node.outgoingEdges >> outgoingEdges
+        node.outgoingFileEdges >> ([] as Set)
+        return node
+    }
+
+    private DependencyGraphSelector selector(Long resultId, String org, String name, String version) {
+        def selector = Stub(DependencyGraphSelector)
+        selector.resultId >> resultId
+        selector.requested >> DefaultModuleComponentSelector.newSelector(org, name, version)
+        return selector
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.artifacts.Dependency
+import org.gradle.api.artifacts.DependencySet
+import org.gradle.api.artifacts.ProjectDependency
+import org.gradle.api.artifacts.ResolutionStrategy
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.gradle.api.attributes.Attribute
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.LatestConflictResolution
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository
+import org.gradle.api.internal.artifacts.type.DefaultArtifactTypeRegistry
+import org.gradle.api.internal.attributes.DefaultImmutableAttributesFactory
+import org.gradle.api.internal.attributes.ImmutableAttributes
+import org.gradle.internal.reflect.DirectInstantiator
+import spock.lang.Specification
+
+class ConfigurationResolveFingerprinterTest extends Specification {
+    def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+        getConflictResolution() >> new LatestConflictResolution()
+        getSortOrder() >> ResolutionStrategy.SortOrder.DEFAULT
+    }
+    def repository = mavenRepository("https://repo/")
+
+    def "fingerprint is stable"() {
+        expect:
+        fingerprint([dependency("1.0")]) != null
+        fingerprint([dependency("1.0")]) == fingerprint([dependency("1.0")])
+    }
+
+    def "fingerprint changes when a dependency changes"() {
+        expect:
+        fingerprint([dependency("1.0")]) != fingerprint([dependency("1.1")])
+        fingerprint([dependency("1.0")]) != fingerprint([dependency("1.0"), new DefaultExternalModuleDependency("org", "other", "1.0")])
+    }
+
+    def "fingerprint changes when a repository changes"() {
+        def fingerprint = fingerprint([dependency("1.0")])
+
+        when:
+        repository = mavenRepository("https://other/")
+
+        then:
+        fingerprint([dependency("1.0")]) != fingerprint
+    }
+
+    def "does not create resolver to fingerprint maven repository"() {
+        def repository = Mock(MavenResolutionAwareRepository) {
+            getUrl() >> new URI("https://repo/")
+            getArtifactUrls() >> ([] as Set)
+        }
+
+        when:
+        ConfigurationResolveFingerprinter.fingerprint(configuration([dependency("1.0")]), [repository], GlobalDependencyResolutionRules.NO_OP)
+
+        then:
+        0 * repository.createResolver()
+    }
+
+    def "fingerprints other repositories by the id of their resolver"() {
+        def resolver = Stub(ConfiguredModuleComponentRepository) {
+            getId() >> "123"
+        }
+        repository = Stub(ResolutionAwareRepository) {
+            createResolver() >> resolver
+        }
+
+        expect:
+        fingerprint([dependency("1.0")]) != null
+    }
+
+    def "fingerprint for sharing changes when the inputs to the artifacts change"() {
+        def fingerprint = fingerprint([dependency("1.0")])
+        def configuration = configuration([dependency("1.0")])
+        def registry = new DefaultArtifactTypeRegistry(DirectInstantiator.INSTANCE, new DefaultImmutableAttributesFactory())
+        def withArtifactInputs = ConfigurationResolveFingerprinter.withArtifactInputs(fingerprint, configuration, registry)
+
+        expect:
+        withArtifactInputs == ConfigurationResolveFingerprinter.withArtifactInputs(fingerprint, configuration, registry)
+
+        when:
+        registry.create().create("jar") {
+            attributes.attribute(Attribute.of("thing", String), "123")
+        }
+
+        then:
+        ConfigurationResolveFingerprinter.withArtifactInputs(fingerprint, configuration, registry) != withArtifactInputs
+    }
+
+    def "has no fingerprint when resolution is affected by rules"() {
+        resolutionStrategy.dependencySubstitution.hasRules() >> true
+
+        expect:
+        fingerprint([dependency("1.0")]) == null
+    }
+
+    def "has no fingerprint for changing dependency"() {
+        def dependency = dependency("1.0-SNAPSHOT")
+        dependency.changing = true
+
+        expect:
+        fingerprint([dependency]) == null
+    }
+
+    def "has no fingerprint for project dependency"() {
+        expect:
+        fingerprint([dependency("1.0"), Stub(ProjectDependency)]) == null
+    }
+
+    private fingerprint(List<Dependency> dependencies) {
+        return ConfigurationResolveFingerprinter.fingerprint(configuration(dependencies), [repository], GlobalDependencyResolutionRules.NO_OP)
+    }
+
+    private ConfigurationInternal configuration(List<Dependency> dependencies) {
+        def dependencySet = Stub(DependencySet) {
+            size() >> dependencies.size()
+            iterator() >> { dependencies.iterator() }
+        }
+        return Stub(ConfigurationInternal) {
+            getAllDependencies() >> dependencySet
+            getHierarchy() >> ([] as Set)
+            getAttributes() >> ImmutableAttributes.EMPTY
+            getResolutionStrategy() >> resolutionStrategy
+        }
+    }
+
+    private ResolutionAwareRepository mavenRepository(String url) {
+        return Stub(MavenResolutionAwareRepository) {
+            getUrl() >> new URI(url)
+            getArtifactUrls() >> ([] as Set)
+        }
+    }
+
+    private static DefaultExternalModuleDependency dependency(String version) {
+        return new DefaultExternalModuleDependency("org", "lib", version)
+    }
+
+    interface MavenResolutionAwareRepository extends MavenArtifactRepository, ResolutionAwareRepository {
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions
+import org.gradle.internal.component.external.descriptor.DefaultExclude
+import org.gradle.internal.component.external.descriptor.MavenScope
+import org.gradle.internal.component.external.descriptor.MutableModuleDescriptorState
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultMutableMavenModuleResolveMetadata
+import org.gradle.internal.component.external.model.MavenDependencyMetadata
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder
+import spock.lang.Specification
+
+class ModuleMetadataSerializerTest extends Specification {
+    def moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    def serializer = new ModuleMetadataSerializer()
+
+    def "reads the meta-data that was written"() {
+        def metadata = mavenMetadata(
+            dependency("org.test", "a", "1.0", MavenScope.Compile, false),
+            dependency("org.test", "b", "1.0", MavenScope.Runtime, true),
+            dependency("org.other", "a", "2.0", MavenScope.Test, false))
+
+        when:
+        def result = readBack(metadata)
+
+        then:
+        result.componentId == metadata.componentId
+        result.descriptor.status == "release"
+        result.descriptor.description == null
+        result.packaging == "jar"
+        result.dependencies.size() == 3
+        result.dependencies*.requested*.toString() == ["org.test:a:1.0", "org.test:b:1.0", "org.other:a:2.0"]
+        result.dependencies*.scope == [MavenScope.Compile, MavenScope.Runtime, MavenScope.Test]
+        result.dependencies*.optional == [false, true, false]
+        result.dependencies[2].excludes*.moduleId == [DefaultModuleIdentifier.newId("org.excluded", "c")]
+    }
+
+    def "writes each string once"() {
+        def dependencies = (1..20).collect { dependency("org.test", "module", "1.0", MavenScope.Compile, false) }
+
+        when:
+        def oneDependency = write(mavenMetadata(dependencies[0]))
+        def manyDependencies = write(mavenMetadata(*dependencies))
+
+        then:
+        // Each further dependency refers to its strings, which are all written already
+        manyDependencies.length - oneDependency.length < 19 * "org.test".length() * 3
+
+        and:
+        def result = readBack(mavenMetadata(*dependencies))
+        result.dependencies.collect { it.requested.group }.every { it.is(result.componentId.group) }
+    }
+
+    private MavenDependencyMetadata dependency(String group, String name, String version, MavenScope scope, boolean optional) {
+        new MavenDependencyMetadata(scope, optional, DefaultModuleVersionSelector.newSelector(group, name, version), [], [new DefaultExclude(DefaultModuleIdentifier.newId("org.excluded", "c"))])
+    }
+
+    private ModuleComponentResolveMetadata mavenMetadata(MavenDependencyMetadata... dependencies) {
+        def componentId = DefaultModuleComponentIdentifier.newId("org.test", "module", "1.0")
+        def id = DefaultModuleVersionIdentifier.newId("org.test", "module", "1.0")
+        def descriptor = new MutableModuleDescriptorState(componentId, "release", false)
+        return new DefaultMutableMavenModuleResolveMetadata(id, componentId, descriptor, "jar", false, dependencies as List).asImmutable()
+    }
+
+    private byte[] write(ModuleComponentResolveMetadata metadata) {
+        def output = new ByteArrayOutputStream()
+        def encoder = new KryoBackedEncoder(output)
+        serializer.write(encoder, metadata)
+        encoder.flush()
+        return output.toByteArray()
+    }
+
+    private ModuleComponentResolveMetadata readBack(ModuleComponentResolveMetadata metadata) {
+        def decoder = new KryoBackedDecoder(new ByteArrayInputStream(write(metadata)))
+        return serializer.read(decoder, moduleIdentifierFactory, new ModuleExclusions(moduleIdentifierFactory)).asImmutable()
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph
+
+import org.gradle.api.artifacts.ModuleVersionSelector
+import org.gradle.api.internal.attributes.AttributeContainerInternal
+import org.gradle.api.internal.attributes.AttributesSchemaInternal
+import org.gradle.api.specs.Specs
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.DefaultLocalComponentMetadata
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.component.model.IvyArtifactName
+import org.gradle.internal.component.model.LocalComponentDependencyMetadata
+import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.BuildOperationQueue
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import spock.lang.Specification
+
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier.newId
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionSelector.newSelector
+
+class SpeculativeMetadataFetcherTest extends Specification {
+    def attributesSchema = Mock(AttributesSchemaInternal)
+    def attributes = Mock(AttributeContainerInternal) {
+        isEmpty() >> true
+    }
+    def resolver = Mock(ComponentMetaDataResolver)
+    def operations = []
+    def queue = Mock(BuildOperationQueue)
+    def buildOperationExecutor = Mock(BuildOperationExecutor) {
+        runAll(_) >> { args ->
+            args[0].execute(queue)
+        }
+    }
+    def fetcher = new SpeculativeMetadataFetcher(resolver, Specs.satisfyAll(), attributesSchema)
+    def root = component("root")
+    def a = component("a")
+    def b = component("b")
+    def c = component("c")
+
+    def "fetches the dependencies of fetched components ahead of the traversal"() {
+        given:
+        _ * queue.add(_) >> { RunnableBuildOperation operation -> operation.run(null) }
+        def dependency = dependsOn(root, a)
+        dependsOn(a, b)
+        dependsOn(b, c, "1.+")
+
+        when:
+        fetcher.fetchWhile(buildOperationExecutor) {
+            fetcher.fetch(a.componentId, dependency, root, root.getConfiguration("default"))
+            fetcher.await(a.componentId)
+        }
+
+        then:
+        1 * resolver.resolve(a.componentId, _, _) >> { args -> resolved(args[2], a) }
+        1 * resolver.resolve(b.componentId, _, _) >> { args -> resolved(args[2], b) }
+        0 * resolver.resolve(c.componentId, _, _)
+    }
+
+    def "traversal runs a fetch that has not been started itself and discards speculative fetches when done"() {
+        given:
+        _ * queue.add(_) >> { RunnableBuildOperation operation -> operations << operation }
+        def dependency = dependsOn(root, a)
+        dependsOn(a, b)
+
+        when:
+        fetcher.fetchWhile(buildOperationExecutor) {
+            fetcher.fetch(a.componentId, dependency, root, root.getConfiguration("default"))
+            fetcher.await(a.componentId)
+        }
+
+        then:
+        1 * resolver.resolve(a.componentId, _, _) >> { args -> resolved(args[2], a) }
+        1 * queue.cancel()
+        operations.size() == 2
+
+        when:
+        operations*.run(null)
+
+        then:
+        0 * resolver._
+    }
+
+    def "rethrows the failure of the traversal"() {
+        def failure = new IllegalStateException("broken")
+
+        when:
+        fetcher.fetchWhile(buildOperationExecutor) {
+            throw failure
+        }
+
+        then:
+        def e = thrown(IllegalStateException)
+        e == failure
+    }
+
+    def component(String name) {
+        def id = newId("group", name, "1.0")
+        def metadata = new DefaultLocalComponentMetadata(id, DefaultModuleComponentIdentifier.newId(id), "release", attributesSchema)
+        metadata.addConfiguration("default", "defaultConfig", [] as Set<String>, ["default"] as Set<String>, true, true, attributes, true, true)
+        return metadata
+    }
+
+    DependencyMetadata dependsOn(ComponentResolveMetadata from, ComponentResolveMetadata to, String version = "1.0") {
+        ModuleVersionSelector selector = newSelector(to.id.group, to.id.name, version)
+        def dependency = new LocalComponentDependencyMetadata(DefaultModuleComponentSelector.newSelector(selector), selector, "default", null, "default", [] as Set<IvyArtifactName>,
+            [], false, false, true)
+        from.getDependencies().add(dependency)
+        return dependency
+    }
+
+    static void resolved(BuildableComponentResolveResult result, ComponentResolveMetadata metadata) {
+        result.resolved(metadata)
+    }
+}
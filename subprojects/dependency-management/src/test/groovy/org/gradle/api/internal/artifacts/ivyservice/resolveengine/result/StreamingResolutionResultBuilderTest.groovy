@@ -24,6 +24,8 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.Dependen
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.RecordingBinaryStore
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ReplayBinaryStore
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
 import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
 import org.gradle.internal.resolve.ModuleVersionResolveException
@@ -85,6 +87,62 @@ class StreamingResolutionResultBuilderTest extends Specification {
 """
     }
 
+    def "can replace root component"() {
+        def root = node(1, "org", "root", "1.0", ROOT)
+        def selector1 = selector(1, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector1, 2)]
+
+        builder.start(root)
+        builder.visitNode(root)
+        builder.visitNode(node(2, "org", "dep1", "2.0"))
+        builder.visitSelector(selector1)
+        builder.visitEdges(root)
+        builder.finish(root)
+
+        when:
+        def otherId = DefaultModuleVersionIdentifier.newId("org", "other", "2.0")
+        def result = builder.complete(new DefaultComponentResult(1, otherId, ROOT, DefaultModuleComponentIdentifier.newId(otherId)))
+
+        then:
+        result.root.id == DefaultModuleComponentIdentifier.newId("org", "other", "2.0")
+        printGraph(result.root) == """org:other:2.0
+  org:dep1:2.0 [other]
+"""
+    }
+
+    def "graph recorded while building result can be replayed"() {
+        def recordingStore = new RecordingBinaryStore(new DummyBinaryStore())
+        builder = new StreamingResolutionResultBuilder(recordingStore, new DummyStore(), moduleIdentifierFactory)
+        def root = node(1, "org", "root", "1.0", ROOT)
+        def selector1 = selector(1, "org", "dep1", "2.0")
+        def selector2 = selector(2, "org", "dep2", "3.0")
+        def dep1 = node(2, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector1, 2)]
+        dep1.outgoingEdges >> [dep(selector2, 3)]
+
+        builder.start(root)
+        builder.visitNode(root)
+        builder.visitNode(dep1)
+        builder.visitNode(node(3, "org", "dep2", "3.0", CONFLICT_RESOLUTION))
+        builder.visitSelector(selector1)
+        builder.visitSelector(selector2)
+        builder.visitEdges(root)
+        builder.visitEdges(dep1)
+        builder.finish(root)
+        def original = builder.complete()
+
+        when:
+        def replayed = new StreamingResolutionResultBuilder(new ReplayBinaryStore(recordingStore.recorded), new DummyStore(), moduleIdentifierFactory).complete()
+
+        then:
+        printGraph(replayed.root) == printGraph(original.root)
+        printGraph(replayed.root) == """org:root:1.0
+  org:dep1:2.0 [root]
+    org:dep2:3.0(C) [dep1]
+"""
+        replayed.allComponents.collect { it.id } == original.allComponents.collect { it.id }
+    }
+
     def "visiting resolved module version again has no effect"() {
         def root = node(1, "org", "root", "1.0")
         def selector = selector(7, "org", "dep1", "2.0")
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import org.gradle.api.internal.cache.BinaryStore
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class RecordingBinaryStoreTest extends Specification {
+
+    @Rule TestNameTestDirectoryProvider temp = new TestNameTestDirectoryProvider()
+
+    def "recorded data can be replayed"() {
+        def delegate = new DefaultBinaryStore(temp.file("foo.bin"))
+        def store = new RecordingBinaryStore(delegate)
+
+        when:
+        store.write({ it.writeInt(10) } as BinaryStore.WriteAction)
+        store.write({ it.writeString("x") } as BinaryStore.WriteAction)
+        def data = store.done()
+
+        then:
+        data.read({ it.readInt() } as BinaryStore.ReadAction) == 10
+        data.read({ it.readString() } as BinaryStore.ReadAction) == "x"
+        data.close()
+
+        when:
+        def replayed = new ReplayBinaryStore(store.recorded).done()
+
+        then:
+        replayed.read({ it.readInt() } as BinaryStore.ReadAction) == 10
+        replayed.read({ it.readString() } as BinaryStore.ReadAction) == "x"
+        replayed.close()
+
+        then:
+        replayed.read({ it.readInt() } as BinaryStore.ReadAction) == 10
+        replayed.close()
+
+        cleanup:
+        delegate.close()
+    }
+
+    def "cannot write to replayed store"() {
+        def store = new ReplayBinaryStore(new byte[0])
+
+        when:
+        store.write({ it.writeInt(10) } as BinaryStore.WriteAction)
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+}
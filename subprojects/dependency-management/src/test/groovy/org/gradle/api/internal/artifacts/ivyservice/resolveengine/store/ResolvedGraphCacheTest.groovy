@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetaDataCache
+import org.gradle.cache.PersistentIndexedCache
+import spock.lang.Specification
+
+class ResolvedGraphCacheTest extends Specification {
+    def entries = [:]
+    def persistentCache = Stub(PersistentIndexedCache) {
+        get(_) >> { HashCode key -> entries[key] }
+        put(_, _) >> { HashCode key, value -> entries[key] = value }
+    }
+    def cacheLockingManager = Stub(CacheLockingManager) {
+        createCache(_, _, _) >> persistentCache
+    }
+    def moduleMetaDataCache = Mock(ModuleMetaDataCache)
+    def cache = new ResolvedGraphCache(cacheLockingManager, moduleMetaDataCache)
+    def fingerprint = HashCode.fromInt(123)
+
+    def "serves graph while module meta-data is unchanged"() {
+        moduleMetaDataCache.generation >> 4
+
+        when:
+        cache.put(fingerprint, 4, [1, 2, 3] as byte[])
+        def entry = cache.get(fingerprint)
+
+        then:
+        !entry.artifactsRequested
+        entry.graph == [1, 2, 3] as byte[]
+        cache.get(HashCode.fromInt(456)) == null
+    }
+
+    def "does not serve graph once module meta-data has changed"() {
+        moduleMetaDataCache.generation >> 5
+
+        when:
+        cache.put(fingerprint, 4, [1, 2, 3] as byte[])
+
+        then:
+        cache.get(fingerprint) == null
+    }
+
+    def "remembers that artifacts were requested while module meta-data is unchanged"() {
+        moduleMetaDataCache.generation >> 4
+
+        when:
+        cache.put(fingerprint, 4, [1, 2, 3] as byte[])
+        cache.artifactsRequested(fingerprint)
+
+        then:
+        cache.get(fingerprint).artifactsRequested
+        cache.get(fingerprint).artifactsRequested
+    }
+
+    def "forgets that artifacts were requested once module meta-data has changed"() {
+        moduleMetaDataCache.generation >>> [4, 5]
+
+        when:
+        cache.artifactsRequested(fingerprint)
+
+        then:
+        cache.get(fingerprint) == null
+    }
+
+    def "serves graph stored after module meta-data has changed for a configuration whose artifacts were requested"() {
+        moduleMetaDataCache.generation >>> [4, 5]
+
+        when:
+        cache.artifactsRequested(fingerprint)
+        cache.put(fingerprint, 5, [1, 2, 3] as byte[])
+        def entry = cache.get(fingerprint)
+
+        then:
+        !entry.artifactsRequested
+        entry.graph == [1, 2, 3] as byte[]
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactsResults
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedFileDependencyResults
+import spock.lang.Specification
+
+class SharedResolvedGraphsTest extends Specification {
+    def graphs = new SharedResolvedGraphs()
+    def fingerprint = HashCode.fromInt(1)
+    def graph = new SharedResolvedGraphs.SharedGraph(":a:compileClasspath", [1, 2] as byte[], 1, [DefaultModuleIdentifier.newId("org", "lib")] as Set,
+        Stub(VisitedArtifactsResults), Stub(VisitedFileDependencyResults))
+
+    def "shares graph with the same fingerprint"() {
+        when:
+        graphs.put(fingerprint, graph)
+
+        then:
+        graphs.get(HashCode.fromInt(2), DefaultModuleIdentifier.newId("org", "b")) == null
+        graphs.get(fingerprint, DefaultModuleIdentifier.newId("org", "b")) == graph
+        graphs.lookups == 2
+        graphs.hits == 1
+    }
+
+    def "does not share graph that contains the module of the configuration"() {
+        when:
+        graphs.put(fingerprint, graph)
+
+        then:
+        graphs.get(fingerprint, DefaultModuleIdentifier.newId("org", "lib")) == null
+        graphs.hits == 0
+    }
+}
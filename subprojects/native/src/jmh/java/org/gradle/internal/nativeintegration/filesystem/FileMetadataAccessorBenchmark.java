@@ -17,7 +17,9 @@ package org.gradle.internal.nativeintegration.filesystem;
 
 import com.google.common.collect.ImmutableMap;
 import net.rubygrapefruit.platform.Files;
+import org.gradle.internal.nativeintegration.filesystem.jdk7.Jdk7DirectoryMetadataAccessor;
 import org.gradle.internal.nativeintegration.filesystem.jdk7.Jdk7FileMetadataAccessor;
+import org.gradle.internal.nativeintegration.filesystem.services.FallbackDirectoryMetadataAccessor;
 import org.gradle.internal.nativeintegration.filesystem.services.FallbackFileMetadataAccessor;
 import org.gradle.internal.nativeintegration.filesystem.services.NativePlatformBackedFileMetadataAccessor;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -44,6 +46,16 @@ public class FileMetadataAccessorBenchmark {
         .put(NioFileMetadataAccessor.class.getSimpleName(), new NioFileMetadataAccessor())
         .build();
 
+    // The batch path to compare each accessor with: the directory stream based accessor for the NIO based accessors, and listing plus a stat per entry otherwise
+    private static final Map<String, DirectoryMetadataAccessor> DIRECTORY_ACCESSORS = ImmutableMap.<String, DirectoryMetadataAccessor>builder()
+        .put(FallbackFileMetadataAccessor.class.getSimpleName(), new FallbackDirectoryMetadataAccessor(ACCESSORS.get(FallbackFileMetadataAccessor.class.getSimpleName())))
+        .put(NativePlatformBackedFileMetadataAccessor.class.getSimpleName(), new FallbackDirectoryMetadataAccessor(ACCESSORS.get(NativePlatformBackedFileMetadataAccessor.class.getSimpleName())))
+        .put(Jdk7FileMetadataAccessor.class.getSimpleName(), new Jdk7DirectoryMetadataAccessor())
+        .put(NioFileMetadataAccessor.class.getSimpleName(), new Jdk7DirectoryMetadataAccessor())
+        .build();
+
+    private static final int DIRECTORY_ENTRIES = 100;
+
 
     @Param({
         "FallbackFileMetadataAccessor",
@@ -57,6 +69,8 @@ public class FileMetadataAccessorBenchmark {
     File missing;
     File directory;
     File realFile;
+    File populatedDirectory;
+    File[] populatedDirectoryEntries;
 
     @Setup
     public void prepare() throws IOException {
@@ -69,12 +83,28 @@ public class FileMetadataAccessorBenchmark {
         FileOutputStream fos = new FileOutputStream(realFile);
         fos.write(new byte[1024]);
         fos.close();
+
+        populatedDirectory = File.createTempFile("jmh", "entries");
+        populatedDirectory.delete();
+        populatedDirectory.mkdirs();
+        populatedDirectoryEntries = new File[DIRECTORY_ENTRIES];
+        for (int i = 0; i < DIRECTORY_ENTRIES; i++) {
+            File entry = new File(populatedDirectory, "file" + i + ".class");
+            fos = new FileOutputStream(entry);
+            fos.write(new byte[1024]);
+            fos.close();
+            populatedDirectoryEntries[i] = entry;
+        }
     }
 
     @TearDown
     public void tearDown() {
         directory.delete();
         realFile.delete();
+        for (File entry : populatedDirectoryEntries) {
+            entry.delete();
+        }
+        populatedDirectory.delete();
     }
 
     @SuppressWarnings("unchecked")
@@ -97,6 +127,19 @@ public class FileMetadataAccessorBenchmark {
         bh.consume(getAccessor(accessorClassName).stat(realFile));
     }
 
+    @Benchmark
+    public void stat_directory_entries_one_by_one(Blackhole bh) {
+        FileMetadataAccessor accessor = getAccessor(accessorClassName);
+        for (String name : populatedDirectory.list()) {
+            bh.consume(accessor.stat(new File(populatedDirectory, name)));
+        }
+    }
+
+    @Benchmark
+    public void stat_directory_entries_batch(Blackhole bh) {
+        bh.consume(DIRECTORY_ACCESSORS.get(accessorClassName).statChildren(populatedDirectory));
+    }
+
     private static class NioFileMetadataAccessor implements FileMetadataAccessor {
 
         @Override
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.nativeintegration.filesystem;
+
+/**
+ * An immutable snapshot of the metadata of an entry of a directory, including the identity of the file where the platform provides it.
+ */
+public class DirectoryEntryMetadata implements FileMetadataSnapshot {
+    /**
+     * The value of {@link #getInode()} and {@link #getChangeTime()} when the platform does not provide them.
+     */
+    public static final long UNKNOWN = -1;
+
+    private final String name;
+    private final FileType type;
+    private final long lastModified;
+    private final long length;
+    private final long inode;
+    private final long changeTime;
+
+    public DirectoryEntryMetadata(String name, FileType type, long lastModified, long length, long inode, long changeTime) {
+        this.name = name;
+        this.type = type;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.inode = inode;
+        this.changeTime = changeTime;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public FileType getType() {
+        return type;
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * The inode number of the file, or {@link #UNKNOWN}.
+     */
+    public long getInode() {
+        return inode;
+    }
+
+    /**
+     * The time the metadata of the file last changed in nanoseconds, or {@link #UNKNOWN}.
+     */
+    public long getChangeTime() {
+        return changeTime;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.nativeintegration.filesystem;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Reads the metadata of all entries of a directory in one pass, including their identity where it is available, so that callers that need the metadata
+ * of many files in a directory ask for it once instead of once per file.
+ */
+public interface DirectoryMetadataAccessor {
+    /**
+     * Returns the metadata of the entries of the given directory, following symbolic links. Returns an empty list when the directory does not exist.
+     */
+    List<DirectoryEntryMetadata> statChildren(File dir);
+}
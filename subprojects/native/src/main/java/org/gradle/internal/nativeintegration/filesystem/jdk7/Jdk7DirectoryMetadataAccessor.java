@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.nativeintegration.filesystem.jdk7;
+
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryMetadataAccessor;
+import org.gradle.internal.nativeintegration.filesystem.FileType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists a directory through a single directory stream, reading the inode and change time of each entry from the {@code unix} attribute view where it is available.
+ */
+public class Jdk7DirectoryMetadataAccessor implements DirectoryMetadataAccessor {
+    private static final String UNIX_ATTRIBUTES = "unix:size,lastModifiedTime,ctime,ino,isDirectory";
+
+    private volatile boolean unixViewSupported = true;
+
+    @Override
+    public List<DirectoryEntryMetadata> statChildren(File dir) {
+        List<DirectoryEntryMetadata> entries = new ArrayList<DirectoryEntryMetadata>();
+        DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(dir.toPath());
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (NotDirectoryException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        try {
+            for (Path child : stream) {
+                entries.add(stat(child));
+            }
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+        return entries;
+    }
+
+    private DirectoryEntryMetadata stat(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            if (unixViewSupported) {
+                try {
+                    return unixStat(name, Files.readAttributes(path, UNIX_ATTRIBUTES));
+                } catch (UnsupportedOperationException e) {
+                    unixViewSupported = false;
+                } catch (IllegalArgumentException e) {
+                    unixViewSupported = false;
+                }
+            }
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                return new DirectoryEntryMetadata(name, FileType.Directory, 0, 0, DirectoryEntryMetadata.UNKNOWN, DirectoryEntryMetadata.UNKNOWN);
+            }
+            return new DirectoryEntryMetadata(name, FileType.RegularFile, attributes.lastModifiedTime().toMillis(), attributes.size(), DirectoryEntryMetadata.UNKNOWN, DirectoryEntryMetadata.UNKNOWN);
+        } catch (NoSuchFileException e) {
+            // Removed since listed, or a broken symbolic link
+            return new DirectoryEntryMetadata(name, FileType.Missing, 0, 0, DirectoryEntryMetadata.UNKNOWN, DirectoryEntryMetadata.UNKNOWN);
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static DirectoryEntryMetadata unixStat(String name, Map<String, Object> attributes) {
+        long inode = (Long) attributes.get("ino");
+        long changeTime = ((FileTime) attributes.get("ctime")).to(TimeUnit.NANOSECONDS);
+        if ((Boolean) attributes.get("isDirectory")) {
+            return new DirectoryEntryMetadata(name, FileType.Directory, 0, 0, inode, changeTime);
+        }
+        long lastModified = ((FileTime) attributes.get("lastModifiedTime")).toMillis();
+        return new DirectoryEntryMetadata(name, FileType.RegularFile, lastModified, (Long) attributes.get("size"), inode, changeTime);
+    }
+}
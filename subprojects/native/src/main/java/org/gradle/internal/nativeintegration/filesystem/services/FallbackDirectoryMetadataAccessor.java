@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.nativeintegration.filesystem.services;
+
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata;
+import org.gradle.internal.nativeintegration.filesystem.DirectoryMetadataAccessor;
+import org.gradle.internal.nativeintegration.filesystem.FileMetadataAccessor;
+import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists a directory and reads the metadata of each entry separately. Does not provide the identity of the entries.
+ */
+public class FallbackDirectoryMetadataAccessor implements DirectoryMetadataAccessor {
+    private final FileMetadataAccessor metadataAccessor;
+
+    public FallbackDirectoryMetadataAccessor() {
+        this(new FallbackFileMetadataAccessor());
+    }
+
+    public FallbackDirectoryMetadataAccessor(FileMetadataAccessor metadataAccessor) {
+        this.metadataAccessor = metadataAccessor;
+    }
+
+    @Override
+    public List<DirectoryEntryMetadata> statChildren(File dir) {
+        String[] names = dir.list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<DirectoryEntryMetadata> entries = new ArrayList<DirectoryEntryMetadata>(names.length);
+        for (String name : names) {
+            FileMetadataSnapshot metadata = metadataAccessor.stat(new File(dir, name));
+            entries.add(new DirectoryEntryMetadata(name, metadata.getType(), metadata.getLastModified(), metadata.getLength(), DirectoryEntryMetadata.UNKNOWN, DirectoryEntryMetadata.UNKNOWN));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.nativeintegration.filesystem.services
+
+import org.gradle.internal.nativeintegration.filesystem.DirectoryEntryMetadata
+import org.gradle.internal.nativeintegration.filesystem.FileType
+import org.gradle.internal.nativeintegration.filesystem.jdk7.Jdk7DirectoryMetadataAccessor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@UsesNativeServices
+class DirectoryMetadataAccessorTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    @Unroll
+    def "stats entries of directory using #accessor.class.simpleName"() {
+        def dir = tmpDir.createDir("dir")
+        def file = dir.file("file")
+        file.text = "123"
+        dir.createDir("sub")
+
+        when:
+        def entries = accessor.statChildren(dir).collectEntries { [it.name, it] }
+
+        then:
+        entries.keySet() == ["file", "sub"] as Set
+        entries.file.type == FileType.RegularFile
+        entries.file.length == 3
+        entries.sub.type == FileType.Directory
+
+        where:
+        accessor << [new Jdk7DirectoryMetadataAccessor(), new FallbackDirectoryMetadataAccessor()]
+    }
+
+    @Unroll
+    def "returns no entries for missing directory using #accessor.class.simpleName"() {
+        expect:
+        accessor.statChildren(tmpDir.file("missing")).empty
+
+        where:
+        accessor << [new Jdk7DirectoryMetadataAccessor(), new FallbackDirectoryMetadataAccessor()]
+    }
+
+    @Requires(TestPrecondition.UNIX)
+    def "provides identity of entries where available"() {
+        def dir = tmpDir.createDir("dir")
+        def file = dir.file("file")
+        file.text = "123"
+
+        when:
+        def before = new Jdk7DirectoryMetadataAccessor().statChildren(dir)[0]
+        // Created before the file is removed, so that it cannot reuse the inode of the file
+        dir.file("other").text = "456"
+        file.delete()
+        dir.file("other").renameTo(file)
+        def after = new Jdk7DirectoryMetadataAccessor().statChildren(dir)[0]
+
+        then:
+        before.inode != DirectoryEntryMetadata.UNKNOWN
+        before.changeTime != DirectoryEntryMetadata.UNKNOWN
+        after.inode != before.inode
+    }
+}
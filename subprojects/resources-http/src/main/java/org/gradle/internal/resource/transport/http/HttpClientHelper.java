@@ -33,7 +33,9 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.gradle.api.Action;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.Actions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +52,7 @@ public class HttpClientHelper implements Closeable {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientHelper.class);
     private CloseableHttpClient client;
     private final HttpSettings settings;
+    private final Action<? super HttpClientBuilder> clientConfiguration;
 
     /**
      * Maintains a queue of contexts which are shared between threads when authentication
@@ -61,7 +64,15 @@ public class HttpClientHelper implements Closeable {
     private final ConcurrentLinkedQueue<HttpContext> sharedContext;
 
     public HttpClientHelper(HttpSettings settings) {
+        this(settings, Actions.doNothing());
+    }
+
+    /**
+     * Creates a helper whose client is further configured by the given action, after the given settings have been applied.
+     */
+    public HttpClientHelper(HttpSettings settings, Action<? super HttpClientBuilder> clientConfiguration) {
         this.settings = settings;
+        this.clientConfiguration = clientConfiguration;
         if (!settings.getAuthenticationSettings().isEmpty()) {
             sharedContext = new ConcurrentLinkedQueue<HttpContext>();
         } else {
@@ -168,6 +179,7 @@ public class HttpClientHelper implements Closeable {
             HttpClientBuilder builder = HttpClientBuilder.create();
             builder.setRedirectStrategy(new AlwaysRedirectRedirectStrategy());
             new HttpClientConfigurer(settings).configure(builder);
+            clientConfiguration.execute(builder);
             this.client = builder.build();
         }
         return client;